@@ -21,7 +21,9 @@ import org.janelia.workstation.core.api.AccessManager;
 import org.janelia.workstation.core.api.ConnectionMgr;
 import org.janelia.workstation.core.api.lifecycle.AutoUpdater;
 import org.janelia.workstation.core.api.lifecycle.ConsoleState;
+import org.janelia.workstation.core.api.lifecycle.DeferredStartup;
 import org.janelia.workstation.core.api.lifecycle.GracefulBrick;
+import org.janelia.workstation.core.api.lifecycle.StartupProfiler;
 import org.janelia.workstation.core.events.Events;
 import org.janelia.workstation.core.events.lifecycle.ConsolePropsLoaded;
 import org.janelia.workstation.core.model.ConnectionResult;
@@ -52,6 +54,7 @@ public class ShowingHook implements Runnable {
 
     public void run() {
 
+        long start = System.nanoTime();
         log.info("Initializing common GUI module");
         ConsoleState.setCurrState(ConsoleState.WINDOW_SHOWN);
         JFrame frame = WindowLocator.getMainFrame();
@@ -153,6 +156,11 @@ public class ShowingHook implements Runnable {
 
             worker.execute();
         });
+
+        StartupProfiler.record("Common GUI showing hook", start);
+        StartupProfiler.mainWindowShown();
+        // Now that the window is up, initialize anything that was put off to get here faster
+        DeferredStartup.mainWindowShown();
     }
 
     /**
@@ -162,6 +170,7 @@ public class ShowingHook implements Runnable {
     @Subscribe
     public void propsLoaded(ConsolePropsLoaded event) {
 
+        StartupProfiler.milestone("Connected to server");
         StatusDisplayer.getDefault().setStatusText("Connected");
 
         // Set the update center URL
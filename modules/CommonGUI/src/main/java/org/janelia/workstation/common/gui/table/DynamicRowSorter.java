@@ -0,0 +1,303 @@
+package org.janelia.workstation.common.gui.table;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.table.TableModel;
+
+import org.janelia.workstation.core.workers.SimpleWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sorts the rows of a DynamicTable by one column, without blocking the EDT.
+ *
+ * When the sort order or the rows change, a sort key is computed for every row in a background worker,
+ * directly from DynamicTable.getValue rather than through the table model, and the rows are sorted there.
+ * Strings are compared with precomputed collation keys. Until the sort completes, the previous order is
+ * kept, with deleted rows removed and new rows at the end. Results of a sort which was overtaken by a
+ * later change are discarded.
+ */
+final class DynamicRowSorter extends RowSorter<TableModel> {
+
+    private static final Logger log = LoggerFactory.getLogger(DynamicRowSorter.class);
+
+    private final DynamicTable dynamicTable;
+    private final DynamicTableModel model;
+    private List<SortKey> sortKeys = Collections.emptyList();
+    // Null when rows are in model order
+    private int[] viewToModel;
+    private int[] modelToView;
+    // Incremented on every change, to discard stale sorts
+    private int generation = 0;
+    private boolean sorting = false;
+
+    DynamicRowSorter(DynamicTable dynamicTable, DynamicTableModel model) {
+        this.dynamicTable = dynamicTable;
+        this.model = model;
+    }
+
+    @Override
+    public TableModel getModel() {
+        return model;
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        DynamicColumn dc = dynamicTable.getDisplayedColumns().get(column);
+        if (!dc.isSortable()) {
+            return;
+        }
+        SortOrder order = SortOrder.ASCENDING;
+        if (!sortKeys.isEmpty()) {
+            SortKey current = sortKeys.get(0);
+            if (current.getColumn() == column && current.getSortOrder() == SortOrder.ASCENDING) {
+                order = SortOrder.DESCENDING;
+            }
+        }
+        setSortKeys(Collections.singletonList(new SortKey(column, order)));
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        List<SortKey> newKeys = keys == null ? Collections.<SortKey>emptyList() : new ArrayList<>(keys);
+        if (newKeys.equals(sortKeys)) {
+            return;
+        }
+        this.sortKeys = Collections.unmodifiableList(newKeys);
+        fireSortOrderChanged();
+        sort();
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (viewToModel == null) {
+            if (index < 0 || index >= model.getRowCount()) {
+                throw new IndexOutOfBoundsException("Invalid index " + index);
+            }
+            return index;
+        }
+        return viewToModel[index];
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (modelToView == null) {
+            if (index < 0 || index >= model.getRowCount()) {
+                throw new IndexOutOfBoundsException("Invalid index " + index);
+            }
+            return index;
+        }
+        return modelToView[index];
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        generation++;
+        viewToModel = null;
+        modelToView = null;
+        if (!sortKeys.isEmpty()) {
+            sortKeys = Collections.emptyList();
+            fireSortOrderChanged();
+        }
+    }
+
+    @Override
+    public void allRowsChanged() {
+        generation++;
+        viewToModel = null;
+        modelToView = null;
+        sort();
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        if (viewToModel == null) {
+            sort();
+            return;
+        }
+        int count = endRow - firstRow + 1;
+        int[] order = new int[viewToModel.length + count];
+        for (int v = 0; v < viewToModel.length; v++) {
+            int m = viewToModel[v];
+            order[v] = m >= firstRow ? m + count : m;
+        }
+        for (int i = 0; i < count; i++) {
+            order[viewToModel.length + i] = firstRow + i;
+        }
+        setOrder(order);
+        sort();
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        if (viewToModel == null) {
+            return;
+        }
+        int count = endRow - firstRow + 1;
+        int[] order = new int[viewToModel.length - count];
+        int i = 0;
+        for (int m : viewToModel) {
+            if (m < firstRow) {
+                order[i++] = m;
+            }
+            else if (m > endRow) {
+                order[i++] = m - count;
+            }
+        }
+        setOrder(order);
+        if (sorting) {
+            // The rows being sorted are out of date
+            sort();
+        }
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        sort();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        if (!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column) {
+            sort();
+        }
+    }
+
+    private void setOrder(int[] order) {
+        viewToModel = order;
+        if (order == null) {
+            modelToView = null;
+            return;
+        }
+        modelToView = new int[order.length];
+        for (int v = 0; v < order.length; v++) {
+            modelToView[order[v]] = v;
+        }
+    }
+
+    private int[] getOrder() {
+        if (viewToModel != null) {
+            return viewToModel;
+        }
+        int[] identity = new int[model.getRowCount()];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        return identity;
+    }
+
+    /**
+     * Start sorting the rows by the current sort key in the background.
+     */
+    private void sort() {
+
+        final int sortGeneration = ++generation;
+        sorting = false;
+
+        if (sortKeys.isEmpty() || sortKeys.get(0).getSortOrder() == SortOrder.UNSORTED) {
+            if (viewToModel != null) {
+                int[] previous = viewToModel;
+                setOrder(null);
+                fireRowSorterChanged(previous);
+            }
+            return;
+        }
+
+        SortKey sortKey = sortKeys.get(0);
+        final DynamicColumn column = dynamicTable.getDisplayedColumns().get(sortKey.getColumn());
+        final boolean ascending = sortKey.getSortOrder() == SortOrder.ASCENDING;
+        final List<DynamicRow> rows = new ArrayList<>(dynamicTable.getRows().subList(0, model.getRowCount()));
+
+        SimpleWorker worker = new SimpleWorker() {
+
+            private int[] order;
+
+            @Override
+            protected void doStuff() throws Exception {
+                long start = System.currentTimeMillis();
+                Collator collator = Collator.getInstance();
+                Object[] keys = new Object[rows.size()];
+                Integer[] indexes = new Integer[rows.size()];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = getSortKey(collator, dynamicTable.getValue(rows.get(i).getUserObject(), column));
+                    indexes[i] = i;
+                }
+                Comparator<Integer> comparator = (a, b) -> compareKeys(keys[a], keys[b]);
+                Arrays.sort(indexes, ascending ? comparator : comparator.reversed());
+                order = new int[indexes.length];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = indexes[i];
+                }
+                log.debug("Sorted {} rows by {} in {} ms", order.length, column.getName(), System.currentTimeMillis() - start);
+            }
+
+            @Override
+            protected void hadSuccess() {
+                if (sortGeneration != generation) {
+                    return;
+                }
+                sorting = false;
+                int[] previous = getOrder();
+                setOrder(order);
+                fireRowSorterChanged(previous);
+            }
+
+            @Override
+            protected void hadError(Throwable error) {
+                if (sortGeneration == generation) {
+                    sorting = false;
+                }
+                log.error("Error sorting table by {}", column.getName(), error);
+            }
+        };
+
+        sorting = true;
+        worker.execute();
+    }
+
+    private static Object getSortKey(Collator collator, Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Comparable && !(value instanceof String)) {
+            return value;
+        }
+        return collator.getCollationKey(value.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareKeys(Object a, Object b) {
+        if (a == null) {
+            return b == null ? 0 : -1;
+        }
+        if (b == null) {
+            return 1;
+        }
+        if (a.getClass() != b.getClass()) {
+            return a.getClass().getName().compareTo(b.getClass().getName());
+        }
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+}
@@ -19,11 +19,8 @@ import javax.swing.JViewport;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
-import javax.swing.event.TableModelEvent;
-import javax.swing.event.TableModelListener;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableColumnModel;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
@@ -46,7 +43,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
 import java.util.concurrent.Callable;
 
 /**
@@ -60,6 +56,8 @@ public abstract class DynamicTable extends JPanel {
 
     private static final int DEFAULT_MIN_COLUMN_WIDTH = 100;
     private static final int DEFAULT_MAX_COLUMN_WIDTH = 500;
+    // Number of rows used to compute column widths
+    private static final int AUTO_RESIZE_SAMPLE_ROWS = 200;
 
     private final JTable table;
     private final JButton loadMoreButton;
@@ -69,13 +67,15 @@ public abstract class DynamicTable extends JPanel {
 
     private final boolean allowRightClickCellSelection;
     private boolean autoResizeColumns = true;
-    private TableModel tableModel;
+    private final DynamicTableModel tableModel;
 
     private List<DynamicColumn> columns = new ArrayList<>();
     private List<DynamicColumn> displayedColumns = new ArrayList<>();
     private List<DynamicRow> rows = new ArrayList<>();
     private List<Object> userObjects = new ArrayList<>();
     private List<Integer> colWidths = new ArrayList<>();
+    // True if rows have only been added since the last model update
+    private boolean rowsOnlyAppended = true;
 
     private Map<DynamicColumn, TableCellRenderer> renderers = new HashMap<>();
 
@@ -156,10 +156,14 @@ public abstract class DynamicTable extends JPanel {
                 return clazz==null ? super.getColumnClass(column) : clazz;
             }
         };
+        tableModel = new DynamicTableModel(this);
+        table.setModel(tableModel);
         table.setFillsViewportHeight(true);
         table.setColumnSelectionAllowed(false);
         table.setRowSelectionAllowed(true);
-        table.setAutoCreateRowSorter(sortableByColumn);
+        if (sortableByColumn) {
+            table.setRowSorter(new DynamicRowSorter(this, tableModel));
+        }
 
         table.addMouseListener(new MouseForwarder(this, "JTable->DynamicTable"));
         table.addMouseListener(new MouseHandler() {
@@ -575,14 +579,29 @@ public abstract class DynamicTable extends JPanel {
     }
 
     public void removeRow(DynamicRow row) {
-        userObjects.remove(rows.indexOf(row));
-        rows.remove(row);
-        updateTableModel();
+        int index = rows.indexOf(row);
+        if (index < 0) {
+            return;
+        }
+        userObjects.remove(index);
+        rows.remove(index);
+        tableModel.fireRowRemoved(row, index);
+    }
+
+    /**
+     * Redisplay a row after its user object has changed.
+     */
+    public void updateRow(DynamicRow row) {
+        int index = rows.indexOf(row);
+        if (index >= 0) {
+            tableModel.fireRowChanged(row, index);
+        }
     }
 
     public void removeAllRows() {
         userObjects.clear();
         rows.clear();
+        rowsOnlyAppended = false;
         updateTableModel();
     }
 
@@ -646,6 +665,8 @@ public abstract class DynamicTable extends JPanel {
 
     /**
      * Override this method to extract the correct value from the user object for the given column.
+     * Values are only requested for rows which are displayed. If the table is sortable by column, this
+     * is also called from a background thread to compute sort keys.
      *
      * @param userObject
      * @param column
@@ -655,88 +676,73 @@ public abstract class DynamicTable extends JPanel {
 
     /**
      * Synchronous method for updating the JTable model. Should be called from the EDT.
+     *
+     * If the displayed columns are unchanged and rows have only been added since the last update, the
+     * new rows are announced as inserted. Otherwise all rows are refreshed, keeping the column widths
+     * and renderers. Cell values are computed lazily by the table model.
      */
     public synchronized void updateTableModel() {
 
-        if (!isAutoResizeColumns()) {
-            storeColWidths();
-        }
-        
-        displayedColumns.clear();
-
-        // Data formatted for the JTable
-        Vector<String> columnNames = new Vector<String>();
-
+        List<DynamicColumn> visibleColumns = new ArrayList<>();
         for (DynamicColumn column : columns) {
             if (column.isVisible()) {
-                columnNames.add(column.getLabel());
-                displayedColumns.add(column);
+                visibleColumns.add(column);
             }
         }
 
-        Vector<Vector<Object>> data = new Vector<Vector<Object>>();
+        int previousRowCount = tableModel.getRowCount();
 
-        // Build the data in column order
-        for (DynamicRow row : rows) {
-            Vector<Object> rowData = new Vector<Object>();
+        if (!visibleColumns.equals(displayedColumns)) {
 
-            for (DynamicColumn column : displayedColumns) {
-                Object value = getValue(row.getUserObject(), column);
-                rowData.add(value==null ? "" : value);
+            if (!isAutoResizeColumns()) {
+                storeColWidths();
             }
 
-            data.add(rowData);
-        }
+            displayedColumns.clear();
+            displayedColumns.addAll(visibleColumns);
+            tableModel.fireColumnsChanged();
 
-        tableModel = new DefaultTableModel(data, columnNames) {
-            public boolean isCellEditable(int rowIndex, int mColIndex) {
-                try {
-                    return columns.get(mColIndex).isEditable();
+            TableColumnModel colModel = table.getTableHeader().getColumnModel();
+            for (DynamicColumn column : displayedColumns) {
+                TableCellRenderer renderer = renderers.get(column);
+                if (renderer==null) {
+                    continue;
                 }
-                catch (ArrayIndexOutOfBoundsException e) {
-                    log.error("Error getting column", e);
-                    return false;
+                int c = displayedColumns.indexOf(column);
+                if (c>=0) {
+                    colModel.getColumn(c).setCellRenderer(renderer);
                 }
             }
-        };
 
-        tableModel.addTableModelListener(new TableModelListener() {
-            public void tableChanged(TableModelEvent e) {
-                int row = e.getFirstRow();
-                int column = e.getColumn();
-                TableModel model = (TableModel) e.getSource();
-                DynamicColumn dc = getColumn(column);
-                if (dc != null) {
-                    Object data = model.getValueAt(row, column);
-                    valueChanged(dc, row, data);
-                }
+            if (isAutoResizeColumns()) {
+                autoResizeColWidth();
             }
-        });
-
-        table.setModel(tableModel);
-
-        TableColumnModel colModel = table.getTableHeader().getColumnModel();
-        for (DynamicColumn column : displayedColumns) {
-            TableCellRenderer renderer = renderers.get(column);
-            if (renderer==null) {
-                continue;
+            else {
+                restoreColWidths();
             }
-            int c = displayedColumns.indexOf(column);
-            if (c>=0) {
-                colModel.getColumn(c).setCellRenderer(renderer);
-            }
-        }
-
-        if (isAutoResizeColumns()) {
-            autoResizeColWidth();
         }
         else {
-            restoreColWidths();
+            if (rowsOnlyAppended && rows.size()>previousRowCount) {
+                tableModel.fireRowsAppended();
+            }
+            else {
+                tableModel.fireAllRowsChanged();
+            }
+            // Column widths only depend on the first rows
+            if (isAutoResizeColumns() && previousRowCount<AUTO_RESIZE_SAMPLE_ROWS) {
+                autoResizeColWidth();
+            }
         }
+
+        rowsOnlyAppended = true;
     }
 
     public void setColumnRenderer(DynamicColumn column, TableCellRenderer renderer) {
         renderers.put(column, renderer);
+        int c = displayedColumns.indexOf(column);
+        if (c>=0 && c<table.getColumnCount()) {
+            table.getColumnModel().getColumn(c).setCellRenderer(renderer);
+        }
     }
 
     /**
@@ -838,8 +844,9 @@ public abstract class DynamicTable extends JPanel {
             Component comp = renderer.getTableCellRendererComponent(table, col.getHeaderValue(), false, false, 0, 0);
             width = comp.getPreferredSize().width;
 
-            // Get maximum width of column data
-            for (int r = 0; r<table.getRowCount(); r++) {
+            // Get maximum width of column data, from the first rows
+            int sampleRows = Math.min(table.getRowCount(), AUTO_RESIZE_SAMPLE_ROWS);
+            for (int r = 0; r<sampleRows; r++) {
                 renderer = table.getCellRenderer(r, c);
                 comp = table.prepareRenderer(renderer, r, c);
 
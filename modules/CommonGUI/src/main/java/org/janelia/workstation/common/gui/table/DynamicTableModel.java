@@ -0,0 +1,168 @@
+package org.janelia.workstation.common.gui.table;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.table.AbstractTableModel;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Table model over the rows of a DynamicTable, which computes cell values only when they are displayed.
+ *
+ * Values are obtained from DynamicTable.getValue the first time a row is painted, and kept in a bounded
+ * LRU cache keyed by row, so that they survive rows being inserted or removed elsewhere in the table.
+ * Edited values are kept until the next full refresh, like the DefaultTableModel this replaces.
+ *
+ * The row count seen by the JTable only changes when an event is fired, so rows can be added to the
+ * DynamicTable and announced later in one batch.
+ */
+public class DynamicTableModel extends AbstractTableModel {
+
+    private static final Logger log = LoggerFactory.getLogger(DynamicTableModel.class);
+
+    private static final int MAX_CACHED_ROWS = ConsoleProperties.getInt("console.table.maxCachedRows", 2000);
+
+    private final DynamicTable dynamicTable;
+    private final Map<DynamicRow, Object[]> cache = new LinkedHashMap<DynamicRow, Object[]>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<DynamicRow, Object[]> eldest) {
+            return size() > MAX_CACHED_ROWS;
+        }
+    };
+    private final Map<DynamicRow, Map<Integer, Object>> editedValues = new HashMap<>();
+    private int rowCount = 0;
+
+    DynamicTableModel(DynamicTable dynamicTable) {
+        this.dynamicTable = dynamicTable;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return dynamicTable.getDisplayedColumns().size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return dynamicTable.getDisplayedColumns().get(column).getLabel();
+    }
+
+    @Override
+    public boolean isCellEditable(int rowIndex, int columnIndex) {
+        DynamicColumn column = dynamicTable.getColumn(columnIndex);
+        return column != null && column.isEditable();
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        DynamicRow row = dynamicTable.getRows().get(rowIndex);
+        Map<Integer, Object> edits = editedValues.get(row);
+        if (edits != null && edits.containsKey(columnIndex)) {
+            return edits.get(columnIndex);
+        }
+        Object[] values = cache.get(row);
+        if (values == null) {
+            values = computeValues(row);
+            cache.put(row, values);
+        }
+        return values[columnIndex];
+    }
+
+    @Override
+    public void setValueAt(Object value, int rowIndex, int columnIndex) {
+        DynamicRow row = dynamicTable.getRows().get(rowIndex);
+        editedValues.computeIfAbsent(row, k -> new HashMap<>()).put(columnIndex, value);
+        fireTableCellUpdated(rowIndex, columnIndex);
+        DynamicColumn dc = dynamicTable.getColumn(columnIndex);
+        if (dc != null) {
+            dynamicTable.valueChanged(dc, rowIndex, value);
+        }
+    }
+
+    private Object[] computeValues(DynamicRow row) {
+        List<DynamicColumn> columns = dynamicTable.getDisplayedColumns();
+        Object[] values = new Object[columns.size()];
+        for (int c = 0; c < values.length; c++) {
+            Object value = null;
+            try {
+                value = dynamicTable.getValue(row.getUserObject(), columns.get(c));
+            }
+            catch (RuntimeException e) {
+                log.error("Error getting value for column {}", columns.get(c).getName(), e);
+            }
+            values[c] = value == null ? "" : value;
+        }
+        return values;
+    }
+
+    /**
+     * Announce rows which were appended to the DynamicTable since the last event.
+     */
+    void fireRowsAppended() {
+        int first = rowCount;
+        rowCount = dynamicTable.getRows().size();
+        if (rowCount > first) {
+            fireTableRowsInserted(first, rowCount - 1);
+        }
+        else if (rowCount < first) {
+            // Rows were removed without telling us
+            fireAllRowsChanged();
+        }
+    }
+
+    /**
+     * Announce that the given row was removed from the DynamicTable at the given index. Rows which were
+     * appended but not yet announced are announced separately, after the deletion.
+     */
+    void fireRowRemoved(DynamicRow row, int index) {
+        cache.remove(row);
+        editedValues.remove(row);
+        if (index < rowCount) {
+            rowCount--;
+            fireTableRowsDeleted(index, index);
+        }
+        if (dynamicTable.getRows().size() > rowCount) {
+            fireRowsAppended();
+        }
+    }
+
+    /**
+     * Recompute the values of a row, e.g. after its user object was modified.
+     */
+    void fireRowChanged(DynamicRow row, int index) {
+        cache.remove(row);
+        editedValues.remove(row);
+        fireTableRowsUpdated(index, index);
+    }
+
+    /**
+     * Forget all cached values, and announce that any row may have changed.
+     */
+    void fireAllRowsChanged() {
+        invalidate();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Forget all cached values, and announce that the columns have changed.
+     */
+    void fireColumnsChanged() {
+        invalidate();
+        fireTableStructureChanged();
+    }
+
+    private void invalidate() {
+        cache.clear();
+        editedValues.clear();
+        rowCount = dynamicTable.getRows().size();
+    }
+}
@@ -0,0 +1,156 @@
+package org.janelia.workstation.common.gui.table;
+
+import static org.janelia.workstation.common.gui.table.DynamicTableModelTest.onEdt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+
+import org.janelia.workstation.common.gui.table.DynamicTableModelTest.TestTable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that DynamicRowSorter sorts in the background, and keeps its view and model indexes consistent
+ * while rows are added and removed.
+ */
+public class DynamicRowSorterTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private TestTable table;
+    private RowSorter<?> sorter;
+
+    @Before
+    public void setUp() throws Exception {
+        onEdt(() -> {
+            table = new TestTable(true);
+            table.setAutoResizeColumns(false);
+            table.addColumn("name", "Name", true, false, false, true);
+            for (String name : Arrays.asList("d", "b", "e", "a", "c")) {
+                table.addRow(name);
+            }
+            table.updateTableModel();
+            sorter = table.getTable().getRowSorter();
+        });
+    }
+
+    @Test
+    public void testUnsortedRowsAreInModelOrder() throws Exception {
+        onEdt(() -> {
+            Assert.assertTrue(sorter instanceof DynamicRowSorter);
+            Assert.assertEquals(Arrays.asList("d", "b", "e", "a", "c"), getViewOrder());
+            assertIndexesConsistent();
+        });
+    }
+
+    @Test
+    public void testSortAndToggleOrder() throws Exception {
+        onEdt(() -> sorter.toggleSortOrder(0));
+        awaitViewOrder("a", "b", "c", "d", "e");
+        onEdt(() -> {
+            Assert.assertEquals(SortOrder.ASCENDING, sorter.getSortKeys().get(0).getSortOrder());
+            Assert.assertEquals(3, sorter.convertRowIndexToModel(0));
+            Assert.assertEquals(0, sorter.convertRowIndexToView(3));
+            assertIndexesConsistent();
+            sorter.toggleSortOrder(0);
+        });
+        awaitViewOrder("e", "d", "c", "b", "a");
+        onEdt(() -> {
+            Assert.assertEquals(SortOrder.DESCENDING, sorter.getSortKeys().get(0).getSortOrder());
+            assertIndexesConsistent();
+            sorter.setSortKeys(null);
+            Assert.assertEquals(Arrays.asList("d", "b", "e", "a", "c"), getViewOrder());
+        });
+    }
+
+    @Test
+    public void testRemovedRowKeepsSortOrder() throws Exception {
+        onEdt(() -> sorter.toggleSortOrder(0));
+        awaitViewOrder("a", "b", "c", "d", "e");
+        onEdt(() -> {
+            table.removeRow(table.getRowForUserObject("b"));
+            // Applied at once, without waiting for another sort
+            Assert.assertEquals(Arrays.asList("a", "c", "d", "e"), getViewOrder());
+            assertIndexesConsistent();
+        });
+        awaitViewOrder("a", "c", "d", "e");
+    }
+
+    @Test
+    public void testAppendedRowsAreSorted() throws Exception {
+        onEdt(() -> sorter.toggleSortOrder(0));
+        awaitViewOrder("a", "b", "c", "d", "e");
+        onEdt(() -> {
+            table.addRow("ab");
+            table.addRow("0");
+            table.updateTableModel();
+            // New rows are at the end until they are sorted
+            Assert.assertEquals(7, sorter.getViewRowCount());
+            assertIndexesConsistent();
+        });
+        awaitViewOrder("0", "a", "ab", "b", "c", "d", "e");
+    }
+
+    @Test
+    public void testRemoveRowWithUnannouncedRows() throws Exception {
+        onEdt(() -> sorter.toggleSortOrder(0));
+        awaitViewOrder("a", "b", "c", "d", "e");
+        onEdt(() -> {
+            table.addRow("f");
+            table.removeRow(table.getRowForUserObject("d"));
+            Assert.assertEquals(5, sorter.getViewRowCount());
+            assertIndexesConsistent();
+        });
+        awaitViewOrder("a", "b", "c", "e", "f");
+    }
+
+    private List<String> getViewOrder() {
+        List<String> order = new ArrayList<>();
+        for (int v = 0; v < sorter.getViewRowCount(); v++) {
+            order.add((String) table.getRows().get(sorter.convertRowIndexToModel(v)).getUserObject());
+        }
+        return order;
+    }
+
+    private void assertIndexesConsistent() {
+        Assert.assertEquals(sorter.getModelRowCount(), sorter.getViewRowCount());
+        List<Integer> modelIndexes = new ArrayList<>();
+        for (int v = 0; v < sorter.getViewRowCount(); v++) {
+            int m = sorter.convertRowIndexToModel(v);
+            Assert.assertEquals(v, sorter.convertRowIndexToView(m));
+            modelIndexes.add(m);
+        }
+        Collections.sort(modelIndexes);
+        for (int m = 0; m < modelIndexes.size(); m++) {
+            Assert.assertEquals(m, (int) modelIndexes.get(m));
+        }
+    }
+
+    /**
+     * Wait for a background sort to produce the given order.
+     */
+    private void awaitViewOrder(String... expected) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        List<List<String>> order = new ArrayList<>();
+        while (true) {
+            onEdt(() -> {
+                order.clear();
+                order.add(getViewOrder());
+            });
+            if (order.get(0).equals(Arrays.asList(expected))) {
+                onEdt(this::assertIndexesConsistent);
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Expected " + Arrays.asList(expected) + " but was " + order.get(0));
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.janelia.workstation.common.gui.table;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the events fired by DynamicTableModel, and that the row count they announce always matches the
+ * rows the model serves.
+ */
+public class DynamicTableModelTest {
+
+    private TestTable table;
+    private DynamicTableModel model;
+    private final List<String> events = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        onEdt(() -> {
+            table = new TestTable(false);
+            // Sizing columns would compute the values of the first rows
+            table.setAutoResizeColumns(false);
+            table.addColumn("name", "Name", true, true, false, true);
+            table.updateTableModel();
+            model = (DynamicTableModel) table.getTableModel();
+            model.addTableModelListener(e -> events.add(describe(e)));
+        });
+    }
+
+    @Test
+    public void testAppendedRowsAreAnnouncedTogether() throws Exception {
+        onEdt(() -> {
+            addRows("a", "b", "c");
+            // Not announced yet
+            Assert.assertEquals(0, model.getRowCount());
+            table.updateTableModel();
+            Assert.assertEquals(3, model.getRowCount());
+            Assert.assertEquals("insert 0-2 rows=3", events.get(0));
+            Assert.assertEquals(1, events.size());
+
+            addRows("d", "e");
+            table.updateTableModel();
+            Assert.assertEquals("insert 3-4 rows=5", events.get(1));
+            Assert.assertEquals("e", model.getValueAt(4, 0));
+        });
+    }
+
+    @Test
+    public void testRemoveRow() throws Exception {
+        onEdt(() -> {
+            addRows("a", "b", "c");
+            table.updateTableModel();
+            events.clear();
+            table.removeRow(table.getRows().get(1));
+            Assert.assertEquals("delete 1-1 rows=2", events.get(0));
+            Assert.assertEquals(1, events.size());
+            Assert.assertEquals("a", model.getValueAt(0, 0));
+            Assert.assertEquals("c", model.getValueAt(1, 0));
+        });
+    }
+
+    @Test
+    public void testRemoveRowWithUnannouncedRows() throws Exception {
+        onEdt(() -> {
+            addRows("a", "b", "c");
+            table.updateTableModel();
+            addRows("d", "e");
+            events.clear();
+            table.removeRow(table.getRows().get(0));
+            // The deletion only counts announced rows, and the appended rows follow as an insert
+            Assert.assertEquals("delete 0-0 rows=2", events.get(0));
+            Assert.assertEquals("insert 2-3 rows=4", events.get(1));
+            Assert.assertEquals(2, events.size());
+            Assert.assertEquals("e", model.getValueAt(3, 0));
+        });
+    }
+
+    @Test
+    public void testRemoveUnannouncedRow() throws Exception {
+        onEdt(() -> {
+            addRows("a", "b");
+            table.updateTableModel();
+            addRows("c", "d");
+            events.clear();
+            table.removeRow(table.getRows().get(2));
+            Assert.assertEquals("insert 2-2 rows=3", events.get(0));
+            Assert.assertEquals(1, events.size());
+            Assert.assertEquals("d", model.getValueAt(2, 0));
+        });
+    }
+
+    @Test
+    public void testValuesAreComputedOnceUntilRowChanges() throws Exception {
+        onEdt(() -> {
+            addRows("a", "b");
+            table.updateTableModel();
+            Assert.assertTrue(table.valueCounts.isEmpty());
+            model.getValueAt(1, 0);
+            model.getValueAt(1, 0);
+            Assert.assertEquals(1, (int) table.valueCounts.get("b"));
+            Assert.assertNull(table.valueCounts.get("a"));
+
+            events.clear();
+            table.updateRow(table.getRows().get(1));
+            Assert.assertEquals("update 1-1 rows=2", events.get(0));
+            model.getValueAt(1, 0);
+            Assert.assertEquals(2, (int) table.valueCounts.get("b"));
+        });
+    }
+
+    @Test
+    public void testEditedValueIsKept() throws Exception {
+        onEdt(() -> {
+            addRows("a", "b");
+            table.updateTableModel();
+            Assert.assertTrue(model.isCellEditable(0, 0));
+            model.setValueAt("edited", 0, 0);
+            Assert.assertEquals("edited", model.getValueAt(0, 0));
+            Assert.assertEquals("edited", table.changedValues.get(0));
+
+            // Removing an earlier row doesn't move the edit to another row
+            model.setValueAt("edited b", 1, 0);
+            table.removeRow(table.getRows().get(0));
+            Assert.assertEquals("edited b", model.getValueAt(0, 0));
+        });
+    }
+
+    private void addRows(String... names) {
+        for (String name : names) {
+            table.addRow(name);
+        }
+    }
+
+    private String describe(TableModelEvent e) {
+        String type;
+        switch (e.getType()) {
+            case TableModelEvent.INSERT:
+                type = "insert";
+                break;
+            case TableModelEvent.DELETE:
+                type = "delete";
+                break;
+            default:
+                type = "update";
+                break;
+        }
+        return type + " " + e.getFirstRow() + "-" + e.getLastRow() + " rows=" + model.getRowCount();
+    }
+
+    static void onEdt(Runnable runnable) throws Exception {
+        SwingUtilities.invokeAndWait(runnable);
+    }
+
+    /**
+     * Table of strings, which counts the values it computes.
+     */
+    static class TestTable extends DynamicTable {
+
+        final Map<Object, Integer> valueCounts = new HashMap<>();
+        final Map<Integer, Object> changedValues = new HashMap<>();
+
+        TestTable(boolean sortableByColumn) {
+            super(true, sortableByColumn);
+        }
+
+        @Override
+        public Object getValue(Object userObject, DynamicColumn column) {
+            synchronized (valueCounts) {
+                valueCounts.merge(userObject, 1, Integer::sum);
+            }
+            return userObject;
+        }
+
+        @Override
+        protected void valueChanged(DynamicColumn dc, int row, Object data) {
+            changedValues.put(row, data);
+        }
+    }
+}
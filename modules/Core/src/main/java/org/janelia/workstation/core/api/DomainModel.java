@@ -32,6 +32,8 @@ import org.janelia.workstation.core.events.model.*;
 import org.janelia.workstation.core.model.search.DomainObjectResultPage;
 import org.janelia.workstation.core.model.search.DomainObjectSearchResults;
 import org.janelia.workstation.core.util.ColorDepthUtils;
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.janelia.workstation.core.util.RequestCoalescer;
 import org.perf4j.LoggingStopWatch;
 import org.perf4j.StopWatch;
 import org.slf4j.Logger;
@@ -39,6 +41,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -59,8 +62,8 @@ import java.util.stream.Collectors;
  * <p>
  * 4) This class is intended to be thread-safe. Updates to the cache are atomic (synchronized to the DomainObjectModel instance).
  * <p>
- * 5) Cached entities may expire at any time, if they are not referenced outside of the cache. Therefore, you should never write any code that relies
- * on entities being cached or uncached.
+ * 5) Cached entities may expire at any time, whenever the cache exceeds its memory budget, unless they are pinned. Therefore, you should never write
+ * any code that relies on entities being cached or uncached.
  *
  * @author <a href="mailto:rokickik@janelia.hhmi.org">Konrad Rokicki</a>
  */
@@ -69,6 +72,11 @@ public class DomainModel {
     private static final Logger log = LoggerFactory.getLogger(DomainModel.class);
     private static final boolean TIMER = log.isDebugEnabled();
 
+    // Misses arriving within this window are loaded together in one batch
+    private static final long BATCH_WINDOW_MILLIS = ConsoleProperties.getLong("console.domain.batchWindowMillis", 5);
+    private static final int MAX_BATCH_SIZE = ConsoleProperties.getInt("console.domain.maxBatchSize", 100);
+    private static final int BATCH_THREADS = ConsoleProperties.getInt("console.domain.batchThreads", 4);
+
     private final Object modelLock = new Object();
 
     private final DomainFacade domainFacade;
@@ -77,13 +85,17 @@ public class DomainModel {
     private final SubjectFacade subjectFacade;
     private final WorkspaceFacade workspaceFacade;
 
-    private final Cache<Reference, DomainObject> objectCache;
+    private final DomainObjectCache objectCache;
     private Map<Reference, Workspace> workspaceCache;
     private Map<Reference, Ontology> ontologyCache;
     private Map<Reference, LineRelease> releaseCache;
     private Map<Reference, ContainerizedService> containerCache;
     private List<Subject> sortedSubjectCache;
 
+    private final RequestCoalescer<Reference, DomainObject> objectLoader;
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
     private final LoadingCache<DocumentSearchParams, DocumentSearchResults> cachedSearchResults = CacheBuilder.newBuilder()
             .maximumSize(20)
             .build(
@@ -103,16 +115,19 @@ public class DomainModel {
         this.subjectFacade = subjectFacade;
         this.workspaceFacade = workspaceFacade;
 
-        this.objectCache = CacheBuilder.newBuilder().softValues().removalListener((RemovalListener<Reference, DomainObject>) notification -> {
+        long cacheBytes = ConsoleProperties.getLong("console.domain.cacheMegabytes", 256) * 1024 * 1024;
+        this.objectCache = new DomainObjectCache(cacheBytes, (id, domainObject) -> {
             synchronized (modelLock) {
-                Reference id = notification.getKey();
                 log.trace("Removed key from caches: {}", id);
                 if (workspaceCache != null) workspaceCache.remove(id);
                 if (ontologyCache != null) ontologyCache.remove(id);
                 if (releaseCache != null) releaseCache.remove(id);
                 if (containerCache != null) containerCache.remove(id);
             }
-        }).build();
+        });
+
+        this.objectLoader = new RequestCoalescer<>("DomainObjectLoader", this::loadDomainObjects,
+                Reference::createFor, BATCH_WINDOW_MILLIS, MAX_BATCH_SIZE, BATCH_THREADS);
     }
 
     /**
@@ -333,6 +348,22 @@ public class DomainModel {
         return domainFacade.getDomainObject(ref);
     }
 
+    /**
+     * Load a batch of objects from the database, ignoring the cache, and put them into the cache.
+     * This is used by the object loader to satisfy concurrent cache misses.
+     *
+     * @param refs
+     * @return canonical domain object instances
+     */
+    private List<DomainObject> loadDomainObjects(List<Reference> refs) throws Exception {
+        log.debug("loadDomainObjects(refs.size={})", refs.size());
+        if (refs.size() == 1) {
+            DomainObject domainObject = loadDomainObject(refs.get(0));
+            return domainObject == null ? Collections.emptyList() : putOrUpdate(Collections.singletonList(domainObject));
+        }
+        return putOrUpdate(domainFacade.getDomainObjects(refs));
+    }
+
     /**
      * Retrieve the given domain object from the database, ignoring the cache.
      *
@@ -357,6 +388,7 @@ public class DomainModel {
         if (ref == null) return null;
         DomainObject domainObject = objectCache.getIfPresent(ref);
         if (domainObject != null) {
+            cacheHits.incrementAndGet();
             log.debug("getEntityById: returning cached domain object {}", DomainUtils.identify(domainObject));
             return (T) domainObject;
         }
@@ -364,7 +396,44 @@ public class DomainModel {
             log.warn("getDomainObject called on EDT for {} which cannot be found in the cache.", ref);
             return null;
         }
-        return putOrUpdate((T) loadDomainObject(ref));
+        cacheMisses.incrementAndGet();
+        // Concurrent misses share a single load, and misses close together in time are batched
+        return (T) objectLoader.get(ref);
+    }
+
+    /**
+     * Returns a snapshot of the object cache and loader statistics.
+     */
+    public RequestStats getRequestStats() {
+        return new RequestStats(cacheHits.get(), cacheMisses.get(), objectLoader.getJoinedCount(),
+                objectLoader.getBatchCount(), objectLoader.getAverageBatchSize(), objectLoader.getMaxBatchSize(),
+                objectCache.size(), objectCache.getWeightedSize(), objectCache.getStats().evictionCount(),
+                objectCache.getPinnedCount());
+    }
+
+    /**
+     * Keep the given object in the cache until it is unpinned, e.g. while it's shown in an editor. Every call to
+     * this method must be balanced by a call to unpin.
+     *
+     * @param domainObject canonical domain object instance
+     */
+    public void pin(DomainObject domainObject) {
+        if (domainObject == null || !isCacheable(domainObject)) return;
+        Reference ref = Reference.createFor(domainObject);
+        log.trace("Pinning {}", ref);
+        objectCache.pin(ref, domainObject);
+    }
+
+    /**
+     * Allow the given object to be evicted from the cache again.
+     *
+     * @param domainObject
+     */
+    public void unpin(DomainObject domainObject) {
+        if (domainObject == null) return;
+        Reference ref = Reference.createFor(domainObject);
+        log.trace("Unpinning {}", ref);
+        objectCache.unpin(ref);
     }
 
     public List<DomainObject> getDomainObjects(List<Reference> references) throws Exception {
@@ -422,6 +491,8 @@ public class DomainModel {
                 unsatisfiedRefs.add(ref);
             }
         }
+        cacheHits.addAndGet(map.size());
+        cacheMisses.addAndGet(unsatisfiedRefs.size());
 
         if (!unsatisfiedRefs.isEmpty()) {
             List<DomainObject> objects = domainFacade.getDomainObjects(unsatisfiedRefs);
@@ -1333,4 +1404,95 @@ public class DomainModel {
 
         objects.add(domainObject);
     }
+
+    /**
+     * Statistics about domain object requests made through this model.
+     */
+    public static class RequestStats {
+
+        private final long cacheHits;
+        private final long cacheMisses;
+        private final long joinedRequests;
+        private final long batches;
+        private final double averageBatchSize;
+        private final long maxBatchSize;
+        private final long cachedObjects;
+        private final long cachedBytes;
+        private final long evictions;
+        private final int pinnedObjects;
+
+        RequestStats(long cacheHits, long cacheMisses, long joinedRequests, long batches, double averageBatchSize, long maxBatchSize,
+                     long cachedObjects, long cachedBytes, long evictions, int pinnedObjects) {
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+            this.joinedRequests = joinedRequests;
+            this.batches = batches;
+            this.averageBatchSize = averageBatchSize;
+            this.maxBatchSize = maxBatchSize;
+            this.cachedObjects = cachedObjects;
+            this.cachedBytes = cachedBytes;
+            this.evictions = evictions;
+            this.pinnedObjects = pinnedObjects;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        /**
+         * Number of cache misses which waited on a load that was already in progress.
+         */
+        public long getJoinedRequests() {
+            return joinedRequests;
+        }
+
+        /**
+         * Number of batched loads issued for single object cache misses.
+         */
+        public long getBatches() {
+            return batches;
+        }
+
+        public double getAverageBatchSize() {
+            return averageBatchSize;
+        }
+
+        public long getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public long getCachedObjects() {
+            return cachedObjects;
+        }
+
+        /**
+         * Estimated heap footprint of the cached objects.
+         */
+        public long getCachedBytes() {
+            return cachedBytes;
+        }
+
+        /**
+         * Number of objects evicted because the cache exceeded its memory budget.
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getPinnedObjects() {
+            return pinnedObjects;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("RequestStats[hits=%d, misses=%d, joined=%d, batches=%d, avgBatchSize=%.1f, maxBatchSize=%d, "
+                            + "cachedObjects=%d, cachedBytes=%d, evictions=%d, pinned=%d]",
+                    cacheHits, cacheMisses, joinedRequests, batches, averageBatchSize, maxBatchSize,
+                    cachedObjects, cachedBytes, evictions, pinnedObjects);
+        }
+    }
 }
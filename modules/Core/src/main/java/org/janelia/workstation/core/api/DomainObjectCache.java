@@ -0,0 +1,255 @@
+package org.janelia.workstation.core.api;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.janelia.model.domain.DomainObject;
+import org.janelia.model.domain.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory-bounded cache of canonical domain object instances.
+ *
+ * Each object is weighed by an estimate of its heap footprint, and the least recently used objects are
+ * evicted when the total weight exceeds the budget. Unlike soft references, this makes eviction depend
+ * only on how much the cache holds, not on what else is going on in the heap.
+ *
+ * Objects can be pinned, e.g. while they are shown in an editor. A pinned object may still be evicted
+ * from the weighted cache, but it remains reachable through this cache until it's unpinned or invalidated.
+ * Invalidating a pinned object drops the instance but keeps the pin, so the next instance put into the
+ * cache under the same reference is pinned in its place.
+ *
+ * Weighing an object serializes it, which is too slow for the EDT, so objects are weighed in the
+ * background. Until then, a new object is counted with a default weight.
+ *
+ * This class is thread-safe.
+ */
+class DomainObjectCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DomainObjectCache.class);
+
+    // Rough ratio of heap footprint to serialized JSON size for typical domain objects
+    private static final int JSON_SIZE_MULTIPLIER = 3;
+    // Weight used for objects which cannot be serialized, or haven't been weighed yet
+    static final int DEFAULT_WEIGHT = 16 * 1024;
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+
+    private final Cache<Reference, Entry> cache;
+    private final Map<Reference, Integer> pinCounts = new HashMap<>();
+    // Modified only while holding this object's monitor, so that it's consistent with pinCounts
+    private final Map<Reference, Entry> pinnedObjects = new ConcurrentHashMap<>();
+    private final AtomicLong weightedSize = new AtomicLong();
+    private final Executor weighingExecutor;
+
+    /**
+     * @param maxBytes memory budget for the cache
+     * @param removalListener called when an object leaves the cache, unless it's just being replaced
+     */
+    DomainObjectCache(long maxBytes, BiConsumer<Reference, DomainObject> removalListener) {
+        this(maxBytes, removalListener, Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("DomainObjectCache-weigher")
+                .setDaemon(true).build()));
+    }
+
+    /**
+     * @param maxBytes memory budget for the cache
+     * @param removalListener called when an object leaves the cache, unless it's just being replaced
+     * @param weighingExecutor used to weigh the objects which are put without a weight
+     */
+    DomainObjectCache(long maxBytes, BiConsumer<Reference, DomainObject> removalListener, Executor weighingExecutor) {
+        this.weighingExecutor = weighingExecutor;
+        log.info("Domain object cache size: {} MB", maxBytes / 1024 / 1024);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Reference key, Entry entry) -> entry.weight)
+                .recordStats()
+                .<Reference, Entry>removalListener(notification -> {
+                    Entry entry = notification.getValue();
+                    if (entry != null) {
+                        weightedSize.addAndGet(-entry.weight);
+                    }
+                    if (notification.getCause() == RemovalCause.REPLACED) {
+                        return;
+                    }
+                    Reference id = notification.getKey();
+                    if (notification.wasEvicted() && pinnedObjects.containsKey(id)) {
+                        log.trace("Evicted pinned object from weighted cache: {}", id);
+                        return;
+                    }
+                    removalListener.accept(id, entry == null ? null : entry.domainObject);
+                })
+                .build();
+    }
+
+    DomainObject getIfPresent(Reference id) {
+        Entry entry = cache.getIfPresent(id);
+        if (entry != null) {
+            return entry.domainObject;
+        }
+        Entry pinnedEntry = pinnedObjects.get(id);
+        if (pinnedEntry == null) {
+            return null;
+        }
+        // Pinned objects stay available even if they were evicted. They keep the weight they were put with.
+        weightedSize.addAndGet(pinnedEntry.weight);
+        cache.put(id, pinnedEntry);
+        return pinnedEntry.domainObject;
+    }
+
+    /**
+     * Put the given object in the cache with the default weight, and weigh it in the background.
+     */
+    void put(Reference id, DomainObject domainObject) {
+        Entry entry = new Entry(domainObject, DEFAULT_WEIGHT);
+        put(id, entry);
+        weighingExecutor.execute(() -> reweigh(id, entry));
+    }
+
+    /**
+     * Put the given object in the cache with a weight which is already known.
+     */
+    void put(Reference id, DomainObject domainObject, int weight) {
+        put(id, new Entry(domainObject, weight));
+    }
+
+    private void put(Reference id, Entry entry) {
+        weightedSize.addAndGet(entry.weight);
+        cache.put(id, entry);
+        synchronized (this) {
+            if (pinCounts.containsKey(id)) {
+                pinnedObjects.put(id, entry);
+            }
+        }
+    }
+
+    /**
+     * Replace the given provisional entry with one carrying the object's estimated weight, unless the entry
+     * was replaced or removed in the meantime.
+     */
+    private void reweigh(Reference id, Entry entry) {
+        Entry weighedEntry = new Entry(entry.domainObject, estimateSize(entry.domainObject));
+        weightedSize.addAndGet(weighedEntry.weight);
+        if (!cache.asMap().replace(id, entry, weighedEntry)) {
+            weightedSize.addAndGet(-weighedEntry.weight);
+        }
+        synchronized (this) {
+            pinnedObjects.replace(id, entry, weighedEntry);
+        }
+    }
+
+    void invalidate(Reference id) {
+        synchronized (this) {
+            pinnedObjects.remove(id);
+        }
+        cache.invalidate(id);
+    }
+
+    void invalidateAll() {
+        synchronized (this) {
+            pinCounts.clear();
+            pinnedObjects.clear();
+        }
+        cache.invalidateAll();
+    }
+
+    /**
+     * Keep the given object in memory until it's unpinned. Calls to pin and unpin are counted, so an object
+     * which is pinned twice must be unpinned twice.
+     */
+    void pin(Reference id, DomainObject domainObject) {
+        // Not a cache lookup, so it's left out of the hit rate
+        Entry entry = cache.asMap().get(id);
+        boolean weigh = entry == null || entry.domainObject != domainObject;
+        if (weigh) {
+            entry = new Entry(domainObject, DEFAULT_WEIGHT);
+        }
+        synchronized (this) {
+            pinCounts.merge(id, 1, Integer::sum);
+            pinnedObjects.put(id, entry);
+        }
+        if (weigh) {
+            Entry pinnedEntry = entry;
+            weighingExecutor.execute(() -> reweigh(id, pinnedEntry));
+        }
+    }
+
+    synchronized void unpin(Reference id) {
+        Integer count = pinCounts.get(id);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            pinCounts.remove(id);
+            pinnedObjects.remove(id);
+        }
+        else {
+            pinCounts.put(id, count - 1);
+        }
+    }
+
+    /**
+     * Returns the number of pinned references. A pinned reference whose object was invalidated counts
+     * as pinned, since its next instance will be pinned.
+     */
+    synchronized int getPinnedCount() {
+        return pinCounts.size();
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the estimated number of bytes held by the weighted cache.
+     */
+    long getWeightedSize() {
+        return weightedSize.get();
+    }
+
+    CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Estimates the heap footprint of the given object from the size of its JSON serialization.
+     */
+    static int estimateSize(DomainObject domainObject) {
+        try {
+            CountingOutputStream counter = new CountingOutputStream(ByteStreams.nullOutputStream());
+            mapper.writeValue(counter, domainObject);
+            return (int) Math.min(Integer.MAX_VALUE, counter.getCount() * JSON_SIZE_MULTIPLIER);
+        }
+        catch (Exception e) {
+            log.trace("Could not estimate size of {}", domainObject, e);
+            return DEFAULT_WEIGHT;
+        }
+    }
+
+    private static class Entry {
+
+        private final DomainObject domainObject;
+        private final int weight;
+
+        Entry(DomainObject domainObject, int weight) {
+            this.domainObject = domainObject;
+            this.weight = weight;
+        }
+    }
+}
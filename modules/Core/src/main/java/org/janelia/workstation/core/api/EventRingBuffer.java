@@ -0,0 +1,94 @@
+package org.janelia.workstation.core.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer, safe for any number of producer and consumer threads.
+ *
+ * Each slot carries a sequence number which tells producers and consumers whose turn it is to use the slot,
+ * so offer and poll are a compare-and-set on the shared position plus a couple of volatile writes, and never
+ * block. When the buffer is full, offer fails immediately and the caller decides what to drop.
+ */
+final class EventRingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private final AtomicLong consumerPosition = new AtomicLong();
+
+    /**
+     * @param minCapacity minimum number of elements, rounded up to a power of two
+     */
+    EventRingBuffer(int minCapacity) {
+        int size = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an element to the buffer.
+     * @return true if the element was added, or false if the buffer is full
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position = producerPosition.get();
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (producerPosition.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            }
+            else if (diff < 0) {
+                return false;
+            }
+            // Another producer claimed this slot first, so retry at the new position
+        }
+    }
+
+    /**
+     * Remove the oldest element from the buffer.
+     * @return the element, or null if the buffer is empty
+     */
+    E poll() {
+        while (true) {
+            long position = consumerPosition.get();
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (consumerPosition.compareAndSet(position, position + 1)) {
+                    E element = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.set(index, position + capacity);
+                    return element;
+                }
+            }
+            else if (diff < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the approximate number of elements in the buffer.
+     */
+    int size() {
+        long size = producerPosition.get() - consumerPosition.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
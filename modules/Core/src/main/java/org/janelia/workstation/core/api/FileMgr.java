@@ -14,14 +14,15 @@ import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.janelia.filecacheutils.FileProxy;
 import org.janelia.filecacheutils.LocalFileCache;
 import org.janelia.workstation.core.api.http.HttpClientProxy;
+import org.janelia.workstation.core.api.lifecycle.DeferredStartup;
 import org.janelia.workstation.core.events.Events;
 import org.janelia.workstation.core.events.lifecycle.ConsolePropsLoaded;
 import org.janelia.workstation.core.filecache.StorageClientMgr;
+import org.janelia.workstation.core.filecache.WebDavDownloader;
 import org.janelia.workstation.core.filecache.WebDavFileKeyProxyMapper;
 import org.janelia.workstation.core.filecache.WebDavUploader;
 import org.janelia.workstation.core.filecache.WebdavCachedFileKey;
 import org.janelia.workstation.core.util.ConsoleProperties;
-import org.janelia.workstation.core.workers.SimpleWorker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,50 +51,79 @@ public class FileMgr {
     private int webdavMaxTotalConnections;
     private HttpClientProxy httpClient;
     private StorageClientMgr storageClientMgr;
+    private WebDavDownloader fileDownloader;
     private LocalFileCache<WebdavCachedFileKey> webdavLocalFileCache;
+    private boolean propsLoaded;
+    private boolean initialized;
 
     private FileMgr() {
     }
 
     @Subscribe
     public void propsLoaded(ConsolePropsLoaded event) {
-        SimpleWorker.runInBackground(() -> {
-            synchronized (FileMgr.this) {
-                LOG.info("Initializing File Manager");
-                this.webdavBaseUrl = ConsoleProperties.getString("console.webDavClient.baseUrl", null);
-                this.webdavMaxConnsPerHost = ConsoleProperties.getInt("console.webDavClient.maxConnectionsPerHost", 100);
-                this.webdavMaxTotalConnections = ConsoleProperties.getInt("console.webDavClient.maxTotalConnections", 100);
-                LOG.info("Using WebDAV server: {}", webdavBaseUrl);
-
-                MultiThreadedHttpConnectionManager mgr = new MultiThreadedHttpConnectionManager();
-                HttpConnectionManagerParams managerParams = mgr.getParams();
-                managerParams.setDefaultMaxConnectionsPerHost(webdavMaxConnsPerHost);
-                managerParams.setMaxTotalConnections(webdavMaxTotalConnections);
-                httpClient = new HttpClientProxy(new HttpClient(mgr));
-                storageClientMgr = new StorageClientMgr(webdavBaseUrl, httpClient);
-                webdavLocalFileCache = new LocalFileCache<>(
-                        LocalCacheMgr.getInstance().getLocalFileCacheStorage(),
-                        DEFAULT_FILE_CACHE_CONCURRENCY,
-                        new WebDavFileKeyProxyMapper(httpClient, storageClientMgr),
-                        Executors.newFixedThreadPool(4,
-                                new ThreadFactoryBuilder()
-                                        .setNameFormat("CacheEvictor-%d")
-                                        .setDaemon(true).build()),
-                        Executors.newFixedThreadPool(DEFAULT_FILE_CACHE_CONCURRENCY,
-                                new ThreadFactoryBuilder()
-                                        .setNameFormat("LocalCachedFileWriter-%d")
-                                        .setDaemon(true).build())
-                );
-            }
-        });
+        synchronized (this) {
+            this.propsLoaded = true;
+            // Properties may have changed, e.g. after connecting to a different server
+            this.initialized = false;
+        }
+        // Opening the local file cache can take a while, and is not needed until the first file is accessed
+        DeferredStartup.warmUp("File Manager", this::ensureInitialized);
+    }
+
+    private synchronized void ensureInitialized() {
+        if (initialized || !propsLoaded) {
+            return;
+        }
+        LOG.info("Initializing File Manager");
+        this.webdavBaseUrl = ConsoleProperties.getString("console.webDavClient.baseUrl", null);
+        this.webdavMaxConnsPerHost = ConsoleProperties.getInt("console.webDavClient.maxConnectionsPerHost", 100);
+        this.webdavMaxTotalConnections = ConsoleProperties.getInt("console.webDavClient.maxTotalConnections", 100);
+        LOG.info("Using WebDAV server: {}", webdavBaseUrl);
+
+        MultiThreadedHttpConnectionManager mgr = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams managerParams = mgr.getParams();
+        managerParams.setDefaultMaxConnectionsPerHost(webdavMaxConnsPerHost);
+        managerParams.setMaxTotalConnections(webdavMaxTotalConnections);
+        httpClient = new HttpClientProxy(new HttpClient(mgr));
+        storageClientMgr = new StorageClientMgr(webdavBaseUrl, httpClient);
+        fileDownloader = new WebDavDownloader(storageClientMgr, httpClient,
+                ConsoleProperties.getInt("console.webDavClient.downloadThreads", 8),
+                ConsoleProperties.getLong("console.webDavClient.downloadChunkSize", 16 * 1024 * 1024),
+                ConsoleProperties.getInt("console.webDavClient.downloadAttempts", 3));
+        webdavLocalFileCache = new LocalFileCache<>(
+                LocalCacheMgr.getInstance().getLocalFileCacheStorage(),
+                DEFAULT_FILE_CACHE_CONCURRENCY,
+                new WebDavFileKeyProxyMapper(httpClient, storageClientMgr),
+                Executors.newFixedThreadPool(4,
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("CacheEvictor-%d")
+                                .setDaemon(true).build()),
+                Executors.newFixedThreadPool(DEFAULT_FILE_CACHE_CONCURRENCY,
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("LocalCachedFileWriter-%d")
+                                .setDaemon(true).build())
+        );
+        initialized = true;
     }
 
-    public HttpClientProxy getHttpClient() {
+    public synchronized HttpClientProxy getHttpClient() {
+        ensureInitialized();
         return httpClient;
     }
 
-    public WebDavUploader getFileUploader() {
-        return new WebDavUploader(storageClientMgr);
+    public synchronized WebDavUploader getFileUploader() {
+        ensureInitialized();
+        return new WebDavUploader(storageClientMgr,
+                ConsoleProperties.getInt("console.webDavClient.uploadThreads", 4),
+                ConsoleProperties.getInt("console.webDavClient.uploadAttempts", 3));
+    }
+
+    /**
+     * Returns the downloader for fetching large files with parallel range requests.
+     */
+    public synchronized WebDavDownloader getFileDownloader() {
+        ensureInitialized();
+        return fileDownloader;
     }
 
     /**
@@ -112,7 +142,7 @@ public class FileMgr {
      * null if caching is disabled or the file cannot be cached.
      */
     public FileProxy getFile(String standardPath, boolean forceRefresh) throws FileNotFoundException {
-        return webdavLocalFileCache.getCachedFileEntry(new WebdavCachedFileKey(standardPath), forceRefresh);
+        return getWebdavLocalFileCache().getCachedFileEntry(new WebdavCachedFileKey(standardPath), forceRefresh);
     }
 
     /**
@@ -137,4 +167,9 @@ public class FileMgr {
         return inputStream;
     }
 
+    private synchronized LocalFileCache<WebdavCachedFileKey> getWebdavLocalFileCache() {
+        ensureInitialized();
+        return webdavLocalFileCache;
+    }
+
 }
@@ -1,10 +1,11 @@
 package org.janelia.workstation.core.api;
 
+import java.io.File;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.eventbus.Subscribe;
 import org.janelia.it.jacs.model.user_data.UserToolEvent;
@@ -17,7 +18,7 @@ import org.janelia.workstation.integration.activity_logging.ToolString;
 import org.janelia.workstation.core.events.Events;
 import org.janelia.workstation.core.events.lifecycle.SessionEndEvent;
 import org.janelia.workstation.core.events.lifecycle.SessionStartEvent;
-import org.janelia.workstation.core.util.SingleThreadedTaskQueue;
+import org.janelia.workstation.core.util.ConsoleProperties;
 import org.janelia.model.security.Subject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,8 +33,10 @@ public class SessionMgr {
     private static final Logger log = LoggerFactory.getLogger(SessionMgr.class);
 
     private static final int LOG_GRANULARITY = 100;
-    private final Map<CategoryString, Long> categoryInstanceCount = new HashMap<>();
-    
+    private final Map<CategoryString, AtomicLong> categoryInstanceCount = new ConcurrentHashMap<>();
+    private final ToolEventPipeline eventPipeline = new ToolEventPipeline(
+            this::addEventsToSession, new File(ConsoleProperties.getActivityLogSpoolDir()));
+
     private String username;
     
     // Singleton
@@ -91,13 +94,15 @@ public class SessionMgr {
 //            FrameworkAccess.handleExceptionQuietly(e);
 //        }
         this.currentSessionId = null;
-    }
-    
-    private void addEventToSession(UserToolEvent event) {
-//        EJBFactory.getRemoteComputeBean().addEventToSessionAsync(event);
+        eventPipeline.flushAsync();
     }
 
-    private void addEventsToSession(UserToolEvent[] events) {
+    private void addEventsToSession(List<ToolEventPipeline.ToolEvent> toolEvents) {
+        final UserToolEvent[] events = new UserToolEvent[toolEvents.size()];
+        int evtNum = 0;
+        for (ToolEventPipeline.ToolEvent e : toolEvents) {
+            events[evtNum++] = new UserToolEvent(e.sessionId, e.userLogin, e.toolName, e.category, e.action, new Date(e.timestamp));
+        }
 //        EJBFactory.getRemoteComputeBean().addEventsToSessionAsync(events);
     }
 
@@ -122,37 +127,13 @@ public class SessionMgr {
     public void logToolEvent(final ToolString toolName, final CategoryString category, final ActionString action, final long timestamp, final double elapsedMs, final double thresholdMs) {
         String userLogin = getLogEventUserLogin();
         try {
-            final UserToolEvent event = new UserToolEvent(currentSessionId, userLogin, toolName.toString(), category.toString(), action.toString(), new Date(timestamp));
-            Callable<Void> callable = new Callable<Void>() {
-                @Override
-                public Void call() {
-                    try {
-                        Long count = categoryInstanceCount.get(category);
-                        if (count == null) {
-                            count = new Long(0);
-                        }
-                        boolean shouldLog = false;
-                        if (elapsedMs > thresholdMs) {
-                            shouldLog = true;
-                        } else if (count % LOG_GRANULARITY == 0) {
-                            shouldLog = true;
-                        }
-                        categoryInstanceCount.put(category, ++count);
-    
-                        if (shouldLog) {
-                            addEventToSession(event);
-                        }
-                    } 
-                    catch (Exception ex) {
-                        log.warn(
-                                "Failed to log tool event for session: {}, user: {}, tool: {}, category: {}, action: {}, timestamp: {}.",
-                                currentSessionId, userLogin, toolName, category, action, timestamp, ex);
-                    }
-                    return null;
-                }
-            };
-            SingleThreadedTaskQueue.submit(callable);
-    
+            // Decide here whether to log, so that events which are not logged cost nothing more than a counter
+            long count = categoryInstanceCount.computeIfAbsent(category, k -> new AtomicLong()).getAndIncrement();
+            boolean overThreshold = elapsedMs > thresholdMs;
+            if (overThreshold || count % LOG_GRANULARITY == 0) {
+                eventPipeline.submit(new ToolEventPipeline.ToolEvent(currentSessionId, userLogin,
+                        toolName.toString(), category.toString(), action.toString(), timestamp, !overThreshold));
+            }
         } 
         catch (Exception ex) {
             log.warn(
@@ -175,32 +156,13 @@ public class SessionMgr {
      * @todo see about reusing code between this and non-threshold.
      */
     public void logToolThresholdEvent(final ToolString toolName, final CategoryString category, final ActionString action, final long timestamp, final double elapsedMs, final double thresholdMs) {
+        if (elapsedMs <= thresholdMs) {
+            return;
+        }
         String userLogin = getLogEventUserLogin();
         try {
-            final UserToolEvent event = new UserToolEvent(currentSessionId, userLogin, toolName.toString(), category.toString(), action.toString(), new Date(timestamp));
-            Callable<Void> callable = new Callable<Void>() {
-                @Override
-                public Void call() {
-                    try {
-                        boolean shouldLog = false;
-                        if (elapsedMs > thresholdMs) {
-                            shouldLog = true;
-                        }
-    
-                        if (shouldLog) {
-                            addEventToSession(event);
-                        }
-                    } 
-                    catch (Exception ex) {
-                        log.warn(
-                                "Failed to log tool event for session: {}, user: {}, tool: {}, category: {}, action: {}, timestamp: {}.",
-                                currentSessionId, userLogin, toolName, category, action, timestamp, ex);
-                    }
-                    return null;
-                }
-            };
-            SingleThreadedTaskQueue.submit(callable);
-
+            eventPipeline.submit(new ToolEventPipeline.ToolEvent(currentSessionId, userLogin,
+                    toolName.toString(), category.toString(), action.toString(), timestamp, false));
         } 
         catch (Exception ex) {
             log.warn(
@@ -229,39 +191,23 @@ public class SessionMgr {
         String userLogin = getLogEventUserLogin();
 
         try {
-            final UserToolEvent[] events = new UserToolEvent[actions.size()];
-            int evtNum = 0;
             for (String action: actions) {                
-                Date eventDate = null;
+                long eventTime;
                 int pos = action.lastIndexOf(":");
                 if (pos > -1  &&  pos < action.length()) {
-                    eventDate = new Date(Long.parseLong(action.substring(pos + 1)));
+                    eventTime = Long.parseLong(action.substring(pos + 1));
                     action = action.substring(0, pos); // Trim away redundant info.
                 }
                 else {
-                    eventDate = new Date();
+                    eventTime = new Date().getTime();
                 }
                 if (batchPrefix != null)
                     action = batchPrefix + ":" + action;
-                UserToolEvent event = new UserToolEvent(currentSessionId, userLogin, toolName.toString(), category.toString(), action, eventDate);
-                events[evtNum++] = event;
+                eventPipeline.submit(new ToolEventPipeline.ToolEvent(currentSessionId, userLogin,
+                        toolName.toString(), category.toString(), action, eventTime, false));
             }
-            
-            Callable<Void> callable = new Callable<Void>() {
-                @Override
-                public Void call() {
-                    try {
-                        addEventsToSession(events);
-                    }
-                    catch (Exception ex) {
-                        log.warn(
-                                "Failed to batch-log tool events for session: {}, user: {}, tool: {}, category: {}, action-prefix: {}, timestamp: {}.",
-                                currentSessionId, userLogin, toolName, category, batchPrefix, new Date().getTime(), ex);
-                    }
-                    return null;
-                }
-            };
-            SingleThreadedTaskQueue.submit(callable);
+            // The caller asked for these to go out together
+            eventPipeline.flushAsync();
         }
         catch (Exception ex) {
             log.warn(
@@ -0,0 +1,323 @@
+package org.janelia.workstation.core.api;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ships tool events to the server in batches, without ever blocking the threads which log them.
+ *
+ * Events are queued in a lock-free ring buffer, and a single background thread drains the buffer
+ * periodically, or as soon as a full batch is waiting, and sends each batch in one server call. If the
+ * server cannot be reached, the batch is appended to a local spool file, which is replayed after the next
+ * successful send. Under load the buffer applies its drop policy instead of growing: sampled events are
+ * dropped first once the buffer is mostly full, and when it is completely full either the new event or the
+ * oldest queued event is dropped. Whatever is still queued at shutdown is spooled.
+ */
+final class ToolEventPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolEventPipeline.class);
+
+    private static final int BUFFER_SIZE = ConsoleProperties.getInt("console.activityLog.bufferSize", 8192);
+    private static final int BATCH_SIZE = ConsoleProperties.getInt("console.activityLog.batchSize", 500);
+    private static final long FLUSH_INTERVAL_MS = ConsoleProperties.getLong("console.activityLog.flushIntervalMs", 5000);
+    private static final long MAX_SPOOL_BYTES = ConsoleProperties.getLong("console.activityLog.maxSpoolMB", 10) * 1024 * 1024;
+    private static final String SPOOL_FILE_NAME = "tool-events.spool";
+
+    /**
+     * What to do with a new event when the buffer is full.
+     */
+    enum DropPolicy {
+        /** Keep the queued events and drop the new one */
+        DROP_NEWEST,
+        /** Drop the oldest queued event to make room for the new one */
+        DROP_OLDEST
+    }
+
+    /**
+     * A tool event waiting to be sent. This is kept separate from UserToolEvent so that logging an event
+     * allocates as little as possible, and so that it can be spooled to disk as plain text.
+     */
+    static final class ToolEvent {
+        final Long sessionId;
+        final String userLogin;
+        final String toolName;
+        final String category;
+        final String action;
+        final long timestamp;
+        // Sampled events are dropped first under load
+        final boolean sampled;
+
+        ToolEvent(Long sessionId, String userLogin, String toolName, String category, String action, long timestamp, boolean sampled) {
+            this.sessionId = sessionId;
+            this.userLogin = userLogin;
+            this.toolName = toolName;
+            this.category = category;
+            this.action = action;
+            this.timestamp = timestamp;
+            this.sampled = sampled;
+        }
+    }
+
+    /**
+     * Destination for batches of events. Throwing an exception causes the batch to be spooled.
+     */
+    interface EventSink {
+        void send(List<ToolEvent> events) throws Exception;
+    }
+
+    private final EventSink sink;
+    private final File spoolFile;
+    private final DropPolicy dropPolicy;
+    private final EventRingBuffer<ToolEvent> buffer = new EventRingBuffer<>(BUFFER_SIZE);
+    private final int highWatermark;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final AtomicLong numDropped = new AtomicLong();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("ToolEventPipeline-%d")
+                    .setDaemon(true).build());
+
+    ToolEventPipeline(EventSink sink, File spoolDir) {
+        this.sink = sink;
+        this.spoolFile = new File(spoolDir, SPOOL_FILE_NAME);
+        this.dropPolicy = getDropPolicy();
+        this.highWatermark = buffer.capacity() * 3 / 4;
+        executor.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::spoolPending, "ToolEventPipeline-shutdown"));
+    }
+
+    private static DropPolicy getDropPolicy() {
+        String policy = ConsoleProperties.getString("console.activityLog.dropPolicy", DropPolicy.DROP_NEWEST.name());
+        try {
+            return DropPolicy.valueOf(policy.trim().toUpperCase());
+        }
+        catch (IllegalArgumentException e) {
+            log.warn("Unknown activity log drop policy {}, using {}", policy, DropPolicy.DROP_NEWEST);
+            return DropPolicy.DROP_NEWEST;
+        }
+    }
+
+    /**
+     * Queue an event for sending. This never blocks, and may drop the event if the buffer is full.
+     */
+    void submit(ToolEvent event) {
+        int size = buffer.size();
+        if (event.sampled && size >= highWatermark) {
+            numDropped.incrementAndGet();
+            return;
+        }
+        if (!buffer.offer(event)) {
+            numDropped.incrementAndGet();
+            if (dropPolicy == DropPolicy.DROP_OLDEST) {
+                // Make room by discarding the oldest event. If other threads fill the slot first,
+                // the new event is dropped after all.
+                buffer.poll();
+                buffer.offer(event);
+            }
+            return;
+        }
+        if (size + 1 >= BATCH_SIZE && flushRequested.compareAndSet(false, true)) {
+            executor.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Send everything that is currently queued, in the background.
+     */
+    void flushAsync() {
+        executor.execute(this::flushQuietly);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        }
+        catch (Exception e) {
+            log.warn("Error flushing tool events", e);
+        }
+    }
+
+    private synchronized void flush() {
+        flushRequested.set(false);
+
+        long dropped = numDropped.getAndSet(0);
+        if (dropped > 0) {
+            log.warn("Dropped {} tool events because the event buffer was full", dropped);
+        }
+
+        boolean sent = false;
+        List<ToolEvent> batch;
+        while (!(batch = drain(BATCH_SIZE)).isEmpty()) {
+            try {
+                sink.send(batch);
+                sent = true;
+            }
+            catch (Exception e) {
+                log.warn("Could not send {} tool events, spooling them to {}", batch.size(), spoolFile, e);
+                spool(batch);
+                // Spool the rest as well, rather than retrying a server which just failed
+                while (!(batch = drain(BATCH_SIZE)).isEmpty()) {
+                    spool(batch);
+                }
+                return;
+            }
+        }
+
+        if (sent && spoolFile.exists()) {
+            replaySpool();
+        }
+    }
+
+    private List<ToolEvent> drain(int maxEvents) {
+        List<ToolEvent> batch = new ArrayList<>();
+        ToolEvent event;
+        while (batch.size() < maxEvents && (event = buffer.poll()) != null) {
+            batch.add(event);
+        }
+        return batch;
+    }
+
+    /**
+     * Write everything that is still queued to the spool, so that it is sent during the next session.
+     */
+    private synchronized void spoolPending() {
+        List<ToolEvent> batch;
+        while (!(batch = drain(BATCH_SIZE)).isEmpty()) {
+            spool(batch);
+        }
+    }
+
+    private void spool(List<ToolEvent> events) {
+        if (spoolFile.length() >= MAX_SPOOL_BYTES) {
+            log.warn("Spool file {} is full, dropping {} tool events", spoolFile, events.size());
+            return;
+        }
+        try {
+            Files.createDirectories(spoolFile.getParentFile().toPath());
+            try (BufferedWriter writer = Files.newBufferedWriter(spoolFile.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (ToolEvent event : events) {
+                    writer.write(toLine(event));
+                    writer.newLine();
+                }
+            }
+        }
+        catch (IOException e) {
+            log.warn("Could not spool {} tool events to {}", events.size(), spoolFile, e);
+        }
+    }
+
+    private void replaySpool() {
+        List<ToolEvent> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(spoolFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ToolEvent event = fromLine(line);
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+        }
+        catch (IOException e) {
+            log.warn("Could not read tool event spool {}", spoolFile, e);
+            return;
+        }
+
+        log.info("Replaying {} spooled tool events", events.size());
+        int sent = 0;
+        try {
+            while (sent < events.size()) {
+                List<ToolEvent> batch = events.subList(sent, Math.min(events.size(), sent + BATCH_SIZE));
+                sink.send(batch);
+                sent += batch.size();
+            }
+        }
+        catch (Exception e) {
+            log.warn("Could not send spooled tool events, keeping {} in {}", events.size() - sent, spoolFile, e);
+        }
+
+        try {
+            Files.delete(spoolFile.toPath());
+            if (sent < events.size()) {
+                spool(events.subList(sent, events.size()));
+            }
+        }
+        catch (IOException e) {
+            log.warn("Could not rewrite tool event spool {}", spoolFile, e);
+        }
+    }
+
+    static String toLine(ToolEvent event) {
+        return (event.sessionId == null ? "" : event.sessionId.toString())
+                + "\t" + escape(event.userLogin)
+                + "\t" + escape(event.toolName)
+                + "\t" + escape(event.category)
+                + "\t" + escape(event.action)
+                + "\t" + event.timestamp;
+    }
+
+    static ToolEvent fromLine(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 6) {
+            log.warn("Ignoring malformed spooled tool event: {}", line);
+            return null;
+        }
+        try {
+            Long sessionId = fields[0].isEmpty() ? null : Long.valueOf(fields[0]);
+            return new ToolEvent(sessionId, unescape(fields[1]), unescape(fields[2]), unescape(fields[3]),
+                    unescape(fields[4]), Long.parseLong(fields[5]), false);
+        }
+        catch (NumberFormatException e) {
+            log.warn("Ignoring malformed spooled tool event: {}", line);
+            return null;
+        }
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "\\0";
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        if ("\\0".equals(value)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 't': sb.append('\t'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    default: sb.append(next);
+                }
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
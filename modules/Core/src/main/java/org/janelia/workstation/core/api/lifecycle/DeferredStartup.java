@@ -0,0 +1,92 @@
+package org.janelia.workstation.core.api.lifecycle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.janelia.workstation.integration.util.FrameworkAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lazy initialization mode for faster startup.
+ *
+ * When console.startup.lazyInit is enabled, services which are not needed to show the main window and log in
+ * are not initialized during startup. Each such service initializes itself on first use, and is also warmed up
+ * in the background once the main window is showing, so that it is usually ready before it is needed. When the
+ * mode is disabled, warm-up tasks run in the background immediately, as before.
+ */
+public class DeferredStartup {
+
+    private static final Logger log = LoggerFactory.getLogger(DeferredStartup.class);
+
+    private static final boolean LAZY_INIT = ConsoleProperties.getBoolean("console.startup.lazyInit", false);
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("StartupWarmup-%d")
+                    .setDaemon(true).build());
+
+    private static final List<Runnable> pending = new ArrayList<>();
+    private static boolean started = false;
+
+    private DeferredStartup() {
+    }
+
+    /**
+     * Returns true if non-critical services should defer their initialization.
+     */
+    public static boolean isLazyInit() {
+        return LAZY_INIT;
+    }
+
+    /**
+     * Initialize a service in the background. In lazy mode this waits until the main window is showing. The
+     * service must still initialize itself on first use, in case it is needed before the warm-up gets to it.
+     * @param name service name, for the startup profile
+     * @param init initialization, which must be safe to run more than once
+     */
+    public static void warmUp(String name, Runnable init) {
+        Runnable task = () -> {
+            try {
+                StartupProfiler.time(name + (LAZY_INIT ? " (deferred)" : ""), init);
+            }
+            catch (Throwable e) {
+                FrameworkAccess.handleException(e);
+            }
+        };
+        synchronized (pending) {
+            if (LAZY_INIT && !started) {
+                log.debug("Deferring initialization of {}", name);
+                pending.add(task);
+                return;
+            }
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * Start warming up the deferred services. This should be called once the main window is showing.
+     */
+    public static void mainWindowShown() {
+        List<Runnable> tasks;
+        synchronized (pending) {
+            if (started) {
+                return;
+            }
+            started = true;
+            tasks = new ArrayList<>(pending);
+            pending.clear();
+        }
+        if (!tasks.isEmpty()) {
+            log.info("Warming up {} deferred services", tasks.size());
+        }
+        for (Runnable task : tasks) {
+            executor.execute(task);
+        }
+    }
+}
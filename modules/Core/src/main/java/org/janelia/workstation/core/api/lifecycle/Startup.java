@@ -22,7 +22,6 @@ import org.janelia.workstation.core.logging.LogFormatter;
 import org.janelia.workstation.core.logging.NBExceptionHandler;
 import org.janelia.workstation.core.util.BrandingConfig;
 import org.janelia.workstation.core.util.SystemInfo;
-import org.janelia.workstation.core.workers.SimpleWorker;
 import org.janelia.workstation.integration.util.FrameworkAccess;
 import org.openide.modules.OnStart;
 import org.openide.modules.Places;
@@ -45,6 +44,9 @@ public class Startup implements Runnable {
     @Override
     public void run() {
 
+        StartupProfiler.milestone("Module system started");
+        long startupStart = System.nanoTime();
+
         // Configure default logging levels
         /*
          * level jul_name    slf4j_name
@@ -116,46 +118,29 @@ public class Startup implements Runnable {
 
         // Load the branding config so that the user settings are available for logging
         // in the next step (init user session)
-        BrandingConfig.getBrandingConfig().validateBrandingConfig();
+        StartupProfiler.time("Branding config", () -> BrandingConfig.getBrandingConfig().validateBrandingConfig());
 
         try {
             // Set the Look and Feel
-            StateMgr.getStateMgr().initLAF();
+            StartupProfiler.time("Look and feel", () -> StateMgr.getStateMgr().initLAF());
             // Initialize all singletons so that they are listening on Event Bus
-            FileMgr.getFileMgr();
-            LocalPreferenceMgr.getInstance();
-            DomainMgr.getDomainMgr();
-            AccessManager.getAccessManager();
-            SessionMgr.getSessionMgr();
+            StartupProfiler.time("FileMgr", FileMgr::getFileMgr);
+            StartupProfiler.time("LocalPreferenceMgr", LocalPreferenceMgr::getInstance);
+            StartupProfiler.time("DomainMgr", DomainMgr::getDomainMgr);
+            StartupProfiler.time("AccessManager", AccessManager::getAccessManager);
+            StartupProfiler.time("SessionMgr", SessionMgr::getSessionMgr);
 
         }
         catch (Throwable e) {
             FrameworkAccess.handleException(e);
         }
 
-        // Do some things in the background
-        SimpleWorker worker = new SimpleWorker() {
-
-            @Override
-            protected void doStuff() throws Exception {
-                // Initialize the services
-                ServiceMgr.getServiceMgr().initServices();
-                // Initialize domain model classes
-                DomainUtils.equals(null, null);
-            }
-
-            @Override
-            protected void hadSuccess() {
-            }
-
-            @Override
-            protected void hadError(Throwable e) {
-                FrameworkAccess.handleException(e);
-            }
-        };
-
-        worker.execute();
+        // Do some things in the background. Nothing waits for these, so in lazy startup
+        // mode they are put off until the main window is showing.
+        DeferredStartup.warmUp("Web services", () -> ServiceMgr.getServiceMgr().initServices());
+        DeferredStartup.warmUp("Domain model classes", () -> DomainUtils.equals(null, null));
 
+        StartupProfiler.record("Core startup", startupStart);
         LOG.info("Startup sequence complete. Opening the application...");
 
         // Notify listeners that the application is opening
@@ -0,0 +1,95 @@
+package org.janelia.workstation.core.api.lifecycle;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records how long each part of application startup takes, so that slow module installers and service
+ * initializations can be found and deferred.
+ *
+ * Steps are timed individually, and milestones record the JVM uptime at which they were reached. The full
+ * profile is logged when the main window is shown, and anything recorded after that is logged as it happens.
+ */
+public class StartupProfiler {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupProfiler.class);
+
+    private static final List<String> entries = new ArrayList<>();
+    private static boolean reported = false;
+
+    private StartupProfiler() {
+    }
+
+    /**
+     * Run the given startup step and record how long it took.
+     */
+    public static void time(String step, Runnable runnable) {
+        long start = System.nanoTime();
+        try {
+            runnable.run();
+        }
+        finally {
+            record(step, start);
+        }
+    }
+
+    /**
+     * Record a startup step which began at the given System.nanoTime() value and has just finished.
+     */
+    public static void record(String step, long startNanos) {
+        long elapsedMs = (System.nanoTime() - startNanos) / 1000000;
+        add(String.format("%-50s %6d ms  [%s]", step, elapsedMs, Thread.currentThread().getName()));
+    }
+
+    /**
+     * Record that the given point in the startup sequence has been reached.
+     */
+    public static void milestone(String name) {
+        add(String.format("%-50s at %6d ms uptime", name, getUptimeMs()));
+    }
+
+    /**
+     * Log the startup profile. This should be called once the main window is showing.
+     */
+    public static void mainWindowShown() {
+        milestone("Main window shown");
+        List<String> profile;
+        synchronized (entries) {
+            profile = new ArrayList<>(entries);
+            reported = true;
+        }
+        StringBuilder sb = new StringBuilder("Startup profile:");
+        for (String entry : profile) {
+            sb.append("\n  ").append(entry);
+        }
+        log.info(sb.toString());
+    }
+
+    /**
+     * Returns every step and milestone recorded so far, in the order they were recorded.
+     */
+    public static List<String> getProfile() {
+        synchronized (entries) {
+            return new ArrayList<>(entries);
+        }
+    }
+
+    private static void add(String entry) {
+        boolean logNow;
+        synchronized (entries) {
+            entries.add(entry);
+            logNow = reported;
+        }
+        if (logNow) {
+            log.info("Startup profile: {}", entry);
+        }
+    }
+
+    private static long getUptimeMs() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
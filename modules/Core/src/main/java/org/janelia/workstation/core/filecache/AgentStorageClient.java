@@ -3,6 +3,7 @@ package org.janelia.workstation.core.filecache;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -10,6 +11,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -88,17 +90,38 @@ class AgentStorageClient extends AbstractStorageClient {
      */
     RemoteLocation saveFile(URL url, File file)
             throws IllegalArgumentException, WebDavException {
+        return saveFile(url, file, null);
+    }
+
+    /**
+     * Saves the specified file to the server, streaming it from disk.
+     *
+     * @param  url   server URL for the new file.
+     * @param  file  file to save.
+     * @param  bytesSent  optional callback for the number of bytes sent so far.
+     *
+     * @throws IllegalArgumentException
+     *   if the file cannot be read.
+     *
+     * @throws WebDavException
+     *   if the save fails for any other reason.
+     */
+    RemoteLocation saveFile(URL url, File file, LongConsumer bytesSent)
+            throws IllegalArgumentException, WebDavException {
         InputStream fileStream;
         if (file == null) {
             throw new IllegalArgumentException("file must be defined");
         }
         try {
             fileStream = new FileInputStream(file);
+            if (bytesSent != null) {
+                fileStream = new ProgressInputStream(fileStream, bytesSent);
+            }
         } catch (Exception e) {
             throw new IllegalArgumentException("failed to open stream for " + file.getAbsolutePath(), e);
         }
         try {
-            return saveFile(url, fileStream);
+            return saveFile(url, fileStream, file.length());
         } finally {
             try {
                 fileStream.close();
@@ -116,11 +139,13 @@ class AgentStorageClient extends AbstractStorageClient {
      *
      * @param  url         server URL for the new file.
      * @param  fileStream  file contents to save.
+     * @param  length      number of bytes in the stream. Specifying the length allows the content
+     *                     to be streamed, instead of being buffered in memory to determine its length.
      *
      * @throws WebDavException
      *   if the save fails for any reason.
      */
-    private RemoteLocation saveFile(URL url, InputStream fileStream)
+    private RemoteLocation saveFile(URL url, InputStream fileStream, long length)
             throws WebDavException {
 
         PutMethod method = null;
@@ -128,7 +153,7 @@ class AgentStorageClient extends AbstractStorageClient {
 
         try {
             method = new PutMethod(url.toString());
-            method.setRequestEntity(new InputStreamRequestEntity(fileStream));
+            method.setRequestEntity(new InputStreamRequestEntity(fileStream, length));
 
             responseCode = httpClient.executeMethod(method);
             LOG.trace("saveFile: {} returned for PUT {}", responseCode, url);
@@ -164,6 +189,39 @@ class AgentStorageClient extends AbstractStorageClient {
         return new RemoteLocation(virtualFilePath, realFilePath, location);
     }
 
+    /**
+     * Reports the number of bytes read through the stream.
+     */
+    private static class ProgressInputStream extends FilterInputStream {
+
+        private final LongConsumer bytesRead;
+        private long count;
+
+        ProgressInputStream(InputStream in, LongConsumer bytesRead) {
+            super(in);
+            this.bytesRead = bytesRead;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytesRead.accept(++count);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+                bytesRead.accept(count);
+            }
+            return n;
+        }
+    }
+
     URL getUploadFileURL(String storageLocation) {
         try {
             return new URL(baseUrl + "/data_content/" + (StringUtils.isBlank(storageLocation) ? "" : storageLocation));
@@ -9,6 +9,7 @@ import java.nio.file.Paths;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
@@ -144,9 +145,16 @@ public class StorageClientMgr {
     }
 
     RemoteLocation uploadFile(File file, String storageURL, String storageLocation) {
+        return uploadFile(file, storageURL, storageLocation, null);
+    }
+
+    /**
+     * Uploads the file, reporting the total number of bytes sent so far to the given callback.
+     */
+    RemoteLocation uploadFile(File file, String storageURL, String storageLocation, LongConsumer bytesSent) {
         try {
             AgentStorageClient agentStorageClient = new AgentStorageClient(storageURL, httpClient, objectMapper, NOOP_ERROR_CONN_HANDLER);
-            RemoteLocation remoteFile = agentStorageClient.saveFile(agentStorageClient.getUploadFileURL(storageLocation), file);
+            RemoteLocation remoteFile = agentStorageClient.saveFile(agentStorageClient.getUploadFileURL(storageLocation), file, bytesSent);
             remoteFile.setStorageURL(storageURL);
             return remoteFile;
         } catch (Exception e) {
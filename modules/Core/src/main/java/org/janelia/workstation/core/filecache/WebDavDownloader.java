@@ -0,0 +1,570 @@
+package org.janelia.workstation.core.filecache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.janelia.workstation.core.api.http.HttpClientProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility to download large files from the server using parallel HTTP range requests.
+ *
+ * The file is split into fixed size chunks which are fetched concurrently and written directly to their
+ * position in a preallocated destination file. Completed chunks are recorded in a state file next to the
+ * destination, so that an interrupted download can be resumed later by downloading the same file to the
+ * same destination. If the server does not support range requests, the file is simply streamed.
+ */
+public class WebDavDownloader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WebDavDownloader.class);
+
+    private static final int SO_TIMEOUT_INMILLIS = 180000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_MILLIS = 200;
+    private static final long RETRY_DELAY_MILLIS = 500;
+    private static final String STATE_FILE_SUFFIX = ".download";
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    /**
+     * Receives progress updates. Updates are always delivered on the thread which called download.
+     */
+    public interface ProgressListener {
+        void update(long bytesDownloaded, long totalBytes);
+    }
+
+    private final StorageClientMgr storageClientMgr;
+    private final HttpClientProxy httpClient;
+    private final long chunkSize;
+    private final int maxAttempts;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a downloader.
+     *
+     * @param storageClientMgr WebDAV client manager for the current session
+     * @param httpClient client used for the range requests
+     * @param numThreads number of chunks which are downloaded concurrently, across all downloads
+     * @param chunkSize size of each range request in bytes
+     * @param maxAttempts number of times each chunk is attempted before the download fails
+     */
+    public WebDavDownloader(StorageClientMgr storageClientMgr, HttpClientProxy httpClient,
+                            int numThreads, long chunkSize, int maxAttempts) {
+        this.storageClientMgr = storageClientMgr;
+        this.httpClient = httpClient;
+        this.chunkSize = Math.max(BUFFER_SIZE, chunkSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, numThreads),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("WebDavDownloader-%d")
+                        .setDaemon(true).build());
+    }
+
+    /**
+     * Downloads the given standard path to the destination file. Only files served by a storage agent
+     * (i.e. not local files) can be downloaded this way.
+     *
+     * @param standardPath standard system path of the remote file
+     * @param destination local file to write
+     * @param progressListener optional progress listener
+     * @param isCancelled checked periodically to allow the download to be cancelled
+     * @return false if the path cannot be downloaded by this downloader, or if it's small enough that it should
+     * just be streamed, in which case nothing was written
+     * @throws CancellationException if the download was cancelled
+     */
+    public boolean download(String standardPath, File destination,
+                            ProgressListener progressListener, BooleanSupplier isCancelled) throws IOException {
+        WebdavCachedFileKey fileKey = new WebdavCachedFileKey(standardPath);
+        String url;
+        Long length;
+        switch (fileKey.getRemoteFileScheme()) {
+            case "file":
+                return false;
+            case "http":
+                url = standardPath;
+                length = null;
+                break;
+            default:
+                WebDavFile webDavFile = storageClientMgr.findFile(standardPath);
+                if (webDavFile.isDirectory()) {
+                    return false;
+                }
+                url = webDavFile.getRemoteFileUrl();
+                length = webDavFile.getSizeInBytes();
+                if (length != null && length <= chunkSize) {
+                    return false;
+                }
+                break;
+        }
+        downloadURL(url, length, destination, progressListener, isCancelled);
+        return true;
+    }
+
+    /**
+     * Returns true if there is an interrupted download for the given destination which can be resumed.
+     */
+    public static boolean isResumable(File destination) {
+        return getStateFile(destination).exists() && destination.exists();
+    }
+
+    /**
+     * Deletes the given partially downloaded file along with its download state.
+     */
+    public static void deletePartialDownload(File destination) {
+        File stateFile = getStateFile(destination);
+        if (stateFile.exists() && !stateFile.delete()) {
+            LOG.warn("Could not delete download state file {}", stateFile);
+        }
+        if (destination.exists() && !destination.delete()) {
+            LOG.warn("Could not delete partially downloaded file {}", destination);
+        }
+    }
+
+    /**
+     * Downloads the given URL to the destination file.
+     *
+     * @param url URL of the remote file
+     * @param expectedLength length of the remote file, or null if it's unknown
+     */
+    void downloadURL(String url, Long expectedLength, File destination,
+                     ProgressListener progressListener, BooleanSupplier isCancelled) throws IOException {
+
+        File destinationDir = destination.getAbsoluteFile().getParentFile();
+        if (destinationDir != null && !destinationDir.exists()) {
+            Files.createDirectories(destinationDir.toPath());
+        }
+
+        // Probe with a single byte range, which tells us if ranges are supported and how large the file is.
+        // If they're not supported, the response is the entire file, so we stream it.
+        long totalLength;
+        String validator;
+        GetMethod probe = createGet(url, 0, 0);
+        try {
+            int responseCode = httpClient.executeMethod(probe);
+            if (responseCode == HttpServletResponse.SC_OK) {
+                LOG.info("Range requests not supported for {}, streaming instead", url);
+                stream(probe, expectedLength, destination, progressListener, isCancelled);
+                return;
+            }
+            else if (responseCode != HttpServletResponse.SC_PARTIAL_CONTENT) {
+                throw new WebDavException("GET " + url, responseCode);
+            }
+            Long contentRangeLength = parseTotalLength(probe.getResponseHeader("Content-Range"));
+            if (contentRangeLength != null) {
+                totalLength = contentRangeLength;
+            }
+            else if (expectedLength != null) {
+                totalLength = expectedLength;
+            }
+            else {
+                throw new WebDavException("Could not determine length of " + url, responseCode);
+            }
+            validator = getValidator(probe);
+        }
+        finally {
+            probe.releaseConnection();
+        }
+
+        downloadChunks(url, totalLength, validator, destination, progressListener, isCancelled);
+    }
+
+    private void stream(GetMethod method, Long expectedLength, File destination,
+                        ProgressListener progressListener, BooleanSupplier isCancelled) throws IOException {
+        // Any previous state is meaningless now
+        Files.deleteIfExists(getStateFile(destination).toPath());
+        long totalLength = expectedLength == null ? -1 : expectedLength;
+        long bytesWritten = 0;
+        long lastUpdate = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = method.getResponseBodyAsStream();
+             OutputStream output = new FileOutputStream(destination)) {
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                checkCancelled(isCancelled);
+                output.write(buffer, 0, n);
+                bytesWritten += n;
+                long now = System.currentTimeMillis();
+                if (progressListener != null && totalLength > 0 && now - lastUpdate > PROGRESS_INTERVAL_MILLIS) {
+                    progressListener.update(Math.min(bytesWritten, totalLength), totalLength);
+                    lastUpdate = now;
+                }
+            }
+        }
+        if (totalLength >= 0 && bytesWritten != totalLength) {
+            throw new IOException("Downloaded " + bytesWritten + " bytes but expected " + totalLength);
+        }
+        if (progressListener != null) {
+            progressListener.update(bytesWritten, Math.max(bytesWritten, totalLength));
+        }
+    }
+
+    private void downloadChunks(String url, long totalLength, String validator, File destination,
+                                ProgressListener progressListener, BooleanSupplier isCancelled) throws IOException {
+
+        int numChunks = (int) Math.max(1, (totalLength + chunkSize - 1) / chunkSize);
+        DownloadState state = DownloadState.load(getStateFile(destination), url, totalLength, chunkSize, validator, numChunks);
+        if (!destination.exists()) {
+            state.completed.clear();
+        }
+
+        int numCompleted = state.completed.cardinality();
+        if (numCompleted > 0) {
+            LOG.info("Resuming download of {} to {} with {} of {} chunks already completed",
+                    url, destination, numCompleted, numChunks);
+        }
+        else {
+            LOG.info("Downloading {} ({} bytes) to {} in {} chunks", url, totalLength, destination, numChunks);
+        }
+
+        AtomicLong bytesDownloaded = new AtomicLong();
+        for (int i = state.completed.nextSetBit(0); i >= 0; i = state.completed.nextSetBit(i + 1)) {
+            bytesDownloaded.addAndGet(getChunkEnd(i, totalLength) - getChunkStart(i) + 1);
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(destination, "rw")) {
+            // Preallocate, so that chunks can be written in any order
+            file.setLength(totalLength);
+            FileChannel channel = file.getChannel();
+
+            // Record the state before fetching anything, so that the download is resumable even if it's
+            // interrupted before the first chunk completes
+            state.save();
+
+            AtomicBoolean stopped = new AtomicBoolean();
+            Set<GetMethod> activeMethods = ConcurrentHashMap.newKeySet();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = state.completed.nextClearBit(0); i < numChunks; i = state.completed.nextClearBit(i + 1)) {
+                final int chunk = i;
+                futures.add(executor.submit(() -> {
+                    if (downloadChunk(url, validator, channel, getChunkStart(chunk), getChunkEnd(chunk, totalLength),
+                            bytesDownloaded, stopped, activeMethods)) {
+                        // The chunk must be on disk before the state says so, or a crash could leave a hole in
+                        // the file which a resumed download would skip. A channel can only be forced as a whole.
+                        channel.force(false);
+                        state.markCompleted(chunk);
+                    }
+                    return null;
+                }));
+            }
+
+            try {
+                for (Future<?> future : futures) {
+                    while (true) {
+                        try {
+                            future.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                            break;
+                        }
+                        catch (TimeoutException e) {
+                            checkCancelled(isCancelled);
+                            if (progressListener != null) {
+                                progressListener.update(bytesDownloaded.get(), totalLength);
+                            }
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Download of " + url + " was interrupted");
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException("Error downloading " + url, cause);
+            }
+            finally {
+                // All workers write to the channel, so they must be done before the file is closed. Cancelling
+                // the futures wouldn't wait for running workers, and interrupting a worker during a write would
+                // close the channel, so the workers are told to stop and their requests are aborted instead.
+                stopped.set(true);
+                for (GetMethod method : activeMethods) {
+                    method.abort();
+                }
+                awaitWorkers(futures);
+            }
+
+            channel.force(false);
+        }
+
+        state.delete();
+        if (progressListener != null) {
+            progressListener.update(totalLength, totalLength);
+        }
+        LOG.info("Completed download of {} to {}", url, destination);
+    }
+
+    /**
+     * Waits for every worker to return, whether it succeeded or not. Interrupts are deferred until all workers
+     * are done.
+     */
+    private static void awaitWorkers(List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                catch (ExecutionException | CancellationException e) {
+                    // Already reported, or the download is ending anyway
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Downloads the given range into the channel. Returns true if the whole range was written, or false if the
+     * download was stopped first.
+     */
+    private boolean downloadChunk(String url, String validator, FileChannel channel, long start, long end,
+                                  AtomicLong bytesDownloaded, AtomicBoolean stopped,
+                                  Set<GetMethod> activeMethods) throws IOException, InterruptedException {
+        long position = start;
+        int attempt = 1;
+        while (true) {
+            GetMethod method = createGet(url, position, end);
+            activeMethods.add(method);
+            try {
+                // Checked after registering the method, so that a concurrent stop either sees it or is seen here
+                if (stopped.get()) {
+                    return false;
+                }
+                int responseCode = httpClient.executeMethod(method);
+                if (responseCode != HttpServletResponse.SC_PARTIAL_CONTENT) {
+                    throw new WebDavException("GET " + url + " (bytes " + position + "-" + end + ")", responseCode);
+                }
+                if (!Objects.equals(validator, getValidator(method))) {
+                    throw new RemoteFileChangedException(url);
+                }
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try (InputStream input = method.getResponseBodyAsStream()) {
+                    int n;
+                    while (position <= end && (n = input.read(buffer, 0, (int) Math.min(buffer.length, end - position + 1))) != -1) {
+                        if (stopped.get()) {
+                            return false;
+                        }
+                        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, n);
+                        while (byteBuffer.hasRemaining()) {
+                            position += channel.write(byteBuffer, position);
+                        }
+                        bytesDownloaded.addAndGet(n);
+                    }
+                }
+                if (position <= end) {
+                    throw new IOException("Response ended early at byte " + position + " of range " + start + "-" + end);
+                }
+                return true;
+            }
+            catch (RemoteFileChangedException e) {
+                // Not worth retrying, the data we already have is stale
+                throw e;
+            }
+            catch (IOException | WebDavException e) {
+                if (stopped.get()) {
+                    // Most likely caused by aborting the request
+                    return false;
+                }
+                // Server errors may be transient, but client errors will not go away by retrying
+                boolean retryable = !(e instanceof WebDavException)
+                        || ((WebDavException) e).getStatusCode() == null
+                        || ((WebDavException) e).getStatusCode() >= 500;
+                if (!retryable || attempt >= maxAttempts) {
+                    throw e;
+                }
+                LOG.warn("Error downloading bytes {}-{} of {}, retrying from byte {} (attempt {} of {})",
+                        start, end, url, position, attempt, maxAttempts, e);
+                Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+                attempt++;
+            }
+            finally {
+                activeMethods.remove(method);
+                method.releaseConnection();
+            }
+        }
+    }
+
+    private long getChunkStart(int chunk) {
+        return chunk * chunkSize;
+    }
+
+    private long getChunkEnd(int chunk, long totalLength) {
+        return Math.min(totalLength, (chunk + 1) * chunkSize) - 1;
+    }
+
+    private GetMethod createGet(String url, long start, long end) {
+        GetMethod method = new GetMethod(url);
+        method.getParams().setSoTimeout(SO_TIMEOUT_INMILLIS);
+        method.setRequestHeader("Range", "bytes=" + start + "-" + end);
+        return method;
+    }
+
+    private static void checkCancelled(BooleanSupplier isCancelled) {
+        if (isCancelled != null && isCancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Returns a value which changes whenever the remote file changes, if the server provides one.
+     */
+    private static String getValidator(GetMethod method) {
+        Header header = method.getResponseHeader("ETag");
+        if (header == null) {
+            header = method.getResponseHeader("Last-Modified");
+        }
+        return header == null ? null : header.getValue();
+    }
+
+    static Long parseTotalLength(Header contentRange) {
+        if (contentRange == null) {
+            return null;
+        }
+        Matcher m = CONTENT_RANGE_PATTERN.matcher(contentRange.getValue().trim());
+        if (m.matches() && !"*".equals(m.group(3))) {
+            return Long.parseLong(m.group(3));
+        }
+        return null;
+    }
+
+    static File getStateFile(File destination) {
+        return new File(destination.getAbsoluteFile().getParentFile(), destination.getName() + STATE_FILE_SUFFIX);
+    }
+
+    /**
+     * Thrown when the remote file no longer matches the version which was partially downloaded.
+     */
+    private static class RemoteFileChangedException extends IOException {
+        RemoteFileChangedException(String url) {
+            super("Remote file changed during download: " + url);
+        }
+    }
+
+    /**
+     * Set of completed chunks for a download, persisted to a properties file.
+     */
+    private static class DownloadState {
+
+        private final File stateFile;
+        private final Properties properties;
+        private final BitSet completed;
+
+        private DownloadState(File stateFile, Properties properties, BitSet completed) {
+            this.stateFile = stateFile;
+            this.properties = properties;
+            this.completed = completed;
+        }
+
+        /**
+         * Loads the existing state, if it matches the given download. Otherwise, returns a new empty state.
+         */
+        static DownloadState load(File stateFile, String url, long length, long chunkSize, String validator, int numChunks) {
+            Properties properties = new Properties();
+            properties.setProperty("url", url);
+            properties.setProperty("length", String.valueOf(length));
+            properties.setProperty("chunkSize", String.valueOf(chunkSize));
+            if (validator != null) {
+                properties.setProperty("validator", validator);
+            }
+
+            BitSet completed = new BitSet(numChunks);
+            if (stateFile.exists()) {
+                Properties saved = new Properties();
+                try (InputStream input = Files.newInputStream(stateFile.toPath())) {
+                    saved.load(input);
+                    String savedChunks = saved.getProperty("completed", "");
+                    saved.remove("completed");
+                    if (saved.equals(properties)) {
+                        for (String chunk : savedChunks.split(",")) {
+                            if (!chunk.isEmpty()) {
+                                int i = Integer.parseInt(chunk);
+                                if (i >= 0 && i < numChunks) {
+                                    completed.set(i);
+                                }
+                            }
+                        }
+                    }
+                    else {
+                        LOG.info("Ignoring download state for a different version of the file: {}", stateFile);
+                    }
+                }
+                catch (IOException | NumberFormatException e) {
+                    LOG.warn("Could not read download state {}, starting over", stateFile, e);
+                    completed.clear();
+                }
+            }
+            return new DownloadState(stateFile, properties, completed);
+        }
+
+        synchronized void markCompleted(int chunk) throws IOException {
+            completed.set(chunk);
+            save();
+        }
+
+        synchronized void save() throws IOException {
+            StringBuilder chunks = new StringBuilder();
+            for (int i = completed.nextSetBit(0); i >= 0; i = completed.nextSetBit(i + 1)) {
+                if (chunks.length() > 0) chunks.append(',');
+                chunks.append(i);
+            }
+            Properties toSave = new Properties();
+            toSave.putAll(properties);
+            toSave.setProperty("completed", chunks.toString());
+            // Write to a temporary file first, so that a crash never leaves a corrupt state file
+            File tempFile = new File(stateFile.getParentFile(), stateFile.getName() + ".tmp");
+            try (OutputStream output = new FileOutputStream(tempFile)) {
+                toSave.store(output, "Workstation download state");
+            }
+            Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        synchronized void delete() throws IOException {
+            Files.deleteIfExists(stateFile.toPath());
+        }
+    }
+}
@@ -1,11 +1,27 @@
 package org.janelia.workstation.core.filecache;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
 import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -19,7 +35,62 @@ import org.slf4j.LoggerFactory;
 public class WebDavUploader {
     private static final Logger LOG = LoggerFactory.getLogger(WebDavUploader.class);
 
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+    private static final long PROGRESS_INTERVAL_MILLIS = 500;
+
+    /**
+     * Receives progress updates for a batch upload. Updates are always delivered on the thread which
+     * called uploadFiles.
+     */
+    public interface UploadProgressListener {
+        /**
+         * @param filesCompleted number of files which have been uploaded or have failed
+         * @param totalFiles number of files in the batch
+         * @param bytesUploaded number of bytes sent so far, not counting failed attempts
+         * @param totalBytes number of bytes in the batch
+         * @param bytesPerSecond average throughput since the batch started
+         */
+        void update(int filesCompleted, int totalFiles, long bytesUploaded, long totalBytes, double bytesPerSecond);
+    }
+
+    /**
+     * Outcome of a batch upload.
+     */
+    public static class UploadResult {
+
+        private final List<RemoteLocation> uploaded;
+        private final Map<File, Throwable> failures;
+
+        UploadResult(List<RemoteLocation> uploaded, Map<File, Throwable> failures) {
+            this.uploaded = uploaded;
+            this.failures = failures;
+        }
+
+        /**
+         * @return the uploaded files, in the order they were given.
+         */
+        public List<RemoteLocation> getUploaded() {
+            return uploaded;
+        }
+
+        /**
+         * @return the files which could not be uploaded, with the last error for each one.
+         */
+        public Map<File, Throwable> getFailures() {
+            return failures;
+        }
+
+        public boolean hasFailures() {
+            return !failures.isEmpty();
+        }
+    }
+
     private final StorageClientMgr storageClientMgr;
+    private final int concurrency;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
 
     /**
      * Constructs an uploader.
@@ -27,7 +98,25 @@ public class WebDavUploader {
      * @param storageClientMgr WebDAV client manager for the current session
      */
     public WebDavUploader(StorageClientMgr storageClientMgr) {
+        this(storageClientMgr, DEFAULT_CONCURRENCY, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Constructs an uploader.
+     *
+     * @param storageClientMgr WebDAV client manager for the current session
+     * @param concurrency number of files which are uploaded concurrently by uploadFiles
+     * @param maxAttempts number of times each file is attempted before it's reported as failed
+     */
+    public WebDavUploader(StorageClientMgr storageClientMgr, int concurrency, int maxAttempts) {
+        this(storageClientMgr, concurrency, maxAttempts, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    WebDavUploader(StorageClientMgr storageClientMgr, int concurrency, int maxAttempts, long retryDelayMillis) {
         this.storageClientMgr = storageClientMgr;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMillis = retryDelayMillis;
     }
 
     public String createUploadContext(String contextName, String subjectName, String storageTags) {
@@ -106,20 +195,162 @@ public class WebDavUploader {
      */
     public List<RemoteLocation> uploadFiles(String storageName, String storageContext, String storageTags, List<File> fileList, File localRootDirectory)
             throws IllegalArgumentException, WebDavException {
+        UploadResult result = uploadFiles(storageName, storageContext, storageTags, fileList, localRootDirectory, null, null);
+        if (result.hasFailures()) {
+            Map.Entry<File, Throwable> firstFailure = result.getFailures().entrySet().iterator().next();
+            throw new WebDavException("failed to upload " + result.getFailures().size() + " of " + fileList.size() +
+                    " files, including " + firstFailure.getKey(), firstFailure.getValue());
+        }
+        return result.getUploaded();
+    }
+
+    /**
+     * Uploads the specified files to the server, several at a time. Each file is streamed from disk,
+     * and retried with increasing delays if it fails. Files which still fail after all the attempts are
+     * reported in the result, without aborting the rest of the batch.
+     *
+     * @param  storageName         user assigned storage name
+     * @param  fileList            list of local files to upload.
+     * @param  storageContext      storage path context.
+     * @param  storageTags         tags used for selecting the storage.
+     * @param  localRootDirectory  a common parent of all listed files that is used to determine
+     *                             the relative path for each file on the server.
+     * @param  progressListener    optional progress listener.
+     * @param  isCancelled         optional check for cancelling the remaining uploads.
+     *
+     * @return the uploaded files and the failures.
+     *
+     * @throws CancellationException
+     *   if the batch was cancelled.
+     */
+    public UploadResult uploadFiles(String storageName, String storageContext, String storageTags,
+                                    List<File> fileList, File localRootDirectory,
+                                    UploadProgressListener progressListener, BooleanSupplier isCancelled)
+            throws IllegalArgumentException, WebDavException {
 
         String storageURL = storageClientMgr.createStorage(storageName, storageContext, storageTags);
         Path localRootPath = localRootDirectory.toPath();
-        List<RemoteLocation> remoteFileList = fileList.stream()
+        List<File> files = fileList.stream()
                 .filter(f -> f.isFile())
-                .map(f -> {
-                    RemoteLocation remoteFile = storageClientMgr.uploadFile(f, storageURL, storageClientMgr.urlEncodeComps(localRootPath.relativize(f.toPath()).toString()));
-                    LOG.info("uploaded {} to {} - {}", f, storageURL, remoteFile);
-                    return remoteFile;
-                })
                 .collect(Collectors.toList());
+        long totalBytes = files.stream().mapToLong(File::length).sum();
+
+        LOG.info("uploading {} files ({} bytes) to {} with {} threads", files.size(), totalBytes, storageURL, concurrency);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, files.size())),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("WebDavUploader-%d")
+                        .setDaemon(true).build());
+        AtomicLong bytesUploaded = new AtomicLong();
+        AtomicInteger filesCompleted = new AtomicInteger();
+        long startTime = System.currentTimeMillis();
+        List<Future<RemoteLocation>> futures = new ArrayList<>();
+        try {
+            for (File file : files) {
+                String storageLocation = storageClientMgr.urlEncodeComps(localRootPath.relativize(file.toPath()).toString());
+                futures.add(executor.submit(() -> {
+                    try {
+                        return uploadWithRetries(file, storageURL, storageLocation, bytesUploaded);
+                    }
+                    finally {
+                        filesCompleted.incrementAndGet();
+                    }
+                }));
+            }
+
+            List<RemoteLocation> uploaded = new ArrayList<>();
+            Map<File, Throwable> failures = new LinkedHashMap<>();
+            for (int i = 0; i < futures.size(); i++) {
+                Future<RemoteLocation> future = futures.get(i);
+                while (true) {
+                    try {
+                        uploaded.add(future.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+                        break;
+                    }
+                    catch (TimeoutException e) {
+                        if (isCancelled != null && isCancelled.getAsBoolean()) {
+                            throw new CancellationException();
+                        }
+                        reportProgress(progressListener, filesCompleted.get(), files.size(), bytesUploaded.get(), totalBytes, startTime);
+                    }
+                    catch (ExecutionException e) {
+                        failures.put(files.get(i), e.getCause());
+                        break;
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException();
+                    }
+                }
+            }
+            reportProgress(progressListener, filesCompleted.get(), files.size(), bytesUploaded.get(), totalBytes, startTime);
+
+            LOG.info("uploaded {} files to {}", uploaded.size(), storageURL);
+            if (!failures.isEmpty()) {
+                LOG.warn("failed to upload {} files to {}: {}", failures.size(), storageURL, failures.keySet());
+            }
+            return new UploadResult(uploaded, failures);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
 
-        LOG.info("uploaded {} files to {}", fileList.size(), storageURL);
-        return remoteFileList;
+    private RemoteLocation uploadWithRetries(File file, String storageURL, String storageLocation, AtomicLong bytesUploaded)
+            throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            long[] sent = new long[1];
+            try {
+                RemoteLocation remoteFile = storageClientMgr.uploadFile(file, storageURL, storageLocation, bytes -> {
+                    bytesUploaded.addAndGet(bytes - sent[0]);
+                    sent[0] = bytes;
+                });
+                LOG.info("uploaded {} to {} - {}", file, storageURL, remoteFile);
+                return remoteFile;
+            }
+            catch (RuntimeException e) {
+                // Don't count what was sent by the failed attempt
+                bytesUploaded.addAndGet(-sent[0]);
+                if (!isRetryable(e)) {
+                    LOG.error("failed to upload {}", file, e);
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    LOG.error("failed to upload {} after {} attempts", file, attempt, e);
+                    throw e;
+                }
+                long delay = retryDelayMillis << (attempt - 1);
+                LOG.warn("failed to upload {} (attempt {} of {}), retrying in {} ms", file, attempt, maxAttempts, delay, e);
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Server errors and I/O errors may be transient, but client errors (e.g. a 403 for a storage location
+     * we can't write to) and errors reading the local file will not go away by retrying.
+     */
+    static boolean isRetryable(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof WebDavException && ((WebDavException) t).getStatusCode() != null) {
+                return ((WebDavException) t).getStatusCode() >= 500;
+            }
+            if (t instanceof FileNotFoundException) {
+                return false;
+            }
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reportProgress(UploadProgressListener progressListener, int filesCompleted, int totalFiles,
+                                long bytesUploaded, long totalBytes, long startTime) {
+        if (progressListener != null) {
+            long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+            progressListener.update(filesCompleted, totalFiles, bytesUploaded, totalBytes, bytesUploaded * 1000.0 / elapsed);
+        }
     }
 
 }
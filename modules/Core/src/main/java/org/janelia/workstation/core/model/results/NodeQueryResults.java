@@ -22,14 +22,19 @@ public class NodeQueryResults extends DomainObjectSearchResults {
     public DomainObjectResultPage getPage(int page) throws Exception {
         DomainObjectResultPage resultPage = super.getPage(page);
         if (resultPage==null) {
-            resultPage = searchConfig.performSearch(page);
-            setPage(page, resultPage);
+            // Load outside of the lock, so that several pages can be loaded concurrently
+            resultPage = setPage(page, searchConfig.performSearch(page));
         }
         return resultPage;
     }
 
     @Override
-    public String toString() {
+    public DomainObjectResultPage loadPage(int page) throws Exception {
+        return searchConfig.performSearch(page);
+    }
+
+    @Override
+    public synchronized String toString() {
         return new ToStringBuilder(this)
                 .append("nodeId", searchConfig.getNode() == null ? null : searchConfig.getNode().getId())
                 .append("pages", pages)
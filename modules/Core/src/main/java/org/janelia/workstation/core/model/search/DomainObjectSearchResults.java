@@ -76,32 +76,40 @@ public class DomainObjectSearchResults implements SearchResults<DomainObject, Re
         loadedPages.add(pages.size()-1);
     }
     
-    protected final void setPage(int page, DomainObjectResultPage resultPage) {
+    /**
+     * Sets the given page, unless it was already loaded by another thread.
+     * @return the page which is now in these results
+     */
+    protected final synchronized DomainObjectResultPage setPage(int page, DomainObjectResultPage resultPage) {
+        if (loadedPages.contains(page)) {
+            return pages.get(page);
+        }
         updateNumResults(resultPage);
         while (pages.size()-1<page) {
             pages.add(null);
         }
         pages.set(page, resultPage);
         loadedPages.add(page);
+        return resultPage;
     }
     
     @Override
-    public int getNumLoadedPages() {
+    public synchronized int getNumLoadedPages() {
         return loadedPages.size();
     }
 
     @Override
-    public int getNumTotalPages() {
+    public synchronized int getNumTotalPages() {
         return (int)Math.ceil((double)numTotalResults / (double)PAGE_SIZE);
     }
 
     @Override
-    public long getNumLoadedResults() {
+    public synchronized long getNumLoadedResults() {
         return numLoadedResults;
     }
 
     @Override
-    public long getNumTotalResults() {
+    public synchronized long getNumTotalResults() {
         return numTotalResults;
     }
 
@@ -110,19 +118,32 @@ public class DomainObjectSearchResults implements SearchResults<DomainObject, Re
         return getNumLoadedPages()<getNumTotalPages();
     }
 
+    /**
+     * Returns a snapshot of the pages, since pages may be set by other threads while the caller iterates.
+     */
     @Override
-    public List<DomainObjectResultPage> getPages() {
-        return pages;
+    public synchronized List<DomainObjectResultPage> getPages() {
+        return new ArrayList<>(pages);
     }
 
     @Override
-    public DomainObjectResultPage getPage(int page) throws Exception {
+    public synchronized DomainObjectResultPage getPage(int page) throws Exception {
         if (page>pages.size()-1 || page<0) {
             return null;
         }
         return pages.get(page);
     }
 
+    @Override
+    public synchronized boolean isPageLoaded(int page) {
+        return loadedPages.contains(page);
+    }
+
+    @Override
+    public void addLoadedPage(int page, ResultPage<DomainObject, Reference> resultPage) {
+        setPage(page, (DomainObjectResultPage) resultPage);
+    }
+
     @Override
     public boolean isAllLoaded() {
         return getNumTotalPages()==getNumLoadedPages();
@@ -139,10 +160,10 @@ public class DomainObjectSearchResults implements SearchResults<DomainObject, Re
         log.debug("Updated numFound to {}", numTotalResults);
     }
 
-    public boolean updateIfFound(DomainObject domainObject) {
+    public synchronized boolean updateIfFound(DomainObject domainObject) {
 
         boolean updated = false;
-        for(final DomainObjectResultPage page : getPages()) {
+        for(final DomainObjectResultPage page : pages) {
             if (page==null) continue; // Page not yet loaded
             final DomainObject pageObject = page.getObjectById(Reference.createFor(domainObject));
             if (pageObject!=null) {
@@ -159,7 +180,7 @@ public class DomainObjectSearchResults implements SearchResults<DomainObject, Re
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return new ToStringBuilder(this)
                 .append("pages", pages)
                 .append("loadedPages", loadedPages)
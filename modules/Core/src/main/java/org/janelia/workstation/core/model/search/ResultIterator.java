@@ -132,7 +132,9 @@ public class ResultIterator<T,S> implements Iterator<T> {
         if (bias == Position.Bias.Backward) {
             currIndex--;
             if (currIndex<0) {
-                currIndex = pageSize;
+                // The previous page may be larger than the current one, so start past its end
+                // and let next() clamp the index once the page size is known
+                currIndex = PAGE_SIZE;
                 currPage--;
                 if (currPage<0) {
                     currPage = searchResults.getNumTotalPages()-1;
@@ -151,6 +153,22 @@ public class ResultIterator<T,S> implements Iterator<T> {
         }
     }
 
+    int getStartPage() {
+        return startPage;
+    }
+
+    int getStartIndex() {
+        return startIndex;
+    }
+
+    Position.Bias getBias() {
+        return bias;
+    }
+
+    boolean isSkipStartingIndex() {
+        return skipStartingIndex;
+    }
+
     /**
      * Returns the index of the page containing the last result returned by getNext().
      * @return 0-indexed page number
@@ -1,13 +1,35 @@
 package org.janelia.workstation.core.model.search;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.text.Position;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+
 /**
  * Searches a ResultIterator to find objects matching some string
- * 
+ *
  * @author <a href="mailto:rokickik@janelia.hhmi.org">Konrad Rokicki</a>
  */
 public abstract class ResultIteratorFind<T,S> {
 
+    private static final int FIND_THREADS = ConsoleProperties.getInt("console.results.findThreads", 4);
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(FIND_THREADS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("ResultIteratorFind-%d")
+                    .setDaemon(true).build());
+
     private final ResultIterator<T,S> resultIterator;
+    private int matchPage = -1;
 
     public ResultIteratorFind(ResultIterator<T,S> resultIterator) {
         this.resultIterator = resultIterator;
@@ -23,12 +45,133 @@ public abstract class ResultIteratorFind<T,S> {
         while (resultIterator.hasNext()) {
             T object = resultIterator.next();
             if (object!=null && matches(resultIterator.getCurrResultPage(), object)) {
+                matchPage = resultIterator.getCurrPage();
+                return object;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Execute the search and return the first matching object found, in the same order as find(). Unlike find(),
+     * this method loads and scans several pages concurrently, so matches on distant pages are found without
+     * waiting for each intervening page in turn. It may request additional results from the server and thus
+     * should be run in a background thread.
+     * @return first match, or null if no match is found
+     */
+    public T findInParallel() throws Exception {
+
+        SearchResults<T,S> searchResults = resultIterator.searchResults;
+        int numPages = searchResults.getNumTotalPages();
+        if (numPages<=1 || !resultIterator.hasNext()) {
+            return find();
+        }
+
+        int startPage = resultIterator.getStartPage();
+        int step = resultIterator.getBias()==Position.Bias.Backward ? -1 : 1;
+
+        // The start page is scanned twice: first from the starting index onwards,
+        // and finally from the beginning up to the starting index, after wrapping around.
+        int numSegments = numPages+1;
+        int window = FIND_THREADS * 2;
+        Deque<Future<T>> inFlight = new ArrayDeque<>();
+        Deque<Integer> inFlightPages = new ArrayDeque<>();
+        int nextSegment = 0;
+
+        try {
+            while (nextSegment<numSegments || !inFlight.isEmpty()) {
+
+                while (nextSegment<numSegments && inFlight.size()<window) {
+                    int segment = nextSegment++;
+                    int page = Math.floorMod(startPage + step * segment, numPages);
+                    boolean head = segment==0;
+                    boolean tail = segment==numSegments-1;
+                    inFlight.add(executor.submit(() -> scanPage(page, head, tail)));
+                    inFlightPages.add(page);
+                }
+
+                T match;
+                try {
+                    match = inFlight.poll().get();
+                }
+                catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+                int page = inFlightPages.poll();
+                if (match!=null) {
+                    matchPage = page;
+                    return match;
+                }
+            }
+        }
+        finally {
+            for (Future<T> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Scan part of a page in iteration order.
+     * @param page 0-indexed page number
+     * @param head true if this is the first visit of the start page, which begins at the starting index
+     * @param tail true if this is the final visit of the start page, which ends at the starting index
+     * @return the first matching object, or null
+     */
+    private T scanPage(int page, boolean head, boolean tail) throws Exception {
+
+        ResultPage<T,S> resultPage = getPage(page);
+        List<T> objects = resultPage.getObjects();
+        if (objects.isEmpty()) {
+            return null;
+        }
+
+        boolean backward = resultIterator.getBias()==Position.Bias.Backward;
+        boolean skip = resultIterator.isSkipStartingIndex();
+        int startIndex = Math.min(resultIterator.getStartIndex(), objects.size()-1);
+        int from = backward ? objects.size()-1 : 0;
+        int to = backward ? 0 : objects.size()-1;
+        int step = backward ? -1 : 1;
+
+        if (head) {
+            from = skip ? startIndex+step : startIndex;
+        }
+        if (tail) {
+            to = skip ? startIndex : startIndex-step;
+        }
+
+        for (int i = from; backward ? i>=to : i<=to; i += step) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            T object = objects.get(i);
+            if (object!=null && matches(resultPage, object)) {
                 return object;
             }
         }
         return null;
     }
 
+    /**
+     * Returns the index of the page containing the match returned by the last call to find() or findInParallel().
+     * @return 0-indexed page number, or -1 if nothing was found
+     */
+    public int getMatchPage() {
+        return matchPage;
+    }
+
+    /**
+     * Returns the given page of results. Override this to load pages through a cache.
+     * @param page 0-indexed page number
+     * @return loaded result page
+     */
+    protected ResultPage<T,S> getPage(int page) throws Exception {
+        return resultIterator.searchResults.getPage(page);
+    }
+
     /**
      * Implement this method to describe how an object should be matched.
      * @param resultPage the result page containing the object
@@ -0,0 +1,134 @@
+package org.janelia.workstation.core.model.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads result pages in the background before the user navigates to them.
+ *
+ * Prefetched pages are held in a bounded cache, and are only added to the search results once they are
+ * requested with getPage. This way, pages which are never shown do not count as loaded, and do not
+ * receive object updates while they sit in the cache.
+ */
+public class ResultPagePrefetcher<T,S> {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultPagePrefetcher.class);
+
+    private static final int PREFETCH_THREADS = ConsoleProperties.getInt("console.results.prefetchThreads", 2);
+    private static final int MAX_PREFETCHED_PAGES = ConsoleProperties.getInt("console.results.maxPrefetchedPages", 4);
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(PREFETCH_THREADS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("ResultPagePrefetcher-%d")
+                    .setDaemon(true).build());
+
+    private final SearchResults<T,S> searchResults;
+    private final Map<Integer, Future<ResultPage<T,S>>> prefetched;
+
+    public ResultPagePrefetcher(SearchResults<T,S> searchResults) {
+        this(searchResults, MAX_PREFETCHED_PAGES);
+    }
+
+    public ResultPagePrefetcher(SearchResults<T,S> searchResults, int maxPrefetchedPages) {
+        this.searchResults = searchResults;
+        // Access-ordered, so that the least recently requested page is evicted first
+        this.prefetched = new LinkedHashMap<Integer, Future<ResultPage<T,S>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Future<ResultPage<T,S>>> eldest) {
+                if (size() > maxPrefetchedPages) {
+                    eldest.getValue().cancel(false);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public SearchResults<T,S> getSearchResults() {
+        return searchResults;
+    }
+
+    /**
+     * Returns the given page, waiting for it if it is currently being prefetched, or loading it otherwise.
+     * This method may call the server and thus should be run in a background thread.
+     * @param page 0-indexed page number
+     * @return loaded result page
+     */
+    public ResultPage<T,S> getPage(int page) throws Exception {
+        awaitPage(page);
+        return searchResults.getPage(page);
+    }
+
+    /**
+     * If the given page has been prefetched, wait for it to finish loading and add it to the search results,
+     * so that a subsequent call to SearchResults.getPage will not need to load it again.
+     * @param page 0-indexed page number
+     */
+    public void awaitPage(int page) throws InterruptedException {
+        Future<ResultPage<T,S>> future;
+        synchronized (prefetched) {
+            future = prefetched.remove(page);
+        }
+        if (future==null || future.isCancelled()) {
+            return;
+        }
+        try {
+            ResultPage<T,S> resultPage = future.get();
+            if (resultPage!=null) {
+                searchResults.addLoadedPage(page, resultPage);
+            }
+        }
+        catch (ExecutionException e) {
+            // The page will be loaded again by the caller, which will surface any persistent error
+            log.warn("Error prefetching page {}", page, e.getCause());
+        }
+    }
+
+    /**
+     * Prefetch the pages on either side of the given page.
+     * @param page 0-indexed page number of the page being shown
+     */
+    public void prefetchAround(int page) {
+        prefetch(page+1);
+        prefetch(page-1);
+    }
+
+    /**
+     * Start loading the given page in the background, unless it is already loaded or being loaded.
+     * @param page 0-indexed page number
+     */
+    public void prefetch(int page) {
+        if (page<0 || page>=searchResults.getNumTotalPages() || searchResults.isPageLoaded(page)) {
+            return;
+        }
+        synchronized (prefetched) {
+            if (prefetched.containsKey(page)) {
+                return;
+            }
+            log.debug("Prefetching page {}", page);
+            prefetched.put(page, executor.submit(() -> searchResults.loadPage(page)));
+        }
+    }
+
+    /**
+     * Cancel any outstanding prefetches and discard the prefetched pages.
+     */
+    public void clear() {
+        synchronized (prefetched) {
+            for (Future<ResultPage<T,S>> future : prefetched.values()) {
+                future.cancel(false);
+            }
+            prefetched.clear();
+        }
+    }
+}
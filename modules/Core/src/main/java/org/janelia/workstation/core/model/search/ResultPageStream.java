@@ -0,0 +1,97 @@
+package org.janelia.workstation.core.model.search;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams every page of a result set in order, for consumers such as exports which visit each page once.
+ *
+ * While the caller processes a page, the next page is loaded in the background. Pages which are not already
+ * loaded are fetched with SearchResults.loadPage, so they are not retained by the search results, and at most
+ * two pages are held in memory at any time.
+ *
+ * This stream may call the server to load results, so it should only be used in a background worker thread.
+ */
+public class ResultPageStream<T,S> implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultPageStream.class);
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("ResultPageStream-%d")
+                    .setDaemon(true).build());
+
+    private final SearchResults<T,S> searchResults;
+    private final int numPages;
+    private int nextPage = 0;
+    private Future<ResultPage<T,S>> pending;
+
+    public ResultPageStream(SearchResults<T,S> searchResults) {
+        this.searchResults = searchResults;
+        this.numPages = searchResults.getNumTotalPages();
+        this.pending = fetch(nextPage);
+    }
+
+    /**
+     * Returns the next page of results, and starts loading the page after it.
+     * @return the next result page, or null if there are no more results
+     */
+    public ResultPage<T,S> nextPage() throws Exception {
+
+        if (pending==null) {
+            return null;
+        }
+
+        ResultPage<T,S> resultPage;
+        try {
+            resultPage = pending.get();
+        }
+        catch (ExecutionException e) {
+            pending = null;
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+
+        if (resultPage==null || resultPage.getObjects().isEmpty()) {
+            // Pages past the end of the results are empty, because the page count can be
+            // an overestimate when the search uses a larger page size than PAGE_SIZE
+            log.debug("Reached end of results at page {}", nextPage);
+            pending = null;
+            return null;
+        }
+
+        nextPage++;
+        pending = fetch(nextPage);
+        return resultPage;
+    }
+
+    private Future<ResultPage<T,S>> fetch(int page) {
+        if (page>=numPages) {
+            return null;
+        }
+        return executor.submit(() -> {
+            if (searchResults.isPageLoaded(page)) {
+                return searchResults.getPage(page);
+            }
+            return searchResults.loadPage(page);
+        });
+    }
+
+    /**
+     * Cancel loading of the next page.
+     */
+    @Override
+    public void close() {
+        if (pending!=null) {
+            pending.cancel(true);
+            pending = null;
+        }
+    }
+}
@@ -138,7 +138,7 @@ public class SearchConfiguration {
         return searchAttrs.get(name);
     }
     
-    public List<FacetValue> getFacetValues(String facetKey) {
+    public synchronized List<FacetValue> getFacetValues(String facetKey) {
         return facetValues.get(facetKey);
     }
 
@@ -355,10 +355,14 @@ public class SearchConfiguration {
 
         StopWatch stopWatch = new LoggingStopWatch();
 
-        query.setStart(pageSize * page);
-        query.setRows(pageSize);
+        // Pages may be prefetched concurrently, so the shared query must only be modified under a lock
+        DocumentSearchParams queryParams;
+        synchronized (this) {
+            query.setStart(pageSize * page);
+            query.setRows(pageSize);
+            queryParams = SolrQueryBuilder.serializeSolrQuery(query);
+        }
         DomainModel model = DomainMgr.getDomainMgr().getModel();
-        DocumentSearchParams queryParams = SolrQueryBuilder.serializeSolrQuery(query);
         DocumentSearchResults results = model.search(queryParams);
 
         List<Reference> refs = new ArrayList<>();
@@ -378,18 +382,20 @@ public class SearchConfiguration {
             
             numFound = results.getNumFound();
 
-            facetValues.clear();
-            if (results.getFacetValues()!=null) {
+            synchronized (this) {
+                facetValues.clear();
+                if (results.getFacetValues()!=null) {
 
-                // Sort each facet list in place. The mutability isn't great, but no one else will see this list.
-                for(String facet : results.getFacetValues().keySet()) {
-                    List<FacetValue> facetValueList = results.getFacetValues().get(facet);
-                    facetValueList.sort((o1, o2) -> ComparisonChain.start()
-                            .compare(o1.getValue(), o2.getValue(), Ordering.natural())
-                            .result());
-                }
+                    // Sort each facet list in place. The mutability isn't great, but no one else will see this list.
+                    for(String facet : results.getFacetValues().keySet()) {
+                        List<FacetValue> facetValueList = results.getFacetValues().get(facet);
+                        facetValueList.sort((o1, o2) -> ComparisonChain.start()
+                                .compare(o1.getValue(), o2.getValue(), Ordering.natural())
+                                .result());
+                    }
 
-                facetValues.putAll(results.getFacetValues());
+                    facetValues.putAll(results.getFacetValues());
+                }
             }
         }
 
@@ -31,5 +31,27 @@ public interface SearchResults<T,S> {
     ResultPage<T,S> getPage(int page) throws Exception;
 
     boolean updateIfFound(T object);
+
+    /**
+     * Returns true if the given page is available without having to load it.
+     */
+    default boolean isPageLoaded(int page) {
+        return true;
+    }
+
+    /**
+     * Loads the given page without adding it to these results. This is used for prefetching pages which
+     * may never be shown. Pages which are kept should be added with addLoadedPage.
+     */
+    default ResultPage<T,S> loadPage(int page) throws Exception {
+        return getPage(page);
+    }
+
+    /**
+     * Adds a page which was loaded with loadPage. If the page was loaded in the meantime, the existing
+     * page is kept.
+     */
+    default void addLoadedPage(int page, ResultPage<T,S> resultPage) {
+    }
    
 }
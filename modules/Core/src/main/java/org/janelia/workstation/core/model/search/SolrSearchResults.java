@@ -18,9 +18,14 @@ public class SolrSearchResults extends DomainObjectSearchResults {
     public DomainObjectResultPage getPage(int page) throws Exception {
         DomainObjectResultPage resultPage = super.getPage(page);
         if (resultPage==null) {
-            resultPage = searchConfig.performSearch(page);
-            setPage(page, resultPage);
+            // Load outside of the lock, so that several pages can be loaded concurrently
+            resultPage = setPage(page, searchConfig.performSearch(page));
         }
         return resultPage;
     }
+
+    @Override
+    public DomainObjectResultPage loadPage(int page) throws Exception {
+        return searchConfig.performSearch(page);
+    }
 }
@@ -267,6 +267,11 @@ public class ConsoleProperties extends ConfigProperties {
         return ConsoleProperties.getString("console.localCache.rootDirectory", StringUtils.appendIfMissing(consolePrefsDir, "/") + ".lvv-out-of-sync-neurons");
     }
 
+    public static String getActivityLogSpoolDir() {
+        String consolePrefsDir = System.getProperty("user.home") + ConsoleProperties.getString("Console.Home.Path");
+        return ConsoleProperties.getString("console.activityLog.spoolDirectory", StringUtils.appendIfMissing(consolePrefsDir, "/") + ".activity-log-spool");
+    }
+
     /**
      * This method is responsible for loading the property file represented by propertiesFileName
      * into properties passed in.
@@ -1,29 +1,39 @@
 package org.janelia.workstation.core.util;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
 /**
- * An constrained-size image cache with an LRU eviction policy.
+ * An constrained-size image cache with an LRU eviction policy. The size is
+ * constrained by the estimated heap footprint of the cached images, not by
+ * their number, so a few full-size images can't crowd out hundreds of thumbnails.
+ * The bound defaults to 512 MB and is set with console.images.cacheMegabytes.
+ * Values are still softly referenced, as they were with the count bound, so
+ * the images can be reclaimed under memory pressure before the bound is reached.
  *
  * @author <a href="mailto:rokickik@janelia.hhmi.org">Konrad Rokicki</a>
  */
 public class ImageCache {
 
-    private static final int MAX_NUM_IMAGES = 500; // 500 images total
+    private static final String MAX_MEGABYTES_PROPERTY = "console.images.cacheMegabytes";
+    private static final long MAX_BYTES = ConsoleProperties.getLong(MAX_MEGABYTES_PROPERTY, 512L) * 1024 * 1024;
     private final Cache<String, BufferedImage> cache;
 
     public ImageCache() {
-        this(MAX_NUM_IMAGES);
+        this(MAX_BYTES);
     }
 
-    public ImageCache(int size) {
+    public ImageCache(long maxBytes) {
         this.cache = CacheBuilder.newBuilder()
                 .concurrencyLevel(16)
-                .maximumSize(size)
+                .maximumWeight(maxBytes)
+                .weigher((String identifier, BufferedImage image) -> getSizeInBytes(image))
                 .softValues()
+                .recordStats()
                 .build();
     }
 
@@ -44,4 +54,18 @@ public class ImageCache {
     public void invalidateAll() {
         cache.invalidateAll();
     }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Estimate the heap footprint of the given image, based on its raster's data buffer.
+     */
+    public static int getSizeInBytes(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        long bytes = (long) dataBuffer.getSize() * dataBuffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes));
+    }
 }
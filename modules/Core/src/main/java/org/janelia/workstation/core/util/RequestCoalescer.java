@@ -0,0 +1,220 @@
+package org.janelia.workstation.core.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces concurrent requests for values by key. Callers asking for a key which is already being loaded
+ * wait for the same load, and keys requested within a short window of each other are loaded together
+ * in a single batch.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class RequestCoalescer<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    /**
+     * Loads a batch of values. Keys with no value may simply be omitted from the result.
+     */
+    public interface BatchLoader<K, V> {
+        List<V> load(List<K> keys) throws Exception;
+    }
+
+    private final BatchLoader<K, V> loader;
+    private final Function<V, K> keyFunction;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService executor;
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Object pendingLock = new Object();
+    private List<K> pending = new ArrayList<>();
+    private boolean flushScheduled = false;
+
+    // Statistics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedKeys = new AtomicLong();
+    private final AtomicLong maxObservedBatchSize = new AtomicLong();
+
+    /**
+     * @param name name used for the loader threads
+     * @param loader loads batches of values
+     * @param keyFunction returns the key for a loaded value
+     * @param windowMillis how long to wait for more requests before loading a batch
+     * @param maxBatchSize largest number of keys loaded in one batch
+     * @param numThreads number of batches which can be loaded concurrently
+     */
+    public RequestCoalescer(String name, BatchLoader<K, V> loader, Function<V, K> keyFunction,
+                            long windowMillis, int maxBatchSize, int numThreads) {
+        this.loader = loader;
+        this.keyFunction = keyFunction;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, numThreads),
+                new ThreadFactoryBuilder()
+                        .setNameFormat(name + "-%d")
+                        .setDaemon(true).build());
+    }
+
+    /**
+     * Returns a future for the value with the given key. If the key is already being loaded, the existing
+     * future is returned. The future completes with null if the loader returns no value for the key.
+     */
+    public CompletableFuture<V> request(K key) {
+        requests.incrementAndGet();
+        CompletableFuture<V> newFuture = new CompletableFuture<>();
+        CompletableFuture<V> future = inFlight.putIfAbsent(key, newFuture);
+        if (future != null) {
+            joined.incrementAndGet();
+            return future;
+        }
+        enqueue(key);
+        return newFuture;
+    }
+
+    /**
+     * Waits for the value with the given key, rethrowing any exception thrown by the loader.
+     */
+    public V get(K key) throws Exception {
+        try {
+            return request(key).get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void enqueue(K key) {
+        synchronized (pendingLock) {
+            pending.add(key);
+            if (pending.size() >= maxBatchSize) {
+                executor.execute(this::flush);
+            }
+            else if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flush() {
+        List<K> keys;
+        synchronized (pendingLock) {
+            if (pending.isEmpty()) {
+                flushScheduled = false;
+                return;
+            }
+            keys = pending;
+            pending = new ArrayList<>();
+            flushScheduled = false;
+        }
+        for (List<K> batch : Lists.partition(keys, maxBatchSize)) {
+            loadBatch(batch);
+        }
+    }
+
+    private void loadBatch(List<K> keys) {
+
+        batches.incrementAndGet();
+        batchedKeys.addAndGet(keys.size());
+        maxObservedBatchSize.accumulateAndGet(keys.size(), Math::max);
+        log.trace("Loading batch of {} keys", keys.size());
+
+        Map<K, V> values = new HashMap<>();
+        Exception error = null;
+        try {
+            List<V> loaded = loader.load(Collections.unmodifiableList(keys));
+            if (loaded != null) {
+                for (V value : loaded) {
+                    if (value != null) {
+                        values.put(keyFunction.apply(value), value);
+                    }
+                }
+            }
+        }
+        catch (Exception e) {
+            log.debug("Error loading batch of {} keys", keys.size(), e);
+            error = e;
+        }
+
+        for (K key : keys) {
+            // Remove before completing, so that any request after completion triggers a new load
+            CompletableFuture<V> future = inFlight.remove(key);
+            if (future == null) continue;
+            if (error != null) {
+                future.completeExceptionally(error);
+            }
+            else {
+                future.complete(values.get(key));
+            }
+        }
+    }
+
+    /**
+     * Total number of keys requested.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Number of requests which were satisfied by a load that was already in progress.
+     */
+    public long getJoinedCount() {
+        return joined.get();
+    }
+
+    /**
+     * Number of batches loaded.
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Total number of keys loaded in all batches.
+     */
+    public long getBatchedKeyCount() {
+        return batchedKeys.get();
+    }
+
+    /**
+     * Size of the largest batch loaded so far.
+     */
+    public long getMaxBatchSize() {
+        return maxObservedBatchSize.get();
+    }
+
+    public double getAverageBatchSize() {
+        long n = batches.get();
+        return n == 0 ? 0 : (double) batchedKeys.get() / n;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,192 @@
+package org.janelia.workstation.core.util;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent on-disk cache of downscaled images, keyed by the original file path and the
+ * thumbnail width. Thumbnails are stored as PNG files in a flat directory inside the local
+ * file cache. When the directory grows beyond its capacity, the least recently used
+ * thumbnails are deleted in the background.
+ *
+ * Display sizes are bucketed (see {@link #getThumbnailWidth(int)}) so that small changes to the
+ * image size slider reuse the same thumbnails.
+ */
+public class ThumbnailCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    private static final String ENABLED_PROPERTY = "console.images.thumbnailCache";
+    private static final String MAX_MEGABYTES_PROPERTY = "console.images.thumbnailCacheMegabytes";
+    private static final String THUMBNAIL_DIR = "thumbnails";
+    private static final String THUMBNAIL_FORMAT = "png";
+    private static final int MIN_THUMBNAIL_WIDTH = 64;
+    private static final int MAX_THUMBNAIL_WIDTH = 1024;
+
+    private final Path cacheDir;
+    private final boolean enabled;
+    private final long capacityBytes;
+    private final AtomicLong currentSizeBytes = new AtomicLong(-1);
+    private final AtomicBoolean trimming = new AtomicBoolean();
+
+    public ThumbnailCache() {
+        this(Paths.get(ConsoleProperties.getLocalCacheDir(), THUMBNAIL_DIR),
+                ConsoleProperties.getBoolean(ENABLED_PROPERTY, true),
+                ConsoleProperties.getLong(MAX_MEGABYTES_PROPERTY, 1024L) * 1024 * 1024);
+    }
+
+    public ThumbnailCache(Path cacheDir, boolean enabled, long capacityBytes) {
+        this.cacheDir = cacheDir;
+        this.enabled = enabled;
+        this.capacityBytes = capacityBytes;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the thumbnail width that should be used to display an image at the given width. Widths
+     * are rounded up to the next power of two, so that the thumbnail can always be scaled down.
+     * Returns 0 if the display width is too large to benefit from a thumbnail.
+     */
+    public static int getThumbnailWidth(int displayWidth) {
+        if (displayWidth <= 0 || displayWidth > MAX_THUMBNAIL_WIDTH) {
+            return 0;
+        }
+        int width = MIN_THUMBNAIL_WIDTH;
+        while (width < displayWidth) {
+            width <<= 1;
+        }
+        return width;
+    }
+
+    /**
+     * Key used for caching a thumbnail in memory, e.g. in the {@link ImageCache}.
+     */
+    public static String getKey(String filepath, int thumbnailWidth) {
+        return filepath + "@" + thumbnailWidth;
+    }
+
+    /**
+     * Returns the cached thumbnail, or null if it's not cached.
+     */
+    public BufferedImage get(String filepath, int thumbnailWidth) {
+        if (!enabled) return null;
+        File file = getThumbnailFile(filepath, thumbnailWidth);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            BufferedImage image = ImageIO.read(file);
+            if (image != null) {
+                // Touch the file for LRU eviction
+                file.setLastModified(System.currentTimeMillis());
+            }
+            return image;
+        }
+        catch (IOException e) {
+            log.warn("Could not read cached thumbnail {}, removing it", file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the thumbnail to the cache. Failures are logged, but otherwise ignored,
+     * since the cache is only an optimization.
+     */
+    public void put(String filepath, int thumbnailWidth, BufferedImage image) {
+        if (!enabled || image == null) return;
+        File file = getThumbnailFile(filepath, thumbnailWidth);
+        try {
+            Files.createDirectories(cacheDir);
+            // Write to a temp file first, so that concurrent readers never see a partial thumbnail
+            Path tempFile = Files.createTempFile(cacheDir, file.getName(), ".tmp");
+            if (!ImageIO.write(image, THUMBNAIL_FORMAT, tempFile.toFile())) {
+                Files.deleteIfExists(tempFile);
+                return;
+            }
+            long size = Files.size(tempFile);
+            Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // The size is unknown (-1) until the first trim has scanned the directory
+            long total = currentSizeBytes.get() < 0 ? -1 : currentSizeBytes.addAndGet(size);
+            if (total < 0 || total > capacityBytes) {
+                trim();
+            }
+        }
+        catch (IOException e) {
+            log.warn("Could not cache thumbnail for {}", filepath, e);
+        }
+    }
+
+    /**
+     * Removes all cached thumbnails.
+     */
+    public void clear() {
+        File[] files = cacheDir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        currentSizeBytes.set(0);
+    }
+
+    private File getThumbnailFile(String filepath, int thumbnailWidth) {
+        String hash = Hashing.sha1().hashString(filepath, StandardCharsets.UTF_8).toString();
+        return cacheDir.resolve(hash + "_" + thumbnailWidth + "." + THUMBNAIL_FORMAT).toFile();
+    }
+
+    /**
+     * Recomputes the size of the cache and, if it's over capacity, deletes the least recently
+     * used thumbnails until it's at 80% of capacity. Runs on a daemon thread, at most one at a time.
+     */
+    private void trim() {
+        if (!trimming.compareAndSet(false, true)) return;
+        Thread thread = new Thread(() -> {
+            try {
+                File[] files = cacheDir.toFile().listFiles();
+                if (files == null) return;
+                long size = 0;
+                for (File file : files) {
+                    size += file.length();
+                }
+                if (size > capacityBytes) {
+                    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+                    long target = capacityBytes * 8 / 10;
+                    for (File file : files) {
+                        if (size <= target) break;
+                        long length = file.length();
+                        if (file.delete()) {
+                            size -= length;
+                        }
+                    }
+                    log.debug("Trimmed thumbnail cache to {} bytes", size);
+                }
+                currentSizeBytes.set(size);
+            }
+            finally {
+                trimming.set(false);
+            }
+        }, "ThumbnailCacheTrimmer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -1,6 +1,7 @@
 package org.janelia.workstation.core.util;
 
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 import com.twelvemonkeys.imageio.stream.ByteArrayImageInputStream;
 import loci.common.ByteArrayHandle;
 import loci.common.Location;
@@ -8,11 +9,11 @@ import loci.formats.FormatException;
 import loci.formats.IFormatReader;
 import loci.formats.gui.BufferedImageReader;
 import loci.formats.in.*;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.io.IOUtils;
 import org.janelia.filecacheutils.FileProxy;
 import org.janelia.workstation.core.api.FileMgr;
 import org.janelia.workstation.core.options.OptionConstants;
+import org.janelia.workstation.core.util.compression.BZip2CompressionAlgorithm;
 import org.janelia.workstation.core.workers.BackgroundWorker;
 import org.janelia.workstation.core.workers.IndeterminateProgressMonitor;
 import org.janelia.workstation.core.workers.SimpleWorker;
@@ -23,6 +24,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
 import javax.swing.*;
 import java.awt.*;
@@ -43,6 +46,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -105,6 +109,54 @@ public class Utils {
         return image;
     }
 
+    /**
+     * Read an image at reduced resolution. If there is an ImageIO reader for the format, the image
+     * is decoded with source subsampling, so that only about every Nth pixel of every Nth row is
+     * decoded, where N is the largest factor that still keeps the width at or above the target width.
+     * Otherwise, this falls back to a full decode.
+     *
+     * @param inputStream stream with the encoded image
+     * @param format file extension of the image
+     * @param targetWidth smallest acceptable width of the result, or 0 for full resolution
+     * @return decoded image, which is usually somewhat larger than the target width
+     */
+    public static BufferedImage readImageFromInputStream(InputStream inputStream, String format, int targetWidth) {
+        if (inputStream==null) return null;
+        byte[] imageBytes;
+        try {
+            imageBytes = ByteStreams.toByteArray(inputStream);
+        } catch (Exception e) {
+            throw new IllegalStateException("Error reading the image stream", e);
+        }
+        if (targetWidth > 0) {
+            try (ImageInputStream imageInputStream = new ByteArrayImageInputStream(imageBytes)) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+                if (readers.hasNext()) {
+                    ImageReader reader = readers.next();
+                    try {
+                        reader.setInput(imageInputStream, true, true);
+                        ImageReadParam param = reader.getDefaultReadParam();
+                        int subsampling = Math.max(1, reader.getWidth(0) / targetWidth);
+                        if (subsampling > 1) {
+                            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                        }
+                        BufferedImage image = reader.read(0, param);
+                        if (image != null) {
+                            return image;
+                        }
+                    }
+                    finally {
+                        reader.dispose();
+                    }
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                log.debug("Could not decode subsampled {} image, falling back to full decode", format, e);
+            }
+        }
+        return readImageFromInputStream(new ByteArrayInputStream(imageBytes), format);
+    }
+
     private static BufferedImage readWithImageIOFromInputStream(ImageInputStream imageInputStream) throws IOException {
         // Supports GIF, PNG, JPEG, BMP, and WBMP
         return ImageIO.read(imageInputStream);
@@ -450,18 +502,20 @@ public class Utils {
 
         log.info("Copying {} ({}) to {}", standardPath, fileProxy.getFileId(), destination);
         Long length;
-        int estimatedCompressionFactor;
+        CountingInputStream compressedInput = null;
+        Long compressedLength = null;
         InputStream fileProxyStream = fileProxy.openContentStream(alwaysDownload);
         try {
             if (standardPath.endsWith(EXTENSION_BZ2) &&
                     (!destination.getName().endsWith(EXTENSION_BZ2))) {
-                input = new BZip2CompressorInputStream(fileProxyStream, true);
-                log.info("Using BZip2CompressorInputStream to decompress while streaming");
-                estimatedCompressionFactor = 3;
+                // Progress is measured on the compressed side, since the decompressed size is unknown
+                compressedLength = fileProxy.estimateSizeInBytes(alwaysDownload);
+                compressedInput = new CountingInputStream(fileProxyStream);
+                input = BZip2CompressionAlgorithm.getDecompressingStream(compressedInput);
+                log.info("Using {} to decompress while streaming", input.getClass().getSimpleName());
                 length = null;
             } else {
                 input = fileProxyStream;
-                estimatedCompressionFactor = 1;
                 length = fileProxy.estimateSizeInBytes(alwaysDownload);
             }
         } catch (Exception e) {
@@ -476,7 +530,7 @@ public class Utils {
 
         FileOutputStream output = new FileOutputStream(destination);
         try {
-            final long totalBytesWritten = copy(input, output, length, worker, estimatedCompressionFactor, hasProgress);
+            final long totalBytesWritten = copy(input, output, length, worker, compressedInput, compressedLength, hasProgress);
             log.info("Finished copy {} bytes from {} ({}) to {}", totalBytesWritten, standardPath, fileProxy.getFileId(), destination);
             if (length != null && totalBytesWritten < length) {
                 throw new CancellationException("Bytes written (" + totalBytesWritten + ") for " + fileProxy.getFileId() +
@@ -513,17 +567,19 @@ public class Utils {
             Long length = source.length();
             log.info("copyURLToFile: length={}, source={}", length, source);
     
-            int estimatedCompressionFactor = 1;
+            CountingInputStream compressedInput = null;
+            Long compressedLength = null;
             if (source.getName().endsWith(EXTENSION_BZ2) &&
                     (! destination.getName().endsWith(EXTENSION_BZ2))) {
-                input = new BZip2CompressorInputStream(input, true);
-                estimatedCompressionFactor = 3;
+                compressedInput = new CountingInputStream(new BufferedInputStream(input));
+                compressedLength = length;
+                input = BZip2CompressionAlgorithm.getDecompressingStream(compressedInput);
                 length = null;
             }
     
             output = new FileOutputStream(destination);
             
-            final long totalBytesWritten = copy(input, output, length, worker, estimatedCompressionFactor, hasProgress);
+            final long totalBytesWritten = copy(input, output, length, worker, compressedInput, compressedLength, hasProgress);
             if (totalBytesWritten < source.length()) {
                 throw new CancellationException("Bytes written (" + totalBytesWritten + ") for " + destination +
                                       " is less than source length (" + length + ")");
@@ -541,9 +597,12 @@ public class Utils {
 
     /**
      * Adapted from Apache's commons-io, so that we could add progress percentage and status.
+     *
+     * If the input is decompressed from a compressed stream, the length is unknown, and progress is instead
+     * measured by how much of the compressed stream has been consumed, if its length is known.
      */
     private static long copy(InputStream input, FileOutputStream output, Long length,
-                             SimpleWorker worker, int estimatedCompressionFactor, 
+                             SimpleWorker worker, CountingInputStream compressedInput, Long compressedLength,
                              boolean hasProgress) throws IOException {
 
         BackgroundWorker backgroundWorker;
@@ -564,7 +623,7 @@ public class Utils {
         }
 
         final long startTime = System.currentTimeMillis();
-        final long estimatedLength = length == null ? 1 : estimatedCompressionFactor * length;
+        final long estimatedLength = length == null ? 1 : length;
         long totalBytesWritten = 0;
         
         if (length != null) {
@@ -603,7 +662,10 @@ public class Utils {
        
                             totalBytesWrittenAtLastStatusUpdate = totalBytesWritten;
     
-                            if (totalBytesWritten < estimatedLength) {
+                            if (compressedInput != null && compressedLength != null && compressedLength > 0) {
+                                worker.setProgress(Math.min(compressedInput.getCount(), compressedLength), compressedLength);
+                            }
+                            else if (totalBytesWritten < estimatedLength) {
                                 worker.setProgress(totalBytesWritten, estimatedLength);
                             }
         
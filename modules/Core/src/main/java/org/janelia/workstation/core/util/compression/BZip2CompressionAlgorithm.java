@@ -0,0 +1,155 @@
+package org.janelia.workstation.core.util.compression;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.janelia.workstation.integration.spi.compression.CompressionAlgorithm;
+import org.janelia.workstation.integration.spi.compression.CompressionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decompresses bzip2 files, using all available cores.
+ */
+public class BZip2CompressionAlgorithm implements CompressionAlgorithm {
+
+    private static final Logger log = LoggerFactory.getLogger(BZip2CompressionAlgorithm.class);
+
+    public static final String TARGET_EXTENSION = ".bz2";
+
+    /**
+     * Returns a stream which decompresses the given bzip2 stream, in parallel if there are multiple cores.
+     */
+    public static InputStream getDecompressingStream(InputStream in) throws IOException {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        if (numThreads > 1) {
+            return new ParallelBZip2InputStream(in, numThreads);
+        }
+        return new BZip2CompressorInputStream(in, true);
+    }
+
+    @Override
+    public boolean canDecompress(File infile) {
+        return infile.getName().endsWith(TARGET_EXTENSION);
+    }
+
+    @Override
+    public File getCompressedNameForFile(File decompressedFile) {
+        return new File(decompressedFile.getParentFile(), decompressedFile.getName() + TARGET_EXTENSION);
+    }
+
+    @Override
+    public File getDecompressedNameForFile(File compressedFile) {
+        String fileName = compressedFile.getName();
+        if (fileName.endsWith(TARGET_EXTENSION)) {
+            return new File(compressedFile.getParentFile(), fileName.substring(0, fileName.length() - TARGET_EXTENSION.length()));
+        }
+        return null;
+    }
+
+    /**
+     * Decompresses the file next to the compressed file if possible, or into a temporary directory otherwise.
+     */
+    @Override
+    public File decompressAsFile(File infile) throws CompressionException {
+        if (!canDecompress(infile)) {
+            throw new CompressionException("Not a bzip2 file: " + infile);
+        }
+        File outfile = getDecompressedNameForFile(infile);
+        File parentDir = infile.getAbsoluteFile().getParentFile();
+        try {
+            if (parentDir == null || !parentDir.canWrite()) {
+                File tempDir = Files.createTempDirectory("bz2").toFile();
+                tempDir.deleteOnExit();
+                outfile = new File(tempDir, outfile.getName());
+                outfile.deleteOnExit();
+            }
+            log.debug("Decompressing {} to {}", infile, outfile);
+            try (InputStream in = getDecompressingStream(new BufferedInputStream(new FileInputStream(infile)));
+                 OutputStream out = new FileOutputStream(outfile)) {
+                IOUtils.copyLarge(in, out);
+            }
+            return outfile;
+        }
+        catch (IOException e) {
+            throw new CompressionException(e);
+        }
+    }
+
+    @Override
+    public byte[] decompressAsBytes(File infile) throws CompressionException {
+        try (InputStream in = getDecompressingStream(new BufferedInputStream(new FileInputStream(infile)))) {
+            return IOUtils.toByteArray(in);
+        }
+        catch (IOException e) {
+            throw new CompressionException(e);
+        }
+    }
+
+    @Override
+    public byte[] decompressAsBytes(byte[] inbytes) throws CompressionException {
+        try (InputStream in = getDecompressingStream(new ByteArrayInputStream(inbytes))) {
+            return IOUtils.toByteArray(in);
+        }
+        catch (IOException e) {
+            throw new CompressionException(e);
+        }
+    }
+
+    @Override
+    public byte[] decompressIntoByteBuf(File infile, byte[] outbytes) throws CompressionException {
+        try (InputStream in = getDecompressingStream(new BufferedInputStream(new FileInputStream(infile)))) {
+            return readInto(in, outbytes);
+        }
+        catch (IOException e) {
+            throw new CompressionException(e);
+        }
+    }
+
+    @Override
+    public byte[] decompressIntoByteBuf(byte[] inbytes, byte[] outbytes) throws CompressionException {
+        try (InputStream in = getDecompressingStream(new ByteArrayInputStream(inbytes))) {
+            return readInto(in, outbytes);
+        }
+        catch (IOException e) {
+            throw new CompressionException(e);
+        }
+    }
+
+    /**
+     * Reads the stream into the given buffer, if the data fills it exactly. Otherwise, a new buffer of the
+     * right size is returned, so that the caller never sees stale bytes past the end of the data.
+     */
+    private byte[] readInto(InputStream in, byte[] outbytes) throws IOException {
+        if (outbytes == null) {
+            return IOUtils.toByteArray(in);
+        }
+        int n = IOUtils.read(in, outbytes);
+        if (n < outbytes.length) {
+            log.debug("Buffer of {} bytes is larger than the {} bytes of decompressed data", outbytes.length, n);
+            return Arrays.copyOf(outbytes, n);
+        }
+        int next = in.read();
+        if (next < 0) {
+            return outbytes;
+        }
+        // The buffer was too small, so fall back to a new buffer
+        log.warn("Buffer of {} bytes is too small for decompressed data, allocating a new buffer", outbytes.length);
+        byte[] rest = IOUtils.toByteArray(in);
+        byte[] all = new byte[outbytes.length + 1 + rest.length];
+        System.arraycopy(outbytes, 0, all, 0, outbytes.length);
+        all[outbytes.length] = (byte) next;
+        System.arraycopy(rest, 0, all, outbytes.length + 1, rest.length);
+        return all;
+    }
+}
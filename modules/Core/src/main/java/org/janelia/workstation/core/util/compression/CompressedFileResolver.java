@@ -33,6 +33,8 @@ public class CompressedFileResolver implements CompressedFileResolverI {
             log.error("Error instantiating Mj2ExecutableCompressionAlgorithm: "+e.getMessage());
         }
 
+        chain.add(new BZip2CompressionAlgorithm());
+
         try {
             chain.add( new TrivialCompression() );
         }
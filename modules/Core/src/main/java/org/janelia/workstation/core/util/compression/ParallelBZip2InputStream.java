@@ -0,0 +1,568 @@
+package org.janelia.workstation.core.util.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decompresses a bzip2 stream using multiple threads.
+ *
+ * A bzip2 stream is a sequence of independently compressed blocks, each starting with a 48-bit magic number
+ * at an arbitrary bit offset. A reader thread scans the compressed input for the block boundaries, and each
+ * block is wrapped into a standalone single-block bzip2 stream which is decompressed on a worker pool. The
+ * decompressed blocks are returned from this stream in their original order. Concatenated streams (as
+ * written by pbzip2) are supported.
+ *
+ * The block magic can also occur by chance inside the compressed data. A block which was split at such a
+ * false boundary fails to decompress (every block carries a CRC), in which case it's merged with the following
+ * blocks until it decompresses successfully.
+ *
+ * Only a bounded number of blocks are in flight at any time, so memory use does not depend on the size of the
+ * input.
+ */
+public class ParallelBZip2InputStream extends InputStream {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelBZip2InputStream.class);
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = 0xFFFFFFFFFFFFL;
+    private static final int MAGIC_BITS = 48;
+    private static final int CRC_BITS = 32;
+    private static final int HEADER_BYTES = 4;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // Give up on merging blocks after this many, the data is probably corrupt
+    private static final int MAX_MERGED_BLOCKS = 8;
+
+    private static final Block END_OF_STREAM = new Block(null, 0, 0, 0, null);
+
+    // For each value of the 16 bits preceding the last 40 scanned bits, a mask of the bit offsets k at
+    // which the first byte of a marker appears, i.e. where a marker could end k bits before the scan position
+    private static final byte[] CANDIDATE_OFFSETS = new byte[1 << 16];
+    static {
+        int blockMagicHead = (int) (BLOCK_MAGIC >>> 40);
+        int eosMagicHead = (int) (EOS_MAGIC >>> 40);
+        for (int h = 0; h < CANDIDATE_OFFSETS.length; h++) {
+            int mask = 0;
+            for (int k = 0; k < 8; k++) {
+                int head = (h >>> k) & 0xFF;
+                if (head == blockMagicHead || head == eosMagicHead) {
+                    mask |= 1 << k;
+                }
+            }
+            CANDIDATE_OFFSETS[h] = (byte) mask;
+        }
+    }
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final BlockingQueue<Block> blocks;
+    private final Thread scannerThread;
+
+    private volatile IOException scanError;
+    private volatile boolean closed = false;
+
+    private Block pendingBlock;
+    private byte[] current = new byte[0];
+    private int currentPos = 0;
+    private boolean eof = false;
+
+    public ParallelBZip2InputStream(InputStream in) {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelBZip2InputStream(InputStream in, int numThreads) {
+        this.in = in;
+        int threads = Math.max(1, numThreads);
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("BZip2Decoder-%d")
+                .setDaemon(true).build());
+        // Bound the number of compressed and decompressed blocks held in memory
+        this.blocks = new ArrayBlockingQueue<>(2 * threads);
+        this.scannerThread = new Thread(this::scan, "BZip2BlockScanner");
+        scannerThread.setDaemon(true);
+        scannerThread.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (currentPos >= current.length) {
+            if (eof || !nextBlock()) {
+                eof = true;
+                return -1;
+            }
+        }
+        int n = Math.min(len, current.length - currentPos);
+        System.arraycopy(current, currentPos, b, off, n);
+        currentPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - currentPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        scannerThread.interrupt();
+        executor.shutdownNow();
+        blocks.clear();
+        in.close();
+    }
+
+    /**
+     * Load the next decompressed block into the current buffer. Returns false at the end of the data.
+     */
+    private boolean nextBlock() throws IOException {
+
+        Block block = takeBlock();
+        if (block == END_OF_STREAM) {
+            executor.shutdown();
+            return false;
+        }
+
+        byte[] data = getResult(block);
+        int merged = 1;
+        while (data == null) {
+            // The block was split at a false boundary, so merge it with the next block and try again
+            Block next = takeBlock();
+            if (next == END_OF_STREAM || merged >= MAX_MERGED_BLOCKS) {
+                throw new IOException("Corrupt bzip2 data");
+            }
+            log.debug("Merging bzip2 block with the following block after decompression failure");
+            block = block.merge(next);
+            merged++;
+            try {
+                data = decompress(block);
+            }
+            catch (IOException e) {
+                data = null;
+            }
+        }
+
+        this.current = data;
+        this.currentPos = 0;
+        return true;
+    }
+
+    private Block takeBlock() throws IOException {
+        if (pendingBlock != null) {
+            Block block = pendingBlock;
+            pendingBlock = null;
+            return block;
+        }
+        try {
+            Block block = blocks.take();
+            if (block == END_OF_STREAM && scanError != null) {
+                throw scanError;
+            }
+            return block;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bzip2 block");
+        }
+    }
+
+    /**
+     * Returns the decompressed block, or null if the block could not be decompressed by itself.
+     */
+    private byte[] getResult(Block block) throws IOException {
+        try {
+            return block.result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing bzip2 block");
+        }
+        catch (ExecutionException e) {
+            log.trace("Block decompression failed", e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Decompresses a single block by wrapping it into a standalone bzip2 stream.
+     */
+    private static byte[] decompress(Block block) throws IOException {
+        BitWriter writer = new BitWriter(block.bitLength / 8 + 16);
+        writer.writeBits('B', 8);
+        writer.writeBits('Z', 8);
+        writer.writeBits('h', 8);
+        writer.writeBits('0' + block.level, 8);
+        writer.writeBits(block.bits, 0, block.bitLength);
+        writer.writeBits(EOS_MAGIC, MAGIC_BITS);
+        // The combined CRC of a single block stream is just the block CRC
+        writer.writeBits(block.crc, CRC_BITS);
+        try (InputStream decoder = new BZip2CompressorInputStream(new ByteArrayInputStream(writer.toByteArray()), false)) {
+            return IOUtils.toByteArray(decoder);
+        }
+    }
+
+    /**
+     * Runs on the scanner thread. Reads the compressed input, finds the block boundaries, and submits
+     * each block for decompression.
+     */
+    private void scan() {
+        try {
+            new Scanner().run();
+        }
+        catch (InterruptedException | InterruptedIOException e) {
+            log.trace("bzip2 scanner interrupted");
+        }
+        catch (IOException e) {
+            scanError = e;
+        }
+        catch (RuntimeException e) {
+            scanError = new IOException(e);
+        }
+        finally {
+            if (!closed) {
+                try {
+                    blocks.put(END_OF_STREAM);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void submit(byte[] bits, int bitLength, int level, long crc) throws InterruptedException {
+        Block block = new Block(bits, bitLength, level, crc, null);
+        Future<byte[]> result = executor.submit(() -> decompress(block));
+        blocks.put(new Block(bits, bitLength, level, crc, result));
+    }
+
+    /**
+     * Scans the compressed bit stream for block and end of stream markers.
+     */
+    private class Scanner {
+
+        // Compressed bytes, starting at the byte which contains the start of the current block
+        private byte[] buf = new byte[READ_BUFFER_SIZE * 2];
+        private int bufLen = 0;
+        private boolean inputDone = false;
+        private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+
+        void run() throws IOException, InterruptedException {
+
+            if (!readHeader(0)) {
+                // Empty input
+                return;
+            }
+
+            int level = buf[3] - '0';
+            // Bit position of the next byte to scan. This is always byte aligned.
+            long pos = HEADER_BYTES * 8L;
+            long blockStart = -1;
+            long combinedCrc = 0;
+            // The most recently scanned bits
+            long window = 0;
+            int windowBits = 0;
+
+            scan:
+            while (true) {
+                if (!ensure((pos >> 3) + 1)) {
+                    if (blockStart >= 0) {
+                        throw new IOException("Unexpected end of bzip2 stream");
+                    }
+                    return;
+                }
+
+                window = (window << 8) | (buf[(int) (pos >> 3)] & 0xFF);
+                windowBits = Math.min(windowBits + 8, 56);
+                pos += 8;
+                if (windowBits < MAGIC_BITS) {
+                    continue;
+                }
+
+                int offsets = CANDIDATE_OFFSETS[(int) ((window >>> 40) & 0xFFFF)];
+                if (offsets == 0) {
+                    continue;
+                }
+
+                // Check each bit offset at which a marker could end inside this byte, in stream order
+                for (int k = Math.min(7, windowBits - MAGIC_BITS); k >= 0; k--) {
+                    if ((offsets & (1 << k)) == 0) {
+                        continue;
+                    }
+                    long candidate = (window >>> k) & MAGIC_MASK;
+                    long magicEnd = pos - k;
+                    long magicStart = magicEnd - MAGIC_BITS;
+
+                    if (candidate == BLOCK_MAGIC) {
+                        if (blockStart >= 0) {
+                            combinedCrc = emit(blockStart, magicStart, level, combinedCrc);
+                        }
+                        long shift = compact(magicStart);
+                        pos -= shift;
+                        blockStart = magicStart - shift;
+                        continue scan;
+                    }
+                    else if (candidate == EOS_MAGIC && blockStart >= 0) {
+                        long crcEnd = magicEnd + CRC_BITS;
+                        if (!ensure((crcEnd + 7) >> 3)) {
+                            throw new IOException("Unexpected end of bzip2 stream");
+                        }
+                        long storedCrc = getBits(magicEnd, CRC_BITS);
+                        long streamEnd = ((crcEnd + 7) >> 3) << 3;
+                        long blockCrc = getBits(blockStart + MAGIC_BITS, CRC_BITS);
+                        long expectedCrc = (((combinedCrc << 1) | (combinedCrc >>> 31)) & 0xFFFFFFFFL) ^ blockCrc;
+                        if (storedCrc != expectedCrc && !isStreamBoundary(streamEnd)) {
+                            // False marker inside the compressed data
+                            continue;
+                        }
+
+                        emit(blockStart, magicStart, level, combinedCrc);
+                        combinedCrc = 0;
+                        blockStart = -1;
+                        long shift = compact(streamEnd);
+                        pos = streamEnd - shift;
+                        window = 0;
+                        windowBits = 0;
+
+                        // Look for a concatenated stream
+                        if (!readHeader((int) (pos >> 3))) {
+                            return;
+                        }
+                        level = buf[(int) (pos >> 3) + 3] - '0';
+                        pos += HEADER_BYTES * 8L;
+                        continue scan;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns true if the given bit position is the end of the input, or the start of another stream.
+         */
+        private boolean isStreamBoundary(long bitPos) throws IOException {
+            int bytePos = (int) (bitPos >> 3);
+            if (!ensure(bytePos + 1)) {
+                return true;
+            }
+            return ensure(bytePos + HEADER_BYTES) && isHeader(bytePos);
+        }
+
+        private boolean isHeader(int bytePos) {
+            return buf[bytePos] == 'B' && buf[bytePos + 1] == 'Z' && buf[bytePos + 2] == 'h'
+                    && buf[bytePos + 3] >= '1' && buf[bytePos + 3] <= '9';
+        }
+
+        /**
+         * Reads a stream header at the given byte position. Returns false if the input ends there.
+         */
+        private boolean readHeader(int bytePos) throws IOException {
+            if (!ensure(bytePos + 1)) {
+                return false;
+            }
+            if (!ensure(bytePos + HEADER_BYTES) || !isHeader(bytePos)) {
+                throw new IOException("Not a bzip2 stream");
+            }
+            return true;
+        }
+
+        /**
+         * Copies the block between the given bit positions and submits it for decompression.
+         * Returns the updated combined CRC.
+         */
+        private long emit(long start, long end, int level, long combinedCrc) throws InterruptedException {
+            int bitLength = (int) (end - start);
+            BitWriter writer = new BitWriter(bitLength / 8 + 1);
+            writer.writeBits(buf, start, bitLength);
+            long crc = getBits(start + MAGIC_BITS, CRC_BITS);
+            submit(writer.toByteArray(), bitLength, level, crc);
+            return (((combinedCrc << 1) | (combinedCrc >>> 31)) & 0xFFFFFFFFL) ^ crc;
+        }
+
+        /**
+         * Discards the buffered bytes before the byte containing the given bit position. Returns the number
+         * of bits discarded.
+         */
+        private long compact(long bitPos) {
+            int bytePos = (int) (bitPos >> 3);
+            if (bytePos == 0) return 0;
+            System.arraycopy(buf, bytePos, buf, 0, bufLen - bytePos);
+            bufLen -= bytePos;
+            return bytePos * 8L;
+        }
+
+        /**
+         * Ensures that the buffer contains at least the given number of bytes. Returns false if the input
+         * ends before that.
+         */
+        private boolean ensure(long bytes) throws IOException {
+            while (bufLen < bytes) {
+                if (inputDone) return false;
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+                int n = in.read(readBuffer);
+                if (n < 0) {
+                    inputDone = true;
+                    return false;
+                }
+                if (bufLen + n > buf.length) {
+                    buf = Arrays.copyOf(buf, Math.max(buf.length * 2, bufLen + n));
+                }
+                System.arraycopy(readBuffer, 0, buf, bufLen, n);
+                bufLen += n;
+            }
+            return true;
+        }
+
+        private int getBit(long bitPos) {
+            return (buf[(int) (bitPos >> 3)] >> (7 - (int) (bitPos & 7))) & 1;
+        }
+
+        private long getBits(long bitPos, int n) {
+            long value = 0;
+            for (int i = 0; i < n; i++) {
+                value = (value << 1) | getBit(bitPos + i);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * A compressed block, starting with the block magic, along with its decompression result.
+     */
+    private static class Block {
+
+        private final byte[] bits;
+        private final int bitLength;
+        private final int level;
+        private final long crc;
+        private final Future<byte[]> result;
+
+        Block(byte[] bits, int bitLength, int level, long crc, Future<byte[]> result) {
+            this.bits = bits;
+            this.bitLength = bitLength;
+            this.level = level;
+            this.crc = crc;
+            this.result = result;
+        }
+
+        /**
+         * Returns a block containing the bits of this block followed by the bits of the given block.
+         */
+        Block merge(Block next) {
+            BitWriter writer = new BitWriter((bitLength + next.bitLength) / 8 + 2);
+            writer.writeBits(bits, 0, bitLength);
+            writer.writeBits(next.bits, 0, next.bitLength);
+            return new Block(writer.toByteArray(), bitLength + next.bitLength, level, crc, null);
+        }
+    }
+
+    /**
+     * Accumulates bits, most significant bit first, into a byte array.
+     */
+    private static class BitWriter {
+
+        private byte[] out;
+        private int outLen = 0;
+        private int current = 0;
+        private int currentBits = 0;
+
+        BitWriter(int initialSize) {
+            this.out = new byte[Math.max(16, initialSize)];
+        }
+
+        void writeBits(long value, int n) {
+            for (int i = n - 1; i >= 0; i--) {
+                writeBit((int) (value >>> i) & 1);
+            }
+        }
+
+        void writeBits(byte[] src, long srcBitPos, int n) {
+            int i = 0;
+            // Copy single bits until the source is byte aligned
+            while (i < n && ((srcBitPos + i) & 7) != 0) {
+                writeBit(getBit(src, srcBitPos + i));
+                i++;
+            }
+            // Then copy whole bytes
+            int bytes = (n - i) >> 3;
+            int srcPos = (int) ((srcBitPos + i) >> 3);
+            ensureCapacity(outLen + bytes + 1);
+            if (currentBits == 0) {
+                System.arraycopy(src, srcPos, out, outLen, bytes);
+                outLen += bytes;
+            }
+            else {
+                int shift = 8 - currentBits;
+                for (int j = 0; j < bytes; j++) {
+                    int b = src[srcPos + j] & 0xFF;
+                    out[outLen++] = (byte) ((current << shift) | (b >>> currentBits));
+                    current = b & ((1 << currentBits) - 1);
+                }
+            }
+            i += bytes << 3;
+            while (i < n) {
+                writeBit(getBit(src, srcBitPos + i));
+                i++;
+            }
+        }
+
+        private static int getBit(byte[] src, long bitPos) {
+            return (src[(int) (bitPos >> 3)] >> (7 - (int) (bitPos & 7))) & 1;
+        }
+
+        private void writeBit(int bit) {
+            current = (current << 1) | bit;
+            if (++currentBits == 8) {
+                ensureCapacity(outLen + 1);
+                out[outLen++] = (byte) current;
+                current = 0;
+                currentBits = 0;
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > out.length) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, capacity));
+            }
+        }
+
+        byte[] toByteArray() {
+            if (currentBits > 0) {
+                ensureCapacity(outLen + 1);
+                out[outLen++] = (byte) (current << (8 - currentBits));
+                current = 0;
+                currentBits = 0;
+            }
+            return outLen == out.length ? out : Arrays.copyOf(out, outLen);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.janelia.workstation.core.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.janelia.model.domain.Reference;
+import org.janelia.model.domain.workspace.TreeNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DomainObjectCacheTest {
+
+    private static final long MAX_BYTES = 100 * 1024;
+    private static final int WEIGHT = 1024;
+
+    private final List<Reference> removed = new ArrayList<>();
+
+    // Objects are weighed as soon as they're put, unless a test queues the weighing itself
+    private final DomainObjectCache cache = new DomainObjectCache(MAX_BYTES, (id, domainObject) -> {
+        synchronized (removed) {
+            removed.add(id);
+        }
+    }, MoreExecutors.directExecutor());
+
+    @Test
+    public void testWeighing() {
+        int small = DomainObjectCache.estimateSize(createNode(1L, 10));
+        int large = DomainObjectCache.estimateSize(createNode(2L, 10000));
+        Assert.assertTrue(small > 0);
+        Assert.assertTrue(large > 10000);
+        Assert.assertTrue(large > small);
+
+        TreeNode node = createNode(3L, 1000);
+        cache.put(Reference.createFor(node), node);
+        Assert.assertEquals(DomainObjectCache.estimateSize(node), cache.getWeightedSize());
+        cache.invalidate(Reference.createFor(node));
+        Assert.assertEquals(0, cache.getWeightedSize());
+    }
+
+    @Test
+    public void testWeighingInBackground() {
+        List<Runnable> queued = new ArrayList<>();
+        DomainObjectCache queuedCache = new DomainObjectCache(MAX_BYTES, (id, domainObject) -> {}, queued::add);
+        TreeNode node = createNode(1L, 1000);
+        Reference ref = Reference.createFor(node);
+        queuedCache.put(ref, node);
+        Assert.assertEquals(DomainObjectCache.DEFAULT_WEIGHT, queuedCache.getWeightedSize());
+        queued.get(0).run();
+        Assert.assertEquals(DomainObjectCache.estimateSize(node), queuedCache.getWeightedSize());
+        Assert.assertSame(node, queuedCache.getIfPresent(ref));
+
+        // A late weighing doesn't overwrite an entry which was replaced in the meantime
+        TreeNode update = createNode(1L, 10);
+        queuedCache.put(ref, update);
+        queuedCache.put(ref, update, WEIGHT);
+        queued.get(1).run();
+        Assert.assertSame(update, queuedCache.getIfPresent(ref));
+        Assert.assertEquals(WEIGHT, queuedCache.getWeightedSize());
+
+        // Pinning doesn't count as a lookup
+        long requests = queuedCache.getStats().requestCount();
+        queuedCache.pin(ref, update);
+        Assert.assertEquals(requests, queuedCache.getStats().requestCount());
+    }
+
+    @Test
+    public void testEviction() {
+        int count = 1000;
+        List<TreeNode> nodes = putNodes(0, count);
+        Assert.assertTrue(cache.size() < count);
+        Assert.assertTrue(cache.getWeightedSize() <= MAX_BYTES);
+        Assert.assertEquals(cache.size() * WEIGHT, cache.getWeightedSize());
+        Assert.assertEquals(count - cache.size(), cache.getStats().evictionCount());
+        Assert.assertEquals(count - cache.size(), removed.size());
+        // The most recent object is still there
+        TreeNode last = nodes.get(count - 1);
+        Assert.assertSame(last, cache.getIfPresent(Reference.createFor(last)));
+    }
+
+    @Test
+    public void testReplacementIsNotRemoval() {
+        TreeNode node = createNode(1L, 10);
+        Reference ref = Reference.createFor(node);
+        cache.put(ref, node, WEIGHT);
+        TreeNode update = createNode(1L, 10);
+        cache.put(ref, update, 2 * WEIGHT);
+        Assert.assertSame(update, cache.getIfPresent(ref));
+        Assert.assertEquals(2 * WEIGHT, cache.getWeightedSize());
+        Assert.assertTrue(removed.isEmpty());
+    }
+
+    @Test
+    public void testPinnedObjectSurvivesEviction() {
+        TreeNode pinned = createNode(-1L, 10);
+        Reference ref = Reference.createFor(pinned);
+        cache.put(ref, pinned, WEIGHT);
+        cache.pin(ref, pinned);
+        Assert.assertEquals(1, cache.getPinnedCount());
+
+        putNodes(0, 1000);
+        Assert.assertFalse(removed.contains(ref));
+        Assert.assertSame(pinned, cache.getIfPresent(ref));
+
+        cache.unpin(ref);
+        Assert.assertEquals(0, cache.getPinnedCount());
+        putNodes(1000, 1000);
+        Assert.assertTrue(removed.contains(ref));
+        Assert.assertNull(cache.getIfPresent(ref));
+    }
+
+    @Test
+    public void testPinsAreCounted() {
+        TreeNode node = createNode(1L, 10);
+        Reference ref = Reference.createFor(node);
+        cache.put(ref, node, WEIGHT);
+        cache.pin(ref, node);
+        cache.pin(ref, node);
+        cache.unpin(ref);
+        Assert.assertEquals(1, cache.getPinnedCount());
+        putNodes(100, 1000);
+        Assert.assertSame(node, cache.getIfPresent(ref));
+        cache.unpin(ref);
+        Assert.assertEquals(0, cache.getPinnedCount());
+        // Unbalanced calls are ignored
+        cache.unpin(ref);
+        Assert.assertEquals(0, cache.getPinnedCount());
+    }
+
+    @Test
+    public void testInvalidatedObjectIsReplacedInPin() {
+        TreeNode node = createNode(1L, 10);
+        Reference ref = Reference.createFor(node);
+        cache.put(ref, node, WEIGHT);
+        cache.pin(ref, node);
+
+        cache.invalidate(ref);
+        Assert.assertNull(cache.getIfPresent(ref));
+        Assert.assertEquals(1, cache.getPinnedCount());
+
+        // The reloaded instance takes the place of the invalidated one
+        TreeNode reloaded = createNode(1L, 10);
+        cache.put(ref, reloaded, WEIGHT);
+        putNodes(100, 1000);
+        Assert.assertSame(reloaded, cache.getIfPresent(ref));
+
+        cache.unpin(ref);
+        Assert.assertEquals(0, cache.getPinnedCount());
+    }
+
+    @Test
+    public void testInvalidateAllClearsPins() {
+        TreeNode node = createNode(1L, 10);
+        Reference ref = Reference.createFor(node);
+        cache.put(ref, node, WEIGHT);
+        cache.pin(ref, node);
+
+        cache.invalidateAll();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getPinnedCount());
+        Assert.assertEquals(0, cache.getWeightedSize());
+
+        // A new instance is not pinned
+        TreeNode reloaded = createNode(1L, 10);
+        cache.put(ref, reloaded, WEIGHT);
+        putNodes(100, 1000);
+        Assert.assertNull(cache.getIfPresent(ref));
+    }
+
+    private List<TreeNode> putNodes(long firstId, int count) {
+        List<TreeNode> nodes = new ArrayList<>();
+        for (long id = firstId; id < firstId + count; id++) {
+            TreeNode node = createNode(id, 10);
+            cache.put(Reference.createFor(node), node, WEIGHT);
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private static TreeNode createNode(Long id, int nameLength) {
+        TreeNode node = new TreeNode();
+        node.setId(id);
+        StringBuilder name = new StringBuilder();
+        while (name.length() < nameLength) {
+            name.append('n');
+        }
+        node.setName(name.toString());
+        return node;
+    }
+}
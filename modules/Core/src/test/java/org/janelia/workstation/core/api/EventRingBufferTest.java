@@ -0,0 +1,77 @@
+package org.janelia.workstation.core.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EventRingBufferTest {
+
+    @Test
+    public void testFifoAndCapacity() {
+        EventRingBuffer<Integer> buffer = new EventRingBuffer<>(5);
+        Assert.assertEquals(8, buffer.capacity());
+        for (int i = 0; i < 8; i++) {
+            Assert.assertTrue(buffer.offer(i));
+        }
+        Assert.assertFalse(buffer.offer(8));
+        Assert.assertEquals(8, buffer.size());
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        Assert.assertNull(buffer.poll());
+        // Wrap around
+        Assert.assertTrue(buffer.offer(100));
+        Assert.assertEquals(Integer.valueOf(100), buffer.poll());
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        int numProducers = 4;
+        int perProducer = 50000;
+        EventRingBuffer<Integer> buffer = new EventRingBuffer<>(1024);
+        CountDownLatch done = new CountDownLatch(numProducers);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < numProducers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(producer * perProducer + i)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        boolean[] seen = new boolean[numProducers * perProducer];
+        int[] lastSeen = new int[numProducers];
+        Arrays.fill(lastSeen, -1);
+        int received = 0;
+        while (received < seen.length) {
+            Integer value = buffer.poll();
+            if (value == null) {
+                Thread.yield();
+                continue;
+            }
+            Assert.assertFalse("Duplicate " + value, seen[value]);
+            seen[value] = true;
+            // Each producer's events must come out in the order they went in
+            int producer = value / perProducer;
+            Assert.assertTrue("Out of order " + value, value % perProducer > lastSeen[producer]);
+            lastSeen[producer] = value % perProducer;
+            received++;
+        }
+        done.await();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(buffer.poll());
+    }
+}
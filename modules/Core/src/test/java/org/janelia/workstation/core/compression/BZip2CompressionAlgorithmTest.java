@@ -0,0 +1,56 @@
+package org.janelia.workstation.core.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.janelia.workstation.core.util.compression.BZip2CompressionAlgorithm;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests decompression into caller supplied buffers.
+ */
+public class BZip2CompressionAlgorithmTest {
+
+    private final BZip2CompressionAlgorithm algorithm = new BZip2CompressionAlgorithm();
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BZip2CompressorOutputStream out = new BZip2CompressorOutputStream(bytes, 1)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] randomData(int length) {
+        byte[] data = new byte[length];
+        new Random(3).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testExactBufferIsReused() throws Exception {
+        byte[] data = randomData(50000);
+        byte[] buffer = new byte[data.length];
+        byte[] result = algorithm.decompressIntoByteBuf(compress(data), buffer);
+        Assert.assertSame(buffer, result);
+        Assert.assertArrayEquals(data, result);
+    }
+
+    @Test
+    public void testLargerBufferHasNoStaleTail() throws Exception {
+        byte[] data = randomData(50000);
+        byte[] buffer = new byte[data.length + 1000];
+        Arrays.fill(buffer, (byte) 0x7F);
+        Assert.assertArrayEquals(data, algorithm.decompressIntoByteBuf(compress(data), buffer));
+    }
+
+    @Test
+    public void testSmallerBufferIsReplaced() throws Exception {
+        byte[] data = randomData(50000);
+        Assert.assertArrayEquals(data, algorithm.decompressIntoByteBuf(compress(data), new byte[1000]));
+    }
+}
@@ -0,0 +1,152 @@
+package org.janelia.workstation.core.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.janelia.workstation.core.util.compression.ParallelBZip2InputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Round-trip tests of the parallel bzip2 decoder against the commons-compress encoder.
+ */
+public class ParallelBZip2InputStreamTest {
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+
+    private static byte[] compress(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BZip2CompressorOutputStream out = new BZip2CompressorOutputStream(bytes, blockSize)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed, int numThreads) throws IOException {
+        try (InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(compressed), numThreads)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    /**
+     * Returns random data using exactly the byte values in the symbol map which bzip2 writes at the start of
+     * each block. The map has 16 bits for each range of 16 byte values, and since every range is used, the
+     * given masks for three consecutive ranges appear in the compressed block data as they are.
+     */
+    private static byte[] withSymbolMap(int mask1, int mask2, int mask3, int length) {
+        int[] masks = new int[16];
+        Arrays.fill(masks, 0x8000);
+        masks[4] = mask1;
+        masks[5] = mask2;
+        masks[6] = mask3;
+        List<Byte> symbols = new ArrayList<>();
+        for (int value = 0; value < 256; value++) {
+            if ((masks[value >> 4] & (0x8000 >>> (value & 15))) != 0) {
+                symbols.add((byte) value);
+            }
+        }
+        Random random = new Random(42);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            // Every symbol appears early on, so that each block uses all of them
+            data[i] = symbols.get(i % 1000 < symbols.size() ? i % 1000 : random.nextInt(symbols.size()));
+        }
+        return data;
+    }
+
+    /**
+     * Returns the number of times the given 48 bit marker appears in the data, at any bit offset.
+     */
+    private static int countMarkers(byte[] data, long marker) {
+        int count = 0;
+        long window = 0;
+        for (int bit = 0; bit < data.length * 8; bit++) {
+            window = ((window << 1) | ((data[bit >> 3] >> (7 - (bit & 7))) & 1)) & 0xFFFFFFFFFFFFL;
+            if (bit >= 47 && window == marker) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] randomText(int length) {
+        Random random = new Random(42);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        byte[] data = new byte[0];
+        Assert.assertArrayEquals(data, decompress(compress(data, 1), 4));
+    }
+
+    @Test
+    public void testSingleBlock() throws Exception {
+        byte[] data = randomText(10000);
+        Assert.assertArrayEquals(data, decompress(compress(data, 1), 4));
+    }
+
+    @Test
+    public void testMultipleBlocks() throws Exception {
+        // Block size 1 is 100k, so this produces several blocks
+        byte[] data = randomText(1000000);
+        Assert.assertArrayEquals(data, decompress(compress(data, 1), 4));
+    }
+
+    @Test
+    public void testRandomData() throws Exception {
+        byte[] data = new byte[500000];
+        new Random(7).nextBytes(data);
+        Assert.assertArrayEquals(data, decompress(compress(data, 1), 3));
+    }
+
+    @Test
+    public void testConcatenatedStreams() throws Exception {
+        byte[] first = randomText(300000);
+        byte[] second = new byte[200000];
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(compress(first, 1));
+        compressed.write(compress(second, 9));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        Assert.assertArrayEquals(expected.toByteArray(), decompress(compressed.toByteArray(), 2));
+    }
+
+    @Test
+    public void testFalseBlockMagic() throws Exception {
+        byte[] data = withSymbolMap(0x3141, 0x5926, 0x5359, 250000);
+        byte[] compressed = compress(data, 1);
+        // Three blocks, each with a false block magic in its symbol map
+        Assert.assertEquals(6, countMarkers(compressed, BLOCK_MAGIC));
+        Assert.assertArrayEquals(data, decompress(compressed, 4));
+    }
+
+    @Test
+    public void testFalseEndOfStreamMagic() throws Exception {
+        byte[] data = withSymbolMap(0x1772, 0x4538, 0x5090, 250000);
+        byte[] compressed = compress(data, 1);
+        Assert.assertEquals(4, countMarkers(compressed, EOS_MAGIC));
+        Assert.assertArrayEquals(data, decompress(compressed, 4));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptStream() throws Exception {
+        byte[] compressed = compress(randomText(10000), 1);
+        compressed[compressed.length / 2] ^= 0x55;
+        decompress(compressed, 2);
+    }
+}
@@ -0,0 +1,202 @@
+package org.janelia.workstation.core.filecache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.janelia.workstation.core.api.http.HttpClientProxy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link WebDavDownloader} class against a local HTTP server.
+ */
+public class WebDavDownloaderTest {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final byte[] content = new byte[CHUNK_SIZE * 10 + 123];
+    private final List<String> requestedRanges = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean rangesSupported = true;
+    private volatile long failingOffset = -1;
+    private volatile long responseDelayMillis = 0;
+
+    private HttpServer server;
+    private String url;
+    private HttpClientProxy httpClientProxy;
+    private WebDavDownloader downloader;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(42).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/file", this::handle);
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/file";
+
+        MultiThreadedHttpConnectionManager mgr = new MultiThreadedHttpConnectionManager();
+        mgr.getParams().setDefaultMaxConnectionsPerHost(10);
+        mgr.getParams().setMaxTotalConnections(10);
+        HttpClient httpClient = new HttpClient(mgr);
+        httpClientProxy = new HttpClientProxy(httpClient) {
+            @Override
+            public int executeMethod(HttpMethod method) throws IOException {
+                return httpClient.executeMethod(method);
+            }
+        };
+        downloader = new WebDavDownloader(null, httpClientProxy, 4, CHUNK_SIZE, 1);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        exchange.getResponseHeaders().add("ETag", "\"v1\"");
+        Matcher m = range == null ? null : RANGE_PATTERN.matcher(range);
+        if (rangesSupported && m != null && m.matches()) {
+            requestedRanges.add(range);
+            int start = Integer.parseInt(m.group(1));
+            int end = Math.min(Integer.parseInt(m.group(2)), content.length - 1);
+            if (responseDelayMillis > 0) {
+                try {
+                    Thread.sleep(responseDelayMillis);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (start == failingOffset) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            exchange.sendResponseHeaders(206, end - start + 1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content, start, end - start + 1);
+            }
+        }
+        else {
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        }
+    }
+
+    @Test
+    public void downloadInChunks() throws Exception {
+        File destination = new File(tempFolder.getRoot(), "chunked.bin");
+        long[] lastProgress = new long[2];
+        downloader.downloadURL(url, null, destination, (done, total) -> {
+            lastProgress[0] = done;
+            lastProgress[1] = total;
+        }, () -> false);
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        // Probe plus one request per chunk
+        assertEquals(1 + 11, requestedRanges.size());
+        assertEquals(content.length, lastProgress[0]);
+        assertEquals(content.length, lastProgress[1]);
+        assertFalse(WebDavDownloader.getStateFile(destination).exists());
+    }
+
+    @Test
+    public void downloadWithoutRangeSupport() throws Exception {
+        rangesSupported = false;
+        File destination = new File(tempFolder.getRoot(), "streamed.bin");
+        downloader.downloadURL(url, (long) content.length, destination, null, () -> false);
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        assertTrue(requestedRanges.isEmpty());
+    }
+
+    @Test
+    public void resumeInterruptedDownload() throws Exception {
+        // A single thread makes it deterministic which chunks complete before the failure
+        downloader = new WebDavDownloader(null, httpClientProxy, 1, CHUNK_SIZE, 1);
+        File destination = new File(tempFolder.getRoot(), "resumed.bin");
+        failingOffset = CHUNK_SIZE * 3;
+        try {
+            downloader.downloadURL(url, null, destination, null, () -> false);
+            fail("Expected download to fail");
+        }
+        catch (WebDavException e) {
+            assertEquals(Integer.valueOf(500), e.getStatusCode());
+        }
+        assertTrue(WebDavDownloader.isResumable(destination));
+
+        failingOffset = -1;
+        requestedRanges.clear();
+        downloader.downloadURL(url, null, destination, null, () -> false);
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        // The chunks completed before the failure should not be requested again. Chunks after the failed one
+        // may or may not have completed before the download stopped.
+        for (int chunk = 0; chunk < 3; chunk++) {
+            assertFalse(requestedRanges.contains(getChunkRange(chunk)));
+        }
+        assertTrue(requestedRanges.contains(getChunkRange(3)));
+        assertEquals(requestedRanges.size(), new HashSet<>(requestedRanges).size());
+        assertFalse(WebDavDownloader.isResumable(destination));
+    }
+
+    @Test
+    public void resumeCancelledDownload() throws Exception {
+        // Slow responses, so that the download is cancelled while chunks are in flight
+        responseDelayMillis = 500;
+        File destination = new File(tempFolder.getRoot(), "cancelled.bin");
+        try {
+            downloader.downloadURL(url, null, destination, null, () -> requestedRanges.size() > 1);
+            fail("Expected download to be cancelled");
+        }
+        catch (CancellationException e) {
+            // Expected
+        }
+        assertTrue(WebDavDownloader.isResumable(destination));
+
+        responseDelayMillis = 0;
+        requestedRanges.clear();
+        downloader.downloadURL(url, null, destination, null, () -> false);
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        assertFalse(WebDavDownloader.isResumable(destination));
+    }
+
+    private static String getChunkRange(int chunk) {
+        return "bytes=" + (CHUNK_SIZE * chunk) + "-" + (CHUNK_SIZE * (chunk + 1) - 1);
+    }
+
+    @Test
+    public void parseContentRange() {
+        assertEquals(Long.valueOf(1000), WebDavDownloader.parseTotalLength(
+                new org.apache.commons.httpclient.Header("Content-Range", "bytes 0-0/1000")));
+        assertNull(WebDavDownloader.parseTotalLength(
+                new org.apache.commons.httpclient.Header("Content-Range", "bytes 0-0/*")));
+        assertNull(WebDavDownloader.parseTotalLength(null));
+    }
+}
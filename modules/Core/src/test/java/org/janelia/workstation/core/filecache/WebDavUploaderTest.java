@@ -11,7 +11,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
 
 import static org.junit.Assert.*;
 
@@ -91,6 +95,102 @@ public class WebDavUploaderTest {
         assertEquals(testStorageUrl, remoteFile.getStorageURL());
     }
 
+    @Test
+    public void uploadMultipleFilesConcurrently() throws Exception {
+        String testStorageName = "f1";
+        String testStorageTags = "t1, t2";
+        String testUploadContext = "WorkstationFileUpload";
+        String testStorageUrl = "http://teststorage/" + testStorageName;
+        Mockito.when(storageClientMgr.createStorage(testStorageName, testUploadContext, testStorageTags))
+                .thenReturn(testStorageUrl);
+        Mockito.when(storageClientMgr.urlEncodeComp(ArgumentMatchers.anyString()))
+                .thenCallRealMethod();
+        Mockito.when(storageClientMgr.urlEncodeComps(ArgumentMatchers.anyString()))
+                .thenCallRealMethod();
+        Mockito.when(storageClientMgr.uploadFile(ArgumentMatchers.any(File.class), ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.any()))
+                .then(invocation -> {
+                    File file = invocation.getArgument(0);
+                    LongConsumer bytesSent = invocation.getArgument(3);
+                    bytesSent.accept(file.length());
+                    RemoteLocation remoteFile = new RemoteLocation(file.getAbsolutePath(), file.getAbsolutePath(), invocation.getArgument(2));
+                    remoteFile.setStorageURL(invocation.getArgument(1));
+                    return remoteFile;
+                });
+
+        long[] uploadedBytes = new long[1];
+        WebDavUploader.UploadResult result = new WebDavUploader(storageClientMgr, 2, 1).uploadFiles(
+                testStorageName,
+                testUploadContext,
+                testStorageTags,
+                testFiles,
+                testRootParentDirectory,
+                (filesCompleted, totalFiles, bytesUploaded, totalBytes, bytesPerSecond) -> uploadedBytes[0] = bytesUploaded,
+                null);
+
+        assertFalse(result.hasFailures());
+        assertEquals(testFiles.size(), result.getUploaded().size());
+        for (int i = 0; i < testFiles.size(); i++) {
+            // Results are in the same order as the files
+            assertEquals(testFiles.get(i).getAbsolutePath(), result.getUploaded().get(i).getVirtualFilePath());
+            assertEquals(testStorageUrl, result.getUploaded().get(i).getStorageURL());
+        }
+        assertEquals(testFiles.stream().mapToLong(File::length).sum(), uploadedBytes[0]);
+    }
+
+    @Test
+    public void retryAndReportFailedUploads() throws Exception {
+        String testStorageName = "f1";
+        String testStorageTags = "t1, t2";
+        String testUploadContext = "WorkstationFileUpload";
+        String testStorageUrl = "http://teststorage/" + testStorageName;
+        File flakyFile = testFiles.get(0);
+        File brokenFile = testFiles.get(1);
+        File forbiddenFile = testFiles.get(2);
+        Map<File, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        Mockito.when(storageClientMgr.createStorage(testStorageName, testUploadContext, testStorageTags))
+                .thenReturn(testStorageUrl);
+        Mockito.when(storageClientMgr.urlEncodeComp(ArgumentMatchers.anyString()))
+                .thenCallRealMethod();
+        Mockito.when(storageClientMgr.urlEncodeComps(ArgumentMatchers.anyString()))
+                .thenCallRealMethod();
+        Mockito.when(storageClientMgr.uploadFile(ArgumentMatchers.any(File.class), ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.any()))
+                .then(invocation -> {
+                    File file = invocation.getArgument(0);
+                    int attempt = attempts.computeIfAbsent(file, f -> new AtomicInteger()).incrementAndGet();
+                    if (file.equals(brokenFile)) {
+                        throw new WebDavException("test failure", 503);
+                    }
+                    if (file.equals(flakyFile) && attempt == 1) {
+                        // Like StorageClientMgr, which wraps every failure
+                        throw new IllegalArgumentException(new WebDavException("test failure", new IOException("reset"), null));
+                    }
+                    if (file.equals(forbiddenFile)) {
+                        throw new IllegalArgumentException(new WebDavException("test failure", 403));
+                    }
+                    RemoteLocation remoteFile = new RemoteLocation(file.getAbsolutePath(), file.getAbsolutePath(), invocation.getArgument(2));
+                    remoteFile.setStorageURL(invocation.getArgument(1));
+                    return remoteFile;
+                });
+
+        WebDavUploader.UploadResult result = new WebDavUploader(storageClientMgr, 2, 3, 1).uploadFiles(
+                testStorageName,
+                testUploadContext,
+                testStorageTags,
+                testFiles,
+                testRootParentDirectory,
+                null,
+                null);
+
+        assertEquals(testFiles.size() - 2, result.getUploaded().size());
+        assertEquals(2, result.getFailures().size());
+        assertTrue(result.getFailures().containsKey(brokenFile));
+        assertTrue(result.getFailures().containsKey(forbiddenFile));
+        assertEquals(2, attempts.get(flakyFile).get());
+        assertEquals(3, attempts.get(brokenFile).get());
+        // Client errors are not retried
+        assertEquals(1, attempts.get(forbiddenFile).get());
+    }
+
     // TODO: test is out of date, with syntax error
 //    @Test
 //    public void uploadMultipleFiles() throws Exception {
@@ -0,0 +1,76 @@
+package org.janelia.workstation.core.model.search;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.swing.text.Position;
+
+import org.janelia.workstation.core.model.search.ResultIteratorTest.TestResults;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that findInParallel returns the same match as a sequential find, in either direction.
+ */
+public class ResultIteratorFindTest {
+
+    private static final int NUM_RESULTS = 2 * SearchResults.PAGE_SIZE + 200;
+
+    private final TestResults results = new TestResults(NUM_RESULTS);
+
+    @Test
+    public void testForward() throws Exception {
+        assertFinds(1150, 2, 700, Position.Bias.Forward, false, 50, 650, 1150);
+        // Wraps around to the first page
+        assertFinds(50, 0, 1160, Position.Bias.Forward, false, 50, 650, 1150);
+    }
+
+    @Test
+    public void testBackward() throws Exception {
+        assertFinds(650, 1, 700, Position.Bias.Backward, false, 50, 650, 1150);
+        // Wraps around to the short last page
+        assertFinds(1150, 2, 40, Position.Bias.Backward, false, 650, 1150);
+    }
+
+    @Test
+    public void testStartingIndex() throws Exception {
+        assertFinds(650, 1, 650, Position.Bias.Forward, false, 650, 1150);
+        // A skipped starting index is only found after all other results
+        assertFinds(1150, 2, 650, Position.Bias.Forward, true, 650, 1150);
+        assertFinds(650, 1, 650, Position.Bias.Backward, true, 650);
+    }
+
+    @Test
+    public void testNoMatch() throws Exception {
+        assertFinds(null, -1, 300, Position.Bias.Forward, true);
+        assertFinds(null, -1, 300, Position.Bias.Backward, false);
+    }
+
+    /**
+     * Checks that find and findInParallel both return the expected match and page.
+     */
+    private void assertFinds(Integer expected, int expectedPage, int startIndex, Position.Bias bias,
+                             boolean skipStartingIndex, Integer... matches) throws Exception {
+        Set<Integer> matchSet = new HashSet<>(Arrays.asList(matches));
+
+        ResultIteratorFind<Integer,Integer> find = createFind(startIndex, bias, skipStartingIndex, matchSet);
+        Assert.assertEquals(expected, find.find());
+        Assert.assertEquals(expectedPage, find.getMatchPage());
+
+        ResultIteratorFind<Integer,Integer> parallelFind = createFind(startIndex, bias, skipStartingIndex, matchSet);
+        Assert.assertEquals(expected, parallelFind.findInParallel());
+        Assert.assertEquals(expectedPage, parallelFind.getMatchPage());
+    }
+
+    private ResultIteratorFind<Integer,Integer> createFind(int startIndex, Position.Bias bias,
+                                                           boolean skipStartingIndex, Set<Integer> matches) {
+        ResultIterator<Integer,Integer> iterator = new ResultIterator<>(results, startIndex, bias, skipStartingIndex);
+        return new ResultIteratorFind<Integer,Integer>(iterator) {
+            @Override
+            protected boolean matches(ResultPage<Integer,Integer> resultPage, Integer object) {
+                return matches.contains(object);
+            }
+        };
+    }
+}
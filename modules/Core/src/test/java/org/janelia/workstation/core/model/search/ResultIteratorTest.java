@@ -0,0 +1,173 @@
+package org.janelia.workstation.core.model.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.text.Position;
+
+import org.janelia.model.domain.ontology.Annotation;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that ResultIterator visits every result exactly once in either direction, including when it wraps
+ * around a short last page.
+ */
+public class ResultIteratorTest {
+
+    // Two full pages and a short last page
+    private static final int NUM_RESULTS = 2 * SearchResults.PAGE_SIZE + 200;
+
+    private final TestResults results = new TestResults(NUM_RESULTS);
+
+    @Test
+    public void testForward() {
+        List<Integer> visited = iterate(700, Position.Bias.Forward, false);
+        Assert.assertEquals(NUM_RESULTS, visited.size());
+        for (int i = 0; i < NUM_RESULTS; i++) {
+            Assert.assertEquals((700 + i) % NUM_RESULTS, (int) visited.get(i));
+        }
+    }
+
+    @Test
+    public void testBackwardWrapsFromShortLastPage() {
+        // Wraps from the first page to the short last page, and then continues onto a full page
+        List<Integer> visited = iterate(100, Position.Bias.Backward, false);
+        Assert.assertEquals(NUM_RESULTS, visited.size());
+        for (int i = 0; i < NUM_RESULTS; i++) {
+            Assert.assertEquals(Math.floorMod(100 - i, NUM_RESULTS), (int) visited.get(i));
+        }
+    }
+
+    @Test
+    public void testBackwardSkippingStartingIndex() {
+        List<Integer> visited = iterate(100, Position.Bias.Backward, true);
+        Assert.assertEquals(NUM_RESULTS, visited.size());
+        Assert.assertEquals(99, (int) visited.get(0));
+        Assert.assertEquals(101, (int) visited.get(NUM_RESULTS - 2));
+        // The starting index comes last
+        Assert.assertEquals(100, (int) visited.get(NUM_RESULTS - 1));
+    }
+
+    private List<Integer> iterate(int startIndex, Position.Bias bias, boolean skipStartingIndex) {
+        ResultIterator<Integer,Integer> iterator = new ResultIterator<>(results, startIndex, bias, skipStartingIndex);
+        List<Integer> visited = new ArrayList<>();
+        while (iterator.hasNext()) {
+            visited.add(iterator.next());
+            Assert.assertTrue("Iteration doesn't end", visited.size() <= NUM_RESULTS);
+        }
+        return visited;
+    }
+
+    /**
+     * The integers from 0 up to the given count, in pages which are all loaded.
+     */
+    static class TestResults implements SearchResults<Integer,Integer> {
+
+        private final List<TestPage> pages = new ArrayList<>();
+        private final int numResults;
+
+        TestResults(int numResults) {
+            this.numResults = numResults;
+            for (int start = 0; start < numResults; start += PAGE_SIZE) {
+                List<Integer> objects = new ArrayList<>();
+                for (int i = start; i < Math.min(numResults, start + PAGE_SIZE); i++) {
+                    objects.add(i);
+                }
+                pages.add(new TestPage(objects, numResults));
+            }
+        }
+
+        @Override
+        public int getNumLoadedPages() {
+            return pages.size();
+        }
+
+        @Override
+        public int getNumTotalPages() {
+            return pages.size();
+        }
+
+        @Override
+        public long getNumLoadedResults() {
+            return numResults;
+        }
+
+        @Override
+        public long getNumTotalResults() {
+            return numResults;
+        }
+
+        @Override
+        public boolean hasMoreResults() {
+            return false;
+        }
+
+        @Override
+        public boolean isAllLoaded() {
+            return true;
+        }
+
+        @Override
+        public List<TestPage> getPages() {
+            return pages;
+        }
+
+        @Override
+        public ResultPage<Integer,Integer> getPage(int page) {
+            return pages.get(page);
+        }
+
+        @Override
+        public boolean updateIfFound(Integer object) {
+            return false;
+        }
+    }
+
+    static class TestPage implements ResultPage<Integer,Integer> {
+
+        private final List<Integer> objects;
+        private final long numTotalResults;
+
+        TestPage(List<Integer> objects, long numTotalResults) {
+            this.objects = objects;
+            this.numTotalResults = numTotalResults;
+        }
+
+        @Override
+        public long getNumTotalResults() {
+            return numTotalResults;
+        }
+
+        @Override
+        public long getNumPageResults() {
+            return objects.size();
+        }
+
+        @Override
+        public List<Integer> getObjects() {
+            return objects;
+        }
+
+        @Override
+        public List<Annotation> getAnnotations(Integer objectId) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Integer getObjectById(Integer objectId) {
+            return objects.contains(objectId) ? objectId : null;
+        }
+
+        @Override
+        public boolean updateObject(Integer updatedObject) {
+            return false;
+        }
+
+        @Override
+        public boolean updateAnnotations(Integer objectId, List<Annotation> annotations) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.janelia.workstation.core.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestCoalescerTest {
+
+    private final List<List<Integer>> loadedBatches = Collections.synchronizedList(new ArrayList<>());
+    private RequestCoalescer<Integer, String> coalescer;
+
+    @After
+    public void tearDown() {
+        if (coalescer != null) {
+            coalescer.shutdown();
+        }
+    }
+
+    private List<String> load(List<Integer> keys) {
+        loadedBatches.add(new ArrayList<>(keys));
+        List<String> values = new ArrayList<>();
+        for (Integer key : keys) {
+            // Negative keys have no value
+            if (key >= 0) {
+                values.add(String.valueOf(key));
+            }
+        }
+        return values;
+    }
+
+    @Test
+    public void testRequestsInWindowAreBatched() throws Exception {
+        coalescer = new RequestCoalescer<>("Test", this::load, Integer::valueOf, 200, 100, 1);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(coalescer.request(i));
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(String.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, loadedBatches.size());
+        Assert.assertEquals(10, loadedBatches.get(0).size());
+        Assert.assertEquals(1, coalescer.getBatchCount());
+        Assert.assertEquals(10, coalescer.getMaxBatchSize());
+    }
+
+    @Test
+    public void testConcurrentRequestsForSameKeyShareLoad() throws Exception {
+        coalescer = new RequestCoalescer<>("Test", this::load, Integer::valueOf, 200, 100, 1);
+        CompletableFuture<String> first = coalescer.request(42);
+        CompletableFuture<String> second = coalescer.request(42);
+        Assert.assertSame(first, second);
+        Assert.assertEquals("42", second.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, loadedBatches.size());
+        Assert.assertEquals(Collections.singletonList(42), loadedBatches.get(0));
+        Assert.assertEquals(1, coalescer.getJoinedCount());
+    }
+
+    @Test
+    public void testBatchesAreSplitAtMaxSize() throws Exception {
+        coalescer = new RequestCoalescer<>("Test", this::load, Integer::valueOf, 200, 4, 1);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(coalescer.request(i));
+        }
+        for (CompletableFuture<String> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        for (List<Integer> batch : loadedBatches) {
+            Assert.assertTrue(batch.size() <= 4);
+        }
+        Assert.assertEquals(10, coalescer.getBatchedKeyCount());
+    }
+
+    @Test
+    public void testMissingValueIsNull() throws Exception {
+        coalescer = new RequestCoalescer<>("Test", this::load, Integer::valueOf, 0, 100, 1);
+        Assert.assertNull(coalescer.get(-1));
+    }
+
+    @Test
+    public void testLoaderErrorIsRethrown() throws Exception {
+        coalescer = new RequestCoalescer<>("Test", keys -> {
+            throw new IllegalStateException("Load failed");
+        }, Integer::valueOf, 0, 100, 1);
+        try {
+            coalescer.get(1);
+            Assert.fail("Expected exception");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals("Load failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testKeyIsReloadedAfterCompletion() throws Exception {
+        CountDownLatch latch = new CountDownLatch(2);
+        coalescer = new RequestCoalescer<>("Test", keys -> {
+            latch.countDown();
+            return load(keys);
+        }, Integer::valueOf, 0, 100, 1);
+        Assert.assertEquals("7", coalescer.get(7));
+        Assert.assertEquals("7", coalescer.get(7));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, coalescer.getBatchCount());
+    }
+}
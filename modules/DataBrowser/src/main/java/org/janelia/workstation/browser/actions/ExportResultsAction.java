@@ -1,8 +1,11 @@
 package org.janelia.workstation.browser.actions;
 
 import java.awt.event.ActionEvent;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.Writer;
+import java.util.List;
 
 import javax.swing.AbstractAction;
 import javax.swing.JFileChooser;
@@ -15,6 +18,7 @@ import org.janelia.workstation.integration.util.FrameworkAccess;
 import org.janelia.workstation.core.util.Progress;
 import org.janelia.workstation.common.gui.table.DynamicColumn;
 import org.janelia.workstation.core.model.search.ResultPage;
+import org.janelia.workstation.core.model.search.ResultPageStream;
 import org.janelia.workstation.core.model.search.SearchResults;
 import org.janelia.workstation.core.util.Utils;
 import org.janelia.workstation.core.activity_logging.ActivityLogHelper;
@@ -113,11 +117,15 @@ public class ExportResultsAction<T,S> extends AbstractAction {
     private void export(String destFile, Progress progress) throws Exception {
 
         long numFound = searchResults.getNumTotalResults();
+        List<DynamicColumn> columns = tableViewer.getColumns();
 
-        try (FileWriter writer = new FileWriter(destFile)) {
+        // Rows are written as each page arrives, while the next page loads in the background,
+        // so that memory use does not grow with the size of the result set
+        try (Writer writer = new BufferedWriter(new FileWriter(destFile));
+             ResultPageStream<T, S> pageStream = new ResultPageStream<>(searchResults)) {
     
-            StringBuffer buf = new StringBuffer();
-            for (DynamicColumn column : tableViewer.getColumns()) {
+            StringBuilder buf = new StringBuilder();
+            for (DynamicColumn column : columns) {
                 if (buf.length() > 0) {
                     buf.append("\t");
                 }
@@ -126,22 +134,15 @@ public class ExportResultsAction<T,S> extends AbstractAction {
             buf.append("\n");
             writer.write(buf.toString());
     
-    
             long numProcessed = 0;
-            int page = 0;
-            while (true) {
-                ResultPage<T, S> resultPage = searchResults.getPage(page);
-    
-                if (resultPage==null) {
-                    log.warn("Could not retrieve result page {}. Ending export.", page);
-                    break;
-                }
+            ResultPage<T, S> resultPage;
+            while ((resultPage = pageStream.nextPage()) != null) {
                 
                 for (T object : resultPage.getObjects()) {
     
-                    buf = new StringBuffer();
+                    buf.setLength(0);
                     int i = 0;
-                    for (DynamicColumn column : tableViewer.getColumns()) {
+                    for (DynamicColumn column : columns) {
                         Object value = tableViewer.getValue(resultPage, object, column.getName());
                         if (i++ > 0) {
                             buf.append("\t");
@@ -162,13 +163,17 @@ public class ExportResultsAction<T,S> extends AbstractAction {
                     buf.append("\n");
                     writer.write(buf.toString());
                     numProcessed++;
-                    progress.setProgress((int) numProcessed, (int) numFound);
+                }
+
+                progress.setProgress(numProcessed, numFound);
+                if (progress.isCancelled()) {
+                    log.info("Export cancelled after {} of {} results", numProcessed, numFound);
+                    return;
                 }
     
                 if (numProcessed >= numFound) {
                     break;
                 }
-                page++;
             }
         }
     }
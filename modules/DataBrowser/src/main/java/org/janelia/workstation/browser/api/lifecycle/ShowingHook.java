@@ -7,6 +7,7 @@ import org.janelia.workstation.browser.gui.progress.ProgressMeterMgr;
 import org.janelia.workstation.browser.actions.NavigateBack;
 import org.janelia.workstation.browser.actions.NavigateForward;
 import org.janelia.workstation.browser.actions.StartPageMenuAction;
+import org.janelia.workstation.core.api.lifecycle.StartupProfiler;
 import org.janelia.workstation.core.events.Events;
 import org.janelia.workstation.core.events.lifecycle.ConsolePropsLoaded;
 import org.janelia.workstation.core.options.ApplicationOptions;
@@ -28,6 +29,7 @@ public class ShowingHook implements Runnable {
 
     public void run() {
 
+        long start = System.nanoTime();
         log.info("Initializing data browser");
 
         // Wait for events which are generated by connection to a data server
@@ -39,6 +41,8 @@ public class ShowingHook implements Runnable {
 
         // Instantiate singletons so that they register on the event bus
         ProgressMeterMgr.getProgressMeterMgr();
+
+        StartupProfiler.record("Data browser showing hook", start);
     }
 
 
@@ -13,6 +13,7 @@ import org.janelia.workstation.core.events.Events;
 import org.janelia.workstation.core.events.lifecycle.ApplicationClosing;
 import org.janelia.workstation.core.model.RecentFolder;
 import org.janelia.workstation.core.util.ImageCache;
+import org.janelia.workstation.core.util.ThumbnailCache;
 import org.janelia.workstation.integration.util.FrameworkAccess;
 import org.openide.windows.TopComponent;
 import org.slf4j.Logger;
@@ -46,6 +47,7 @@ public class DataBrowserMgr {
 
     private final Map<TopComponent,NavigationHistory> navigationHistoryMap = new HashMap<>();
     private final ImageCache imageCache = new ImageCache();
+    private final ThumbnailCache thumbnailCache = new ThumbnailCache();
     private PermissionTemplate autoShareTemplate;
 
 
@@ -57,6 +59,10 @@ public class DataBrowserMgr {
         return imageCache;
     }
 
+    public ThumbnailCache getThumbnailCache() {
+        return thumbnailCache;
+    }
+
     public NavigationHistory getNavigationHistory(DomainListViewTopComponent topComponent) {
         if (topComponent==null) return null;
         NavigationHistory navigationHistory = navigationHistoryMap.get(topComponent);
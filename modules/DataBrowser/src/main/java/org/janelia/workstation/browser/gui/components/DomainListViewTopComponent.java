@@ -73,6 +73,7 @@ public final class DomainListViewTopComponent extends TopComponent implements Fi
     private ParentNodeSelectionEditor editor;
     private FindContext findContext;
     private String intialState;
+    private DomainObject pinnedObject;
 
     public DomainListViewTopComponent() {
         initComponents();
@@ -104,6 +105,7 @@ public final class DomainListViewTopComponent extends TopComponent implements Fi
         DomainListViewManager.getInstance().activate(this);
         // Listen for events
         Events.getInstance().registerOnEventBus(this);
+        pinCurrent(getCurrent());
         if (editor!=null) {
             // Activate the child editor
             editor.activate();
@@ -115,6 +117,8 @@ public final class DomainListViewTopComponent extends TopComponent implements Fi
         log.info("componentClosed - {}", this.getName());
         // Stop listening for events
         Events.getInstance().unregisterOnEventBus(this);
+        // Allow the object to be evicted from the cache
+        pinCurrent(null);
         if (editor!=null) {
             // Deactivate the child editor
             editor.deactivate();
@@ -305,8 +309,24 @@ public final class DomainListViewTopComponent extends TopComponent implements Fi
             content.remove(curr);
         }
         content.add(domainObject);
+        pinCurrent(domainObject);
         return true;
     }
+
+    /**
+     * Pin the object shown in this viewer in the domain model cache, so that it is not evicted while it's being
+     * shown, and unpin the previously shown object.
+     */
+    private void pinCurrent(DomainObject domainObject) {
+        if (pinnedObject == domainObject) return;
+        if (pinnedObject != null) {
+            DomainMgr.getDomainMgr().getModel().unpin(pinnedObject);
+        }
+        if (domainObject != null) {
+            DomainMgr.getDomainMgr().getModel().pin(domainObject);
+        }
+        this.pinnedObject = domainObject;
+    }
     
     public void clearEditor() {
         if (editor!=null) {
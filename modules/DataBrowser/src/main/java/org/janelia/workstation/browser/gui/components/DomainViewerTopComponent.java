@@ -72,6 +72,7 @@ public final class DomainViewerTopComponent extends TopComponent {
     private final InstanceContent content = new InstanceContent();
     private DomainObjectEditor<DomainObject> editor;
     private Reference refToOpen;
+    private DomainObject pinnedObject;
     
     public DomainViewerTopComponent() {
         initComponents();
@@ -101,11 +102,14 @@ public final class DomainViewerTopComponent extends TopComponent {
     public void componentOpened() {
         log.debug("componentOpened - {}", this.getName());
         Events.getInstance().registerOnEventBus(this);
+        pinCurrent(getCurrent());
     }
 
     @Override
     public void componentClosed() {
         log.debug("componentClosed - {}", this.getName());
+        // Allow the object to be evicted from the cache
+        pinCurrent(null);
         clearEditor();
         Events.getInstance().unregisterOnEventBus(this);
     }
@@ -267,9 +271,25 @@ public final class DomainViewerTopComponent extends TopComponent {
             content.remove(curr);
         }
         content.add(domainObject);
+        pinCurrent(domainObject);
         return true;
     }
 
+    /**
+     * Pin the object shown in this viewer in the domain model cache, so that it is not evicted while it's being
+     * shown, and unpin the previously shown object.
+     */
+    private void pinCurrent(DomainObject domainObject) {
+        if (pinnedObject == domainObject) return;
+        if (pinnedObject != null) {
+            DomainMgr.getDomainMgr().getModel().unpin(pinnedObject);
+        }
+        if (domainObject != null) {
+            DomainMgr.getDomainMgr().getModel().pin(domainObject);
+        }
+        this.pinnedObject = domainObject;
+    }
+
     public void clearEditor() {
         if (editor!=null) {
             remove((JComponent)editor);
@@ -917,6 +917,7 @@ public class FilterEditorPanel
             protected void doStuff() throws Exception {
                 if (!searchResults.isAllLoaded()) {
                     // If anything is unloaded, we create a new search that uses a larger page size, in order to batch the export faster.
+                    // The export streams the remaining pages without retaining them, so only the first page is kept here.
                     SearchConfiguration exportSearchConfig = new SearchConfiguration(filter, EXPORT_PAGE_SIZE);
                     exportSearchResults = exportSearchConfig.performSearch();
                 }
@@ -0,0 +1,395 @@
+package org.janelia.workstation.browser.gui.editor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.janelia.model.domain.DomainUtils;
+import org.janelia.model.domain.Reference;
+import org.janelia.model.domain.ontology.Annotation;
+import org.janelia.model.domain.sample.NeuronFragment;
+import org.janelia.model.domain.sample.NeuronSeparation;
+import org.janelia.workstation.core.api.DomainMgr;
+import org.janelia.workstation.core.api.DomainModel;
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the neuron fragments of recently viewed neuron separations, together with their annotations.
+ *
+ * Separations can be preloaded in the background, and a load which is already in progress is shared
+ * rather than repeated. When some fragments change, only those fragments and their annotations are
+ * fetched again, and a new version of the separation's fragments is cached in place of the old one.
+ * Cached lists are never modified.
+ */
+final class NeuronFragmentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(NeuronFragmentCache.class);
+
+    private static final int LOADER_THREADS = ConsoleProperties.getInt("console.separations.loaderThreads", 3);
+    private static final int MAX_CACHED_SEPARATIONS = ConsoleProperties.getInt("console.separations.maxCached", 8);
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(LOADER_THREADS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("NeuronFragmentCache-%d")
+                    .setDaemon(true).build());
+
+    private static final AtomicLong versionCounter = new AtomicLong();
+
+    private static final NeuronFragmentCache instance = new NeuronFragmentCache();
+
+    static NeuronFragmentCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * One version of the fragments of a separation.
+     */
+    static final class Fragments {
+
+        private final Long sampleId;
+        private final List<NeuronFragment> fragments;
+        private final List<Annotation> annotations;
+        private final long version;
+
+        private Fragments(Long sampleId, List<NeuronFragment> fragments, List<Annotation> annotations) {
+            this.sampleId = sampleId;
+            this.fragments = Collections.unmodifiableList(fragments);
+            this.annotations = Collections.unmodifiableList(annotations);
+            this.version = versionCounter.incrementAndGet();
+        }
+
+        List<NeuronFragment> getFragments() {
+            return fragments;
+        }
+
+        List<Annotation> getAnnotations() {
+            return annotations;
+        }
+
+        /**
+         * Versions increase across all separations, so a later version of the same separation always
+         * has a greater number.
+         */
+        long getVersion() {
+            return version;
+        }
+    }
+
+    // Access-ordered, so that the least recently viewed separation is evicted first
+    private final Map<Long, Future<Fragments>> entries = new LinkedHashMap<Long, Future<Fragments>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Future<Fragments>> eldest) {
+            if (size() > MAX_CACHED_SEPARATIONS) {
+                eldest.getValue().cancel(false);
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private NeuronFragmentCache() {
+    }
+
+    /**
+     * Run a task on the loader threads, e.g. to load preferences while the fragments are being loaded.
+     */
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Returns the fragments of the given separation, waiting for them if they are being preloaded,
+     * or loading them in the calling thread otherwise. This method may call the server and thus
+     * should be run in a background thread.
+     */
+    Fragments get(NeuronSeparation separation) throws Exception {
+        FutureTask<Fragments> task = null;
+        Future<Fragments> future;
+        synchronized (entries) {
+            future = entries.get(separation.getId());
+            if (future == null || future.isCancelled()) {
+                task = new FutureTask<>(() -> load(separation));
+                entries.put(separation.getId(), task);
+                future = task;
+            }
+        }
+        if (task != null) {
+            task.run();
+        }
+        try {
+            return future.get();
+        }
+        catch (CancellationException e) {
+            // Evicted while we were waiting for it
+            return load(separation);
+        }
+        catch (ExecutionException e) {
+            remove(separation.getId(), future);
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Start loading the fragments of the given separation in the background, unless they are already
+     * cached or being loaded.
+     */
+    void preload(NeuronSeparation separation) {
+        if (separation == null || separation.getId() == null) {
+            return;
+        }
+        synchronized (entries) {
+            Future<Fragments> future = entries.get(separation.getId());
+            if (future != null && !future.isCancelled()) {
+                return;
+            }
+            log.debug("Preloading fragments of separation {}", separation.getId());
+            FutureTask<Fragments> task = new FutureTask<>(() -> load(separation));
+            entries.put(separation.getId(), task);
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Fetch the given fragments of a cached separation again, along with their annotations, and cache
+     * the result as a new version. Fragments which no longer exist are dropped, and new fragments of the
+     * separation are appended. If the separation is being loaded, this waits for it first.
+     * No lock is held while waiting or fetching; if another update replaces the cached version in the
+     * meantime, the fetched fragments are applied to that version instead.
+     * This method may call the server and thus should be run in a background thread.
+     * @param separationId separation to update
+     * @param fragmentIds ids of the changed fragments
+     * @return the new version, the current version if none of the fragments changed, or null if the
+     * separation is not cached
+     */
+    Fragments updateFragments(Long separationId, Collection<Long> fragmentIds) throws Exception {
+
+        if (getQuietly(getEntry(separationId)) == null) {
+            return null;
+        }
+
+        DomainModel model = DomainMgr.getDomainMgr().getModel();
+        List<NeuronFragment> fetched = model.getDomainObjects(NeuronFragment.class, new ArrayList<>(fragmentIds));
+        // Annotations of every fetched fragment, since which of them changed depends on the cached version
+        List<Annotation> fetchedAnnotations = model.getAnnotations(DomainUtils.getReferences(fetched));
+
+        while (true) {
+            Future<Fragments> future = getEntry(separationId);
+            Fragments current = getQuietly(future);
+            if (current == null) {
+                return null;
+            }
+            Fragments updated = applyFragments(separationId, current, fragmentIds, fetched, fetchedAnnotations);
+            if (updated == current || replace(separationId, future, updated)) {
+                return updated;
+            }
+            log.debug("Separation {} changed while updating fragments, retrying", separationId);
+        }
+    }
+
+    /**
+     * Fetch the annotations of one fragment of a cached separation again, and cache the result as a new
+     * version. This method may call the server and thus should be run in a background thread.
+     * @return the new version, or null if the separation is not cached
+     */
+    Fragments updateAnnotations(Long separationId, Reference fragmentRef) throws Exception {
+        if (getQuietly(getEntry(separationId)) == null) {
+            return null;
+        }
+        List<Annotation> fetched = DomainMgr.getDomainMgr().getModel().getAnnotations(fragmentRef);
+        while (true) {
+            Future<Fragments> future = getEntry(separationId);
+            Fragments current = getQuietly(future);
+            if (current == null) {
+                return null;
+            }
+            List<Annotation> annotations = replaceAnnotations(current.getAnnotations(), Collections.singleton(fragmentRef), fetched);
+            Fragments updated = new Fragments(current.sampleId, new ArrayList<>(current.getFragments()), annotations);
+            if (replace(separationId, future, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Returns a new version of the given fragments, with the fetched fragments in place of the ones with
+     * the given ids, or the current version if none of them changed.
+     */
+    private static Fragments applyFragments(Long separationId, Fragments current, Collection<Long> fragmentIds,
+            List<NeuronFragment> fetched, List<Annotation> fetchedAnnotations) {
+
+        Map<Long, NeuronFragment> updatedById = new LinkedHashMap<>();
+        for (NeuronFragment fragment : fetched) {
+            updatedById.put(fragment.getId(), fragment);
+        }
+
+        // References of fragments which were replaced or removed
+        Set<Reference> changed = new HashSet<>();
+        List<NeuronFragment> fragments = new ArrayList<>(current.getFragments().size());
+        for (NeuronFragment fragment : current.getFragments()) {
+            if (!fragmentIds.contains(fragment.getId())) {
+                fragments.add(fragment);
+                continue;
+            }
+            NeuronFragment updated = updatedById.remove(fragment.getId());
+            if (updated != fragment) {
+                changed.add(Reference.createFor(fragment));
+            }
+            if (updated != null) {
+                fragments.add(updated);
+            }
+        }
+        for (NeuronFragment added : updatedById.values()) {
+            if (separationId.equals(added.getSeparationId())) {
+                fragments.add(added);
+                changed.add(Reference.createFor(added));
+            }
+        }
+
+        if (changed.isEmpty()) {
+            return current;
+        }
+
+        List<Annotation> replacements = new ArrayList<>();
+        for (Annotation annotation : fetchedAnnotations) {
+            if (changed.contains(annotation.getTarget())) {
+                replacements.add(annotation);
+            }
+        }
+        List<Annotation> annotations = replaceAnnotations(current.getAnnotations(), changed, replacements);
+
+        log.info("Updated {} fragments of separation {}", changed.size(), separationId);
+        return new Fragments(current.sampleId, fragments, annotations);
+    }
+
+    /**
+     * Forget the fragments of the given separation.
+     */
+    void invalidate(Long separationId) {
+        synchronized (entries) {
+            Future<Fragments> future = entries.remove(separationId);
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Forget the fragments of every separation of the given sample.
+     */
+    void invalidateSample(Long sampleId) {
+        synchronized (entries) {
+            for (Iterator<Future<Fragments>> iterator = entries.values().iterator(); iterator.hasNext();) {
+                Future<Fragments> future = iterator.next();
+                Fragments fragments = future.isDone() ? getQuietly(future) : null;
+                if (!future.isDone() || fragments == null || sampleId.equals(fragments.sampleId)) {
+                    // Loads in progress may be of this sample, and would be out of date
+                    future.cancel(false);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget everything, and cancel any preloads.
+     */
+    void clear() {
+        synchronized (entries) {
+            for (Future<Fragments> future : entries.values()) {
+                future.cancel(false);
+            }
+            entries.clear();
+        }
+    }
+
+    private Fragments load(NeuronSeparation separation) throws Exception {
+        long start = System.currentTimeMillis();
+        DomainModel model = DomainMgr.getDomainMgr().getModel();
+        List<NeuronFragment> fragments = model.getDomainObjectsAs(NeuronFragment.class, separation.getFragmentsReference());
+        List<Annotation> annotations = model.getAnnotations(DomainUtils.getReferences(fragments));
+        Long sampleId = separation.getParentRun().getParent().getParent().getId();
+        log.debug("Loaded {} fragments of separation {} in {} ms", fragments.size(), separation.getId(), System.currentTimeMillis() - start);
+        return new Fragments(sampleId, fragments, annotations);
+    }
+
+    private Future<Fragments> getEntry(Long separationId) {
+        synchronized (entries) {
+            return entries.get(separationId);
+        }
+    }
+
+    private void remove(Long separationId, Future<Fragments> future) {
+        synchronized (entries) {
+            if (entries.get(separationId) == future) {
+                entries.remove(separationId);
+            }
+        }
+    }
+
+    /**
+     * Cache the given version, unless the entry was invalidated or replaced while it was being computed.
+     * @return false if the entry was replaced by another version, which the caller should update instead
+     */
+    private boolean replace(Long separationId, Future<Fragments> expected, Fragments fragments) {
+        synchronized (entries) {
+            Future<Fragments> future = entries.get(separationId);
+            if (future == expected) {
+                entries.put(separationId, CompletableFuture.completedFuture(fragments));
+                return true;
+            }
+            // Invalidated entries are not cached again, but the caller may still use this version
+            return future == null || future.isCancelled();
+        }
+    }
+
+    private static List<Annotation> replaceAnnotations(List<Annotation> annotations, Set<Reference> targets, List<Annotation> replacements) {
+        List<Annotation> result = new ArrayList<>(annotations.size() + replacements.size());
+        for (Annotation annotation : annotations) {
+            if (!targets.contains(annotation.getTarget())) {
+                result.add(annotation);
+            }
+        }
+        result.addAll(replacements);
+        return result;
+    }
+
+    private static Fragments getQuietly(Future<Fragments> future) {
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (CancellationException | ExecutionException e) {
+            // The next full load will surface any error
+            return null;
+        }
+    }
+}
@@ -13,6 +13,7 @@ import org.janelia.model.domain.sample.NeuronFragment;
 import org.janelia.model.domain.sample.NeuronSeparation;
 import org.janelia.model.domain.sample.PipelineResult;
 import org.janelia.model.domain.sample.Sample;
+import org.janelia.model.domain.sample.SamplePipelineRun;
 import org.janelia.workstation.browser.actions.ExportResultsAction;
 import org.janelia.workstation.browser.actions.OpenInNeuronAnnotatorActionListener;
 import org.janelia.workstation.browser.actions.context.OpenInVvdNAPluginActionListener;
@@ -25,8 +26,8 @@ import org.janelia.workstation.common.gui.support.buttons.DropDownButton;
 import org.janelia.workstation.core.actions.ViewerContext;
 import org.janelia.workstation.core.activity_logging.ActivityLogHelper;
 import org.janelia.workstation.core.api.DomainMgr;
-import org.janelia.workstation.core.api.DomainModel;
 import org.janelia.workstation.core.events.Events;
+import org.janelia.workstation.core.events.model.DomainObjectAnnotationChangeEvent;
 import org.janelia.workstation.core.events.model.DomainObjectInvalidationEvent;
 import org.janelia.workstation.core.events.selection.*;
 import org.janelia.workstation.core.model.DomainModelViewUtils;
@@ -48,6 +49,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 
@@ -68,6 +70,7 @@ public class NeuronSeparationEditorPanel
     // Utilities
     private final Debouncer debouncer = new Debouncer();
     private final Debouncer reloadDebouncer = new Debouncer();
+    private final NeuronFragmentCache fragmentCache = NeuronFragmentCache.getInstance();
     
     // UI Elements
     private final ConfigPanel configPanel;
@@ -89,6 +92,7 @@ public class NeuronSeparationEditorPanel
     // Results
     private List<NeuronFragment> neuronFragments;
     private List<Annotation> annotations;
+    private long fragmentsVersion;
     private DomainObjectSearchResults searchResults;
     private String sortCriteria = DEFAULT_SORT_CRITERIA;
 
@@ -250,6 +254,31 @@ public class NeuronSeparationEditorPanel
         else {
             configPanel.setTitle(sample.getName());
             setResult(separation, isUserDriven, w);
+            preloadAdjacentSeparations(parentResult);
+        }
+    }
+
+    /**
+     * Preload the fragments of the other separations of the given result, and of the latest separations
+     * of the results on either side of it in its pipeline run, so that switching to them is quick.
+     */
+    private void preloadAdjacentSeparations(PipelineResult parentResult) {
+        if (parentResult.hasResults()) {
+            for (PipelineResult result : parentResult.getResults()) {
+                if (result instanceof NeuronSeparation && result != separation) {
+                    fragmentCache.preload((NeuronSeparation)result);
+                }
+            }
+        }
+        SamplePipelineRun run = parentResult.getParentRun();
+        if (run==null || run.getResults()==null) return;
+        List<PipelineResult> runResults = run.getResults();
+        int index = runResults.indexOf(parentResult);
+        if (index<0) return;
+        for (int i : new int[] { index+1, index-1 }) {
+            if (i>=0 && i<runResults.size()) {
+                fragmentCache.preload(runResults.get(i).getLatestSeparationResult());
+            }
         }
     }
     
@@ -262,19 +291,24 @@ public class NeuronSeparationEditorPanel
 
             @Override
             protected void doStuff() throws Exception {
-                
+
+                // The preferences are loaded while the fragments are loading
+                Future<String> sortCriteriaFuture = fragmentCache.submit(() -> loadSortCriteria());
+                Future<Set<Long>> hiddenFragmentsFuture = fragmentCache.submit(() -> loadHiddenFragments());
+
                 if (separation==null) {
                     neuronFragments = new ArrayList<>();
                     annotations = new ArrayList<>();
                 }
                 else {
-                    DomainModel model = DomainMgr.getDomainMgr().getModel();
-                    neuronFragments = model.getDomainObjectsAs(NeuronFragment.class, separation.getFragmentsReference());
-                    annotations = model.getAnnotations(DomainUtils.getReferences(neuronFragments));
+                    NeuronFragmentCache.Fragments fragments = fragmentCache.get(separation);
+                    neuronFragments = fragments.getFragments();
+                    annotations = fragments.getAnnotations();
+                    fragmentsVersion = fragments.getVersion();
                 }
 
-                sortCriteria = loadSortCriteria();
-                hiddenFragments = loadHiddenFragments();
+                sortCriteria = sortCriteriaFuture.get();
+                hiddenFragments = hiddenFragmentsFuture.get();
                 prepareResults();
             }
 
@@ -554,6 +588,57 @@ public class NeuronSeparationEditorPanel
         };
     }
 
+    /**
+     * Fetch the given fragments of the current separation again, and show them in place of the old ones,
+     * without reloading the rest of the separation.
+     */
+    private void refreshFragments(final Set<Long> fragmentIds) {
+
+        final NeuronSeparation currSeparation = separation;
+        
+        SimpleWorker worker = new SimpleWorker() {
+
+            NeuronFragmentCache.Fragments fragments;
+
+            @Override
+            protected void doStuff() throws Exception {
+                fragments = fragmentCache.updateFragments(currSeparation.getId(), fragmentIds);
+            }
+
+            @Override
+            protected void hadSuccess() {
+                if (currSeparation!=separation) return;
+                if (fragments==null) {
+                    log.info("Separation {} is no longer cached, reloading...", currSeparation.getId());
+                    refresh();
+                    return;
+                }
+                if (fragments.getVersion()<=fragmentsVersion) {
+                    log.debug("Fragments of separation {} are up to date", currSeparation.getId());
+                    return;
+                }
+                neuronFragments = fragments.getFragments();
+                annotations = fragments.getAnnotations();
+                fragmentsVersion = fragments.getVersion();
+                try {
+                    prepareResults();
+                }
+                catch (Exception e) {
+                    FrameworkAccess.handleException(e);
+                    return;
+                }
+                showResults(false, null);
+            }
+
+            @Override
+            protected void hadError(Throwable error) {
+                FrameworkAccess.handleException(error);
+            }
+        };
+
+        worker.execute();
+    }
+
     @Subscribe
     public void domainObjectInvalidated(DomainObjectInvalidationEvent event) {
         try {
@@ -561,29 +646,85 @@ public class NeuronSeparationEditorPanel
 
             if (event.isTotalInvalidation()) {
                 log.info("Total invalidation, reloading...");
+                fragmentCache.clear();
                 search();
             }
             else {
                 Sample sample = separation.getParentRun().getParent().getParent();
+                Set<Long> fragmentIds = new HashSet<>();
                 for (DomainObject domainObject : event.getDomainObjects()) {
                     if (domainObject.getId().equals(sample.getId())) {
                         log.info("Sample invalidated, reloading...");
                         reload(sample);
-                        break;
+                        return;
+                    }
+                    else if (domainObject instanceof Sample) {
+                        // The cache is shared, so forget other samples' separations too
+                        fragmentCache.invalidateSample(domainObject.getId());
                     }
                     else if (domainObject.getClass().equals(NeuronFragment.class)) {
-                        log.info("Some objects of class NeuronFragment were invalidated, reloading...");
-                        refresh();
+                        NeuronFragment neuronFragment = (NeuronFragment)domainObject;
+                        if (separation.getId().equals(neuronFragment.getSeparationId())) {
+                            fragmentIds.add(neuronFragment.getId());
+                        }
+                        else if (neuronFragment.getSeparationId() != null) {
+                            // Only the current separation is updated in place
+                            fragmentCache.invalidate(neuronFragment.getSeparationId());
+                        }
                     }
                 }
+                if (!fragmentIds.isEmpty()) {
+                    log.info("{} neuron fragments were invalidated, updating...", fragmentIds.size());
+                    refreshFragments(fragmentIds);
+                }
             }
         }  catch (Exception e) {
             FrameworkAccess.handleException(e);
         }
     }
 
+    @Subscribe
+    public void annotationsChanged(DomainObjectAnnotationChangeEvent event) {
+        if (separation==null) return;
+        if (!(event.getDomainObject() instanceof NeuronFragment)) return;
+        NeuronFragment neuronFragment = (NeuronFragment)event.getDomainObject();
+        final Long separationId = neuronFragment.getSeparationId();
+        if (separationId==null) return;
+        final Reference ref = Reference.createFor(neuronFragment);
+
+        // The results panel updates the displayed annotations, so only our copy needs updating
+        SimpleWorker worker = new SimpleWorker() {
+
+            NeuronFragmentCache.Fragments fragments;
+
+            @Override
+            protected void doStuff() throws Exception {
+                fragments = fragmentCache.updateAnnotations(separationId, ref);
+            }
+
+            @Override
+            protected void hadSuccess() {
+                if (fragments==null || separation==null || !separationId.equals(separation.getId())) return;
+                if (fragments.getVersion()>fragmentsVersion) {
+                    neuronFragments = fragments.getFragments();
+                    annotations = fragments.getAnnotations();
+                    fragmentsVersion = fragments.getVersion();
+                }
+            }
+
+            @Override
+            protected void hadError(Throwable error) {
+                log.warn("Could not update cached annotations of {}", ref, error);
+            }
+        };
+
+        worker.execute();
+    }
+
     public void reload(Sample sample) {
 
+        fragmentCache.invalidateSample(sample.getId());
+
         if (!reloadDebouncer.queue()) {
             log.info("Skipping reload, since there is one already in progress");
             return;
@@ -1,5 +1,7 @@
 package org.janelia.workstation.browser.gui.hud;
 
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.FilenameUtils;
 import org.janelia.model.domain.DomainObject;
 import org.janelia.model.domain.DomainUtils;
@@ -15,7 +17,9 @@ import org.janelia.workstation.core.api.FileMgr;
 import org.janelia.workstation.core.keybind.KeymapUtil;
 import org.janelia.workstation.core.model.descriptors.ArtifactDescriptor;
 import org.janelia.workstation.core.model.descriptors.DescriptorUtils;
+import org.janelia.workstation.core.util.ConsoleProperties;
 import org.janelia.workstation.core.util.ImageCache;
+import org.janelia.workstation.core.util.ThumbnailCache;
 import org.janelia.workstation.core.util.Utils;
 import org.janelia.workstation.core.workers.SimpleWorker;
 import org.janelia.workstation.integration.util.FrameworkAccess;
@@ -26,14 +30,26 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
  * A persistent heads-up display for a synchronized image.
  *
+ * Images are shown progressively: a preview at reduced resolution from the thumbnail caches is shown
+ * as soon as it is available, and is replaced by the full image once that has been decoded. Previews
+ * which are not cached yet are prefetched with subsampling, or scaled from the full image once it has
+ * been decoded. Previews share the thumbnail caches used by the icon grid. When the displayed
+ * object changes, the previous load is disregarded and skips its full decode.
+ *
  * @author <a href="mailto:rokickik@janelia.hhmi.org">Konrad Rokicki</a>
  * @author fosterl
  */
@@ -41,6 +57,14 @@ public class Hud extends ModalDialog {
 
     private static final Logger log = LoggerFactory.getLogger(Hud.class);
 
+    private static final int PREVIEW_WIDTH = ThumbnailCache.getThumbnailWidth(ConsoleProperties.getInt("console.hud.previewWidth", 512));
+    private static final int PREFETCH_THREADS = ConsoleProperties.getInt("console.hud.prefetchThreads", 2);
+
+    private static final ExecutorService prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("HudPrefetch-%d")
+                    .setDaemon(true).build());
+
     // Input Handling
     private final Cursor defCursor = Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR);
     private final Cursor hndCursor = Cursor.getPredefinedCursor(Cursor.HAND_CURSOR);
@@ -61,6 +85,8 @@ public class Hud extends ModalDialog {
     private HasFiles fileProvider;
     private String title;
     private FileType imageType;
+    private SimpleWorker loadWorker;
+    private final List<Future<?>> prefetches = new ArrayList<>();
 
     public static boolean isInitialized() {
         return instance != null;
@@ -288,6 +314,106 @@ public class Hud extends ModalDialog {
         setObjectAndToggleDialog(imagePath, toggle, overrideSettings);
     }
 
+    /**
+     * The file provider for an object, chosen the same way as in setObjectAndToggleDialog.
+     */
+    private HasFiles getFileProvider(DomainObject domainObject, ArtifactDescriptor resultDescriptor) {
+        if (domainObject instanceof Sample) {
+            return DescriptorUtils.getLatestResult((Sample)domainObject, resultDescriptor);
+        }
+        else if (domainObject instanceof HasFiles) {
+            return (HasFiles)domainObject;
+        }
+        return null;
+    }
+
+    /**
+     * Start loading the previews of the objects on either side of the given object in a list, using the
+     * current result and image type, so that moving through the list is quick. Prefetches requested
+     * earlier which have not started yet are cancelled.
+     * @param domainObjects objects in display order
+     * @param domainObject the object being displayed
+     */
+    public void prefetchAdjacent(List<? extends DomainObject> domainObjects, DomainObject domainObject) {
+
+        for (Future<?> prefetch : prefetches) {
+            prefetch.cancel(false);
+        }
+        prefetches.clear();
+
+        if (PREVIEW_WIDTH<=0 || domainObjects==null) return;
+        int index = domainObjects.indexOf(domainObject);
+        if (index<0) return;
+
+        for (int i : new int[] { index+1, index-1 }) {
+            if (i<0 || i>=domainObjects.size()) continue;
+            HasFiles provider = getFileProvider(domainObjects.get(i), resultButton.getResultDescriptor());
+            if (provider==null) continue;
+            final String filepath = DomainUtils.getFilepath(provider, typeButton.getImageTypeName());
+            if (filepath==null) continue;
+            prefetches.add(prefetchExecutor.submit(() -> {
+                try {
+                    prefetchPreview(filepath);
+                }
+                catch (Exception e) {
+                    log.debug("Could not prefetch preview of {}", filepath, e);
+                }
+            }));
+        }
+    }
+
+    private static void prefetchPreview(String filepath) throws Exception {
+        ImageCache ic = DataBrowserMgr.getDataBrowserMgr().getImageCache();
+        if (ic != null && ic.contains(filepath)) {
+            return;
+        }
+        if (getCachedPreview(filepath) != null) {
+            return;
+        }
+        byte[] imageBytes;
+        try (InputStream imageStream = FileMgr.getFileMgr().openFileInputStream(filepath, false)) {
+            imageBytes = ByteStreams.toByteArray(imageStream);
+        }
+        catch (FileNotFoundException e) {
+            log.debug("Could not find file: "+filepath, e);
+            return;
+        }
+        BufferedImage decoded = Utils.readImageFromInputStream(new ByteArrayInputStream(imageBytes), FilenameUtils.getExtension(filepath), PREVIEW_WIDTH);
+        if (decoded != null) {
+            cachePreview(filepath, decoded);
+            log.debug("Prefetched preview of {}", filepath);
+        }
+    }
+
+    /**
+     * Returns the preview of the given image from the memory or disk cache, or null if it is not cached.
+     */
+    private static BufferedImage getCachedPreview(String filepath) {
+        ImageCache ic = DataBrowserMgr.getDataBrowserMgr().getImageCache();
+        String key = ThumbnailCache.getKey(filepath, PREVIEW_WIDTH);
+        BufferedImage preview = ic == null ? null : ic.get(key);
+        if (preview == null) {
+            preview = DataBrowserMgr.getDataBrowserMgr().getThumbnailCache().get(filepath, PREVIEW_WIDTH);
+            if (preview != null && ic != null) {
+                ic.put(key, preview);
+            }
+        }
+        return preview;
+    }
+
+    /**
+     * Scale an image decoded with subsampling to the preview width, and cache it in memory and on disk.
+     */
+    private static BufferedImage cachePreview(String filepath, BufferedImage decoded) {
+        BufferedImage preview = decoded.getWidth() > PREVIEW_WIDTH ? Utils.getScaledImageByWidth(decoded, PREVIEW_WIDTH) : decoded;
+        DataBrowserMgr.getDataBrowserMgr().getThumbnailCache().put(filepath, PREVIEW_WIDTH, preview);
+        ImageCache ic = DataBrowserMgr.getDataBrowserMgr().getImageCache();
+        if (ic != null) {
+            ic.put(ThumbnailCache.getKey(filepath, PREVIEW_WIDTH), preview);
+        }
+        return preview;
+    }
+
     /**
      * Display a file from a HasFiles interface, with UI to select the file type.
      * @param hasFiles
@@ -344,6 +470,12 @@ public class Hud extends ModalDialog {
     
     private void setObjectAndToggleDialog(String filepath, final boolean toggle, boolean overrideSettings) {
         log.info("setObjectAndToggleDialog({},toggle={},overrideSettings={})",filepath,toggle,overrideSettings);
+
+        // Whatever was being loaded is no longer wanted
+        if (loadWorker != null) {
+            loadWorker.disregard();
+            loadWorker = null;
+        }
         
         if (filepath == null) {
             log.info("No image path for {} ({})", title, typeButton.getImageTypeName());
@@ -357,113 +489,167 @@ public class Hud extends ModalDialog {
             else {
                 pack();
             }
+            return;
         }
-        else {
-            SimpleWorker worker = new SimpleWorker() {
-
-                private BufferedImage image = null;
-                
-                @Override
-                protected void doStuff() throws Exception {
-                    
-                    ImageCache ic = DataBrowserMgr.getDataBrowserMgr().getImageCache();
-                    if (ic != null) {
-                        image = ic.get(filepath);
+
+        ImageCache imageCache = DataBrowserMgr.getDataBrowserMgr().getImageCache();
+        BufferedImage cachedImage = imageCache == null ? null : imageCache.get(filepath);
+        if (cachedImage != null) {
+            showImage(cachedImage, toggle);
+            return;
+        }
+
+        final String extension = FilenameUtils.getExtension(filepath);
+
+        SimpleWorker worker = new SimpleWorker() {
+
+            private BufferedImage image = null;
+            // Set once a preview has been queued for display, after which the dialog must not be toggled again
+            private volatile boolean previewShown = false;
+
+            @Override
+            protected void doStuff() throws Exception {
+
+                ImageCache ic = DataBrowserMgr.getDataBrowserMgr().getImageCache();
+
+                if (PREVIEW_WIDTH > 0) {
+                    BufferedImage preview = getCachedPreview(filepath);
+                    if (preview != null) {
+                        showPreview(preview);
+                    }
+                }
+
+                if (isDisregarded()) return;
+
+                byte[] imageBytes;
+                try {
+                    log.debug("Must load image.");
+                    try (InputStream imageStream = FileMgr.getFileMgr().openFileInputStream(filepath, false)) {
+                        imageBytes = ByteStreams.toByteArray(imageStream);
                     }
+                }
+                catch (FileNotFoundException e) {
+                    log.debug("Could not find file: "+filepath, e);
+                    log.info("No image read for {}", filepath);
+                    return;
+                }
+
+                if (isDisregarded()) return;
+
+                // Ensure we have an image and that it is cached.
+                image = Utils.readImageFromInputStream(new ByteArrayInputStream(imageBytes), extension);
+                if (image != null && ic != null) {
+                    ic.put(filepath, image);
+                }
 
-                    // Ensure we have an image and that it is cached.
-                    if (image == null) {
+                if (image != null && PREVIEW_WIDTH > 0 && !previewShown) {
+                    // Decoding a preview first would only delay the full image, so the preview is
+                    // scaled from it instead, off this thread, for the next time it is needed
+                    final BufferedImage fullImage = image;
+                    prefetchExecutor.execute(() -> {
                         try {
-                            log.debug("Must load image.");
-                            try (InputStream imageStream = FileMgr.getFileMgr().openFileInputStream(filepath, false)) {
-                                image = Utils.readImageFromInputStream(imageStream, FilenameUtils.getExtension(filepath));
-                            }
-                            if (ic != null) {
-                                ic.put(filepath, image);
-                            }
+                            cachePreview(filepath, fullImage);
                         }
-                        catch (FileNotFoundException e) {
-                            log.debug("Could not find file: "+filepath, e);
+                        catch (Exception e) {
+                            log.debug("Could not cache preview of {}", filepath, e);
                         }
-                    }
+                    });
+                }
+            }
 
-                    // No image loaded or cached.  Do nada.
-                    if (image == null) {
-                        log.info("No image read for {}", filepath);
-                    }
+            private void showPreview(BufferedImage preview) {
+                final boolean togglePreview = toggle && !previewShown;
+                previewShown = true;
+                SwingUtilities.invokeLater(() -> {
+                    if (isDisregarded()) return;
+                    log.debug("Showing {}x{} preview of {}", preview.getWidth(), preview.getHeight(), filepath);
+                    showImage(preview, togglePreview);
+                });
+            }
 
+            @Override
+            protected void hadSuccess() {
+                if (loadWorker == this) {
+                    loadWorker = null;
                 }
+                showImage(image, toggle && !previewShown);
+            }
 
-                @Override
-                protected void hadSuccess() {
-                    setTitle(title);
+            @Override
+            protected void hadError(Throwable error) {
+                if (loadWorker == this) {
+                    loadWorker = null;
+                }
+                FrameworkAccess.handleException(error);
+            }
+        };
 
-                    int imageWidth, imageHeight;
-                    if (image != null) {
-                        previewLabel.setIcon(new ImageIcon(image));
-                        imageWidth = image.getWidth();
-                        imageHeight = image.getHeight();
-                    }
-                    else {
-                        MissingIcon icon = new MissingIcon();
-                        previewLabel.setIcon(icon);
-                        imageWidth = icon.getIconWidth();
-                        imageHeight = icon.getIconHeight();
-                    }
+        loadWorker = worker;
+        worker.execute();
+    }
 
-                    // Pack to get sizes
-                    pack();
-
-                    Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
-                    Insets scnMax = Toolkit.getDefaultToolkit().getScreenInsets(getGraphicsConfiguration());
-                    log.trace("Got screen insets: {}", scnMax);
-                    // Available size of the screen
-                    int width = screenSize.width - scnMax.left - scnMax.right;
-                    int height = screenSize.height - scnMax.bottom - scnMax.top;
-
-                    // Use less than available, just in case there are borders or padding
-                    width = (int)Math.round((double)width * 0.98);
-                    height = (int)Math.round((double)height * 0.98);
-                    log.info("Available screen size: {}x{}", width, height);
-
-                    int padding = 8;
-                    int windowTitleHeight = 35;
-                    log.info("Image size: {}x{}", imageWidth, imageHeight);
-                    log.debug("  windowTitleHeight: {}", windowTitleHeight);
-                    log.debug("  menuLikePanel height: {}", menuLikePanel.getPreferredSize().height);
-
-                    int availableWidth = width - padding;
-                    int availableHeight = height - padding - windowTitleHeight - menuLikePanel.getPreferredSize().height;
-                    log.debug("Available image size: {}x{}", availableWidth, availableHeight);
-
-                    int scrollPaneWidth = Math.min(imageWidth + padding, availableWidth);
-                    int scrollPaneHeight = Math.min(imageHeight + padding, availableHeight);
-
-                    Dimension currentSize = scrollPane.getPreferredSize();
-                    if (currentSize.width != scrollPaneWidth || currentSize.height != scrollPaneHeight) {
-                        resetPosition = true;
-                    }
+    /**
+     * Show the given image, or a missing icon if it is null, and size the dialog to fit it on the screen.
+     */
+    private void showImage(BufferedImage image, boolean toggle) {
+        setTitle(title);
+
+        int imageWidth, imageHeight;
+        if (image != null) {
+            previewLabel.setIcon(new ImageIcon(image));
+            imageWidth = image.getWidth();
+            imageHeight = image.getHeight();
+        }
+        else {
+            MissingIcon icon = new MissingIcon();
+            previewLabel.setIcon(icon);
+            imageWidth = icon.getIconWidth();
+            imageHeight = icon.getIconHeight();
+        }
 
-                    log.info("Setting scroll pane size: {}x{}", scrollPaneWidth, scrollPaneHeight);
-                    scrollPane.setPreferredSize(new Dimension(scrollPaneWidth, scrollPaneHeight));
+        // Pack to get sizes
+        pack();
 
-                    if (toggle) {
-                        toggleDialog();
-                    }
-                    else {
-                        pack();
-                        revalidate();
-                        repaint();
-                    }
-                }
+        Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
+        Insets scnMax = Toolkit.getDefaultToolkit().getScreenInsets(getGraphicsConfiguration());
+        log.trace("Got screen insets: {}", scnMax);
+        // Available size of the screen
+        int width = screenSize.width - scnMax.left - scnMax.right;
+        int height = screenSize.height - scnMax.bottom - scnMax.top;
+
+        // Use less than available, just in case there are borders or padding
+        width = (int)Math.round((double)width * 0.98);
+        height = (int)Math.round((double)height * 0.98);
+        log.info("Available screen size: {}x{}", width, height);
+
+        int padding = 8;
+        int windowTitleHeight = 35;
+        log.info("Image size: {}x{}", imageWidth, imageHeight);
+        log.debug("  windowTitleHeight: {}", windowTitleHeight);
+        log.debug("  menuLikePanel height: {}", menuLikePanel.getPreferredSize().height);
+
+        int availableWidth = width - padding;
+        int availableHeight = height - padding - windowTitleHeight - menuLikePanel.getPreferredSize().height;
+        log.debug("Available image size: {}x{}", availableWidth, availableHeight);
+
+        int scrollPaneWidth = Math.min(imageWidth + padding, availableWidth);
+        int scrollPaneHeight = Math.min(imageHeight + padding, availableHeight);
+
+        Dimension currentSize = scrollPane.getPreferredSize();
+        if (currentSize.width != scrollPaneWidth || currentSize.height != scrollPaneHeight) {
+            resetPosition = true;
+        }
 
-                @Override
-                protected void hadError(Throwable error) {
-                    FrameworkAccess.handleException(error);
-                }
-            };
-                    
-            worker.execute();
+        log.info("Setting scroll pane size: {}x{}", scrollPaneWidth, scrollPaneHeight);
+        scrollPane.setPreferredSize(new Dimension(scrollPaneWidth, scrollPaneHeight));
+
+        if (toggle) {
+            toggleDialog();
+        }
+        else {
+            pack();
+            revalidate();
+            repaint();
         }
     }
     
@@ -42,6 +42,7 @@ import org.janelia.workstation.common.gui.support.buttons.DropDownButton;
 import org.janelia.workstation.common.gui.util.UIUtils;
 import org.janelia.workstation.core.model.search.ResultIterator;
 import org.janelia.workstation.core.model.search.ResultIteratorFind;
+import org.janelia.workstation.core.model.search.ResultPagePrefetcher;
 import org.janelia.workstation.core.model.search.ResultPage;
 import org.janelia.workstation.core.model.search.SearchResults;
 import org.janelia.workstation.core.util.ConcurrentUtils;
@@ -87,6 +88,7 @@ public abstract class PaginatedResultsPanel<T,S> extends JPanel implements FindC
     protected ResultPage<T,S> resultPage;
     protected int numPages = 0;
     protected int currPage = 0;
+    private ResultPagePrefetcher<T,S> prefetcher;
     
     // State
     protected ChildSelectionModel<T,S> selectionModel;
@@ -450,8 +452,13 @@ public abstract class PaginatedResultsPanel<T,S> extends JPanel implements FindC
             showLoadingIndicator();
         }
 
+        if (prefetcher!=null) {
+            prefetcher.clear();
+        }
+
         this.searchResults = searchResults;
         this.numPages = searchResults.getNumTotalPages();
+        this.prefetcher = new ResultPagePrefetcher<>(searchResults);
         
         showCurrPage(isUserDriven, success);
     }
@@ -492,16 +499,21 @@ public abstract class PaginatedResultsPanel<T,S> extends JPanel implements FindC
             throw new IllegalStateException("Cannot show page when there are no search results");
         }
 
+        final ResultPagePrefetcher<T,S> pagePrefetcher = prefetcher;
+        final int page = currPage;
         SimpleWorker worker = new SimpleWorker() {
         
             @Override
             protected void doStuff() throws Exception {
-                resultPage = getPage(searchResults, currPage);
-                log.info("Got page {} with {} results", currPage, resultPage.getNumPageResults());
+                pagePrefetcher.awaitPage(page);
+                resultPage = getPage(searchResults, page);
+                log.info("Got page {} with {} results", page, resultPage.getNumPageResults());
             }
 
             @Override
             protected void hadSuccess() {
+                // Load the neighboring pages while the user is looking at this one
+                pagePrefetcher.prefetchAround(page);
                 final ArrayList<S> selectedRefs = new ArrayList<>(selectionModel.getSelectedIds());
                 log.trace("Got selected refs: {}",selectedRefs);
                 updateResultsView(() -> {
@@ -651,14 +663,22 @@ public abstract class PaginatedResultsPanel<T,S> extends JPanel implements FindC
                 int globalStartIndex = currPage* SearchResults.PAGE_SIZE + foundIndex;
                 log.debug("globalStartIndex={}",globalStartIndex);
                 ResultIterator<T,S> resultIterator = new ResultIterator<>(searchResults, globalStartIndex, bias, skipStartingNode);
+                final ResultPagePrefetcher<T,S> pagePrefetcher = prefetcher;
                 searcher = new ResultIteratorFind<T,S>(resultIterator) {
+                    @Override
+                    protected ResultPage<T,S> getPage(int page) throws Exception {
+                        // Use any pages which have already been prefetched
+                        pagePrefetcher.awaitPage(page);
+                        return PaginatedResultsPanel.this.getPage(pagePrefetcher.getSearchResults(), page);
+                    }
+
                     @Override
                     protected boolean matches(ResultPage<T, S> resultPage, T object) {
                         return resultsView.matches(resultPage, object, text);
                     }
                 };
-                match = searcher.find();
-                matchPage = resultIterator.getCurrPage();
+                match = searcher.findInParallel();
+                matchPage = searcher.getMatchPage();
             }
 
             @Override
@@ -202,6 +202,10 @@ public abstract class AnnotatedImageButton<T,S> extends SelectablePanel {
      * Subclasses must call this to add their content.
      */
     protected void setMainComponent(JComponent component) {
+        if (component.getParent() == mainPanel) {
+            // Already showing, don't add more listeners to it
+            return;
+        }
         mainPanel.removeAll();
         mainPanel.add(component, BorderLayout.CENTER);
         component.addMouseListener(new MouseForwarder(this, "MainComponent->AnnotatedImageButton"));
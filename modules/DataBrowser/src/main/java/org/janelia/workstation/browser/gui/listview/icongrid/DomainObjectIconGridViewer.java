@@ -645,6 +645,9 @@ public class DomainObjectIconGridViewer
             
             DomainObject domainObject = selected.get(0);
             hud.setObjectAndToggleDialog(domainObject, resultButton.getResultDescriptor(), typeButton.getImageTypeName(), toggle, true);
+            if (toggle || hud.isVisible()) {
+                hud.prefetchAdjacent(getObjects(), domainObject);
+            }
         } 
         catch (Exception ex) {
             FrameworkAccess.handleException(ex);
@@ -14,6 +14,7 @@ import org.janelia.workstation.core.model.Decorator;
 import org.janelia.workstation.core.model.ImageModel;
 import org.janelia.workstation.common.gui.support.Icons;
 import org.janelia.workstation.core.events.selection.SelectionModel;
+import org.janelia.workstation.core.util.ThumbnailCache;
 import org.janelia.workstation.core.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,10 +31,10 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
 
     // GUI
     private final JLabel loadingLabel;
-    private final DecoratedImage imagePanel;
+    private DecoratedImage imagePanel;
     
     // Model
-    private final String imageFilename;
+    private String imageFilename;
     private List<Decorator> decorators;
     
     // State
@@ -41,6 +42,7 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
     private int displaySize;
     private boolean viewable = false;
     private LoadImageWorker loadWorker;
+    private int loadedThumbnailWidth;
     
     
     public DynamicImageButton(T imageObject, ImageModel<T,S> imageModel, SelectionModel<T,S> selectionModel, String filepath) {
@@ -56,6 +58,38 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
         setMainComponent(loadingLabel);
     }
 
+    /**
+     * Rebind this button to a different object, so that it can be reused in a virtualized grid. The image for
+     * the new object is loaded the next time the button is made viewable.
+     *
+     * This method must be called from the EDT.
+     */
+    public synchronized void bind(T imageObject, String filepath) {
+        unbind();
+        this.imageFilename = filepath;
+        this.decorators = imageModel.getDecorators(imageObject);
+        this.imagePanel = new DecoratedImage(null, decorators);
+        refresh(imageObject);
+    }
+
+    /**
+     * Cancel any loading and release the image data, so that this button can be pooled until it is bound again.
+     *
+     * This method must be called from the EDT.
+     */
+    public synchronized void unbind() {
+        cancelLoad();
+        this.loadWorker = null;
+        this.maxSizeImage = null;
+        this.displaySize = 0;
+        this.loadedThumbnailWidth = 0;
+        this.aspectRatio = 0;
+        this.viewable = false;
+        super.setViewable(false);
+        imagePanel.setImage(null);
+        setMainComponent(loadingLabel);
+    }
+
     public boolean cancelLoad() {
         if (loadWorker != null && !loadWorker.isDone()) {
             return loadWorker.cancel(true);
@@ -80,6 +114,13 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
                 if (maxSizeImage == null) {
                     // Must be currently loading, in which case this method will get called again when the loading is done
                 }
+                else if (needsLargerThumbnail(width)) {
+                    // The loaded thumbnail is too small for the new size, so reload at the new size
+                    this.displaySize = width;
+                    cancelLoad();
+                    loadImage();
+                    return;
+                }
                 else {
                     imagePanel.setImage(Utils.getScaledImageByWidth(maxSizeImage, width));
                 }
@@ -107,66 +148,7 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
         if (imageFilename != null) {
             if (wantViewable) {
                 if (!this.viewable) {
-
-                    log.trace("LoadImageWorker: {}",imageFilename);
-                    
-                    loadWorker = new LoadImageWorker(imageFilename, displaySize) {
-
-                        @Override
-                        protected void hadSuccess() {
-
-                            log.trace("Load complete: {}",imageFilename);
-                                                        
-                            if (isCancelled()) {
-                                log.debug("Load was cancelled");
-                                return;
-                            }
-
-                            setDisplaySize(getNewDisplaySize());
-
-                            BufferedImage image = getNewMaxSizeImage();
-                            setMaxSizeImage(image);
-                            registerAspectRatio(image.getWidth(), image.getHeight());
-
-                            BufferedImage scaledImage = getNewScaledImage();
-                            if (scaledImage == null) {
-                                log.warn("Scaled image is null: {}",imageFilename);
-                                return;
-                            }
-
-                            imagePanel.setImage(scaledImage);
-                            setMainComponent(imagePanel);
-
-                            loadWorker = null;
-                        }
-
-                        @Override
-                        protected void hadError(Throwable error) {
-                            
-                            String errorType;
-                            if (error instanceof FileNotFoundException) {
-                                log.warn("File not found: " + imageFilename);
-                                errorType = "File not found";
-                            }
-                            else if (error.getCause() != null && (error.getCause() instanceof FormatException)) {
-                                log.warn("Image format not supported for: " + imageFilename, error);
-                                errorType = "Image format not supported";
-                            }
-                            else {
-                                log.warn("Image could not be loaded: " + imageFilename, error);
-                                errorType = "Image could not be loaded";
-                            }
-
-                            BufferedImage image = Icons.getImage("file_error.png");
-                            imagePanel.setImage(image);
-                            imagePanel.setText(errorType, Color.red);
-                            setMainComponent(imagePanel);
-                            
-                            loadWorker = null;
-                        }
-                    };
-                    
-                    loadWorker.executeInImagePool();
+                    loadImage();
                 }
             }
             else {
@@ -189,6 +171,92 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
         this.viewable = wantViewable;
     }
 
+    private void loadImage() {
+        log.trace("LoadImageWorker: {}",imageFilename);
+        
+        loadWorker = new LoadImageWorker(imageFilename, displaySize) {
+
+            @Override
+            protected void hadSuccess() {
+
+                log.trace("Load complete: {}",imageFilename);
+                                            
+                if (loadWorker != this) {
+                    log.trace("Ignoring stale load: {}",imageFilename);
+                    return;
+                }
+
+                if (isCancelled()) {
+                    log.debug("Load was cancelled");
+                    return;
+                }
+
+                setDisplaySize(getNewDisplaySize());
+
+                BufferedImage image = getNewMaxSizeImage();
+                setMaxSizeImage(image);
+                loadedThumbnailWidth = getLoadedThumbnailWidth();
+                registerAspectRatio(image.getWidth(), image.getHeight());
+
+                BufferedImage scaledImage = getNewScaledImage();
+                if (scaledImage == null) {
+                    log.warn("Scaled image is null: {}",imageFilename);
+                    return;
+                }
+
+                imagePanel.setImage(scaledImage);
+                setMainComponent(imagePanel);
+
+                loadWorker = null;
+            }
+
+            @Override
+            protected void hadError(Throwable error) {
+
+                if (loadWorker != this) {
+                    // The button was rebound while this image was loading
+                    return;
+                }
+                
+                String errorType;
+                if (error instanceof FileNotFoundException) {
+                    log.warn("File not found: " + imageFilename);
+                    errorType = "File not found";
+                }
+                else if (error.getCause() != null && (error.getCause() instanceof FormatException)) {
+                    log.warn("Image format not supported for: " + imageFilename, error);
+                    errorType = "Image format not supported";
+                }
+                else {
+                    log.warn("Image could not be loaded: " + imageFilename, error);
+                    errorType = "Image could not be loaded";
+                }
+
+                BufferedImage image = Icons.getImage("file_error.png");
+                imagePanel.setImage(image);
+                imagePanel.setText(errorType, Color.red);
+                setMainComponent(imagePanel);
+                
+                loadWorker = null;
+            }
+        };
+        
+        loadWorker.executeInImagePool();
+    }
+
+    /**
+     * Returns true if the currently loaded image is a thumbnail which is too small to be
+     * displayed at the given width.
+     */
+    private boolean needsLargerThumbnail(int width) {
+        if (loadedThumbnailWidth <= 0) {
+            // Full size image is loaded
+            return false;
+        }
+        int thumbnailWidth = ThumbnailCache.getThumbnailWidth(width);
+        return thumbnailWidth == 0 || thumbnailWidth > loadedThumbnailWidth;
+    }
+
     private boolean isUnloadImages() {
         return BrowserOptions.getInstance().isUnloadImages();
     }
@@ -210,9 +278,22 @@ public class DynamicImageButton<T,S> extends AnnotatedImageButton<T,S> {
     }
 
     /**
-     * Override this method to hear when an aspect ratio is determined.
+     * Called with the size of each loaded image. The aspect ratio is only passed on if it differs from the last
+     * one seen since this button was bound.
      */
     protected synchronized void registerAspectRatio(int width, int height) {
+        log.trace("registerAspectRatio({}x{})", width, height);
+        double a = (double)width / (double)height;
+        if (a != this.aspectRatio) {
+            this.aspectRatio = a;
+            aspectRatioChanged(a);
+        }
+    }
+
+    /**
+     * Override this method to hear when an aspect ratio is determined.
+     */
+    protected void aspectRatioChanged(double aspectRatio) {
     }
     
     // TODO: in the future, we may want to display titles directly on the image. 
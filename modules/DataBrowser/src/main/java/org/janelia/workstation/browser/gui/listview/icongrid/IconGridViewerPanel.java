@@ -409,10 +409,11 @@ public abstract class IconGridViewerPanel<T,S> extends JPanel {
     protected void userSelectObject(T object, boolean clearAll) {
         selectObjects(Collections.singletonList(object), clearAll, true);
 
+        // Scroll first, so that the object's button is realized
+        imagesPanel.scrollObjectToCenterIfOutsideViewport(object);
         S id = getImageModel().getImageUniqueId(object);
         AnnotatedImageButton<T,S> button = imagesPanel.getButtonById(id);
         if (button != null) {
-            imagesPanel.scrollObjectToCenterIfOutsideViewport(object);
             button.requestFocus();
             updateHud(false);
         }
@@ -572,10 +573,7 @@ public abstract class IconGridViewerPanel<T,S> extends JPanel {
     }
 
     public void refreshObject(T object) {
-        S uniqueId = imageModel.getImageUniqueId(object);
-        for(AnnotatedImageButton<T,S> button : imagesPanel.getButtonsByUniqueId(uniqueId)) {
-            button.refresh(object);
-        }
+        imagesPanel.refreshImageObject(object);
         scrollSelectedObjectsToCenter();
     }
 
@@ -1,8 +1,10 @@
 package org.janelia.workstation.browser.gui.listview.icongrid;
 
 import java.awt.Component;
+import java.awt.Container;
 import java.awt.Dimension;
-import java.awt.GridLayout;
+import java.awt.Insets;
+import java.awt.LayoutManager;
 import java.awt.Rectangle;
 import java.awt.event.AdjustmentEvent;
 import java.awt.event.AdjustmentListener;
@@ -10,18 +12,23 @@ import java.awt.event.ComponentListener;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.BorderFactory;
+import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
@@ -42,6 +49,12 @@ import org.slf4j.LoggerFactory;
 /**
  * Self-adjusting grid of image buttons which may be resized together.
  *
+ * The grid is virtualized: buttons are only realized for the rows in the viewport, plus a few rows above
+ * and below it, and buttons which scroll out are cancelled and recycled for the rows which scroll in. Image
+ * loading starts as soon as a button is realized, so the rows which are about to become visible are
+ * already loading. Selection and edit selection state is kept here by unique id, and applied to buttons
+ * when they are realized.
+ *
  * @author <a href="mailto:rokickik@janelia.hhmi.org">Konrad Rokicki</a>
  */
 public abstract class ImagesPanel<T,S> extends JScrollPane {
@@ -55,6 +68,12 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
     public static final int MIN_TABLE_HEIGHT = 50;
     public static final int DEFAULT_TABLE_HEIGHT = 200;
     public static final int MAX_TABLE_HEIGHT = 500;
+
+    // Number of rows to realize above and below the viewport
+    private static final int PREFETCH_ROWS = 2;
+    // Maximum number of unbound buttons to keep around for reuse
+    private static final int MAX_POOLED_BUTTONS = 200;
+    private static final String GRID_INDEX_PROPERTY = "ImagesPanel.gridIndex";
     
     // Listeners
     private KeyListener buttonKeyListener;
@@ -62,14 +81,23 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
 
     // UI Components
     private final HashMap<S, AnnotatedImageButton<T,S>> buttons = new LinkedHashMap<>();
+    private final Deque<DynamicImageButton<T,S>> buttonPool = new ArrayDeque<>();
+    private final VirtualGridLayout gridLayout = new VirtualGridLayout();
     private final ScrollableGridPanel buttonsPanel;
     
     // Model
     private ImageModel<T,S> imageModel;
     private SelectionModel<T,S> selectionModel;
     private SelectionModel<T,S> editSelectionModel;
+    private final List<T> imageObjects = new ArrayList<>();
+    private final List<T> shownObjects = new ArrayList<>();
+    private final Map<S,Integer> shownIndexes = new HashMap<>();
+    private final Set<S> hiddenIds = new HashSet<>();
+    private final Set<S> selectedIds = new HashSet<>();
+    private final Set<S> editSelectedIds = new HashSet<>();
 
     // State
+    private boolean editMode = false;
     private boolean tagTable = false;
     private boolean titlesVisible = true;
     private boolean tagsVisible = true;
@@ -134,7 +162,8 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
     }
     
     /**
-     * Returns the button with the given unique id.
+     * Returns the button with the given unique id, or null if the object has no realized button because it's
+     * not near the viewport. Use one of the scroll methods first to make sure that the button exists.
      */
     public AnnotatedImageButton<T,S> getButtonById(S uniqueId) {
         return buttons.get(uniqueId);
@@ -175,48 +204,182 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
     }
 
     /**
-     * Create the image buttons, but leave the images unloaded for now.
+     * Set the objects to show. Buttons are created lazily, when their rows are scrolled into view.
      */
     public void setImageObjects(List<T> imageObjects) {
-        
-        buttons.clear();
-        for (Component component : buttonsPanel.getComponents()) {
-            if (component instanceof AnnotatedImageButton) {
-                @SuppressWarnings("unchecked")
-                AnnotatedImageButton<T,S> button = (AnnotatedImageButton<T,S>) component;
-                buttonsPanel.remove(button);
-            }
-        }
+
+        releaseAllButtons();
+
+        this.imageObjects.clear();
+        this.hiddenIds.clear();
+        this.selectedIds.clear();
+        this.editSelectedIds.clear();
 
         this.lowestAspectRatio = null;
 
+        Set<S> seen = new HashSet<>();
         for (final T imageObject : imageObjects) {
             S imageId = imageModel.getImageUniqueId(imageObject);
-            
-            if (buttons.containsKey(imageId)) {
-                continue;
-            }            
+            if (seen.add(imageId)) {
+                this.imageObjects.add(imageObject);
+            }
+        }
+
+        updateShownObjects();
+    }
+
+    private void updateShownObjects() {
+        shownObjects.clear();
+        shownIndexes.clear();
+        for (T imageObject : imageObjects) {
+            S imageId = imageModel.getImageUniqueId(imageObject);
+            if (!hiddenIds.contains(imageId)) {
+                shownIndexes.put(imageId, shownObjects.size());
+                shownObjects.add(imageObject);
+            }
+        }
+        gridLayout.setCount(shownObjects.size());
+        gridLayout.resetCellSize();
+        buttonsPanel.revalidate();
+        buttonsPanel.repaint();
+    }
+
+    /**
+     * Creates a new button and attaches the listeners. This is only done once per button, even if it's recycled.
+     */
+    private AnnotatedImageButton<T,S> createButton(T imageObject) {
+
+        AnnotatedImageButton<T,S> button = create(imageObject);
+
+        if (buttonKeyListener != null) {
+            button.addKeyListener(buttonKeyListener);
+        }
+        if (buttonMouseListener != null) {
+            button.addMouseListener(buttonMouseListener);
+        }
+
+        button.addMouseListener(new MouseForwarder(this, "AnnotatedImageButton->ImagesPanel"));
+
+        // Disable tab traversal, we will do it ourselves
+        button.setFocusTraversalKeysEnabled(false);
+        return button;
+    }
 
-            AnnotatedImageButton<T,S> button = create(imageObject);
+    /**
+     * Realize a button for the object at the given grid index, reusing a pooled button if possible.
+     */
+    private AnnotatedImageButton<T,S> realizeButton(T imageObject, int index) {
+
+        S imageId = imageModel.getImageUniqueId(imageObject);
+        String filepath = imageModel.getImageFilepath(imageObject);
 
-            button.setTitleVisible(titlesVisible);
-            button.setTagsVisible(tagsVisible);
+        AnnotatedImageButton<T,S> button;
+        if (filepath != null && !buttonPool.isEmpty()) {
+            DynamicImageButton<T,S> pooledButton = buttonPool.pop();
+            pooledButton.bind(imageObject, filepath);
+            button = pooledButton;
+        }
+        else {
+            button = createButton(imageObject);
+        }
 
-            if (buttonKeyListener != null) {
-                button.addKeyListener(buttonKeyListener);
+        button.putClientProperty(GRID_INDEX_PROPERTY, index);
+        button.setTitleVisible(titlesVisible);
+        button.setTagsVisible(tagsVisible);
+        ensureCorrectAnnotationView(button);
+        button.toggleEditMode(editMode);
+        button.setEditModeValue(editSelectedIds.contains(imageId));
+        button.setSelected(selectedIds.contains(imageId));
+        button.setImageSize(maxImageWidth, getMaxImageHeight());
+        button.resizeTable(currTableHeight);
+
+        buttons.put(imageId, button);
+        buttonsPanel.add(button);
+        return button;
+    }
+
+    /**
+     * Cancel any image loading for the given button, remove it from the grid, and return it to the pool.
+     */
+    private void releaseButton(S imageId, AnnotatedImageButton<T,S> button) {
+        button.setViewable(false);
+        buttonsPanel.remove(button);
+        buttons.remove(imageId);
+        if (button instanceof DynamicImageButton) {
+            DynamicImageButton<T,S> dynamicButton = (DynamicImageButton<T,S>) button;
+            dynamicButton.cancelLoad();
+            if (buttonPool.size() < MAX_POOLED_BUTTONS) {
+                dynamicButton.unbind();
+                buttonPool.push(dynamicButton);
             }
-            if (buttonMouseListener != null) {
-                button.addMouseListener(buttonMouseListener);
+        }
+    }
+
+    private void releaseAllButtons() {
+        for (Map.Entry<S, AnnotatedImageButton<T,S>> entry : new ArrayList<>(buttons.entrySet())) {
+            releaseButton(entry.getKey(), entry.getValue());
+        }
+        // Remove anything else that might be left over
+        for (Component component : buttonsPanel.getComponents()) {
+            if (component instanceof AnnotatedImageButton) {
+                buttonsPanel.remove(component);
+            }
+        }
+    }
+
+    /**
+     * Realize buttons for the rows inside the viewport (plus a few rows on either side), start loading their images,
+     * and release the buttons for all other rows.
+     *
+     * This method must be called in the EDT.
+     */
+    private void updateRealizedButtons() {
+
+        if (shownObjects.isEmpty()) {
+            releaseAllButtons();
+            return;
+        }
+
+        Rectangle viewRect = getViewport().getViewRect();
+        int first = gridLayout.getFirstIndexInRow(gridLayout.getRowAt(viewRect.y) - PREFETCH_ROWS);
+        int last = gridLayout.getLastIndexInRow(gridLayout.getRowAt(viewRect.y + viewRect.height) + PREFETCH_ROWS);
+
+        for (Map.Entry<S, AnnotatedImageButton<T,S>> entry : new ArrayList<>(buttons.entrySet())) {
+            Integer index = shownIndexes.get(entry.getKey());
+            if (index == null || index < first || index > last) {
+                releaseButton(entry.getKey(), entry.getValue());
             }
+        }
 
-            button.addMouseListener(new MouseForwarder(this, "AnnotatedImageButton->ImagesPanel"));
+        for (int i = first; i <= last; i++) {
+            T imageObject = shownObjects.get(i);
+            S imageId = imageModel.getImageUniqueId(imageObject);
+            AnnotatedImageButton<T,S> button = buttons.get(imageId);
+            if (button == null) {
+                realizeButton(imageObject, i);
+            }
+            else {
+                button.putClientProperty(GRID_INDEX_PROPERTY, i);
+            }
+        }
 
-            // Disable tab traversal, we will do it ourselves
-            button.setFocusTraversalKeysEnabled(false);
+        if (gridLayout.updateCellSize(buttons.values())) {
+            // Rows moved, so the realized range may have changed
+            buttonsPanel.revalidate();
+            SwingUtilities.invokeLater(this::loadUnloadImages);
+        }
 
-            buttons.put(imageId, button);
-            buttonsPanel.add(button);
+        for (AnnotatedImageButton<T,S> button : buttons.values()) {
+            try {
+                button.setViewable(true);
+            }
+            catch (Exception e) {
+                FrameworkAccess.handleException(e);
+            }
         }
+
+        buttonsPanel.revalidate();
+        buttonsPanel.repaint();
     }
 
     public AnnotatedImageButton<T,S> create(T imageObject) {
@@ -229,18 +392,14 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
             button = new DynamicImageButton<T,S>(imageObject, imageModel, selectionModel, filepath) {
                 
                 @Override
-                protected synchronized void registerAspectRatio(int width, int height) {
-                    log.trace("registerAspectRatio({}x{})", width, height);
-                    double a = (double)width / (double)height;
-                    if (a != this.aspectRatio) {
-                        this.aspectRatio = a;
-                        ImagesPanel.this.registerAspectRatio(a);
-                    }
+                protected void aspectRatioChanged(double aspectRatio) {
+                    ImagesPanel.this.registerAspectRatio(aspectRatio);
                 }
                 
                 @Override
                 public void updateEditSelectModel(boolean select) {
-                    ImagesPanel.this.updateEditSelectModel(imageObject, select);
+                    // This button may have been recycled, so use the currently bound object
+                    ImagesPanel.this.updateEditSelectModel(getUserObject(), select);
                 }
             };
         }
@@ -253,23 +412,35 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
 
     public void removeImageObject(T imageObject) {
         S imageId = imageModel.getImageUniqueId(imageObject);
+        if (!imageObjects.removeIf(o -> imageModel.getImageUniqueId(o).equals(imageId))) {
+            return; // Object was already removed
+        }
         AnnotatedImageButton<T,S> button = buttons.get(imageId);
-        if (button == null) {
-            return; // Button was already removed
+        if (button != null) {
+            releaseButton(imageId, button);
         }
-        buttonsPanel.remove(button);
-        buttons.remove(imageId);
+        updateShownObjects();
+        loadUnloadImages();
     }
 
-    public List<AnnotatedImageButton<T,S>> getButtonsByUniqueId(S uniqueId) {
-        List<AnnotatedImageButton<T,S>> imageButtons = new ArrayList<>();
-        for (AnnotatedImageButton<T,S> button : buttons.values()) {
-            S imageId = imageModel.getImageUniqueId(button.getUserObject());
-            if (imageId.equals(uniqueId)) {
-                imageButtons.add(button);
+    /**
+     * Replace the given object with an updated version, and refresh its button if it's currently realized.
+     */
+    public void refreshImageObject(T imageObject) {
+        S imageId = imageModel.getImageUniqueId(imageObject);
+        for (int i = 0; i < imageObjects.size(); i++) {
+            if (imageModel.getImageUniqueId(imageObjects.get(i)).equals(imageId)) {
+                imageObjects.set(i, imageObject);
             }
         }
-        return imageButtons;
+        Integer index = shownIndexes.get(imageId);
+        if (index != null) {
+            shownObjects.set(index, imageObject);
+        }
+        AnnotatedImageButton<T,S> button = buttons.get(imageId);
+        if (button != null) {
+            button.refresh(imageObject);
+        }
     }
 
     /**
@@ -282,9 +453,8 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
         log.trace("setMaxImageWidth: {}", maxImageWidth);
         this.maxImageWidth = maxImageWidth;
 
-        double aspectRatio = lowestAspectRatio == null ? 1.0 : lowestAspectRatio;
-
-        int maxImageHeight = (int) Math.round(maxImageWidth / aspectRatio);
+        int maxImageHeight = getMaxImageHeight();
+        gridLayout.resetCellSize();
         
         for (AnnotatedImageButton<T,S> button : buttons.values()) {
             try {
@@ -298,12 +468,18 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
         recalculateGrid();
     }
 
+    private int getMaxImageHeight() {
+        double aspectRatio = lowestAspectRatio == null ? 1.0 : lowestAspectRatio;
+        return (int) Math.round(maxImageWidth / aspectRatio);
+    }
+
     public synchronized void resizeTables(int tableHeight) {
         if (tableHeight < MIN_TABLE_HEIGHT || tableHeight > MAX_TABLE_HEIGHT) {
             return;
         }
         log.trace("resizeTables: {}", tableHeight);
         this.currTableHeight = tableHeight;
+        gridLayout.resetCellSize();
         for (AnnotatedImageButton<T,S> button : buttons.values()) {
             try {
                 button.resizeTable(tableHeight);
@@ -315,21 +491,17 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
     }
 
     public synchronized void showAllButtons() {
-        buttonsPanel.removeAll();
-        for (AnnotatedImageButton<T,S> button : buttons.values()) {
-            buttonsPanel.add(button);
-        }
-        revalidate();
-        repaint();
+        hiddenIds.clear();
+        releaseAllButtons();
+        updateShownObjects();
+        loadUnloadImages();
     }
 
     public synchronized void hideButtons(Collection<S> uniqueIds) {
-        for (S uniqueId : uniqueIds) {
-            AnnotatedImageButton<T,S> button = getButtonById(uniqueId);
-            buttonsPanel.remove(button);
-        }
-        revalidate();
-        repaint();
+        hiddenIds.addAll(uniqueIds);
+        releaseAllButtons();
+        updateShownObjects();
+        loadUnloadImages();
     }
 
     public int getMaxImageWidth() {
@@ -342,25 +514,26 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
 
     public void scrollToBottom() {
         getViewport().scrollRectToVisible(new Rectangle(0, buttonsPanel.getHeight(), 1, 1));
+        updateRealizedButtons();
     }
 
     public void scrollObjectToCenter(T imageObject) {
         if (imageObject == null) {
             return;
         }
-        S uniqueId = imageModel.getImageUniqueId(imageObject);
-        AnnotatedImageButton<T,S> selectedButton = getButtonById(uniqueId);
-        scrollButtonToCenter(selectedButton);
+        Rectangle rect = getCellBounds(imageModel.getImageUniqueId(imageObject));
+        if (rect != null) {
+            scrollRectToCenter(rect);
+        }
     }
 
     public void scrollObjectToCenterIfOutsideViewport(T imageObject) {
         if (imageObject == null) {
             return;
         }
-        S uniqueId = imageModel.getImageUniqueId(imageObject);
-        AnnotatedImageButton<T,S> selectedButton = getButtonById(uniqueId);
-        if (isOutsideViewport(selectedButton)) {
-            scrollButtonToCenter(selectedButton);
+        Rectangle rect = getCellBounds(imageModel.getImageUniqueId(imageObject));
+        if (rect != null && !viewport.getViewRect().intersects(rect)) {
+            scrollRectToCenter(rect);
         }
     }
 
@@ -369,6 +542,7 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
             return;
         }
         getViewport().scrollRectToVisible(button.getBounds());
+        updateRealizedButtons();
     }
 
     public boolean isOutsideViewport(AnnotatedImageButton<T,S> button) {
@@ -378,14 +552,28 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
     }
 
     public void scrollButtonToCenter(AnnotatedImageButton<T,S> button) {
-
         if (button == null) {
             return;
         }
+        scrollRectToCenter(button.getBounds());
+    }
+
+    /**
+     * Returns the bounds of the grid cell for the given object, whether or not it has a realized button.
+     */
+    private Rectangle getCellBounds(S uniqueId) {
+        Integer index = shownIndexes.get(uniqueId);
+        if (index == null) {
+            return null;
+        }
+        return gridLayout.getCellBounds(buttonsPanel, index);
+    }
+
+    private void scrollRectToCenter(Rectangle cellRect) {
 
         // This rectangle is relative to the table where the
         // northwest corner of cell (0,0) is always (0,0).
-        Rectangle rect = button.getBounds();
+        Rectangle rect = new Rectangle(cellRect);
         log.trace("Button rect: {}",rect);
         
         // The location of the view relative to the table
@@ -414,17 +602,16 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
         // Scroll the area into view.
         log.debug("Scroll to visible: {}",rect);
         viewport.scrollRectToVisible(rect);
-    }
 
-    public void scrollButtonToTop(AnnotatedImageButton<T,S> button) {
+        // Make sure the buttons in the new viewport exist, so that callers can interact with them
+        updateRealizedButtons();
+    }
 
-        if (button == null) {
-            return;
-        }
+    private void scrollRectToTop(Rectangle cellRect) {
 
 	    // This rectangle is relative to the table where the
         // northwest corner of cell (0,0) is always (0,0).
-        Rectangle rect = button.getBounds();
+        Rectangle rect = new Rectangle(cellRect);
 
         // The location of the view relative to the table
         Rectangle viewRect = viewport.getViewRect();
@@ -437,25 +624,45 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
 
         // Scroll the area into view.
         viewport.scrollRectToVisible(rect);
+        updateRealizedButtons();
+    }
+
+    public void scrollButtonToTop(AnnotatedImageButton<T,S> button) {
+        if (button == null) {
+            return;
+        }
+        scrollRectToTop(button.getBounds());
+    }
+
+    /**
+     * Returns the grid indexes of all selected objects, in grid order.
+     */
+    private List<Integer> getSelectedIndexes() {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < shownObjects.size(); i++) {
+            if (selectedIds.contains(imageModel.getImageUniqueId(shownObjects.get(i)))) {
+                indexes.add(i);
+            }
+        }
+        return indexes;
     }
 
     public void scrollSelectedObjectsToCenter() {
         log.debug("Scrolling selected objects to center");
-        List<AnnotatedImageButton<T,S>> selected = getSelectedButtons();
+        List<Integer> selected = getSelectedIndexes();
         if (selected.isEmpty()) {
             return;
         }
         int i = selected.size() / 2;
-        AnnotatedImageButton<T,S> centerOfMass = selected.get(i);
-        scrollButtonToCenter(centerOfMass);
+        scrollRectToCenter(gridLayout.getCellBounds(buttonsPanel, selected.get(i)));
     }
 
     public void scrollSelectedButtonsToTop() {
-        List<AnnotatedImageButton<T,S>> selected = getSelectedButtons();
+        List<Integer> selected = getSelectedIndexes();
         if (selected.isEmpty()) {
             return;
         }
-        scrollButtonToTop(selected.get(0));
+        scrollRectToTop(gridLayout.getCellBounds(buttonsPanel, selected.get(0)));
     }
 
     public synchronized void registerAspectRatio(Double aspectRatio) {
@@ -468,6 +675,7 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
 
     public void setTitleVisbility(boolean visible) {
         this.titlesVisible = visible;
+        gridLayout.resetCellSize();
         for (AnnotatedImageButton<T,S> button : buttons.values()) {
             button.setTitleVisible(visible);
         }
@@ -475,6 +683,7 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
 
     public void setTagVisbility(boolean visible) {
         this.tagsVisible = visible;
+        gridLayout.resetCellSize();
         for (AnnotatedImageButton<T,S> button : buttons.values()) {
             button.setTagsVisible(visible);
         }
@@ -482,12 +691,17 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
 
     public void setTagTable(boolean tagTable) {
         this.tagTable = tagTable;
+        gridLayout.resetCellSize();
         for (final AnnotatedImageButton<T,S> button : buttons.values()) {
             ensureCorrectAnnotationView(button);
         }
     }
 
     public void setEditMode(boolean mode) {
+        this.editMode = mode;
+        if (!mode) {
+            editSelectedIds.clear();
+        }
         for (final AnnotatedImageButton<T,S> button : buttons.values()) {
             button.toggleEditMode(mode);
         }
@@ -543,78 +757,87 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
             throw new IllegalStateException("No selection model is defined for editing");
         }
         
+        S imageId = imageModel.getImageUniqueId(imgObject);
         if (select) {
+            editSelectedIds.add(imageId);
             editSelectionModel.select(imgObject, false, true);
         } 
         else {
+            editSelectedIds.remove(imageId);
             editSelectionModel.deselect(imgObject, true);
         }
     }
 
     public void setSelection(T selectedObject, boolean selection, boolean clearAll) {
+        S selectedId = imageModel.getImageUniqueId(selectedObject);
         if (clearAll) {
-            for (AnnotatedImageButton<T,S> button : buttons.values()) {
-                T imageObject = button.getUserObject();
-                if (imageObject.equals(selectedObject)) {
-                    setSelection(button, true);
-                }
-                else {
-                    setSelection(button, false);
-                }
-            }
+            selectedIds.clear();
+            selectedIds.add(selectedId);
+        }
+        else if (selection) {
+            selectedIds.add(selectedId);
         }
         else {
-            S selectedId = imageModel.getImageUniqueId(selectedObject);
-            AnnotatedImageButton<T,S> button = buttons.get(selectedId);
-            if (button != null) {
-                setSelection(button, selection);
-            }
+            selectedIds.remove(selectedId);
         }
+        applySelection();
     }
     
     public void setSelectedObjects(Set<T> selectedObjects) {
-        for (AnnotatedImageButton<T,S> button : buttons.values()) {
-            T imageObject = button.getUserObject();
+        selectedIds.clear();
+        for (T imageObject : imageObjects) {
             if (selectedObjects.contains(imageObject)) {
-                setSelection(button, true);
-            }
-            else {
-                setSelection(button, false);
+                selectedIds.add(imageModel.getImageUniqueId(imageObject));
             }
         }
+        applySelection();
     }
     
     public void setSelectionByUniqueIds(List<S> selectedIds, boolean selection, boolean clearAll) {
-        for (AnnotatedImageButton<T,S> button : buttons.values()) {
-            T imageObject = button.getUserObject();
+        Set<S> ids = new HashSet<>(selectedIds);
+        for (T imageObject : imageObjects) {
             S imageId = imageModel.getImageUniqueId(imageObject);
-            if (selectedIds.contains(imageId)) {
-                setSelection(button, selection);
+            if (ids.contains(imageId)) {
+                setSelected(imageId, selection);
             }
             else if (clearAll) {
-                setSelection(button, !selection);
+                setSelected(imageId, !selection);
             }
         }
+        applySelection();
+    }
+
+    private void setSelected(S imageId, boolean selection) {
+        if (selection) {
+            selectedIds.add(imageId);
+        }
+        else {
+            selectedIds.remove(imageId);
+        }
+    }
+
+    private void applySelection() {
+        for (Map.Entry<S, AnnotatedImageButton<T,S>> entry : buttons.entrySet()) {
+            setSelection(entry.getValue(), selectedIds.contains(entry.getKey()));
+        }
     }
 
     public void setEditSelection(List<S> selectedIds) {
-        for (AnnotatedImageButton<T,S> button : buttons.values()) {
-            T imageObject = button.getUserObject();
-            S imageId = imageModel.getImageUniqueId(imageObject);
-            if (selectedIds.contains(imageId)) {
-                setEditSelection(button, true);
-            }
-            else {
-                setEditSelection(button, false);
-            }
+        editSelectedIds.clear();
+        editSelectedIds.addAll(selectedIds);
+        for (Map.Entry<S, AnnotatedImageButton<T,S>> entry : buttons.entrySet()) {
+            setEditSelection(entry.getValue(), editSelectedIds.contains(entry.getKey()));
         }
     }
 
-    public List<AnnotatedImageButton<T,S>> getSelectedButtons() {
-        List<AnnotatedImageButton<T,S>> selected = new ArrayList<>();
-        for (AnnotatedImageButton<T,S> button : buttons.values()) {
-            if (button.isSelected()) {
-                selected.add(button);
+    /**
+     * Returns all the selected objects in grid order, including those which have no realized button.
+     */
+    public List<T> getSelectedObjects() {
+        List<T> selected = new ArrayList<>();
+        for (T imageObject : imageObjects) {
+            if (selectedIds.contains(imageModel.getImageUniqueId(imageObject))) {
+                selected.add(imageObject);
             }
         }
         return selected;
@@ -630,13 +853,8 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
 
         log.trace("Recalculating image grid");
 
-        double maxButtonWidth = 0;
-        for (AnnotatedImageButton<T,S> button : buttons.values()) {
-            int w = button.getPreferredSize().width;
-            if (w > maxButtonWidth) {
-                maxButtonWidth = w;
-            }
-        }
+        gridLayout.updateCellSize(buttons.values());
+        double maxButtonWidth = gridLayout.getCellWidth();
 
         // Should not be needed, but just in case, lets make sure we never divide by zero
         if (maxButtonWidth == 0) {
@@ -676,26 +894,8 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
                     return;
                 }
                 loadUnloadImagesInterrupt.set(false);
-                final JViewport viewPort = getViewport();
-                Rectangle viewRect = viewPort.getViewRect();
-                log.trace("Running loadUnloadImages (viewRect: {})",viewRect);
-                if (buttonsPanel.getColumns() == 1) {
-                    viewRect.setSize(viewRect.width, viewRect.height + 100);
-                }
-                for (AnnotatedImageButton<T,S> button : buttons.values()) {
-                    if (loadUnloadImagesInterrupt.get()) {
-                        log.trace("loadUnloadImages interrupted");
-                        return;
-                    }
-                    try {
-                        boolean wantViewable = viewRect.intersects(button.getBounds());
-                        log.trace("viewRect.intersects(({}) = {}",button.getBounds(),wantViewable);
-                        button.setViewable(wantViewable);
-                    }
-                    catch (Exception e) {
-                        FrameworkAccess.handleException(e);
-                    }
-                }
+                log.trace("Running loadUnloadImages (viewRect: {})",getViewport().getViewRect());
+                updateRealizedButtons();
             }
         });
     }
@@ -703,11 +903,7 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
     private class ScrollableGridPanel extends JPanel implements Scrollable {
 
         public ScrollableGridPanel() {
-            setLayout(new GridLayout(0, 2));
-            // TODO: get GridLayout2 working
-//            GridLayout2 layout = new GridLayout2(0, 2);
-//            layout.setEqualWidthCols(true);
-//            setLayout(layout);
+            setLayout(gridLayout);
             setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
             setOpaque(false);
             for (ComponentListener l : getComponentListeners()) {
@@ -745,11 +941,128 @@ public abstract class ImagesPanel<T,S> extends JScrollPane {
         }
 
         public int getColumns() {
-            return ((GridLayout) getLayout()).getColumns();
+            return gridLayout.getColumns();
         }
 
         public void setColumns(int columns) {
-            ((GridLayout) getLayout()).setColumns(columns);
+            gridLayout.setColumns(columns);
+        }
+    }
+
+    /**
+     * Lays out a fixed number of equally sized cells, of which only some have components. Each component is
+     * placed at the cell given by its grid index client property. The preferred size covers all the cells, so
+     * that the scroll bars reflect the full grid.
+     */
+    private static class VirtualGridLayout implements LayoutManager {
+
+        private int columns = 2;
+        private int count = 0;
+        private int cellWidth = 0;
+        private int cellHeight = 0;
+
+        public int getColumns() {
+            return columns;
+        }
+
+        public void setColumns(int columns) {
+            this.columns = Math.max(1, columns);
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public int getCellWidth() {
+            return cellWidth;
+        }
+
+        /**
+         * Forget the measured cell size, e.g. after the image size changes.
+         */
+        public void resetCellSize() {
+            this.cellWidth = 0;
+            this.cellHeight = 0;
+        }
+
+        /**
+         * Grow the cell size to fit all the given buttons. Cells never shrink until they are reset, so that
+         * rows don't jump around while scrolling. Returns true if the cell size changed.
+         */
+        public boolean updateCellSize(Collection<? extends Component> components) {
+            int width = cellWidth;
+            int height = cellHeight;
+            for (Component component : components) {
+                Dimension size = component.getPreferredSize();
+                width = Math.max(width, size.width);
+                height = Math.max(height, size.height);
+            }
+            boolean changed = width != cellWidth || height != cellHeight;
+            this.cellWidth = width;
+            this.cellHeight = height;
+            return changed;
+        }
+
+        private int getRows() {
+            return (count + columns - 1) / columns;
+        }
+
+        /**
+         * Returns the row at the given y coordinate, without clamping.
+         */
+        public int getRowAt(int y) {
+            if (cellHeight <= 0) {
+                // Nothing measured yet, so assume that the first rows are visible
+                return y <= 0 ? 0 : 1;
+            }
+            return y / cellHeight;
+        }
+
+        public int getFirstIndexInRow(int row) {
+            return Math.max(0, Math.min(row * columns, count - 1));
+        }
+
+        public int getLastIndexInRow(int row) {
+            return Math.max(0, Math.min((row + 1) * columns - 1, count - 1));
+        }
+
+        public Rectangle getCellBounds(Container parent, int index) {
+            Insets insets = parent.getInsets();
+            int row = index / columns;
+            int col = index % columns;
+            return new Rectangle(insets.left + col * cellWidth, insets.top + row * cellHeight, cellWidth, cellHeight);
+        }
+
+        @Override
+        public void addLayoutComponent(String name, Component comp) {
+        }
+
+        @Override
+        public void removeLayoutComponent(Component comp) {
+        }
+
+        @Override
+        public Dimension preferredLayoutSize(Container parent) {
+            Insets insets = parent.getInsets();
+            return new Dimension(insets.left + insets.right + columns * cellWidth,
+                    insets.top + insets.bottom + getRows() * cellHeight);
+        }
+
+        @Override
+        public Dimension minimumLayoutSize(Container parent) {
+            return preferredLayoutSize(parent);
+        }
+
+        @Override
+        public void layoutContainer(Container parent) {
+            for (Component component : parent.getComponents()) {
+                if (component instanceof JComponent) {
+                    Object index = ((JComponent) component).getClientProperty(GRID_INDEX_PROPERTY);
+                    if (index instanceof Integer) {
+                        component.setBounds(getCellBounds(parent, (Integer) index));
+                    }
+                }
+            }
         }
     }
 }
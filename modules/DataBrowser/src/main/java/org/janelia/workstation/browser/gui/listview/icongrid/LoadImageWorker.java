@@ -17,6 +17,7 @@ import org.janelia.workstation.browser.api.state.DataBrowserMgr;
 import org.janelia.workstation.core.api.FileMgr;
 import org.janelia.workstation.core.util.ConsoleProperties;
 import org.janelia.workstation.core.util.ImageCache;
+import org.janelia.workstation.core.util.ThumbnailCache;
 import org.janelia.workstation.core.util.Utils;
 import org.janelia.workstation.core.workers.SimpleWorker;
 import org.slf4j.Logger;
@@ -26,6 +27,8 @@ import org.slf4j.LoggerFactory;
  * SwingWorker class that loads the image and rescales it to the current imageSizePercent sizing. This
  * thread supports being canceled.
  * if an ImageCache has been set with setImageCache then this method will look there first.
+ * When a display size is given, the image is loaded through the thumbnail pipeline, which decodes
+ * at reduced resolution and caches the result on disk (see {@link ThumbnailCache}).
  *
  * @author <a href="mailto:rokickik@janelia.hhmi.org">Konrad Rokicki</a>
  */
@@ -35,9 +38,11 @@ public abstract class LoadImageWorker extends SimpleWorker {
 
     private static final String LOAD_IMAGE_WORKER_THREADS_PROPERTY = "console.images.workerThreads";
     private static final String CACHE_BEHIND_PROPERTY = "console.images.ayncCacheBehind";
+    private static final String USE_THUMBNAILS_PROPERTY = "console.images.useThumbnails";
 
     private static final int numWorkerThreads = ConsoleProperties.getInt(LOAD_IMAGE_WORKER_THREADS_PROPERTY, 10);
     private static final boolean useCacheBehind = ConsoleProperties.getBoolean(CACHE_BEHIND_PROPERTY, true);
+    private static final boolean useThumbnails = ConsoleProperties.getBoolean(USE_THUMBNAILS_PROPERTY, true);
 
     static {
         if (log.isDebugEnabled()) {
@@ -56,6 +61,7 @@ public abstract class LoadImageWorker extends SimpleWorker {
     
     private BufferedImage maxSizeImage;
     private BufferedImage scaledImage;
+    private int loadedThumbnailWidth;
     
     public LoadImageWorker(String imageFilename) {
         this.imageFilename = imageFilename;
@@ -71,6 +77,13 @@ public abstract class LoadImageWorker extends SimpleWorker {
     protected void doStuff() throws Exception {
 
         ImageCache imageCache = DataBrowserMgr.getDataBrowserMgr().getImageCache();
+        ThumbnailCache thumbnailCache = DataBrowserMgr.getDataBrowserMgr().getThumbnailCache();
+        int thumbnailWidth = displaySize == null ? 0 : ThumbnailCache.getThumbnailWidth(displaySize);
+        if (useThumbnails && thumbnailWidth > 0) {
+            loadThumbnail(imageCache, thumbnailCache, thumbnailWidth);
+            return;
+        }
+
         if (imageCache != null) {
             this.maxSizeImage = imageCache.get(imageFilename);
             if (maxSizeImage != null) {
@@ -106,6 +119,50 @@ public abstract class LoadImageWorker extends SimpleWorker {
         }
     }
 
+    /**
+     * Thumbnail pipeline: look in the memory cache, then the disk cache, and only then download
+     * the image and decode it with subsampling at roughly the thumbnail size. The resulting
+     * thumbnail becomes the "max size" image, so later rescales stay cheap. As with full size
+     * images, the memory cache is only filled in cache-behind mode.
+     */
+    private void loadThumbnail(ImageCache imageCache, ThumbnailCache thumbnailCache, int thumbnailWidth) throws Exception {
+
+        String key = ThumbnailCache.getKey(imageFilename, thumbnailWidth);
+        if (imageCache != null) {
+            this.maxSizeImage = imageCache.get(key);
+            if (maxSizeImage != null) {
+                rescaleToDisplaySize();
+                loadedThumbnailWidth = thumbnailWidth;
+                return;
+            }
+        }
+
+        this.maxSizeImage = thumbnailCache.get(imageFilename, thumbnailWidth);
+        if (maxSizeImage == null) {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            BufferedImage decodedImage;
+            try (InputStream imageStream = FileMgr.getFileMgr().openFileInputStream(imageFilename, false)) {
+                decodedImage = Utils.readImageFromInputStream(imageStream, FilenameUtils.getExtension(imageFilename), thumbnailWidth);
+            }
+            if (decodedImage == null) {
+                return;
+            }
+            if (decodedImage.getWidth() > thumbnailWidth) {
+                this.maxSizeImage = Utils.getScaledImageByWidth(decodedImage, thumbnailWidth);
+            }
+            else {
+                this.maxSizeImage = decodedImage;
+            }
+            log.info("Took {} ms to load {} at width {}", stopwatch.elapsed(TimeUnit.MILLISECONDS), imageFilename, maxSizeImage.getWidth());
+            thumbnailCache.put(imageFilename, thumbnailWidth, maxSizeImage);
+        }
+        if (useCacheBehind && imageCache != null) {
+            imageCache.put(key, maxSizeImage);
+        }
+        loadedThumbnailWidth = thumbnailWidth;
+        rescaleToDisplaySize();
+    }
+
     private void rescaleToDisplaySize() {
         if (displaySize != null && displaySize>0) {
             this.scaledImage = Utils.getScaledImageByWidth(maxSizeImage, displaySize);
@@ -127,6 +184,13 @@ public abstract class LoadImageWorker extends SimpleWorker {
         return displaySize;
     }
 
+    /**
+     * Returns the thumbnail width the image was decoded at, or 0 if the full size image was loaded.
+     */
+    protected int getLoadedThumbnailWidth() {
+        return loadedThumbnailWidth;
+    }
+
     /**
      * Adapted from SimpleWorker so that we can use a separate thread pool and customize the number of threads
      */
@@ -462,6 +462,9 @@ public class DomainObjectTableViewer extends TableViewerPanel<DomainObject,Refer
 
             DomainObject domainObject = selected.get(0);
             hud.setObjectAndToggleDialog(domainObject, null, null, toggle, true);
+            if (toggle || hud.isVisible()) {
+                hud.prefetchAdjacent(getObjects(), domainObject);
+            }
         } 
         catch (Exception ex) {
             FrameworkAccess.handleException(ex);
@@ -24,7 +24,9 @@ import org.janelia.it.jacs.model.tasks.TaskMessage;
 import org.janelia.it.jacs.model.tasks.TaskParameter;
 import org.janelia.workstation.browser.gui.dialogs.download.DownloadFileItem;
 import org.janelia.workstation.common.gui.support.DesktopApi;
+import org.janelia.workstation.core.api.FileMgr;
 import org.janelia.workstation.core.api.StateMgr;
+import org.janelia.workstation.core.filecache.WebDavDownloader;
 import org.janelia.workstation.core.util.Utils;
 import org.janelia.workstation.core.workers.BackgroundWorker;
 import org.janelia.workstation.core.workers.NamedBackgroundWorker;
@@ -206,8 +208,14 @@ public class FileDownloadWorker {
                             success++;
                         } catch (Exception e) {
                             errors++;
-                            // If any error occurred during download, we need to delete the file which was being downloaded
-                            cleanFile(downloadItem.getTargetFile().toFile());
+                            File targetFile = downloadItem.getTargetFile().toFile();
+                            if (!(e instanceof CancellationException) && WebDavDownloader.isResumable(targetFile)) {
+                                // Keep the partial download, so that it can be resumed by downloading the file again
+                                log.warn("Keeping partially downloaded file for resumption: {}", targetFile);
+                            } else {
+                                // If any error occurred during download, we need to delete the file which was being downloaded
+                                cleanFile(targetFile);
+                            }
                             if (e instanceof FileNotFoundException) {
                                 log.error("File not found for download: {}", filename);
                             } else if (e instanceof CancellationException) {
@@ -243,7 +251,11 @@ public class FileDownloadWorker {
 
                 private void cleanFile(File file) {
                     try {
-                        if (file.exists()) {
+                        boolean resumable = WebDavDownloader.isResumable(file);
+                        if (resumable) {
+                            WebDavDownloader.deletePartialDownload(file);
+                            log.warn("Deleted partially downloaded file: {}", file);
+                        } else if (file.exists()) {
                             if (file.delete()) {
                                 log.warn("Deleted partially downloaded file: {}", file);
                             }
@@ -298,13 +310,37 @@ public class FileDownloadWorker {
         }
         try {
             if (hasProgress && worker != null) worker.setStatus("Downloading " + localFile.getName());
-            Utils.copyURLToFile(remoteFile, localFile, worker, hasProgress, alwaysDownload);
+            if (!downloadInParallel(remoteFile, localFile, worker, hasProgress)) {
+                Utils.copyURLToFile(remoteFile, localFile, worker, hasProgress, alwaysDownload);
+            }
         } finally {
             copySemaphore.release();
         }
 
     }
 
+    /**
+     * Download large files with parallel range requests, resuming any previously interrupted download.
+     * Returns false if the file needs to be copied with Utils.copyURLToFile instead.
+     */
+    private boolean downloadInParallel(String remoteFile, File localFile, BackgroundWorker worker, boolean hasProgress) throws Exception {
+        WebDavDownloader downloader = FileMgr.getFileMgr().getFileDownloader();
+        if (downloader == null) {
+            return false;
+        }
+        if (remoteFile.endsWith(Utils.EXTENSION_BZ2) && !localFile.getName().endsWith(Utils.EXTENSION_BZ2)) {
+            // Needs to be decompressed while streaming
+            return false;
+        }
+        return downloader.download(remoteFile, localFile,
+                (bytesDownloaded, totalBytes) -> {
+                    if (hasProgress && worker != null) {
+                        worker.setProgress(bytesDownloaded, totalBytes);
+                    }
+                },
+                () -> worker != null && worker.isCancelled());
+    }
+
     private Callable<Void> getDownloadSuccessCallback() {
         return () -> {
             String maxPath = Multisets.copyHighestCountFirst(parentDirs).iterator().next();
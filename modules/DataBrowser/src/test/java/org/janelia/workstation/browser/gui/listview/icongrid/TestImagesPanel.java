@@ -0,0 +1,300 @@
+package org.janelia.workstation.browser.gui.listview.icongrid;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.JPopupMenu;
+import javax.swing.SwingUtilities;
+
+import org.janelia.model.domain.ontology.Annotation;
+import org.janelia.workstation.core.events.selection.SelectionModel;
+import org.janelia.workstation.core.model.Decorator;
+import org.janelia.workstation.core.model.ImageModel;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestImagesPanel {
+
+	private static final int NUM_OBJECTS = 1000;
+	private static final int COLUMNS = 4;
+	private static final int CELL_WIDTH = 200;
+	private static final int CELL_HEIGHT = 250;
+
+	private TestPanel panel;
+	private List<String> ids;
+
+	@Before
+	public void setUp() throws Exception {
+		// Image buttons support drag and drop, which needs a display
+		assumeFalse(GraphicsEnvironment.isHeadless());
+		ids = createIds("", NUM_OBJECTS);
+		onEdt(() -> {
+			panel = new TestPanel();
+			panel.setSize(800, 600);
+			panel.setImageObjects(ids);
+			panel.setColumns(COLUMNS);
+			layout(panel);
+			panel.loadUnloadImages();
+		});
+		settle();
+	}
+
+	@Test
+	public void testOnlyRowsNearViewportAreRealized() throws Exception {
+		onEdt(() -> {
+			assertNotNull(panel.getButtonById("0"));
+			assertNull(panel.getButtonById(ids.get(NUM_OBJECTS - 1)));
+			int realized = countRealized();
+			// The visible rows, plus the prefetch rows below them
+			assertTrue(realized >= COLUMNS * 3);
+			assertTrue(realized <= COLUMNS * 8);
+			assertEquals(realized, panel.created);
+		});
+	}
+
+	@Test
+	public void testButtonsAreRecycledWhenScrolling() throws Exception {
+		int[] before = new int[1];
+		onEdt(() -> {
+			before[0] = panel.created;
+			panel.scrollObjectToCenter(ids.get(NUM_OBJECTS - 1));
+		});
+		settle();
+		onEdt(() -> {
+			AnnotatedImageButton<String,String> button = panel.getButtonById(ids.get(NUM_OBJECTS - 1));
+			assertNotNull(button);
+			assertEquals(ids.get(NUM_OBJECTS - 1), button.getUserObject());
+			assertNull(panel.getButtonById("0"));
+			// Buttons which scrolled out were rebound, rather than new ones being created
+			assertTrue(panel.created <= before[0] + COLUMNS);
+			assertTrue(countRealized() <= COLUMNS * 8);
+		});
+	}
+
+	@Test
+	public void testSelectionIncludesObjectsWithoutButtons() throws Exception {
+		String last = ids.get(NUM_OBJECTS - 1);
+		onEdt(() -> {
+			panel.setSelectionByUniqueIds(Arrays.asList("5", last), true, true);
+			assertNull(panel.getButtonById(last));
+			assertEquals(Arrays.asList("5", last), panel.getSelectedObjects());
+			assertTrue(panel.getButtonById("5").isSelected());
+			panel.scrollObjectToCenter(last);
+		});
+		settle();
+		onEdt(() -> {
+			// Selection is applied when the button is realized
+			assertTrue(panel.getButtonById(last).isSelected());
+			assertEquals(Arrays.asList("5", last), panel.getSelectedObjects());
+		});
+	}
+
+	@Test
+	public void testAspectRatioIsResetForNewObjects() throws Exception {
+		onEdt(() -> {
+			panel.registerAspectRatio(0.5);
+			assertEquals(2 * ImagesPanel.DEFAULT_THUMBNAIL_SIZE, ((TestButton) panel.getButtonById("0")).imageHeight);
+			panel.setImageObjects(createIds("next", 100));
+			panel.loadUnloadImages();
+		});
+		settle();
+		onEdt(() -> {
+			TestButton button = (TestButton) panel.getButtonById("next0");
+			assertEquals(ImagesPanel.DEFAULT_THUMBNAIL_SIZE, button.imageHeight);
+		});
+	}
+
+	@Test
+	public void testSameAspectRatioIsRegisteredAfterPaging() throws Exception {
+		int[] before = new int[1];
+		onEdt(() -> {
+			for (String id : ids) {
+				AnnotatedImageButton<String,String> button = panel.getButtonById(id);
+				if (button != null) {
+					((TestButton) button).registerAspectRatio(100, 200);
+				}
+			}
+			assertEquals(2 * ImagesPanel.DEFAULT_THUMBNAIL_SIZE, ((TestButton) panel.getButtonById("0")).imageHeight);
+			before[0] = panel.created;
+			panel.setImageObjects(createIds("next", 100));
+			panel.loadUnloadImages();
+		});
+		settle();
+		onEdt(() -> {
+			// The buttons were recycled, and they still pass on an aspect ratio they had already seen
+			assertEquals(before[0], panel.created);
+			TestButton button = (TestButton) panel.getButtonById("next0");
+			assertEquals(ImagesPanel.DEFAULT_THUMBNAIL_SIZE, button.imageHeight);
+			button.registerAspectRatio(100, 200);
+			assertEquals(2 * ImagesPanel.DEFAULT_THUMBNAIL_SIZE, button.imageHeight);
+		});
+	}
+
+	private int countRealized() {
+		int count = 0;
+		for (String id : ids) {
+			if (panel.getButtonById(id) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static List<String> createIds(String prefix, int count) {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			ids.add(prefix + i);
+		}
+		return ids;
+	}
+
+	/**
+	 * Lay out the panel and everything in it. The panel is never shown, so validate() would do nothing.
+	 */
+	private static void layout(Container container) {
+		container.doLayout();
+		for (Component component : container.getComponents()) {
+			if (component instanceof Container) {
+				layout((Container) component);
+			}
+		}
+	}
+
+	private static void onEdt(Runnable runnable) throws Exception {
+		SwingUtilities.invokeAndWait(runnable);
+	}
+
+	/**
+	 * Run the realization requests which were queued on the EDT, including those queued by the requests themselves.
+	 */
+	private void settle() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			onEdt(() -> layout(panel));
+		}
+	}
+
+	private static class TestPanel extends ImagesPanel<String,String> {
+
+		private int created;
+
+		TestPanel() {
+			setImageModel(new TestImageModel());
+			setSelectionModel(new TestSelectionModel());
+		}
+
+		@Override
+		public AnnotatedImageButton<String,String> create(String imageObject) {
+			created++;
+			TestButton button = new TestButton(this, imageObject, new TestImageModel(), new TestSelectionModel());
+			ensureCorrectAnnotationView(button);
+			return button;
+		}
+
+		@Override
+		protected void moreAnnotationsButtonDoubleClicked(AnnotatedImageButton<String,String> button) {
+		}
+
+		@Override
+		protected JPopupMenu getPopupMenu(AnnotatedImageButton<String,String> button, Annotation annotation) {
+			return null;
+		}
+	}
+
+	/**
+	 * Button of a fixed size, which never loads its image.
+	 */
+	private static class TestButton extends DynamicImageButton<String,String> {
+
+		private final ImagesPanel<String,String> panel;
+		private int imageHeight;
+
+		TestButton(ImagesPanel<String,String> panel, String imageObject, ImageModel<String,String> imageModel, SelectionModel<String,String> selectionModel) {
+			super(imageObject, imageModel, selectionModel, imageModel.getImageFilepath(imageObject));
+			this.panel = panel;
+		}
+
+		@Override
+		protected void aspectRatioChanged(double aspectRatio) {
+			panel.registerAspectRatio(aspectRatio);
+		}
+
+		@Override
+		public void setImageSize(int width, int height) {
+			this.imageHeight = height;
+		}
+
+		@Override
+		public void setViewable(boolean wantViewable) {
+		}
+
+		@Override
+		public Dimension getPreferredSize() {
+			return new Dimension(CELL_WIDTH, CELL_HEIGHT);
+		}
+	}
+
+	private static class TestImageModel implements ImageModel<String,String> {
+
+		@Override
+		public String getImageByUniqueId(String id) {
+			return id;
+		}
+
+		@Override
+		public String getImageUniqueId(String imageObject) {
+			return imageObject;
+		}
+
+		@Override
+		public String getImageFilepath(String imageObject) {
+			return "/images/" + imageObject + ".png";
+		}
+
+		@Override
+		public String getImageTitle(String imageObject) {
+			return imageObject;
+		}
+
+		@Override
+		public String getImageSubtitle(String imageObject) {
+			return null;
+		}
+
+		@Override
+		public BufferedImage getStaticIcon(String imageObject) {
+			return null;
+		}
+
+		@Override
+		public List<Annotation> getAnnotations(String imageObject) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<Decorator> getDecorators(String imageObject) {
+			return Collections.emptyList();
+		}
+	}
+
+	private static class TestSelectionModel extends SelectionModel<String,String> {
+
+		@Override
+		protected void selectionChanged(List<String> objects, boolean select, boolean clearAll, boolean isUserDriven) {
+		}
+
+		@Override
+		public String getId(String object) {
+			return object;
+		}
+	}
+}
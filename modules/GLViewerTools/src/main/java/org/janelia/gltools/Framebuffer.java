@@ -32,6 +32,7 @@ public class Framebuffer implements GL3Resource, GLEventListener {
 
     public RenderTarget addRenderTarget(int internalFormat, int attachment) {
         RenderTarget result = new RenderTarget(width, height, internalFormat, attachment);
+        result.setFramebuffer(this);
         renderTargets.add(result);
         return result;
     }
@@ -94,6 +95,10 @@ public class Framebuffer implements GL3Resource, GLEventListener {
         }
     }
 
+    int getHandle() {
+        return frameBufferHandle;
+    }
+
     public int getWidth() {
         return width;
     }
@@ -215,6 +215,29 @@ public class MJ2Parser {
     }
 
     public Pair<Raster[], ColorModel> extractSlices (InputStream in) throws IOException {
+        byte[][] frames = extractFrames(in);
+        if (frames == null) {
+            return null;
+        }
+
+        // extract slices
+        Raster[] slices = new Raster[frames.length];
+        ColorModel cm = null;
+        for (int i = 0; i < frames.length; i++) {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(frames[i]));
+            slices[i] = image.getData();
+            if (i==0)
+                cm = image.getColorModel();
+        }
+        return Pair.of(slices, cm);
+    }
+
+    /**
+     * Returns the encoded JPEG 2000 codestream of each frame, without decoding them. The frames are independent,
+     * so they can be decoded concurrently.
+     * @return the encoded frames, or null if the stream has no frames
+     */
+    public byte[][] extractFrames(InputStream in) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         IOUtils.copy(in, baos);
         byte[] dataStreamBytes = baos.toByteArray();
@@ -224,24 +247,14 @@ public class MJ2Parser {
         parseHeader(dataStream);
         dataStream.close();
 
-        // extract slices
-        BufferedImage image0 = null;
-        dataStream = new ByteArrayInputStream(dataStreamBytes);
         if (numFrames>0) {
-            Raster[] slices = new Raster[numFrames];
-            ColorModel cm = null;
+            byte[][] frames = new byte[numFrames][];
             for (int i = 0; i < numFrames; i++) {
                 long start = sampleOffset[i] + 8;
                 long end = start + sampleSize[i] - 8;
-                byte[] jp2Slice = Arrays.copyOfRange(dataStreamBytes,(int)start, (int)end);
-                BufferedImage image = ImageIO.read(new ByteArrayInputStream(jp2Slice));
-                slices[i] = image.getData();
-                if (i==0)
-                    image0 = image;
+                frames[i] = Arrays.copyOfRange(dataStreamBytes,(int)start, (int)end);
             }
-            cm = image0.getColorModel();
-            dataStream.close();
-            return Pair.of(slices, cm);
+            return frames;
         }
 
         return null;
@@ -24,6 +24,8 @@ public class RenderTarget extends Texture2d
     // private int paddedWidth;
     private int widthPadInBytes = 0;
     private boolean dirty;
+    private Framebuffer framebuffer; // for windowed reads
+    private final WindowedPixelReader windowReader;
 
     public RenderTarget(
             int width, int height, 
@@ -41,11 +43,21 @@ public class RenderTarget extends Texture2d
         generateMipmaps = false;
         useImmutableTexture = true;
         unpackAlignment = 4;
+        windowReader = new WindowedPixelReader(format, type, bytesPerIntensity, numberOfComponents);
     }
     
     public int getAttachment() {
         return attachment;
     }
+
+    void setFramebuffer(Framebuffer framebuffer) {
+        this.framebuffer = framebuffer;
+    }
+
+    // Multisampled textures cannot be read directly
+    private boolean canReadWindows() {
+        return (framebuffer != null) && (textureTarget == GL3.GL_TEXTURE_2D);
+    }
     
     /**
      * Get cached host-side image intensity value
@@ -68,7 +80,13 @@ public class RenderTarget extends Texture2d
         if (channel >= numberOfComponents) return -1;
         if (channel < 0) return -1;
         
-        double result = -1;
+        if (hostBufferNeedsUpdate && canReadWindows()) {
+            // Read back just the neighborhood of this pixel, not the whole target
+            Double cached = windowReader.getCachedIntensity(x, y, channel);
+            if (cached != null)
+                return cached;
+            return getWindowedIntensity(glad, x, y, channel);
+        }
 
         int totalBytes = width*height*bytesPerIntensity*numberOfComponents + height*widthPadInBytes;
         if ( (hostTextureBuffer != null) && (hostTextureBuffer.capacity() < totalBytes) ) {
@@ -104,17 +122,35 @@ public class RenderTarget extends Texture2d
         int sx = numberOfComponents*sc;
         int sy = width*sx + widthPadInBytes/bytesPerIntensity;
         int offset = sx*x + sy*y + sc*channel;
-        if (format == GL3.GL_DEPTH_COMPONENT)
-            result = hostTextureBuffer.asFloatBuffer().get(offset);
-        else if (type == GL3.GL_FLOAT)
-            result = hostTextureBuffer.asFloatBuffer().get(offset);
-        else if (bytesPerIntensity == 4)
-            result = hostTextureBuffer.asIntBuffer().get(offset);
-        else if (bytesPerIntensity == 2)
-            result = hostTextureBuffer.asShortBuffer().get(offset) & 0xffff;
-        else
-            result = hostTextureBuffer.get(offset) & 0xff;
-        return result;
+        return WindowedPixelReader.decode(hostTextureBuffer, offset, format, type, bytesPerIntensity);
+    }
+
+    private double getWindowedIntensity(GLAutoDrawable glad, int x, int y, int channel) {
+        GLContext context = glad.getContext();
+        if (context.makeCurrent() != GLContext.CONTEXT_CURRENT)
+            return -1;
+        try {
+            GL3 gl = new DebugGL3(glad.getGL().getGL3());
+            return windowReader.getIntensity(gl, framebuffer.getHandle(), attachment,
+                    width, height, x, y, channel);
+        } finally {
+            context.release();
+        }
+    }
+
+    /**
+     * Starts an asynchronous read back of the region around the most recent
+     * pick into a pixel pack buffer, so the next pick near there does not stall.
+     * Call on the rendering thread, after this target has been redrawn and
+     * setHostBufferNeedsUpdate(true) has been called.
+     * @param gl 
+     */
+    public void queueWindowReadback(GL3 gl) {
+        if (! canReadWindows())
+            return;
+        if (framebuffer.getHandle() == 0)
+            return;
+        windowReader.queueReadback(gl, framebuffer.getHandle(), attachment, width, height);
     }
             
     @Override
@@ -138,6 +174,14 @@ public class RenderTarget extends Texture2d
 
     public void setHostBufferNeedsUpdate(boolean hostBufferNeedsUpdate) {
         this.hostBufferNeedsUpdate = hostBufferNeedsUpdate;
+        if (hostBufferNeedsUpdate)
+            windowReader.invalidate();
+    }
+
+    @Override
+    public void dispose(GL3 gl) {
+        windowReader.dispose(gl);
+        super.dispose(gl);
     }
 
     private synchronized void setSizeAndAllocate(GL3 gl, int w, int h) {
@@ -172,6 +216,7 @@ public class RenderTarget extends Texture2d
         unbind(gl);
         hostBufferNeedsUpdate = true;
         hostTextureBuffer = null;
+        windowReader.invalidate();
     }
     
     /*  // clear() method causes problems on ATI
@@ -0,0 +1,285 @@
+package org.janelia.gltools;
+
+import com.jogamp.common.nio.Buffers;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.media.opengl.GL3;
+
+/**
+ * Reads back small windows of a render target around the places where it is
+ * being picked, instead of the whole texture.
+ *
+ * A synchronous read of one window costs a few kilobytes, rather than the tens
+ * of megabytes of a full render target on a large display. In addition, after
+ * each frame is rendered, the window around the most recent pick location is
+ * copied into one of a ring of pixel pack buffers. That copy runs
+ * asynchronously on the GPU, and is only mapped when the next pick arrives, by
+ * which time it has usually finished. Windows are only valid for the frame
+ * they were read from.
+ *
+ * All methods that take a GL3 must be called with the render target's context
+ * current.
+ */
+final class WindowedPixelReader
+{
+    // Window edge length, in pixels
+    static final int WINDOW_SIZE = 32;
+    // Number of pixel pack buffers in flight
+    static final int RING_SIZE = 3;
+    // Keep prefetching for this many frames after the most recent pick
+    private static final int PREFETCH_FRAMES = 8;
+
+    private final int format;
+    private final int type;
+    private final int bytesPerIntensity;
+    private final int numberOfComponents;
+
+    // Incremented every time the render target is redrawn
+    private long frame = 0;
+
+    // Most recently resolved window
+    private ByteBuffer window;
+    private final Region windowRegion = new Region();
+
+    // Pixel pack buffer ring
+    private final int[] pbos = new int[RING_SIZE];
+    private final int[] pboBytes = new int[RING_SIZE];
+    private final Region[] pboRegions = new Region[RING_SIZE];
+    private int nextPbo = 0;
+
+    // Most recent pick location
+    private int hintX = 0;
+    private int hintY = 0;
+    private long hintFrame = -1;
+
+    WindowedPixelReader(int format, int type, int bytesPerIntensity, int numberOfComponents)
+    {
+        this.format = format;
+        this.type = type;
+        this.bytesPerIntensity = bytesPerIntensity;
+        this.numberOfComponents = numberOfComponents;
+        for (int i = 0; i < RING_SIZE; ++i)
+            pboRegions[i] = new Region();
+    }
+
+    /**
+     * Marks all windows read so far as stale, because the render target has
+     * been redrawn.
+     */
+    synchronized void invalidate() {
+        frame++;
+    }
+
+    /**
+     * Returns the value at x, y in the window already read back for the current
+     * frame, or null if that pixel has not been read.
+     */
+    synchronized Double getCachedIntensity(int x, int y, int channel) {
+        if (! windowRegion.contains(frame, x, y))
+            return null;
+        return decode(window, windowRegion.offset(x, y, numberOfComponents, channel),
+                format, type, bytesPerIntensity);
+    }
+
+    /**
+     * Returns the value at x, y in the current frame, reading back a window
+     * around that point if needed.
+     */
+    synchronized double getIntensity(GL3 gl, int framebufferHandle, int attachment,
+            int width, int height, int x, int y, int channel)
+    {
+        hintX = x;
+        hintY = y;
+        hintFrame = frame;
+        Double result = getCachedIntensity(x, y, channel);
+        if (result != null)
+            return result;
+        resolvePrefetch(gl);
+        result = getCachedIntensity(x, y, channel);
+        if (result != null)
+            return result;
+        // Nothing prefetched here; read a window synchronously
+        Region region = new Region();
+        region.center(frame, x, y, width, height);
+        int byteCount = region.byteCount(numberOfComponents, bytesPerIntensity);
+        if ( (window == null) || (window.capacity() < byteCount) ) {
+            window = Buffers.newDirectByteBuffer(byteCount);
+            window.order(ByteOrder.nativeOrder());
+        }
+        window.rewind();
+        int[] saved = bindForRead(gl, framebufferHandle, attachment);
+        try {
+            gl.glBindBuffer(GL3.GL_PIXEL_PACK_BUFFER, 0);
+            gl.glReadPixels(region.x0, region.y0, region.width, region.height, format, type, window);
+        }
+        finally {
+            restoreBindings(gl, saved);
+        }
+        window.rewind();
+        windowRegion.set(region);
+        return decode(window, windowRegion.offset(x, y, numberOfComponents, channel),
+                format, type, bytesPerIntensity);
+    }
+
+    /**
+     * Starts an asynchronous read back of the window around the most recent
+     * pick location, for the frame that has just been rendered. Does nothing if
+     * there have been no recent picks.
+     */
+    synchronized void queueReadback(GL3 gl, int framebufferHandle, int attachment, int width, int height)
+    {
+        if (hintFrame < 0)
+            return;
+        if (frame - hintFrame > PREFETCH_FRAMES)
+            return;
+        if (width * height == 0)
+            return;
+        int slot = nextPbo;
+        nextPbo = (nextPbo + 1) % RING_SIZE;
+        Region region = pboRegions[slot];
+        region.center(frame, hintX, hintY, width, height);
+        int byteCount = region.byteCount(numberOfComponents, bytesPerIntensity);
+        if (pbos[slot] == 0) {
+            gl.glGenBuffers(1, pbos, slot);
+            pboBytes[slot] = 0;
+        }
+        int[] saved = bindForRead(gl, framebufferHandle, attachment);
+        try {
+            gl.glBindBuffer(GL3.GL_PIXEL_PACK_BUFFER, pbos[slot]);
+            if (pboBytes[slot] < byteCount) {
+                gl.glBufferData(GL3.GL_PIXEL_PACK_BUFFER, byteCount, null, GL3.GL_STREAM_READ);
+                pboBytes[slot] = byteCount;
+            }
+            gl.glReadPixels(region.x0, region.y0, region.width, region.height, format, type, 0L);
+        }
+        finally {
+            gl.glBindBuffer(GL3.GL_PIXEL_PACK_BUFFER, 0);
+            restoreBindings(gl, saved);
+        }
+    }
+
+    /**
+     * Copies the prefetched window for the current frame, if any, out of its
+     * pixel pack buffer.
+     */
+    private void resolvePrefetch(GL3 gl) {
+        for (int slot = 0; slot < RING_SIZE; ++slot) {
+            Region region = pboRegions[slot];
+            if (pbos[slot] == 0)
+                continue;
+            if (region.frame != frame)
+                continue;
+            int byteCount = region.byteCount(numberOfComponents, bytesPerIntensity);
+            if ( (window == null) || (window.capacity() < byteCount) ) {
+                window = Buffers.newDirectByteBuffer(byteCount);
+                window.order(ByteOrder.nativeOrder());
+            }
+            gl.glBindBuffer(GL3.GL_PIXEL_PACK_BUFFER, pbos[slot]);
+            try {
+                ByteBuffer mapped = gl.glMapBufferRange(GL3.GL_PIXEL_PACK_BUFFER, 0, byteCount, GL3.GL_MAP_READ_BIT);
+                if (mapped == null)
+                    continue;
+                mapped.rewind();
+                mapped.limit(byteCount);
+                window.rewind();
+                window.put(mapped);
+                window.rewind();
+                gl.glUnmapBuffer(GL3.GL_PIXEL_PACK_BUFFER);
+            }
+            finally {
+                gl.glBindBuffer(GL3.GL_PIXEL_PACK_BUFFER, 0);
+            }
+            windowRegion.set(region);
+            region.frame = -1; // Only resolve each buffer once
+            return;
+        }
+    }
+
+    synchronized void dispose(GL3 gl) {
+        for (int slot = 0; slot < RING_SIZE; ++slot) {
+            if (pbos[slot] != 0)
+                gl.glDeleteBuffers(1, pbos, slot);
+            pbos[slot] = 0;
+            pboBytes[slot] = 0;
+            pboRegions[slot].frame = -1;
+        }
+        windowRegion.frame = -1;
+    }
+
+    private int[] bindForRead(GL3 gl, int framebufferHandle, int attachment) {
+        int[] saved = new int[3];
+        gl.glGetIntegerv(GL3.GL_READ_FRAMEBUFFER_BINDING, saved, 0);
+        gl.glGetIntegerv(GL3.GL_READ_BUFFER, saved, 1);
+        gl.glGetIntegerv(GL3.GL_PACK_ALIGNMENT, saved, 2);
+        gl.glBindFramebuffer(GL3.GL_READ_FRAMEBUFFER, framebufferHandle);
+        // Depth reads ignore the read buffer
+        if (format != GL3.GL_DEPTH_COMPONENT)
+            gl.glReadBuffer(attachment);
+        // Windows are tightly packed
+        gl.glPixelStorei(GL3.GL_PACK_ALIGNMENT, 1);
+        return saved;
+    }
+
+    private void restoreBindings(GL3 gl, int[] saved) {
+        gl.glPixelStorei(GL3.GL_PACK_ALIGNMENT, saved[2]);
+        if (format != GL3.GL_DEPTH_COMPONENT)
+            gl.glReadBuffer(saved[1]);
+        gl.glBindFramebuffer(GL3.GL_READ_FRAMEBUFFER, saved[0]);
+    }
+
+    /**
+     * Converts one element of a host copy of a render target to an intensity.
+     * @param buffer host copy
+     * @param offset offset in elements, not bytes
+     */
+    static double decode(ByteBuffer buffer, int offset, int format, int type, int bytesPerIntensity) {
+        if (format == GL3.GL_DEPTH_COMPONENT)
+            return buffer.asFloatBuffer().get(offset);
+        else if (type == GL3.GL_FLOAT)
+            return buffer.asFloatBuffer().get(offset);
+        else if (bytesPerIntensity == 4)
+            return buffer.asIntBuffer().get(offset);
+        else if (bytesPerIntensity == 2)
+            return buffer.asShortBuffer().get(offset) & 0xffff;
+        else
+            return buffer.get(offset) & 0xff;
+    }
+
+    /**
+     * Rectangle of pixels read back for one frame.
+     */
+    private static class Region {
+        long frame = -1;
+        int x0, y0, width, height;
+
+        void center(long frame, int x, int y, int targetWidth, int targetHeight) {
+            this.frame = frame;
+            width = Math.min(WINDOW_SIZE, targetWidth);
+            height = Math.min(WINDOW_SIZE, targetHeight);
+            x0 = Math.max(0, Math.min(targetWidth - width, x - width / 2));
+            y0 = Math.max(0, Math.min(targetHeight - height, y - height / 2));
+        }
+
+        void set(Region rhs) {
+            frame = rhs.frame;
+            x0 = rhs.x0;
+            y0 = rhs.y0;
+            width = rhs.width;
+            height = rhs.height;
+        }
+
+        boolean contains(long currentFrame, int x, int y) {
+            if (frame < 0 || frame != currentFrame)
+                return false;
+            return (x >= x0) && (x < x0 + width) && (y >= y0) && (y < y0 + height);
+        }
+
+        int offset(int x, int y, int numberOfComponents, int channel) {
+            return numberOfComponents * ((x - x0) + width * (y - y0)) + channel;
+        }
+
+        int byteCount(int numberOfComponents, int bytesPerIntensity) {
+            return width * height * numberOfComponents * bytesPerIntensity;
+        }
+    }
+}
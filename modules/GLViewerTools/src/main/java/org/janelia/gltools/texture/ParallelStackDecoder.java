@@ -0,0 +1,136 @@
+package org.janelia.gltools.texture;
+
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes the slices of an image stack in parallel, straight into the pixel buffer of a Texture3d.
+ *
+ * The stack is split into contiguous slabs of slices, and each slab is decoded by its own SliceReader.
+ * Image decoders are generally not thread-safe, so readers are never shared between threads. Each decoded
+ * slice is copied into the texture and discarded right away, instead of holding every slice until the end.
+ */
+final class ParallelStackDecoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelStackDecoder.class);
+
+    private static final int NUM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("StackDecoder-%d")
+                    .setDaemon(true).build());
+
+    /**
+     * Decodes slices of a stack. Instances are only ever used by one thread at a time.
+     */
+    interface SliceReader {
+
+        int getNumSlices() throws IOException;
+
+        RenderedImage readSlice(int z) throws IOException;
+    }
+
+    interface SliceReaderFactory {
+
+        /**
+         * Create a new reader over the stack.
+         * @return new reader, or null if the stack cannot be decoded
+         */
+        SliceReader create() throws IOException;
+    }
+
+    private ParallelStackDecoder() {
+    }
+
+    /**
+     * Decode the stack into the given texture.
+     * @return true if the stack was decoded, or false if it is empty or cannot be decoded
+     * @throws ClosedByInterruptException if the calling thread was interrupted
+     */
+    static boolean decode(Texture3d texture, SliceReaderFactory readerFactory) throws IOException {
+
+        SliceReader firstReader = readerFactory.create();
+        if (firstReader == null) {
+            return false;
+        }
+        int depth = firstReader.getNumSlices();
+        if (depth < 1) {
+            return false;
+        }
+
+        // The first slice determines the texture format
+        RenderedImage firstSlice = firstReader.readSlice(0);
+        texture.initializeStack(firstSlice.getWidth(), firstSlice.getHeight(), depth, firstSlice.getColorModel());
+        texture.copySlice(0, firstSlice.getData());
+
+        int remaining = depth - 1;
+        int numSlabs = Math.min(NUM_THREADS, remaining);
+        List<Future<?>> futures = new ArrayList<>();
+        int z = 1;
+        for (int slab = 0; slab < numSlabs; slab++) {
+            int zStart = z;
+            int zEnd = zStart + remaining / numSlabs + (slab < remaining % numSlabs ? 1 : 0);
+            // The first reader is handed off to the first slab, since this thread no longer needs it
+            SliceReader slabReader = slab == 0 ? firstReader : null;
+            futures.add(executor.submit(() -> {
+                SliceReader reader = slabReader != null ? slabReader : readerFactory.create();
+                if (reader == null) {
+                    throw new IOException("Could not create reader for slices " + zStart + "-" + (zEnd - 1));
+                }
+                for (int sz = zStart; sz < zEnd; sz++) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return null;
+                    }
+                    texture.copySlice(sz, reader.readSlice(sz).getData());
+                }
+                return null;
+            }));
+            z = zEnd;
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new ClosedByInterruptException();
+        }
+        catch (ExecutionException e) {
+            cancelAll(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Error decoding stack", cause);
+        }
+
+        LOG.debug("Decoded {} slices using {} threads", depth, numSlabs + 1);
+        texture.finishStack();
+        return true;
+    }
+
+    private static void cancelAll(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
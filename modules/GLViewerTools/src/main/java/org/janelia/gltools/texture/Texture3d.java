@@ -1,29 +1,33 @@
-
 package org.janelia.gltools.texture;
 
+import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferUShort;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
+import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
+import javax.imageio.ImageIO;
 import javax.media.opengl.GL3;
 
+import com.sun.media.jai.codec.ByteArraySeekableStream;
 import com.sun.media.jai.codec.ImageCodec;
 import com.sun.media.jai.codec.ImageDecoder;
-import com.sun.media.jai.codec.MemoryCacheSeekableStream;
-import com.sun.media.jai.codec.SeekableStream;
 
-import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.io.IOUtils;
 import org.janelia.geometry.util.PerformanceTimer;
 import org.janelia.gltools.GL3Resource;
 import org.janelia.gltools.MJ2Parser;
@@ -118,30 +122,38 @@ public class Texture3d extends BasicTexture implements GL3Resource {
         if (stackStream == null) {
             return false;
         }
-        RenderedImage[] slices = renderedImagesFromTiffStack(stackStream);
-        if (slices==null) return false;
-
         long logId = System.currentTimeMillis();
 
+        // The whole stack is read first, so that each decoding thread can have its own decoder over the same bytes
+        byte[] stackBytes = IOUtils.toByteArray(stackStream);
         float t1 = timer.reportMsAndRestart();
-        LOG.debug("Tiff load to RenderedImages took {} ms", t1);
+        LOG.debug("Reading tiff stack took {} ms", t1);
 
-        if (slices.length > 0) {
-            Pair<Raster[], ColorModel> slicePair = prepTiffStack(slices);
-
-            float t2=timer.reportMsAndRestart();
-            LOG.debug("Tiff RenderedImages to raster took {} ms", t2);
-            activityLog.logBrickLoadToRendered(logId, stackName, ApplicationOptions.getInstance().isUseHTTPForTileAccess(), t1 + t2);
+        boolean loaded = ParallelStackDecoder.decode(this, () -> {
+            ImageDecoder decoder = ImageCodec.createImageDecoder("tiff", new ByteArraySeekableStream(stackBytes), null);
+            if (decoder == null) {
+                return null;
+            }
+            return new ParallelStackDecoder.SliceReader() {
+                @Override
+                public int getNumSlices() throws IOException {
+                    return decoder.getNumPages();
+                }
 
-            loadStack(slicePair.getLeft(), slicePair.getRight());
+                @Override
+                public RenderedImage readSlice(int z) throws IOException {
+                    return decoder.decodeAsRenderedImage(z);
+                }
+            };
+        });
 
-            float t3 = timer.reportMsAndRestart();
-            LOG.debug("Tiff load raster slices to texture buffer took {} ms", t3);
-            LOG.info(">>> loadTiffStack() total time = {} ms", (t1 + t2 + t3));
-            return true;
-        } else {
-            return false;
+        float t2 = timer.reportMsAndRestart();
+        LOG.debug("Decoding tiff slices to texture buffer took {} ms", t2);
+        if (loaded) {
+            activityLog.logBrickLoadToRendered(logId, stackName, ApplicationOptions.getInstance().isUseHTTPForTileAccess(), t1 + t2);
+            LOG.info(">>> loadTiffStack() total time = {} ms", (t1 + t2));
         }
+        return loaded;
     }
 
     public boolean loadMJ2Stack(String stackName, InputStream stackStream) throws IOException {
@@ -151,28 +163,68 @@ public class Texture3d extends BasicTexture implements GL3Resource {
         try {
             PerformanceTimer timer = new PerformanceTimer();
             MJ2Parser parser = new MJ2Parser();
-            Pair<Raster[], ColorModel> slicePair = parser.extractSlices(stackStream);
-            Raster[] slices = slicePair.getLeft();
-            if (slices==null) return false;
-
-            if (slices.length > 0) {
-                depth = slices.length;
-                width = slices[0].getWidth();
-                height = slices[0].getHeight();
-                loadStack(slicePair.getLeft(), slicePair.getRight());
-
-                float t1 = timer.reportMsAndRestart();
-                LOG.info(">>> loadTiffStack() total time = {} ms", (t1));
-                return true;
-            } else {
-                return false;
-            }
+            byte[][] frames = parser.extractFrames(stackStream);
+            if (frames==null) return false;
+
+            boolean loaded = ParallelStackDecoder.decode(this, () -> new ParallelStackDecoder.SliceReader() {
+                @Override
+                public int getNumSlices() {
+                    return frames.length;
+                }
+
+                @Override
+                public RenderedImage readSlice(int z) throws IOException {
+                    BufferedImage image = ImageIO.read(new ByteArrayInputStream(frames[z]));
+                    if (image == null) {
+                        throw new IOException("Could not decode frame " + z + " of " + stackName);
+                    }
+                    return image;
+                }
+            });
+
+            float t1 = timer.reportMsAndRestart();
+            LOG.info(">>> loadMJ2Stack() total time = {} ms", (t1));
+            return loaded;
+        } catch (ClosedByInterruptException e) {
+            throw e;
         } catch (Exception e) {
-            e.printStackTrace();
             throw new RuntimeException("Unable to parse", e);
         }
     }
 
+    /**
+     * Returns a texture which shares this texture's pixels and mipmaps in RAM, but has its own GL state.
+     * This allows a loaded stack to be kept in memory and displayed again later without reloading it.
+     * Neither texture may modify the shared pixels.
+     */
+    public Texture3d createSharedCopy() {
+        Texture3d copy = new Texture3d();
+        copy.copyParameters(this);
+        copy.useImmutableTexture = useImmutableTexture;
+        if (pixels != null) {
+            // Each copy needs its own buffer position for uploading
+            copy.pixels = pixels.duplicate().order(pixels.order());
+            copy.pixels.rewind();
+        }
+        copy.pixelBytes = pixelBytes;
+        for (BasicTexture mipmap : mipmaps) {
+            copy.mipmaps.add(((Texture3d) mipmap).createSharedCopy());
+        }
+        copy.needsUpload = pixels != null;
+        return copy;
+    }
+
+    /**
+     * Returns the number of bytes of pixel data held in RAM by this texture and its mipmaps.
+     */
+    public long getRamByteCount() {
+        long count = pixels == null ? 0 : pixels.capacity();
+        for (BasicTexture mipmap : mipmaps) {
+            count += ((Texture3d) mipmap).getRamByteCount();
+        }
+        return count;
+    }
+
     private void allocatePixels() {
         int byteCount = numberOfComponents * bytesPerIntensity * width * height * depth;
         pixelBytes = new byte[byteCount];
@@ -181,26 +233,13 @@ public class Texture3d extends BasicTexture implements GL3Resource {
         pixels.rewind();
     }
 
-    private Pair<Raster[], ColorModel> prepTiffStack(RenderedImage[] stack) {
-        PerformanceTimer timer = new PerformanceTimer();
-
-        depth = stack.length;
-        RenderedImage slice = stack[0];
-        width = slice.getWidth();
-        height = slice.getHeight();
-
-        // NOTE: empirically, this step cannot be done with multiple-threads. It is mysteriously not thread-safe.
-        Raster[] raster = new Raster[stack.length];
-        for (int i = 0; i < stack.length; i++) {
-            raster[i] = stack[i].getData();
-        }
-
-        LOG.debug("Getting Rasters from RenderedImages took {} ms", timer.reportMsAndRestart());
-        return Pair.of(raster, slice.getColorModel());
-    }
-
-    private void loadStack(Raster[] raster, ColorModel colorModel) {
-        PerformanceTimer timer = new PerformanceTimer();
+    /**
+     * Set up the texture format and allocate the pixel buffer for a stack of the given dimensions.
+     */
+    void initializeStack(int width, int height, int depth, ColorModel colorModel) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
 
         bytesPerIntensity = colorModel.getComponentSize(0)/8;
         bytesPerIntensity = Math.max(1, bytesPerIntensity);
@@ -228,164 +267,54 @@ public class Texture3d extends BasicTexture implements GL3Resource {
         }
 
         allocatePixels();
+    }
 
-        LOG.debug("Initializing texture buffer took {} ms", timer.reportMsAndRestart());
-
-        if (bytesPerIntensity<2) { // 8-bit
-            pixels.rewind();
-            if (depth<6) {
-                LoadStackZSlice8bit loadStackZSlice8bit=new LoadStackZSlice8bit(0,depth,pixels,raster,depth,height,width,numberOfComponents);
-                loadStackZSlice8bit.run();
-            } else {
-                List<Future> threadList=new ArrayList<>();
-                for (int z=0;z<depth;) {
-                    int remainingZ=depth-z;
-                    int zCount=3;
-                    if (remainingZ<zCount) {
-                        zCount=remainingZ;
-                    }
-                    LoadStackZSlice8bit loadStackZSlice8bit=new LoadStackZSlice8bit(z,zCount,pixels,raster,depth,height,width,numberOfComponents);
-                    threadList.add(scheduledThreadPoolExecutor.submit(loadStackZSlice8bit));
-                    z+=zCount;
-                }
-                int doneCount = 0;
-                long startTime = new Date().getTime();
-                while (doneCount < threadList.size()) {
-                    long currentTime = new Date().getTime();
-                    if (currentTime - startTime > 30000) {
-                        LOG.error("loadStack() exceeded max thread pool wait time");
-                        break;
-                    }
-                    try {
-                        Thread.sleep(10);
-                    }
-                    catch (Exception ex) {
-                    }
-                    doneCount = 0;
-                    for (Future f : threadList) {
-                        if (f.isDone()) doneCount++;
-                    }
-                }
+    /**
+     * Copy one decoded slice into the pixel buffer. Slices may be copied concurrently from different threads,
+     * since each one writes to its own region of the buffer.
+     */
+    void copySlice(int z, Raster raster) {
+        int sliceLength = width * height * numberOfComponents;
+        int offset = z * sliceLength;
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        boolean isPacked = dataBuffer.getNumBanks() == 1 && dataBuffer.getOffset() == 0 && dataBuffer.getSize() == sliceLength;
+
+        if (bytesPerIntensity > 1) {
+            // Each thread needs its own view, because views have their own position
+            ShortBuffer shortView = ByteBuffer.wrap(pixelBytes).order(ByteOrder.nativeOrder()).asShortBuffer();
+            if (isPacked && dataBuffer instanceof DataBufferUShort) {
+                shortView.position(offset);
+                shortView.put(((DataBufferUShort) dataBuffer).getData());
             }
-            pixels.flip();
-        } else { // 16-bit
-            shortPixels=pixels.asShortBuffer();
-            shortPixels.rewind();
-            if (depth<6) {
-                LoadStackZSlice16bit loadStackZSlice16bit=new LoadStackZSlice16bit(0,depth,shortPixels,raster,depth,height,width,numberOfComponents);
-                loadStackZSlice16bit.run();
-            } else {
-                List<Future> threadList=new ArrayList<>();
-                for (int z=0;z<depth;) {
-                    int remainingZ=depth-z;
-                    int zCount=3;
-                    if (remainingZ<zCount) {
-                        zCount=remainingZ;
-                    }
-                    LoadStackZSlice16bit loadStackZSlice16bit=new LoadStackZSlice16bit(z,zCount,shortPixels,raster,depth,height,width,numberOfComponents);
-                    threadList.add(scheduledThreadPoolExecutor.submit(loadStackZSlice16bit));
-                    //loadStackZSlice16bit.run();
-                    z+=zCount;
-                }
-                int doneCount = 0;
-                long startTime = new Date().getTime();
-                while (doneCount < threadList.size()) {
-                    long currentTime = new Date().getTime();
-                    if (currentTime - startTime > 30000) {
-                        LOG.error("loadStack() exceeded max thread pool wait time");
-                        break;
-                    }
-                    try {
-                        Thread.sleep(10);
-                    }
-                    catch (Exception ex) {
-                    }
-                    doneCount = 0;
-                    for (Future f : threadList) {
-                        if (f.isDone()) doneCount++;
-                    }
+            else {
+                int[] samples = raster.getPixels(0, 0, width, height, (int[]) null);
+                for (int i = 0; i < samples.length; i++) {
+                    shortView.put(offset + i, (short) (samples[i] & 0xffff));
                 }
             }
-            shortPixels.flip();
-        }
-        pixels.rewind();
-
-        LOG.debug("Getting Raster data and populating texture buffer took {} ms", timer.reportMsAndRestart());
-
-        computeMipmaps();
-
-        LOG.debug("Computing mipmaps took {} ms", timer.reportMsAndRestart());
-
-        needsUpload = true;
-    }
-
-    private static class LoadStackZSlice8bit implements Runnable {
-        int zStart, zCount, depth, height, width, numberOfComponents;
-        ByteBuffer pixels;
-        Raster[] raster;
-
-        LoadStackZSlice8bit(int zStart, int zCount, ByteBuffer pixels, Raster[] raster, int depth, int height, int width, int numberOfComponents) {
-            this.zStart=zStart;
-            this.zCount=zCount;
-            this.pixels=pixels;
-            this.raster=raster;
-            this.depth=depth;
-            this.height=height;
-            this.width=width;
-            this.numberOfComponents=numberOfComponents;
         }
-
-        public void run() {
-            int pixelOffset=zStart*height*width*numberOfComponents;
-            int[] pxl = new int[numberOfComponents];
-            int zMax=zStart+zCount;
-            for (int z = zStart; z < zMax; ++z) {
-                Raster r = raster[z];
-                for (int y = 0; y < height; ++y) {
-                    for (int x = 0; x < width; ++x) {
-                        r.getPixel(x, y, pxl);
-                        for (int c = 0; c < numberOfComponents; ++c) {
-                            pixels.put(pixelOffset++, (byte)(pxl[c] & 0xFF));
-                        }
-                    }
+        else {
+            if (isPacked && numberOfComponents == 1 && dataBuffer instanceof DataBufferByte) {
+                System.arraycopy(((DataBufferByte) dataBuffer).getData(), 0, pixelBytes, offset, sliceLength);
+            }
+            else {
+                int[] samples = raster.getPixels(0, 0, width, height, (int[]) null);
+                for (int i = 0; i < samples.length; i++) {
+                    pixelBytes[offset + i] = (byte) (samples[i] & 0xFF);
                 }
             }
         }
     }
 
-    private static class LoadStackZSlice16bit implements Runnable {
-        int zStart, zCount, depth, height, width, numberOfComponents;
-        ShortBuffer shortPixels;
-        Raster[] raster;
-
-        LoadStackZSlice16bit(int zStart, int zCount, ShortBuffer shortPixels, Raster[] raster, int depth, int height, int width, int numberOfComponents) {
-            this.zStart=zStart;
-            this.zCount=zCount;
-            this.shortPixels=shortPixels;
-            this.raster=raster;
-            this.depth=depth;
-            this.height=height;
-            this.width=width;
-            this.numberOfComponents=numberOfComponents;
-        }
-
-        public void run() {
-            int shortOffset=zStart*height*width*numberOfComponents;
-            int zMax=zStart+zCount;
-            for (int z = zStart; z < zMax; ++z) {
-                Raster sliceRaster=raster[z];
-                DataBufferUShort dbu = (DataBufferUShort)sliceRaster.getDataBuffer();
-                short[] sliceData = dbu.getData();
-                addArrayToBuffer(shortPixels, sliceData, shortOffset);
-                shortOffset+=sliceData.length;
-            }
-        }
-
-        private void addArrayToBuffer(ShortBuffer shortBuffer, short[] arr, int bufferOffset) {
-            for (int i=0;i<arr.length;i++) {
-                shortBuffer.put(bufferOffset+i, arr[i]);
-            }
-        }
+    /**
+     * Called once all slices have been copied.
+     */
+    void finishStack() {
+        PerformanceTimer timer = new PerformanceTimer();
+        pixels.rewind();
+        computeMipmaps();
+        LOG.debug("Computing mipmaps took {} ms", timer.reportMsAndRestart());
+        needsUpload = true;
     }
 
     private void computeMipmaps() {
@@ -397,6 +326,11 @@ public class Texture3d extends BasicTexture implements GL3Resource {
             mipmaps.add(mipmap);
             mipmap = mipmap.createMipmapUsingMaxFilter();
         }
+        // The unpacked shorts are only needed for computing the next mipmap level
+        shortBytes = null;
+        for (BasicTexture m : mipmaps) {
+            ((Texture3d) m).shortBytes = null;
+        }
     }
 
     private void copyParameters(Texture3d rhs) {
@@ -726,30 +660,4 @@ public class Texture3d extends BasicTexture implements GL3Resource {
         }
     }
 
-    private RenderedImage[] renderedImagesFromTiffStack(InputStream stackStream) throws IOException {
-        PerformanceTimer timer = new PerformanceTimer();
-
-        SeekableStream tiffStream;
-        if (stackStream instanceof SeekableStream) {
-            tiffStream = (SeekableStream) stackStream;
-        } else {
-            tiffStream = new MemoryCacheSeekableStream(stackStream);
-        }
-
-        ImageDecoder decoder = ImageCodec.createImageDecoder("tiff", tiffStream, null);
-        if (decoder != null) {
-            LOG.debug("Creating image decoder from tiff file took {} ms", timer.reportMsAndRestart());
-            int sz = decoder.getNumPages();
-            RenderedImage slices[] = new RenderedImage[sz];
-            for (int z = 0; z < sz; ++z) {
-                slices[z] = decoder.decodeAsRenderedImage(z);
-            }
-            LOG.debug("Creating RenderedImages for all slices took {} ms", timer.reportMsAndRestart());
-            return slices;
-        } else {
-            return null;
-        }
-    }
-
-
 }
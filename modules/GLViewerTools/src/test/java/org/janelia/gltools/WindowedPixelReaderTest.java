@@ -0,0 +1,284 @@
+package org.janelia.gltools;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import javax.media.opengl.GL3;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks windowed pick reads against full render target readback, using a
+ * mock GL that holds the render target contents in host memory.
+ */
+public class WindowedPixelReaderTest
+{
+    private static final int FRAMEBUFFER = 7;
+
+    @Test
+    public void testUnsignedShortMatchesFullReadback() {
+        checkMatchesFullReadback(GL3.GL_RGBA, GL3.GL_UNSIGNED_SHORT, 2, 4, 101, 67);
+    }
+
+    @Test
+    public void testFloatMatchesFullReadback() {
+        checkMatchesFullReadback(GL3.GL_RG, GL3.GL_FLOAT, 4, 2, 64, 48);
+    }
+
+    @Test
+    public void testDepthMatchesFullReadback() {
+        checkMatchesFullReadback(GL3.GL_DEPTH_COMPONENT, GL3.GL_FLOAT, 4, 1, 33, 17);
+    }
+
+    @Test
+    public void testByteMatchesFullReadback() {
+        // Odd width exercises the row padding of the full readback
+        checkMatchesFullReadback(GL3.GL_RED, GL3.GL_UNSIGNED_BYTE, 1, 1, 45, 9);
+    }
+
+    @Test
+    public void testPrefetchIsUsedForCurrentFrameOnly() {
+        MockGL mock = new MockGL(GL3.GL_RGBA, GL3.GL_UNSIGNED_SHORT, 2, 4, 200, 100, 4);
+        WindowedPixelReader reader = new WindowedPixelReader(GL3.GL_RGBA, GL3.GL_UNSIGNED_SHORT, 2, 4);
+        GL3 gl = mock.gl();
+
+        // First pick reads synchronously, and sets the prefetch location
+        reader.getIntensity(gl, FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT0, 200, 100, 50, 40, 2);
+        Assert.assertEquals(1, mock.clientReads);
+
+        // New frame is prefetched into a pixel pack buffer
+        mock.fill(2);
+        reader.invalidate();
+        Assert.assertNull(reader.getCachedIntensity(50, 40, 2));
+        reader.queueReadback(gl, FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT0, 200, 100);
+        Assert.assertEquals(1, mock.packBufferReads);
+        double value = reader.getIntensity(gl, FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT0, 200, 100, 52, 41, 2);
+        Assert.assertEquals(mock.fullReadbackIntensity(52, 41, 2), value, 0);
+        Assert.assertEquals(1, mock.clientReads);
+        Assert.assertEquals(1, mock.maps);
+        // Nearby picks in the same frame need no GL at all
+        Assert.assertEquals(mock.fullReadbackIntensity(45, 35, 0), reader.getCachedIntensity(45, 35, 0), 0);
+
+        // A prefetch from an earlier frame must not be used
+        reader.queueReadback(gl, FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT0, 200, 100);
+        mock.fill(3);
+        reader.invalidate();
+        value = reader.getIntensity(gl, FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT0, 200, 100, 52, 41, 2);
+        Assert.assertEquals(mock.fullReadbackIntensity(52, 41, 2), value, 0);
+        Assert.assertEquals(2, mock.clientReads);
+        Assert.assertEquals(1, mock.maps);
+
+        // Far away picks read a new window
+        value = reader.getIntensity(gl, FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT0, 200, 100, 199, 0, 3);
+        Assert.assertEquals(mock.fullReadbackIntensity(199, 0, 3), value, 0);
+        Assert.assertEquals(3, mock.clientReads);
+
+        // Bindings are restored
+        Assert.assertEquals(0, mock.readFramebuffer);
+        Assert.assertEquals(0, mock.packBuffer);
+        Assert.assertEquals(4, mock.packAlignment);
+    }
+
+    private void checkMatchesFullReadback(int format, int type, int bytesPerIntensity, int numberOfComponents,
+            int width, int height)
+    {
+        MockGL mock = new MockGL(format, type, bytesPerIntensity, numberOfComponents, width, height, 4);
+        WindowedPixelReader reader = new WindowedPixelReader(format, type, bytesPerIntensity, numberOfComponents);
+        Random random = new Random(width * height);
+        for (int i = 0; i < 200; ++i) {
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            int c = random.nextInt(numberOfComponents);
+            double expected = mock.fullReadbackIntensity(x, y, c);
+            double actual = reader.getIntensity(mock.gl(), FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT0,
+                    width, height, x, y, c);
+            Assert.assertEquals("x=" + x + " y=" + y + " c=" + c, expected, actual, 0);
+        }
+        // corners
+        for (int x : new int[] {0, width - 1}) {
+            for (int y : new int[] {0, height - 1}) {
+                Assert.assertEquals(mock.fullReadbackIntensity(x, y, 0),
+                        reader.getIntensity(mock.gl(), FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT0,
+                                width, height, x, y, 0), 0);
+            }
+        }
+    }
+
+    /**
+     * Just enough of GL3 to read pixels from a framebuffer, with or without
+     * pixel pack buffers.
+     */
+    private static class MockGL implements InvocationHandler
+    {
+        final int format, type, bytesPerIntensity, numberOfComponents, width, height;
+        ByteBuffer pixels; // tightly packed, row 0 at the bottom
+        int packAlignment;
+        int readFramebuffer = 0;
+        int readBuffer = GL3.GL_BACK;
+        int packBuffer = 0;
+        int nextBuffer = 1;
+        final Map<Integer, ByteBuffer> buffers = new HashMap<>();
+        int clientReads = 0;
+        int packBufferReads = 0;
+        int maps = 0;
+
+        MockGL(int format, int type, int bytesPerIntensity, int numberOfComponents, int width, int height,
+                int packAlignment)
+        {
+            this.format = format;
+            this.type = type;
+            this.bytesPerIntensity = bytesPerIntensity;
+            this.numberOfComponents = numberOfComponents;
+            this.width = width;
+            this.height = height;
+            this.packAlignment = packAlignment;
+            fill(1);
+        }
+
+        GL3 gl() {
+            return (GL3) Proxy.newProxyInstance(GL3.class.getClassLoader(), new Class<?>[] {GL3.class}, this);
+        }
+
+        final void fill(long seed) {
+            Random random = new Random(seed);
+            int elementBytes = bytesPerIntensity;
+            pixels = ByteBuffer.allocate(width * height * numberOfComponents * elementBytes).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < width * height * numberOfComponents; ++i) {
+                if (type == GL3.GL_FLOAT)
+                    pixels.putFloat(random.nextFloat() * 100);
+                else if (elementBytes == 2)
+                    pixels.putShort((short) random.nextInt(65536));
+                else
+                    pixels.put((byte) random.nextInt(256));
+            }
+        }
+
+        /**
+         * Reads a rectangle of pixels, with rows padded to the pack alignment.
+         */
+        private void readPixels(int x0, int y0, int w, int h, ByteBuffer dest) {
+            Assert.assertEquals(FRAMEBUFFER, readFramebuffer);
+            if (format != GL3.GL_DEPTH_COMPONENT)
+                Assert.assertEquals(GL3.GL_COLOR_ATTACHMENT0, readBuffer);
+            int pixelBytes = numberOfComponents * bytesPerIntensity;
+            int rowBytes = w * pixelBytes;
+            int paddedRowBytes = (rowBytes + packAlignment - 1) / packAlignment * packAlignment;
+            for (int y = 0; y < h; ++y) {
+                for (int b = 0; b < rowBytes; ++b) {
+                    dest.put(y * paddedRowBytes + b, pixels.get(((y0 + y) * width + x0) * pixelBytes + b));
+                }
+            }
+        }
+
+        /**
+         * Intensity as RenderTarget computes it from a full glGetTexImage copy.
+         */
+        double fullReadbackIntensity(int x, int y, int channel) {
+            int unpaddedScanLineBytes = width * numberOfComponents * bytesPerIntensity;
+            int pad = unpaddedScanLineBytes % 4;
+            if (pad != 0)
+                pad = 4 - pad;
+            int widthPadInBytes = pad;
+            ByteBuffer host = ByteBuffer.allocateDirect(width * height * bytesPerIntensity * numberOfComponents
+                    + height * widthPadInBytes).order(ByteOrder.nativeOrder());
+            int savedAlignment = packAlignment;
+            packAlignment = 4;
+            int savedFramebuffer = readFramebuffer;
+            int savedReadBuffer = readBuffer;
+            readFramebuffer = FRAMEBUFFER;
+            readBuffer = GL3.GL_COLOR_ATTACHMENT0;
+            readPixels(0, 0, width, height, host);
+            packAlignment = savedAlignment;
+            readFramebuffer = savedFramebuffer;
+            readBuffer = savedReadBuffer;
+
+            int sc = 1;
+            int sx = numberOfComponents * sc;
+            int sy = width * sx + widthPadInBytes / bytesPerIntensity;
+            int offset = sx * x + sy * y + sc * channel;
+            return WindowedPixelReader.decode(host, offset, format, type, bytesPerIntensity);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "glGetIntegerv": {
+                    int[] values = (int[]) args[1];
+                    int index = (Integer) args[2];
+                    int pname = (Integer) args[0];
+                    if (pname == GL3.GL_READ_FRAMEBUFFER_BINDING)
+                        values[index] = readFramebuffer;
+                    else if (pname == GL3.GL_READ_BUFFER)
+                        values[index] = readBuffer;
+                    else if (pname == GL3.GL_PACK_ALIGNMENT)
+                        values[index] = packAlignment;
+                    return null;
+                }
+                case "glBindFramebuffer":
+                    Assert.assertEquals(GL3.GL_READ_FRAMEBUFFER, args[0]);
+                    readFramebuffer = (Integer) args[1];
+                    return null;
+                case "glReadBuffer":
+                    readBuffer = (Integer) args[0];
+                    return null;
+                case "glPixelStorei":
+                    if ((Integer) args[0] == GL3.GL_PACK_ALIGNMENT)
+                        packAlignment = (Integer) args[1];
+                    return null;
+                case "glGenBuffers": {
+                    int[] names = (int[]) args[1];
+                    names[(Integer) args[2]] = nextBuffer++;
+                    return null;
+                }
+                case "glDeleteBuffers":
+                    buffers.remove(((int[]) args[1])[(Integer) args[2]]);
+                    return null;
+                case "glBindBuffer":
+                    Assert.assertEquals(GL3.GL_PIXEL_PACK_BUFFER, args[0]);
+                    packBuffer = (Integer) args[1];
+                    return null;
+                case "glBufferData":
+                    buffers.put(packBuffer, ByteBuffer.allocateDirect((int) (long) (Long) args[1])
+                            .order(ByteOrder.nativeOrder()));
+                    return null;
+                case "glMapBufferRange": {
+                    maps++;
+                    ByteBuffer mapped = buffers.get(packBuffer).duplicate().order(ByteOrder.nativeOrder());
+                    mapped.limit((int) (long) (Long) args[2]);
+                    return mapped.slice().order(ByteOrder.nativeOrder());
+                }
+                case "glUnmapBuffer":
+                    return true;
+                case "glReadPixels": {
+                    int x0 = (Integer) args[0];
+                    int y0 = (Integer) args[1];
+                    int w = (Integer) args[2];
+                    int h = (Integer) args[3];
+                    Assert.assertEquals(format, args[4]);
+                    Assert.assertEquals(type, args[5]);
+                    Assert.assertTrue(x0 >= 0 && y0 >= 0 && x0 + w <= width && y0 + h <= height);
+                    if (args[6] instanceof Buffer) {
+                        Assert.assertEquals(0, packBuffer);
+                        clientReads++;
+                        readPixels(x0, y0, w, h, (ByteBuffer) args[6]);
+                    }
+                    else {
+                        Assert.assertTrue(packBuffer != 0);
+                        Assert.assertEquals(0L, args[6]);
+                        packBufferReads++;
+                        readPixels(x0, y0, w, h, buffers.get(packBuffer));
+                    }
+                    return null;
+                }
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+}
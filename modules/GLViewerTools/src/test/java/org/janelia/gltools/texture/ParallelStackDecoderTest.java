@@ -0,0 +1,190 @@
+package org.janelia.gltools.texture;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that decoding a stack in parallel fills the texture exactly like decoding it one slice at a time.
+ */
+public class ParallelStackDecoderTest
+{
+    @Test
+    public void testByteStackMatchesSerialDecode() throws IOException {
+        checkMatchesSerialDecode(createStack(BufferedImage.TYPE_BYTE_GRAY, 37, 31, 29));
+    }
+
+    @Test
+    public void testShortStackMatchesSerialDecode() throws IOException {
+        checkMatchesSerialDecode(createStack(BufferedImage.TYPE_USHORT_GRAY, 23, 40, 17));
+    }
+
+    @Test
+    public void testRgbStackMatchesSerialDecode() throws IOException {
+        // Interleaved bands are copied sample by sample, rather than as a whole buffer
+        checkMatchesSerialDecode(createStack(BufferedImage.TYPE_3BYTE_BGR, 19, 16, 9));
+    }
+
+    @Test
+    public void testShallowStacksMatchSerialDecode() throws IOException {
+        for (int depth = 1; depth <= 3; depth++) {
+            checkMatchesSerialDecode(createStack(BufferedImage.TYPE_BYTE_GRAY, depth, 8, 8));
+        }
+    }
+
+    @Test
+    public void testReadersAreNotShared() throws IOException {
+        BufferedImage[] stack = createStack(BufferedImage.TYPE_BYTE_GRAY, 64, 8, 8);
+        List<String> errors = new CopyOnWriteArrayList<>();
+        AtomicInteger readers = new AtomicInteger();
+        Texture3d texture = new Texture3d();
+        boolean loaded = ParallelStackDecoder.decode(texture, () -> {
+            readers.incrementAndGet();
+            AtomicReference<Thread> user = new AtomicReference<>();
+            return new ParallelStackDecoder.SliceReader() {
+                @Override
+                public int getNumSlices() {
+                    return stack.length;
+                }
+
+                @Override
+                public RenderedImage readSlice(int z) {
+                    // A reader may be handed from one thread to another, but never used by two at once
+                    if (!user.compareAndSet(null, Thread.currentThread())) {
+                        errors.add("Reader used by " + user.get().getName() + " and " + Thread.currentThread().getName());
+                        return stack[z];
+                    }
+                    try {
+                        Thread.yield();
+                        return stack[z];
+                    }
+                    finally {
+                        user.set(null);
+                    }
+                }
+            };
+        });
+        Assert.assertTrue(loaded);
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        Assert.assertTrue(readers.get() >= 1);
+    }
+
+    @Test
+    public void testDecodeErrorIsReported() {
+        BufferedImage[] stack = createStack(BufferedImage.TYPE_BYTE_GRAY, 40, 8, 8);
+        AtomicInteger readers = new AtomicInteger();
+        try {
+            ParallelStackDecoder.decode(new Texture3d(), () -> {
+                readers.incrementAndGet();
+                return new ParallelStackDecoder.SliceReader() {
+                    @Override
+                    public int getNumSlices() {
+                        return stack.length;
+                    }
+
+                    @Override
+                    public RenderedImage readSlice(int z) throws IOException {
+                        if (z == 33) {
+                            throw new IOException("Corrupt slice " + z);
+                        }
+                        return stack[z];
+                    }
+                };
+            });
+            Assert.fail("Expected the decode error to be reported");
+        }
+        catch (IOException e) {
+            Assert.assertEquals("Corrupt slice 33", e.getMessage());
+        }
+        Assert.assertTrue(readers.get() >= 1);
+    }
+
+    @Test
+    public void testUndecodableStack() throws IOException {
+        Assert.assertFalse(ParallelStackDecoder.decode(new Texture3d(), () -> null));
+    }
+
+    private static void checkMatchesSerialDecode(BufferedImage[] stack) throws IOException {
+        Texture3d parallel = new Texture3d();
+        Assert.assertTrue(ParallelStackDecoder.decode(parallel, () -> createReader(stack)));
+
+        Texture3d serial = new Texture3d();
+        ParallelStackDecoder.SliceReader reader = createReader(stack);
+        RenderedImage firstSlice = reader.readSlice(0);
+        serial.initializeStack(firstSlice.getWidth(), firstSlice.getHeight(), reader.getNumSlices(), firstSlice.getColorModel());
+        for (int z = 0; z < reader.getNumSlices(); z++) {
+            serial.copySlice(z, reader.readSlice(z).getData());
+        }
+        serial.finishStack();
+
+        Assert.assertEquals(serial.getWidth(), parallel.getWidth());
+        Assert.assertEquals(serial.getFormat(), parallel.getFormat());
+        Assert.assertEquals(serial.getType(), parallel.getType());
+        Assert.assertEquals(serial.getNumberOfComponents(), parallel.getNumberOfComponents());
+        byte[] expected = toArray(serial.pixels);
+        Assert.assertArrayEquals(expected, toArray(parallel.pixels));
+
+        // The last slice is where uneven slabs end, so check it against the source image too
+        int width = stack[0].getWidth();
+        int height = stack[0].getHeight();
+        int[] samples = stack[stack.length - 1].getRaster().getPixels(0, 0, width, height, (int[]) null);
+        int bytesPerSample = expected.length / (samples.length * stack.length);
+        int offset = (stack.length - 1) * samples.length;
+        for (int i = 0; i < samples.length; i++) {
+            int value = bytesPerSample == 1
+                    ? expected[offset + i] & 0xff
+                    : parallel.pixels.getShort((offset + i) * 2) & 0xffff;
+            Assert.assertEquals(samples[i], value);
+        }
+    }
+
+    private static ParallelStackDecoder.SliceReader createReader(BufferedImage[] stack) {
+        return new ParallelStackDecoder.SliceReader() {
+            @Override
+            public int getNumSlices() {
+                return stack.length;
+            }
+
+            @Override
+            public RenderedImage readSlice(int z) {
+                return stack[z];
+            }
+        };
+    }
+
+    private static BufferedImage[] createStack(int imageType, int depth, int width, int height) {
+        Random random = new Random(depth * 31 + imageType);
+        BufferedImage[] stack = new BufferedImage[depth];
+        for (int z = 0; z < depth; z++) {
+            BufferedImage image = new BufferedImage(width, height, imageType);
+            WritableRaster raster = image.getRaster();
+            int maxValue = (1 << raster.getSampleModel().getSampleSize(0)) - 1;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    for (int b = 0; b < raster.getNumBands(); b++) {
+                        raster.setSample(x, y, b, random.nextInt(maxValue + 1));
+                    }
+                }
+            }
+            stack[z] = image;
+        }
+        return stack;
+    }
+
+    private static byte[] toArray(ByteBuffer pixels) {
+        ByteBuffer view = pixels.duplicate();
+        view.rewind();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+}
@@ -215,18 +215,29 @@ public class BrainTileInfo implements BrickInfo {
         rawImage.setBytesPerIntensity(bytesPerIntensity);
         rawImage.setTileDims(Arrays.stream(pixelDims).boxed().toArray(Integer[]::new));
         rawImage.setTransform(Arrays.stream(transform.getRowPackedCopy()).boxed().toArray(Double[]::new));
+        String rawImagePath = rawImage.getRawImagePath(colorChannelIndex,fileExtension);
+
+        // Decoding a raw brick takes seconds, so recently decoded bricks are kept in memory
+        String brickKey = basePath + ":" + rawImagePath;
+        Texture3d cachedTexture = DecodedBrickCache.get(brickKey);
+        if (cachedTexture != null) {
+            return cachedTexture;
+        }
+
         return tileLoader.findStorageLocation(basePath)
-                .flatMap(serverURL -> tileLoader.streamTileContent(serverURL, rawImage.getRawImagePath(colorChannelIndex,fileExtension)).asOptional())
+                .flatMap(serverURL -> tileLoader.streamTileContent(serverURL, rawImagePath).asOptional())
                 .map(rawImageStream -> {
                     String tileStack = rawImage.toString() + "-ch-" + colorChannelIndex;
                     try {
                         if (fileExtension.equals("mj2")) {
-                            texture.loadMJ2Stack(tileStack, rawImageStream);
-                            return texture;
+                            if (!texture.loadMJ2Stack(tileStack, rawImageStream)) {
+                                return null;
+                            }
+                            return DecodedBrickCache.put(brickKey, texture);
                         } else if (!texture.loadTiffStack(tileStack, rawImageStream)) {
                             return null;
                         } else {
-                            return texture;
+                            return DecodedBrickCache.put(brickKey, texture);
                         }
                     } catch (ClosedByInterruptException e) {
                         LOG.info("Cancelled loading tiff stack {}", tileStack);
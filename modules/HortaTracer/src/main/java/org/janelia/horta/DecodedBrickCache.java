@@ -0,0 +1,56 @@
+package org.janelia.horta;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.janelia.gltools.texture.Texture3d;
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps recently decoded raw bricks in RAM, so that returning to a location does not decode its bricks again.
+ *
+ * The cached textures are never bound to GL. Callers get shared copies, which reuse the cached pixels and mipmaps
+ * but have their own GL state. Bricks are evicted in least recently used order once the total size of their
+ * pixels exceeds the limit.
+ */
+final class DecodedBrickCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DecodedBrickCache.class);
+
+    private static final long DEFAULT_CACHE_MB = Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024);
+    private static final long CACHE_MB = ConsoleProperties.getLong("console.horta.decodedBrickCacheMB", DEFAULT_CACHE_MB);
+
+    private static final Cache<String, Texture3d> cache = CacheBuilder.newBuilder()
+            // Weights are in kilobytes, so that large bricks do not overflow
+            .maximumWeight(CACHE_MB * 1024)
+            .weigher((String key, Texture3d texture) -> (int) Math.min(Integer.MAX_VALUE, texture.getRamByteCount() / 1024))
+            .build();
+
+    private DecodedBrickCache() {
+    }
+
+    /**
+     * Returns a copy of the cached brick with the given key, or null if it is not cached.
+     */
+    static Texture3d get(String key) {
+        Texture3d texture = cache.getIfPresent(key);
+        if (texture == null) {
+            return null;
+        }
+        LOG.debug("Found decoded brick in cache: {}", key);
+        return texture.createSharedCopy();
+    }
+
+    /**
+     * Cache a newly decoded brick, and return a copy of it for the caller to use.
+     */
+    static Texture3d put(String key, Texture3d texture) {
+        if (CACHE_MB <= 0) {
+            return texture;
+        }
+        cache.put(key, texture);
+        return texture.createSharedCopy();
+    }
+}
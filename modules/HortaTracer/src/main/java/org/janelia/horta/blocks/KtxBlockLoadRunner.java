@@ -10,6 +10,7 @@ import org.janelia.horta.actors.TetVolumeActor;
 import org.janelia.horta.actors.TetVolumeMeshActor;
 import org.janelia.horta.ktx.KtxData;
 import org.janelia.horta.loader.DataSource;
+import org.janelia.workstation.controller.metrics.PerformanceMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,11 +50,13 @@ public class KtxBlockLoadRunner
 
     private void loadFromBlockSource() {
         long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
         URI sourceURI = ktxBlockTileSource.getKeyBlockAbsolutePathURI(ktxOctreeBlockTileKey);
         LOG.debug("Load ktx tile {} from {}", ktxOctreeBlockTileKey, sourceURI);
         try (InputStream blockStream = ktxBlockTileSource.streamKeyBlock(ktxOctreeBlockTileKey).get()) {
             loadStream(blockStream, ktxData -> {
                 long endTime = System.currentTimeMillis();
+                PerformanceMetrics.timer(PerformanceMetrics.KTX_BLOCK_LOAD).recordSince(startNanos);
                 LOG.info("Loading ktx tile {} from {} took {} ms", ktxOctreeBlockTileKey, sourceURI, endTime-startTime);
             });
         } catch (IllegalStateException ex) {
@@ -65,6 +68,9 @@ public class KtxBlockLoadRunner
             LOG.warn("Exception loading tile {} from block source", ktxOctreeBlockTileKey, ex);
             state = State.FAILED;
         }
+        if (state == State.FAILED) {
+            PerformanceMetrics.counter(PerformanceMetrics.KTX_BLOCK_LOAD_FAILED).increment();
+        }
     }
 
     private void loadFromDataSource() {
@@ -33,6 +33,7 @@ import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.janelia.model.domain.tiledMicroscope.TmWorkspace;
 import org.janelia.workstation.controller.NeuronManager;
 import org.janelia.workstation.controller.eventbus.NeuronUpdateEvent;
+import org.janelia.workstation.controller.metrics.PerformanceMetrics;
 import org.janelia.workstation.controller.model.TmModelManager;
 
 /**
@@ -167,8 +168,10 @@ public class NeuronMPRenderer extends MultipassRenderer implements NeuronUpdateL
             resource.dispose(gl);
             iter.remove();
         }
-        
+
+        long startTime = System.nanoTime();
         super.display(gl, camera);
+        PerformanceMetrics.timer(PerformanceMetrics.HORTA_FRAME_RENDER).recordSince(startTime);
     }
 
     
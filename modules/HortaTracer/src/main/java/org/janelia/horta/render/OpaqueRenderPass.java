@@ -240,6 +240,9 @@ public class OpaqueRenderPass extends RenderPass
                     width, height, 
                     GL3.GL_DEPTH_BUFFER_BIT, GL3.GL_NEAREST);
         }
+        
+        // Prefetch depth values near the cursor, after any MSAA resolve
+        getFlatDepthTarget().queueWindowReadback(gl);
     }
 
     public Texture2d getColorTarget()
@@ -92,6 +92,7 @@ implements DepthSlabClipper
         for (RenderTarget rt : new RenderTarget[] {rgbaTarget, coreDepthTarget}) 
         {
             rt.setHostBufferNeedsUpdate(true);
+            rt.queueWindowReadback(gl); // prefetch pick values near the cursor
             rt.setDirty(false);
         }
         gl.glDrawBuffers(1, targetAttachments, 0);
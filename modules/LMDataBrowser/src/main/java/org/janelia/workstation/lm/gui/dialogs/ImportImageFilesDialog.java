@@ -438,12 +438,15 @@ public class ImportImageFilesDialog extends ModalDialog {
 
                 setStatus("Submitting task");
                 
+                List<File> failedFiles = new ArrayList<>();
                 Long taskId = startImportFilesTask(selectedFile,
                         selectedChildren,
                         importFolderName,
                         importFolderId, storageTags,
                         channelSpec,
-                        mipsOptions);
+                        mipsOptions,
+                        this,
+                        failedFiles);
                 
                 setServiceId(taskId);
                 
@@ -453,7 +456,12 @@ public class ImportImageFilesDialog extends ModalDialog {
                 super.doStuff(); 
 
                 if (isCancelled()) throw new CancellationException();
-                setStatus("Done importing");
+                if (failedFiles.isEmpty()) {
+                    setStatus("Done importing");
+                }
+                else {
+                    setFinalStatus("Done importing. Failed to upload " + failedFiles.size() + " files.");
+                }
             }
 
             @Override
@@ -502,7 +510,9 @@ public class ImportImageFilesDialog extends ModalDialog {
                                       Long importTopLevelFolderId,
                                       String storageTags,
                                       String channelSpec,
-                                      String mipsOptions) throws Exception {
+                                      String mipsOptions,
+                                      BackgroundWorker worker,
+                                      List<File> failedFiles) throws Exception {
 
         AsyncServiceClient asyncServiceClient = new AsyncServiceClient();
 
@@ -535,12 +545,28 @@ public class ImportImageFilesDialog extends ModalDialog {
             uploadPath = uploadedFile.getStorageURL();
         } 
         else {
-            List<RemoteLocation> uploadedFiles = uploader.uploadFiles(
+            worker.setStatus("Uploading " + selectedChildren.size() + " files");
+            WebDavUploader.UploadResult uploadResult = uploader.uploadFiles(
                     storageName,
                     uploadContext,
                     storageTags,
                     selectedChildren,
-                    selectedFile);
+                    selectedFile,
+                    (filesCompleted, totalFiles, bytesUploaded, totalBytes, bytesPerSecond) -> {
+                        worker.setStatus(MessageFormat.format("Uploaded {0} of {1} files ({2} MB/s)",
+                                filesCompleted, totalFiles, String.format("%.1f", bytesPerSecond / 1024 / 1024)));
+                        worker.setProgress(bytesUploaded, Math.max(1, totalBytes));
+                    },
+                    worker::isCancelled);
+            List<RemoteLocation> uploadedFiles = uploadResult.getUploaded();
+            for (Map.Entry<File, Throwable> failure : uploadResult.getFailures().entrySet()) {
+                log.error("Failed to upload {}", failure.getKey(), failure.getValue());
+                failedFiles.add(failure.getKey());
+            }
+            if (uploadedFiles.isEmpty() && !failedFiles.isEmpty()) {
+                throw new IllegalStateException("Failed to upload any of the " + failedFiles.size() + " selected files",
+                        uploadResult.getFailures().values().iterator().next());
+            }
             // all files should be uploaded to the same storage
             uploadPath = uploadedFiles.stream().findFirst().map(rl -> rl.getStorageURL()).orElseThrow(() -> new IllegalStateException("Invalid upload state " + uploadedFiles));
         }
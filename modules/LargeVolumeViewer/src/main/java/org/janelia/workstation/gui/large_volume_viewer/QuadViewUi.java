@@ -771,7 +771,7 @@ public class QuadViewUi extends JPanel implements VolumeLoadListener {
 
         buttonsPanel.add(loadUpdatesButton);
 
-        buttonsPanel.add(new TileStackCacheStatusPanel());
+        buttonsPanel.add(new PerformanceMetricsPanel());
 
         Component verticalGlue = Box.createVerticalGlue();
         buttonsPanel.add(verticalGlue);
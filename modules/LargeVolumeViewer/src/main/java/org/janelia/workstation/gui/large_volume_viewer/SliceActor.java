@@ -3,7 +3,9 @@ package org.janelia.workstation.gui.large_volume_viewer;
 import javax.media.opengl.GL;
 import javax.media.opengl.GL2;
 import javax.media.opengl.GLAutoDrawable;
+import org.janelia.workstation.controller.metrics.PerformanceMetrics;
 import org.janelia.workstation.controller.model.color.ImageColorModel;
+import org.janelia.workstation.core.util.ConsoleProperties;
 import  org.janelia.workstation.geom.CoordinateAxis;
 import org.janelia.workstation.geom.Vec3;
 import org.janelia.workstation.geom.BoundingBox3d;
@@ -29,6 +31,9 @@ public class SliceActor implements GLActor {
 
     private static final Logger LOG = LoggerFactory.getLogger(SliceActor.class);
 
+    // Draw tiles from a retained vertex buffer, rather than one immediate-mode quad at a time
+    private static final boolean RETAINED_TILES = ConsoleProperties.getBoolean("console.lvv.retainedTiles", true);
+
     private ViewTileManager viewTileManager;
 
     private boolean needsGlDisposal = false; // flag for deferred OpenGL data reset
@@ -38,6 +43,7 @@ public class SliceActor implements GLActor {
     private SliceColorShader shader = new SliceColorShader();
     private NumeralShader numeralShader = new NumeralShader();
     private OutlineShader outlineShader = new OutlineShader();
+    private final TileQuadBatch tileBatch = new TileQuadBatch();
 
     public SliceActor(ViewTileManager viewTileManager) {
         this.viewTileManager = viewTileManager;
@@ -94,10 +100,11 @@ public class SliceActor implements GLActor {
         }
         GL2 gl2 = glDrawable.getGL().getGL2();
         shader.load(gl2);
-        for (Tile2d tile : tiles) {
-            tile.setFilter(filter);
-            tile.display(glDrawable, camera);
-        }
+        long startTime = System.nanoTime();
+        displayTiles(glDrawable, tiles, camera, filter);
+        PerformanceMetrics.timer(RETAINED_TILES
+                ? PerformanceMetrics.LVV_TILE_DRAW_RETAINED
+                : PerformanceMetrics.LVV_TILE_DRAW_IMMEDIATE).recordSince(startTime);
         shader.unload(gl2);
 
         // Numeral display at high zoom			
@@ -126,11 +133,8 @@ public class SliceActor implements GLActor {
             }
             // render numerals
             numeralShader.load(gl2);
-            for (Tile2d tile : tiles) {
-                tile.setFilter(GL2.GL_NEAREST);
-                // numeralShader.setTexturePixels(???);
-                tile.display(glDrawable, camera);
-            }
+            // numeralShader.setTexturePixels(???);
+            displayTiles(glDrawable, tiles, camera, GL2.GL_NEAREST);
             numeralShader.unload(gl2);
         }
 
@@ -144,6 +148,17 @@ public class SliceActor implements GLActor {
         }
     }
 
+    private void displayTiles(GLAutoDrawable glDrawable, TileSet tiles, Camera3d camera, int filter) {
+        if (RETAINED_TILES) {
+            tileBatch.display(glDrawable.getGL().getGL2(), tiles, camera, filter);
+            return;
+        }
+        for (Tile2d tile : tiles) {
+            tile.setFilter(filter);
+            tile.display(glDrawable, camera);
+        }
+    }
+
     private void displayBoundingBox(GL2 gl) {
         // For debugging, draw bounding box
         gl.glDisable(GL2.GL_TEXTURE_2D);
@@ -174,6 +189,7 @@ public class SliceActor implements GLActor {
             joglTexture.destroy(gl);
             tileTexture.setLoadStatus(TileTexture.LoadStatus.RAM_LOADED);
         }
+        tileBatch.dispose(gl);
         needsGlDisposal = false;
     }
 
@@ -3,6 +3,7 @@ package org.janelia.workstation.gui.large_volume_viewer;
 import javax.media.opengl.GL2;
 import javax.media.opengl.GLAutoDrawable;
 
+import org.janelia.workstation.controller.metrics.PerformanceMetrics;
 import org.janelia.workstation.geom.Rotation3d;
 import org.janelia.workstation.gui.camera.Camera3d;
 import org.janelia.workstation.gui.opengl.GLActor;
@@ -32,6 +33,7 @@ extends BaseRenderer
     @Override
     public void display(GLAutoDrawable gLDrawable) 
     {
+        long startTime = System.nanoTime();
         final GL2 gl = gLDrawable.getGL().getGL2();
         displayBackground(gl);
         // set camera
@@ -41,6 +43,7 @@ extends BaseRenderer
         }
         glCamera.tearDown(gl);
     		gl.glFlush();
+        PerformanceMetrics.timer(PerformanceMetrics.LVV_FRAME_RENDER).recordSince(startTime);
     }
 
     @Override
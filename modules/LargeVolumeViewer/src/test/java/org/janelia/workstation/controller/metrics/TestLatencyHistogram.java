@@ -0,0 +1,126 @@
+package org.janelia.workstation.controller.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+	// Bucket width relative to its lower bound, which bounds the error of a reported percentile
+	private static final double MAX_RELATIVE_ERROR = 1.0 / 16;
+
+	@Test
+	public void testSmallValuesHaveTheirOwnBucket() {
+		for (int value = 0; value < 32; value++) {
+			assertEquals(value, LatencyHistogram.bucketIndex(value));
+			assertEquals(value, LatencyHistogram.bucketLowerBound(value));
+			assertEquals(value, LatencyHistogram.bucketUpperBound(value));
+		}
+	}
+
+	@Test
+	public void testBucketsAreContiguous() {
+		int lastIndex = LatencyHistogram.bucketIndex(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(lastIndex));
+		for (int i = 0; i < lastIndex; i++) {
+			assertEquals(LatencyHistogram.bucketUpperBound(i) + 1, LatencyHistogram.bucketLowerBound(i + 1));
+			assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.bucketLowerBound(i)));
+			assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(i)));
+		}
+	}
+
+	@Test
+	public void testValuesFallInTheirBucket() {
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+			int index = LatencyHistogram.bucketIndex(value);
+			assertTrue(LatencyHistogram.bucketLowerBound(index) <= value);
+			assertTrue(LatencyHistogram.bucketUpperBound(index) >= value);
+			if (value >= 32) {
+				long width = LatencyHistogram.bucketUpperBound(index) - LatencyHistogram.bucketLowerBound(index) + 1;
+				assertTrue(width <= LatencyHistogram.bucketLowerBound(index) * MAX_RELATIVE_ERROR);
+			}
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		// 1 to 1000 ms, in shuffled order
+		List<Integer> values = new ArrayList<>();
+		for (int millis = 1; millis <= 1000; millis++) {
+			values.add(millis);
+		}
+		Collections.shuffle(values, new Random(2));
+		for (int millis : values) {
+			histogram.recordMillis(millis);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getMeanMillis(), 1e-9);
+		assertEquals(1000, histogram.getMaxMillis(), 1e-9);
+		assertPercentile(500, histogram.getPercentileMillis(0.5));
+		assertPercentile(950, histogram.getPercentileMillis(0.95));
+		assertPercentile(990, histogram.getPercentileMillis(0.99));
+		assertPercentile(1, histogram.getPercentileMillis(0));
+		// Never more than the largest value
+		assertTrue(histogram.getPercentileMillis(1) <= 1000);
+		assertPercentile(1000, histogram.getPercentileMillis(1));
+	}
+
+	@Test
+	public void testSingleValue() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		histogram.recordNanos(12_345_678);
+		assertEquals(12.345, histogram.getMaxMillis(), 1e-9);
+		assertPercentile(12.345, histogram.getPercentileMillis(0.5));
+		assertTrue(histogram.getPercentileMillis(0.99) <= histogram.getMaxMillis());
+	}
+
+	@Test
+	public void testEmptyAndReset() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		assertEquals(0, histogram.getPercentileMillis(0.5), 0);
+		assertEquals(0, histogram.getMeanMillis(), 0);
+		histogram.recordMillis(5);
+		histogram.recordNanos(-1);
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.getPercentileMillis(0.5), 0);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentileMillis(0.95), 0);
+		assertEquals(0, histogram.getMaxMillis(), 0);
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		int numThreads = 4;
+		int perThread = 50000;
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < numThreads; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < perThread; i++) {
+					histogram.recordMillis(10);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(numThreads * perThread, histogram.getCount());
+		assertEquals(10, histogram.getMeanMillis(), 1e-9);
+		assertPercentile(10, histogram.getPercentileMillis(0.5));
+	}
+
+	private static void assertPercentile(double expectedMillis, double actualMillis) {
+		assertEquals(expectedMillis, actualMillis, expectedMillis * MAX_RELATIVE_ERROR);
+	}
+}
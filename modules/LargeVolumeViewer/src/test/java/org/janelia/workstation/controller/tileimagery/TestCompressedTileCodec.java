@@ -0,0 +1,124 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestCompressedTileCodec {
+
+	@Test
+	public void testRoundTrip16Bit() throws IOException {
+		// Smooth 16 bit samples, little endian, like a textured tile
+		byte[] raw = new byte[512 * 512 * 2];
+		Random random = new Random(1);
+		for (int i = 0; i < raw.length; i += 2) {
+			int value = 1000 + (i / 2) % 512 + random.nextInt(16);
+			raw[i] = (byte) value;
+			raw[i + 1] = (byte) (value >> 8);
+		}
+		byte[] stored = CompressedTileCodec.compress(raw);
+		assertTrue(stored.length < raw.length);
+		assertArrayEquals(raw, CompressedTileCodec.decompress(stored));
+	}
+
+	@Test
+	public void testRoundTrip8Bit() throws IOException {
+		// An odd length can't be shuffled as 16 bit samples
+		byte[] raw = new byte[333 * 333];
+		new Random(2).nextBytes(raw);
+		assertArrayEquals(raw, CompressedTileCodec.decompress(CompressedTileCodec.compress(raw)));
+
+		// Random data doesn't compress, but must still round trip
+		raw = new byte[1000];
+		new Random(3).nextBytes(raw);
+		assertArrayEquals(raw, CompressedTileCodec.decompress(CompressedTileCodec.compress(raw)));
+	}
+
+	@Test
+	public void testRoundTripSmallTiles() throws IOException {
+		for (int length = 0; length < 20; length++) {
+			byte[] raw = new byte[length];
+			new Random(length).nextBytes(raw);
+			assertArrayEquals(raw, CompressedTileCodec.decompress(CompressedTileCodec.compress(raw)));
+		}
+	}
+
+	@Test
+	public void testTruncatedHeader() {
+		byte[] stored = CompressedTileCodec.compress(new byte[100]);
+		assertInvalid(Arrays.copyOf(stored, 5));
+		assertInvalid(new byte[0]);
+	}
+
+	@Test
+	public void testTruncatedBlock() {
+		byte[] raw = new byte[10000];
+		new Random(4).nextBytes(raw);
+		byte[] stored = CompressedTileCodec.compress(raw);
+		assertInvalid(Arrays.copyOf(stored, stored.length / 2));
+		assertInvalid(Arrays.copyOf(stored, 10));
+	}
+
+	@Test
+	public void testCorruptHeader() {
+		byte[] raw = new byte[1000];
+		new Random(5).nextBytes(raw);
+		byte[] stored = CompressedTileCodec.compress(raw);
+
+		// Not a compressed tile at all, e.g. an uncompressed tile from an older cache
+		assertInvalid(raw);
+
+		byte[] badLength = stored.clone();
+		badLength[4] = (byte) 0x7f;
+		assertInvalid(badLength);
+
+		byte[] negativeLength = stored.clone();
+		negativeLength[4] = (byte) 0xff;
+		assertInvalid(negativeLength);
+
+		byte[] badElementSize = stored.clone();
+		badElementSize[8] = 0;
+		assertInvalid(badElementSize);
+
+		byte[] mismatchedElementSize = stored.clone();
+		mismatchedElementSize[8] = 3;
+		assertInvalid(mismatchedElementSize);
+	}
+
+	@Test
+	public void testCorruptBlock() {
+		byte[] raw = new byte[10000];
+		for (int i = 0; i < raw.length; i++) {
+			raw[i] = (byte) (i % 7);
+		}
+		byte[] stored = CompressedTileCodec.compress(raw);
+		// Garbage in place of the block is either rejected, or decoded to a tile of the recorded length
+		Random random = new Random(6);
+		for (int i = 0; i < 100; i++) {
+			byte[] corrupt = stored.clone();
+			for (int j = 9; j < corrupt.length; j++) {
+				corrupt[j] = (byte) random.nextInt();
+			}
+			try {
+				assertEquals(raw.length, CompressedTileCodec.decompress(corrupt).length);
+			}
+			catch (IOException e) {
+				// Expected
+			}
+		}
+	}
+
+	private static void assertInvalid(byte[] stored) {
+		try {
+			CompressedTileCodec.decompress(stored);
+			fail("Expected an invalid tile");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+}
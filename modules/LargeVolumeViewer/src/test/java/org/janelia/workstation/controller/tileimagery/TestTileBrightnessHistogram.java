@@ -0,0 +1,92 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestTileBrightnessHistogram {
+
+	private static final int WIDTH = 24; // padded
+	private static final int USED_WIDTH = 21;
+	private static final int HEIGHT = 13;
+
+	@Test
+	public void testChannelsAreDeinterleaved() {
+		// Channel 0 is 10..20, channel 1 is 100..200, padding is 255
+		byte[] pixels = new byte[WIDTH * HEIGHT * 2];
+		Random random = new Random(1);
+		for (int y = 0; y < HEIGHT; ++y) {
+			for (int x = 0; x < WIDTH; ++x) {
+				int i = 2 * (y * WIDTH + x);
+				boolean used = x < USED_WIDTH;
+				pixels[i] = (byte) (used ? 10 + random.nextInt(11) : 255);
+				pixels[i + 1] = (byte) (used ? 100 + random.nextInt(101) : 255);
+			}
+		}
+		pixels[0] = 0; // no data
+		TileBrightnessHistogram histogram = TileBrightnessHistogram.compute(texture(pixels, 8, 2));
+		assertEquals(2, histogram.getChannelCount());
+		ImageBrightnessStats stats = histogram.toImageBrightnessStats();
+		assertTrue(stats.get(0).getMin() >= 10);
+		assertTrue(stats.get(0).getMax() <= 20);
+		assertTrue(stats.get(1).getMin() >= 100);
+		assertTrue(stats.get(1).getMax() <= 200);
+		assertEquals(15, stats.get(0).estimateQuantile(0.5), 2);
+		assertEquals(150, stats.get(1).estimateQuantile(0.5), 10);
+	}
+
+	@Test
+	public void testIncrementalTotalsMatchFreshTotals() {
+		TileBrightnessHistogram[] tiles = new TileBrightnessHistogram[4];
+		for (int t = 0; t < tiles.length; ++t) {
+			tiles[t] = TileBrightnessHistogram.compute(random16BitTexture(t, 400 * t));
+		}
+		DisplayedBrightnessHistogram incremental = new DisplayedBrightnessHistogram();
+		incremental.update(Arrays.asList(tiles[0], tiles[1], tiles[2]));
+		incremental.update(Arrays.asList(tiles[1], tiles[2], tiles[3]));
+		incremental.update(Arrays.asList(tiles[3], tiles[1]));
+
+		DisplayedBrightnessHistogram fresh = new DisplayedBrightnessHistogram();
+		fresh.update(Arrays.asList(tiles[1], tiles[3]));
+
+		ImageBrightnessStats expected = fresh.getStats();
+		ImageBrightnessStats actual = incremental.getStats();
+		assertEquals(expected.size(), actual.size());
+		for (int c = 0; c < expected.size(); ++c) {
+			assertEquals(expected.get(c).getMin(), actual.get(c).getMin());
+			assertEquals(expected.get(c).getMax(), actual.get(c).getMax());
+			for (double q : new double[] {0.05, 0.5, 0.95}) {
+				assertEquals(expected.get(c).estimateQuantile(q), actual.get(c).estimateQuantile(q));
+			}
+		}
+
+		incremental.update(Collections.<TileBrightnessHistogram>emptyList());
+		assertNull(incremental.getStats());
+	}
+
+	private static TextureData2d random16BitTexture(long seed, int offset) {
+		Random random = new Random(seed);
+		ByteBuffer buffer = ByteBuffer.allocate(WIDTH * HEIGHT * 2 * 2).order(ByteOrder.nativeOrder());
+		for (int i = 0; i < WIDTH * HEIGHT * 2; ++i) {
+			buffer.putShort((short) (offset + random.nextInt(4096)));
+		}
+		return texture(buffer.array(), 16, 2);
+	}
+
+	private static TextureData2d texture(byte[] pixels, int bitDepth, int channelCount) {
+		TextureData2d data = new TextureData2d();
+		data.setWidth(WIDTH);
+		data.setUsedWidth(USED_WIDTH);
+		data.setHeight(HEIGHT);
+		data.setBitDepth(bitDepth);
+		data.setChannelCount(channelCount);
+		data.setPixels(ByteBuffer.wrap(pixels).order(ByteOrder.nativeOrder()));
+		return data;
+	}
+}
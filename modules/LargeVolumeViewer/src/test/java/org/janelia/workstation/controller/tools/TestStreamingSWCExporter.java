@@ -0,0 +1,253 @@
+package org.janelia.workstation.controller.tools;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.model.domain.tiledMicroscope.TmStructuredTextAnnotation;
+import org.janelia.workstation.core.util.Progress;
+import org.janelia.workstation.swc.ImportExportSWCExchanger;
+import org.janelia.workstation.swc.SWCData;
+import org.janelia.workstation.swc.SWCDataConverter;
+import org.janelia.workstation.swc.SWCNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestStreamingSWCExporter {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@Test
+	public void testDirectoryExport() throws Exception {
+		List<TmNeuronMetadata> neurons = createNeurons(10);
+		neurons.add(createNeuron(100L, "empty", 0));
+		File swcFile = new File(tempFolder.getRoot(), "export.swc");
+
+		StreamingSWCExporter exporter = new StreamingSWCExporter(new FakeConverter(0), 1, n -> Collections.singletonList("NAME " + n.getName()), 3);
+		int written = exporter.export(swcFile, StreamingSWCExporter.Mode.DIRECTORY, neurons, new TestProgress(-1));
+
+		assertEquals(10, written);
+		File dir = new File(tempFolder.getRoot(), "export");
+		assertTrue(dir.isDirectory());
+		Set<String> names = new HashSet<>();
+		for (File file : dir.listFiles()) {
+			names.add(file.getName());
+			SWCData swcData = SWCData.read(file);
+			assertEquals(1, swcData.getNodeList().size());
+			assertNotNull(swcData.findHeaderLine("NAME"));
+		}
+		// Duplicate names are disambiguated
+		assertEquals(10, names.size());
+		assertTrue(names.contains("neuron 1.swc"));
+		assertTrue(names.contains("neuron 1_2.swc"));
+	}
+
+	@Test
+	public void testArchiveExport() throws Exception {
+		List<TmNeuronMetadata> neurons = createNeurons(25);
+		File swcFile = new File(tempFolder.getRoot(), "export.swc");
+
+		StreamingSWCExporter exporter = new StreamingSWCExporter(new FakeConverter(0), 1, n -> Collections.emptyList(), 4);
+		int written = exporter.export(swcFile, StreamingSWCExporter.Mode.ARCHIVE, neurons, new TestProgress(-1));
+
+		assertEquals(25, written);
+		assertEquals(25, readArchive(new File(tempFolder.getRoot(), "export.zip")));
+	}
+
+	@Test
+	public void testArchiveExportWithNotes() throws Exception {
+		List<TmNeuronMetadata> neurons = createNeurons(4);
+		TmNeuronMetadata annotated = neurons.get(2);
+		annotated.setName("annotated");
+		annotated.getStructuredTextAnnotationMap().put(2001L, new TmStructuredTextAnnotation(5L, 2001L, "{\"note\":\"branch\"}"));
+		File swcFile = new File(tempFolder.getRoot(), "export.swc");
+
+		FakeConverter converter = new FakeConverter(0);
+		converter.setSWCExchanger(new ImportExportSWCExchanger() {
+			@Override
+			public double[] getInternal(double[] external) {
+				return external;
+			}
+
+			@Override
+			public double[] getExternal(double[] internal) {
+				return internal;
+			}
+		});
+		StreamingSWCExporter exporter = new StreamingSWCExporter(converter, 1, n -> Collections.emptyList(), 2);
+		exporter.setExportNotes(42L, "tester");
+		int written = exporter.export(swcFile, StreamingSWCExporter.Mode.ARCHIVE, neurons, new TestProgress(-1));
+
+		assertEquals(4, written);
+		File zip = new File(tempFolder.getRoot(), "export.zip");
+		// Only the neuron with notes gets a notes entry, named like its swc entry
+		assertEquals(5, readArchive(zip));
+		try (ZipFile zipFile = new ZipFile(zip)) {
+			assertNotNull(zipFile.getEntry("annotated.swc"));
+			ZipEntry entry = zipFile.getEntry("annotated.json");
+			assertNotNull(entry);
+			JsonNode root;
+			try (InputStream in = zipFile.getInputStream(entry)) {
+				root = new ObjectMapper().readTree(in);
+			}
+			assertEquals(42L, root.get("workspaceID").asLong());
+			assertEquals("tester", root.get("username").asText());
+			JsonNode neuronNode = root.get("neurons").get(0);
+			assertEquals(2L, neuronNode.get("neuronID").asLong());
+			assertEquals("branch", neuronNode.get("notes").get(0).get(3).asText());
+		}
+	}
+
+	@Test
+	public void testCancelledArchiveIsComplete() throws Exception {
+		List<TmNeuronMetadata> neurons = createNeurons(200);
+		File swcFile = new File(tempFolder.getRoot(), "export.swc");
+
+		// Slow conversions, so that plenty of neurons are still in flight when the export is cancelled
+		FakeConverter converter = new FakeConverter(20);
+		StreamingSWCExporter exporter = new StreamingSWCExporter(converter, 1, n -> Collections.emptyList(), 4);
+		int written = exporter.export(swcFile, StreamingSWCExporter.Mode.ARCHIVE, neurons, new TestProgress(5));
+
+		// No worker is still running once the export has returned
+		assertEquals(0, converter.active.get());
+		assertTrue(written >= 5);
+		assertTrue(written < neurons.size());
+		// Every entry which made it into the archive is complete, and the archive itself is readable
+		int entries = readArchive(new File(tempFolder.getRoot(), "export.zip"));
+		assertTrue(entries >= written);
+		assertTrue(entries < neurons.size());
+	}
+
+	/**
+	 * Reads every entry of the archive, and returns the number of entries.
+	 */
+	private static int readArchive(File file) throws Exception {
+		int count = 0;
+		try (ZipFile zipFile = new ZipFile(file)) {
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				byte[] buffer = new byte[8192];
+				int total = 0;
+				try (InputStream in = zipFile.getInputStream(entry)) {
+					int n;
+					while ((n = in.read(buffer)) > 0) {
+						total += n;
+					}
+				}
+				assertTrue(total > 0);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static List<TmNeuronMetadata> createNeurons(int count) {
+		List<TmNeuronMetadata> neurons = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			// Every name is used twice
+			neurons.add(createNeuron((long) i, "neuron " + (i / 2), 3));
+		}
+		return neurons;
+	}
+
+	private static TmNeuronMetadata createNeuron(Long id, String name, int numAnnotations) {
+		TmNeuronMetadata neuron = new TmNeuronMetadata();
+		neuron.setId(id);
+		neuron.setName(name);
+		for (long a = 0; a < numAnnotations; a++) {
+			TmGeoAnnotation annotation = new TmGeoAnnotation();
+			annotation.setId(id * 1000 + a);
+			annotation.setNeuronId(id);
+			annotation.setX((double) a);
+			annotation.setY((double) a);
+			annotation.setZ((double) a);
+			neuron.getGeoAnnotationMap().put(annotation.getId(), annotation);
+		}
+		return neuron;
+	}
+
+	/**
+	 * Converts each neuron to a single node, optionally slowly.
+	 */
+	private static class FakeConverter extends SWCDataConverter {
+
+		private final long delayMs;
+		private final AtomicInteger active = new AtomicInteger();
+
+		FakeConverter(long delayMs) {
+			this.delayMs = delayMs;
+		}
+
+		@Override
+		public double[] neuronCenterOfMass(Collection<TmNeuronMetadata> neuronList) {
+			return new double[] {0, 0, 0};
+		}
+
+		@Override
+		public SWCData fromTmNeuron(TmNeuronMetadata neuron, double[] externalizedCenter, int downsampleModulo) {
+			active.incrementAndGet();
+			try {
+				if (delayMs > 0) {
+					// Not interruptible, like a conversion which is under way
+					long end = System.currentTimeMillis() + delayMs;
+					while (System.currentTimeMillis() < end) {
+						Thread.yield();
+					}
+				}
+				List<String> headers = new ArrayList<>();
+				headers.add("# OFFSET 0 0 0");
+				List<SWCNode> nodes = new ArrayList<>();
+				nodes.add(new SWCNode(1, SWCNode.SegmentType.soma, 1, 2, 3, 1, -1));
+				return new SWCData(nodes, headers);
+			}
+			finally {
+				active.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Cancels once the given number of neurons have completed, or never if negative.
+	 */
+	private static class TestProgress implements Progress {
+
+		private final int cancelAfter;
+		private volatile long current;
+
+		TestProgress(int cancelAfter) {
+			this.cancelAfter = cancelAfter;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelAfter >= 0 && current >= cancelAfter;
+		}
+
+		@Override
+		public void setProgress(long curr, long total) {
+			this.current = curr;
+		}
+
+		@Override
+		public void setStatus(String status) {
+		}
+	}
+}
@@ -167,6 +167,13 @@ public abstract class AbstractVolumeBrick implements VolumeBrickI
 		// or backward.
         DirectionalAxis directionalAxis = DirectionalAxis.findAxis( volumeModel.getCamera3d().getRotation() );
 
+        // Send any slices which have been loaded since the last frame.
+        for ( TextureMediator textureMediator: textureMediators ) {
+            if (! textureMediator.uploadPendingChunks(gl) ) {
+                return;
+            }
+        }
+
         if (! setupTextures(gl)) {
             return;
         }
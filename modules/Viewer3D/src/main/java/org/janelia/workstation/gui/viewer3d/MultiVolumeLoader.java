@@ -0,0 +1,106 @@
+package org.janelia.workstation.gui.viewer3d;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.janelia.workstation.gui.viewer3d.loader.VolumeLoaderI;
+import org.janelia.workstation.gui.viewer3d.resolver.FileResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the several volumes which are shown together, such as the signal, mask and reference of a neuron
+ * separation, concurrently rather than one after another.
+ *
+ * Each file is resolved and decoded by its own VolumeLoader, on its own thread, so that a file being retried
+ * does not hold up the others.  As soon as a volume is decoded, the listener is given its loader, to populate a
+ * volume acceptor.  Where the volume can be divided into slabs of slices, its texture data is then filled in a
+ * slab at a time, and the listener is told after each, so that the viewer can upload and show the slabs which
+ * are ready while the rest are still being filled.
+ */
+public class MultiVolumeLoader {
+
+    private static final int NUM_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("MultiVolumeLoader-%d")
+                    .setDaemon(true).build());
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiVolumeLoader.class);
+
+    private final FileResolver resolver;
+    private boolean sixteenBitSignal = false;
+
+    public MultiVolumeLoader(FileResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * @see VolumeLoader#setSixteenBitSignal(boolean)
+     */
+    public void setSixteenBitSignal(boolean sixteenBitSignal) {
+        this.sixteenBitSignal = sixteenBitSignal;
+    }
+
+    /**
+     * Start loading all the files.  The listener is called on the loading threads.
+     *
+     * @param fileNames un-cached names of the files to load.
+     * @param listener told of the progress of each file.
+     * @return one future per file, in the order given, each telling whether that file was loaded.
+     */
+    public List<Future<Boolean>> loadVolumes(List<String> fileNames, final Listener listener) {
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (final String fileName : fileNames) {
+            futures.add(executor.submit(() -> loadVolume(fileName, listener)));
+        }
+        return futures;
+    }
+
+    private boolean loadVolume(final String fileName, final Listener listener) {
+        long startTime = System.currentTimeMillis();
+        VolumeLoader volumeLoader = new VolumeLoader(resolver);
+        volumeLoader.setSixteenBitSignal(sixteenBitSignal);
+        volumeLoader.setPiecewise(true);
+        try {
+            if (!volumeLoader.loadVolume(fileName)) {
+                listener.volumeFailed(fileName);
+                return false;
+            }
+            listener.volumeAvailable(fileName, volumeLoader);
+            volumeLoader.fillPiecewiseData(() -> listener.volumeUpdated(fileName));
+            logger.info("Loaded {} in {} ms", fileName, System.currentTimeMillis() - startTime);
+            listener.volumeLoaded(fileName);
+            return true;
+        }
+        catch (RuntimeException e) {
+            logger.error("Error loading {}", fileName, e);
+            listener.volumeFailed(fileName);
+            return false;
+        }
+    }
+
+    /**
+     * Implement this to be told as each volume loads.  All methods are called on the thread loading the volume.
+     */
+    public interface Listener {
+        /**
+         * The volume has been decoded.  Its texture data may still be filling in.
+         *
+         * @param loader for populating the volume acceptor which is to show this volume.
+         */
+        void volumeAvailable(String fileName, VolumeLoaderI loader);
+
+        /** Another slab of slices of the volume's texture data is ready to be uploaded. */
+        void volumeUpdated(String fileName);
+
+        /** The volume's texture data is complete. */
+        void volumeLoaded(String fileName);
+
+        void volumeFailed(String fileName);
+    }
+}
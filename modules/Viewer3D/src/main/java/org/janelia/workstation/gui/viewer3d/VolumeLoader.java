@@ -28,7 +28,10 @@ public class VolumeLoader implements VolumeLoaderI {
 
     private FileResolver resolver;
     private boolean isLuminance = false;
+    private boolean sixteenBitSignal = false;
+    private boolean piecewise = false;
     private TextureDataI textureData;
+    private LociTextureBuilder pendingTextureBuilder;
 
     private Logger logger;
 
@@ -37,6 +40,34 @@ public class VolumeLoader implements VolumeLoaderI {
         this.resolver = resolver;
     }
 
+    /**
+     * Keep 2-byte signal channels at 16 bits, for viewers which can display
+     * 16-bit RGBA textures. Off by default.
+     */
+    public void setSixteenBitSignal(boolean sixteenBitSignal) {
+        this.sixteenBitSignal = sixteenBitSignal;
+    }
+
+    /**
+     * Leave the texture data of volumes which can be divided into slabs empty when loaded, to be filled in by
+     * fillPiecewiseData after it has been given to the volume acceptor.  Off by default.
+     */
+    public void setPiecewise(boolean piecewise) {
+        this.piecewise = piecewise;
+    }
+
+    /**
+     * Fill in the texture data of the volume last loaded, if it was left empty.
+     *
+     * @param slabListener told each time another slab of slices is ready; may be null.
+     */
+    public void fillPiecewiseData(Runnable slabListener) {
+        if ( pendingTextureBuilder != null ) {
+            pendingTextureBuilder.fillPiecewiseData( slabListener );
+            pendingTextureBuilder = null;
+        }
+    }
+
     public boolean loadVolume(String unCachedFileName)
     {
         logger.info("Start load volume: " + new java.util.Date());
@@ -73,6 +104,7 @@ public class VolumeLoader implements VolumeLoaderI {
                 case V3DSIGNAL: {
                     logger.info("V3DSIGNAL");
                     V3dSignalFileLoader v3dFileLoader = new V3dSignalFileLoader();
+                    v3dFileLoader.setSixteenBitOutput(sixteenBitSignal);
                     fileLoader = v3dFileLoader;
                     textureDataBuilder = new LociTextureBuilder();
                     textureDataBuilder.setVolumeFileLoader(v3dFileLoader);
@@ -144,7 +176,15 @@ public class VolumeLoader implements VolumeLoaderI {
                 }
             }
 
+            if ( textureDataBuilder instanceof LociTextureBuilder ) {
+                ((LociTextureBuilder) textureDataBuilder).setPiecewise( piecewise );
+            }
             textureData = textureDataBuilder.buildTextureData( isLuminance );            
+            pendingTextureBuilder = null;
+            if ( textureDataBuilder instanceof LociTextureBuilder  &&
+                 ((LociTextureBuilder) textureDataBuilder).hasPendingData() ) {
+                pendingTextureBuilder = (LociTextureBuilder) textureDataBuilder;
+            }
             final FileType fileType = getFileType( localFileName, baseName, extension );
             if ( FileType.TIF.equals( fileType)  &&
                  localFileName.contains("tiff_mousebrain") ) {
@@ -1,8 +1,11 @@
 package org.janelia.workstation.gui.viewer3d.loader;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.List;
 import org.janelia.workstation.img_3d_loader.VolumeFileLoaderI;
 import org.janelia.workstation.img_3d_loader.AbstractVolumeFileLoader;
+import org.janelia.workstation.img_3d_loader.V3dSignalFileLoader;
 import org.janelia.workstation.gui.viewer3d.texture.TextureDataBean;
 import org.janelia.workstation.gui.viewer3d.texture.TextureDataI;
 import org.janelia.workstation.gui.viewer3d.volume_builder.PiecewiseVolumeDataBean;
@@ -14,16 +17,44 @@ import org.janelia.workstation.gui.viewer3d.volume_builder.PiecewiseVolumeDataBe
  * Time: 3:33 PM
  *
  * This may be extended for any data builder that needs a loci read method.
+ *
+ * When piecewise, voxel-interleaved volumes are given a texture over an empty PiecewiseVolumeDataBean, which
+ * fillPiecewiseData then fills a slab of slices at a time, so that the texture may be shown while it fills.
  */
 public class LociTextureBuilder extends TextureDataBuilder implements VolumeFileLoaderI {
-    
+
+    private static final int SLICES_PER_SLAB = 32;
+
+    private boolean piecewise = false;
+    private PiecewiseVolumeDataBean pendingVolumeData;
+
+    /**
+     * Set whether textures should be built empty, and filled in by fillPiecewiseData.  Off by default.
+     */
+    public void setPiecewise(boolean piecewise) {
+        this.piecewise = piecewise;
+    }
+
+    /**
+     * @return true if the texture last built still has to be filled in by fillPiecewiseData.
+     */
+    public boolean hasPendingData() {
+        return pendingVolumeData != null;
+    }
+
     @Override
     public TextureDataI createTextureDataBean() {
         AbstractVolumeFileLoader volumeFileLoader = super.getVolumeFileLoader();
         final int[] argbTextureIntArray = volumeFileLoader.getArgbTextureIntArray();
         final byte[] textureByteArray = volumeFileLoader.getTextureByteArray();
         final List<byte[]> textureByteArrays = volumeFileLoader.getTextureByteArrays();
-        if ( argbTextureIntArray != null ) {
+        pendingVolumeData = null;
+        int piecewiseVoxelBytes = getPiecewiseVoxelBytes();
+        if ( piecewiseVoxelBytes > 0 ) {
+            pendingVolumeData = new PiecewiseVolumeDataBean( volumeFileLoader.getSx(), volumeFileLoader.getSy(), volumeFileLoader.getSz(), piecewiseVoxelBytes, SLICES_PER_SLAB);
+            return new TextureDataBean( pendingVolumeData, volumeFileLoader.getSx(), volumeFileLoader.getSy(), volumeFileLoader.getSz() );
+        }
+        else if ( argbTextureIntArray != null ) {
             return new TextureDataBean(argbTextureIntArray, volumeFileLoader.getSx(), volumeFileLoader.getSy(), volumeFileLoader.getSz() );
         }
         else if ( textureByteArray != null ) {
@@ -31,10 +62,9 @@ public class LociTextureBuilder extends TextureDataBuilder implements VolumeFile
         }
         else if ( textureByteArrays != null ) {
             final int pixelByteCount = 4;
-            final int slicesPerSlab = 32;
             // Build up a Texture Data.
             //  Expect 4 bytes (ARGB) if a huge data file is presented.
-            PiecewiseVolumeDataBean volumeDataBean = new PiecewiseVolumeDataBean( volumeFileLoader.getSx(), volumeFileLoader.getSy(), volumeFileLoader.getSz(), pixelByteCount, slicesPerSlab);
+            PiecewiseVolumeDataBean volumeDataBean = new PiecewiseVolumeDataBean( volumeFileLoader.getSx(), volumeFileLoader.getSy(), volumeFileLoader.getSz(), pixelByteCount, SLICES_PER_SLAB);
             for (byte[] nextTextureByteArray: textureByteArrays) {
                 volumeDataBean.addData(nextTextureByteArray);                
             }
@@ -49,10 +79,71 @@ public class LociTextureBuilder extends TextureDataBuilder implements VolumeFile
         }
     }
 
+    /**
+     * Copy the loaded volume into the texture built by createTextureDataBean, one slab of slices at a time.
+     * Does nothing unless hasPendingData().
+     *
+     * @param slabListener told after each slab is copied; may be null.
+     */
+    public void fillPiecewiseData(Runnable slabListener) {
+        if ( pendingVolumeData == null ) {
+            return;
+        }
+        AbstractVolumeFileLoader volumeFileLoader = super.getVolumeFileLoader();
+        int sliceVoxels = volumeFileLoader.getSx() * volumeFileLoader.getSy();
+        int sz = volumeFileLoader.getSz();
+        int[] argbTextureIntArray = volumeFileLoader.getArgbTextureIntArray();
+        byte[] textureByteArray = volumeFileLoader.getTextureByteArray();
+        ByteBuffer slabBuffer = null;
+        for ( int z = 0; z < sz; z += SLICES_PER_SLAB ) {
+            int slabVoxels = Math.min( SLICES_PER_SLAB, sz - z ) * sliceVoxels;
+            if ( argbTextureIntArray != null ) {
+                // Same byte order as TextureDataBean uses for whole ARGB volumes.
+                if ( slabBuffer == null ) {
+                    slabBuffer = ByteBuffer.allocate( SLICES_PER_SLAB * sliceVoxels * 4 ).order( ByteOrder.LITTLE_ENDIAN );
+                }
+                slabBuffer.clear();
+                slabBuffer.asIntBuffer().put( argbTextureIntArray, z * sliceVoxels, slabVoxels );
+                pendingVolumeData.addData( slabBuffer.array(), 0, slabVoxels * 4 );
+            }
+            else {
+                int voxelBytes = textureByteArray.length / (sliceVoxels * sz);
+                pendingVolumeData.addData( textureByteArray, z * sliceVoxels * voxelBytes, slabVoxels * voxelBytes );
+            }
+            if ( slabListener != null ) {
+                slabListener.run();
+            }
+        }
+        pendingVolumeData = null;
+    }
+
     @Override
     public void loadVolumeFile(String fileName) throws Exception {
         AbstractVolumeFileLoader volumeFileLoader = super.getVolumeFileLoader();
         volumeFileLoader.loadVolumeFile(fileName);
     }
 
+    /**
+     * Bytes per voxel of a volume which can be filled in piecewise, or zero if the texture should be built whole.
+     * Only volumes whose channels are interleaved per voxel can be divided into slabs of slices.  Four-channel
+     * ARGB volumes are built whole, because buildTextureData recomputes their alpha after the texture is made.
+     */
+    private int getPiecewiseVoxelBytes() {
+        AbstractVolumeFileLoader volumeFileLoader = super.getVolumeFileLoader();
+        if ( ! piecewise ) {
+            return 0;
+        }
+        long voxels = (long)volumeFileLoader.getSx() * volumeFileLoader.getSy() * volumeFileLoader.getSz();
+        if ( volumeFileLoader.getArgbTextureIntArray() != null ) {
+            return volumeFileLoader.getChannelCount() == 4 ? 0 : 4;
+        }
+        byte[] textureByteArray = volumeFileLoader.getTextureByteArray();
+        if ( textureByteArray == null  ||  voxels == 0  ||  textureByteArray.length % voxels != 0 ) {
+            return 0;
+        }
+        boolean interleaved = volumeFileLoader.getChannelCount() == 1
+                || ( volumeFileLoader instanceof V3dSignalFileLoader  &&  ((V3dSignalFileLoader) volumeFileLoader).isSixteenBitTexture() );
+        return interleaved ? (int)(textureByteArray.length / voxels) : 0;
+    }
+
 }
@@ -1,6 +1,7 @@
 package org.janelia.workstation.gui.viewer3d.loader;
 
 import org.janelia.workstation.img_3d_loader.V3dMaskFileLoader;
+import org.janelia.workstation.img_3d_loader.V3dSignalFileLoader;
 import org.janelia.workstation.img_3d_loader.AbstractVolumeFileLoader;
 import org.janelia.workstation.gui.viewer3d.VolumeDataAcceptor;
 import org.janelia.workstation.gui.viewer3d.texture.TextureDataI;
@@ -59,7 +60,15 @@ public abstract class TextureDataBuilder {
         textureData.setFilename(volumeFileLoader.getUnCachedFileName());
         textureData.setChannelCount(volumeFileLoader.getChannelCount());
 
-        if (! isLuminance  &&  (volumeFileLoader.getChannelCount() == 4)  &&  volumeFileLoader.getArgbTextureIntArray() != null ) {
+        if ( volumeFileLoader instanceof V3dSignalFileLoader  &&
+             ((V3dSignalFileLoader) volumeFileLoader).isSixteenBitTexture() ) {
+            // Signal channels padded out to four 16-bit components.
+            textureData.setChannelCount( 4 );
+            textureData.setExplicitVoxelComponentOrder( GL2.GL_BGRA );
+            textureData.setExplicitInternalFormat( GL2.GL_RGBA16 );
+            textureData.setExplicitVoxelComponentType( GL2.GL_UNSIGNED_SHORT );
+        }
+        else if (! isLuminance  &&  (volumeFileLoader.getChannelCount() == 4)  &&  volumeFileLoader.getArgbTextureIntArray() != null ) {
             setAlphaToSaturateColors( colorSpace );
 
             textureData.setExplicitVoxelComponentOrder( GL2.GL_RGBA );
@@ -270,10 +270,42 @@ public class MeshDrawActor implements GLActor {
         if (OpenGLUtils.reportError(gl, "Display of mesh-draw-actor upon entry"))
             return;
 
-		if (configurator.isUseIdAttribute()) {
+		boolean picking = configurator.isUseIdAttribute();
+		if (picking) {
 			configurator.getPicker().prePick(glDrawable);
 		}
+        try {
+            if (! drawMesh(gl, bufferUploader))
+                return;
+
+            if (picking) {
+                configurator.getPicker().postPick(glDrawable);
+            }
+        }
+        finally {
+            // Also restores the framebuffer, if drawing was abandoned.
+            if (picking) {
+                configurator.getPicker().endPick(glDrawable);
+            }
+        }
+        
+        shader.unload(gl.getGL2());
+
+        if (OpenGLUtils.reportError(gl, "mesh-draw-actor, end of display."))
+            return;
+        gl.glDisable( GL2GL3.GL_DEPTH_TEST );
+        gl.glDisable( GL2GL3.GL_LINE_SMOOTH );
+		gl.glBindBuffer( GL2GL3.GL_ELEMENT_ARRAY_BUFFER, 0 );
+        gl.glEnableVertexAttribArray(0);
 
+    }
+
+    /**
+     * Draw the mesh to whichever framebuffer is bound.
+     *
+     * @return false if an error was reported, and drawing abandoned.
+     */
+    private boolean drawMesh(GL2GL3 gl, BufferUploader bufferUploader) {
         gl.glEnable(GL2GL3.GL_DEPTH_TEST);
         gl.glDepthFunc(GL2GL3.GL_LESS);
 
@@ -284,14 +316,14 @@ public class MeshDrawActor implements GLActor {
         gl.glHint(GL2GL3.GL_LINE_SMOOTH_HINT, GL2GL3.GL_NICEST);   // May not be in v2
 
 		if (OpenGLUtils.reportError( gl, "Display of mesh-draw-actor render characteristics" ))
-            return;
+            return false;
 
         // Draw the little triangles.
         tempBuffer.rewind();
         shader.load(gl.getGL2());
         gl.glBindBuffer(GL2GL3.GL_ARRAY_BUFFER, bufferUploader.getVtxAttribBufferHandle());
         if (OpenGLUtils.reportError( gl, "Display of mesh-draw-actor 1" ))
-            return;
+            return false;
         
         if (matrixManager != null) {
             double far = configurator.getContext().getCameraFocusDistance() * 4.0;
@@ -306,15 +338,15 @@ public class MeshDrawActor implements GLActor {
         mdShader.setUniformMatrix4v(gl, MODEL_VIEW_UNIFORM_NAME, false, context.getModelViewMatrix());
         mdShader.setUniformMatrix4v(gl, NORMAL_MATRIX_UNIFORM_NAME, false, vms.computeNormalMatrix(context.getModelViewMatrix()));
         if (OpenGLUtils.reportError(gl, "Pushing matrix uniforms."))
-            return;
+            return false;
         shader.setColorByAttribute(gl, configurator.getColoringStrategy().equals(ColoringStrategy.ATTRIBUTE));
         if (OpenGLUtils.reportError(gl, "Telling shader to use attribute coloring.")) {
-            return;
+            return false;
         }
         
         shader.setIdsAvailableAttribute(gl, configurator.isUseIdAttribute());
         if (OpenGLUtils.reportError(gl, "Telling shader to use id attributes.")) {
-            return;
+            return false;
         }
 
         // TODO : make it possible to establish an arbitrary group of vertex attributes programmatically.
@@ -334,13 +366,13 @@ public class MeshDrawActor implements GLActor {
         gl.glEnableVertexAttribArray(vertexAttributeLoc);
         gl.glVertexAttribPointer(vertexAttributeLoc, 3, GL2GL3.GL_FLOAT, false, stride, 0);
         if (OpenGLUtils.reportError( gl, "Display of mesh-draw-actor 2" ))
-            return;
+            return false;
 
         // 3 floats per normal. Stride is size of all data combined, offset to first is 1 vertex worth.
         gl.glEnableVertexAttribArray(normalAttributeLoc);
         gl.glVertexAttribPointer(normalAttributeLoc, 3, GL2GL3.GL_FLOAT, false, stride, storagePerVertex);
         if (OpenGLUtils.reportError( gl, "Display of mesh-draw-actor 3" ))
-            return;
+            return false;
 
         if (configurator.getColoringStrategy() == ColoringStrategy.ATTRIBUTE) {
             logger.debug("Also doing color attribute.");
@@ -348,7 +380,7 @@ public class MeshDrawActor implements GLActor {
             gl.glEnableVertexAttribArray(colorAttributeLoc);
             gl.glVertexAttribPointer(colorAttributeLoc, 3, GL2GL3.GL_FLOAT, false, stride, storagePerVertexNormal);
             if (OpenGLUtils.reportError(gl, "Display of mesh-draw-actor 3-opt"))
-                return;
+                return false;
 
         }
         if (configurator.isUseIdAttribute()) {
@@ -361,32 +393,19 @@ public class MeshDrawActor implements GLActor {
             gl.glEnableVertexAttribArray(idAttributeLoc);
             gl.glVertexAttribPointer(idAttributeLoc, 3, GL2GL3.GL_FLOAT, false, stride, storagePerVertexNormalColor);
             if (OpenGLUtils.reportError(gl, "Display of mesh-draw-actor 4-opt")) {
-                return;
+                return false;
             }
             
         }
         gl.glBindBuffer( GL2GL3.GL_ELEMENT_ARRAY_BUFFER, bufferUploader.getInxBufferHandle() );
         if (OpenGLUtils.reportError(gl, "Display of mesh-draw-actor 4."))
-            return;
+            return false;
 
         // One triangle every three indices.  But count corresponds to the number of vertices.
         gl.glDrawElements( GL2GL3.GL_TRIANGLES, bufferUploader.getIndexCount(), GL2GL3.GL_UNSIGNED_INT, 0 );
         if (OpenGLUtils.reportError( gl, "Display of mesh-draw-actor 5" ))
-            return;
-
-        if (configurator.isUseIdAttribute()) {
-            configurator.getPicker().postPick(glDrawable);
-        }
-        
-        shader.unload(gl.getGL2());
-
-        if (OpenGLUtils.reportError(gl, "mesh-draw-actor, end of display."))
-            return;
-        gl.glDisable( GL2GL3.GL_DEPTH_TEST );
-        gl.glDisable( GL2GL3.GL_LINE_SMOOTH );
-		gl.glBindBuffer( GL2GL3.GL_ELEMENT_ARRAY_BUFFER, 0 );
-        gl.glEnableVertexAttribArray(0);
-
+            return false;
+        return true;
     }
 
     @Override
@@ -1,6 +1,7 @@
 package org.janelia.workstation.gui.viewer3d.picking;
 
 //import javax.media.opengl.GL2GL3;
+import java.awt.Component;
 import java.nio.ByteBuffer;
 import javax.media.opengl.GL3;
 import javax.media.opengl.GLAutoDrawable;
@@ -17,6 +18,14 @@ import org.slf4j.LoggerFactory;
  * carrying out the prep, teardown, and actual selection.  Meant
  * to be called from a GLActor.
  * 
+ * Only a small window around the pick point is cleared and drawn, and the
+ * picked pixel is read into a pixel pack buffer, rather than a new array.
+ * That buffer is mapped when the next frame is drawn, by which time the GPU
+ * has normally finished with it, so the pick does not stall the pipeline.
+ * The listener is told of the pick at that point.  Counts of picks, of time
+ * spent waiting on readback, and of host memory allocated for it, are kept
+ * so that the two readback paths can be compared.
+ * 
  * @see http://www.opengl-tutorial.org/intermediate-tutorials/tutorial-14-render-to-texture/
  *
  * @author fosterl
@@ -25,7 +34,11 @@ public class RenderedIdPicker {
 	public static final int BYTES_PER_PIXEL = 4;
 	public static final int BYTE_MULT = 256;
 	public static final int WORD_MULT = 256 * 256;
+	/** Edge of the scissor window drawn around the pick point, in pixels. */
+	public static final int PICK_WINDOW_SIZE = 8;
 	private static final int UNSET_COORD = -1;
+	// Upper bound on waiting for a readback which has not finished by the next frame.
+	private static final long MAX_SYNC_WAIT_NANOS = 100L * 1000L * 1000L;
 
 	private int frameBufId;
     private int colorTextureId_0;
@@ -33,8 +46,28 @@ public class RenderedIdPicker {
     private int depthBufferId;
     private int viewportWidth;
     private int viewportHeight;
+    private int pixelPackBufferId;
     private IdCoderProvider idCoderProvider;
 	private PixelListener listener;
+	private boolean asyncReadback = true;
+
+	// Readback queued by the previous pick, not yet delivered.
+	private boolean pickPending;
+	private long pendingSync;
+
+	// True from prePick until the state it changed is restored by endPick.
+	private boolean pickStateSet;
+	private boolean scissorWasEnabled;
+	private final int[] savedScissorBox = new int[4];
+	private final IntBuffer drawBuffersTargets = IntBuffer.wrap(new int[]{
+		GL3.GL_COLOR_ATTACHMENT0,
+		GL3.GL_COLOR_ATTACHMENT1,
+	});
+
+	private long pickCount;
+	private long stalledPickCount;
+	private long pickWaitNanos;
+	private long pickAllocatedBytes;
 	
 	private int x = UNSET_COORD;
 	private int y = UNSET_COORD;
@@ -46,11 +79,20 @@ public class RenderedIdPicker {
     }
     
     /**
-     * Call this for the one-time-only steps.
+     * Call this for the one-time-only steps.  Nothing is done unless the
+     * drawable has changed size since the last call.
 	 * @see https://www.opengl.org/wiki/Framebuffer_Object_Examples
      * @param glDrawable 
      */
     public void init(GLAutoDrawable glDrawable) {        
+		if (frameBufId != 0
+				&& viewportWidth == glDrawable.getWidth()
+				&& viewportHeight == glDrawable.getHeight()) {
+			return;
+		}
+		if (frameBufId != 0) {
+			deleteFramebuffer((GL3)glDrawable.getGL().getGL2());
+		}
 		this.viewportWidth = glDrawable.getWidth();
 		this.viewportHeight = glDrawable.getHeight();				
 
@@ -150,19 +192,42 @@ public class RenderedIdPicker {
 		this.y = y;
 	}
 
+	/**
+	 * Use the asynchronous pixel pack buffer readback (default), or read
+	 * the picked pixel immediately, as was done originally.
+	 */
+	public void setAsyncReadback(boolean asyncReadback) {
+		this.asyncReadback = asyncReadback;
+	}
+
 	public void prePick(GLAutoDrawable glDrawable) {
+		GL3 gl = (GL3)glDrawable.getGL().getGL2();
+		if (pickPending) {
+			resolvePendingPick(gl);
+		}
 		if (! inPick()) {
 			return;
 		}
         init(glDrawable);
+		// Saved for endPick.
+		scissorWasEnabled = gl.glIsEnabled(GL3.GL_SCISSOR_TEST);
+		gl.glGetIntegerv(GL3.GL_SCISSOR_BOX, savedScissorBox, 0);
+		pickStateSet = true;
 		/*
 		   Bind the FBO, so that all drawing is done to IT, not usual
 		   default framebuffer.
 		*/
-		GL3 gl = (GL3)glDrawable.getGL().getGL2();
         gl.glBindFramebuffer(GL3.GL_FRAMEBUFFER, frameBufId);
 		OpenGLUtils.reportError(gl, "Binding Frame Buffer");
 
+		// Only the pixels around the pick point need to be cleared or drawn.
+		gl.glEnable(GL3.GL_SCISSOR_TEST);
+		gl.glScissor(
+				x - PICK_WINDOW_SIZE / 2, viewportHeight - y - PICK_WINDOW_SIZE / 2,
+				PICK_WINDOW_SIZE, PICK_WINDOW_SIZE
+		);
+		OpenGLUtils.reportError(gl, "Scissor for pick window");
+
 		// A last clear op.
 		//  PROOF: something going into the buffer. gl.glClearColor(1.0f, 0.5f, 0.25f, 1.0f);
 		gl.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
@@ -178,15 +243,8 @@ public class RenderedIdPicker {
         //   shader, with targets.  By default gl_FragData[0] is the
         //   attachment0 color buffer.  Here, we add gl_FragData[1]'s
         //   association with attachment1.
-        int[] drawBuffersTargets = new int[]{
-            GL3.GL_COLOR_ATTACHMENT0,
-            GL3.GL_COLOR_ATTACHMENT1,
-        };
-        IntBuffer exchange = IntBuffer.allocate(2);
-        exchange.rewind();
-        exchange.put(drawBuffersTargets);
-        exchange.rewind();
-        gl.glDrawBuffers(drawBuffersTargets.length, exchange);
+        drawBuffersTargets.rewind();
+        gl.glDrawBuffers(drawBuffersTargets.capacity(), drawBuffersTargets);
 
 	}
 	
@@ -197,21 +255,72 @@ public class RenderedIdPicker {
 		GL3 gl = (GL3)glDrawable.getGL().getGL2();
 		gl.glBindFramebuffer(GL3.GL_READ_FRAMEBUFFER, frameBufId);
         int yPos = viewportHeight - y;
-		byte[] pixels = readPixels(gl, colorTextureId_1, GL3.GL_COLOR_ATTACHMENT1, x, yPos, 1, 1);
-		int id = getId(pixels);
-        gl.glBindFramebuffer(GL3.GL_FRAMEBUFFER, 0);
-		OpenGLUtils.reportError(gl, "Unbind Frame Buffer");
+		int id = 0;
+		if (asyncReadback) {
+			queueReadback(gl, x, yPos);
+		}
+		else {
+			long start = System.nanoTime();
+			byte[] pixels = readPixels(gl, colorTextureId_1, GL3.GL_COLOR_ATTACHMENT1, x, yPos, 1, 1);
+			id = getId(ByteBuffer.wrap(pixels));
+			pickAllocatedBytes += pixels.length;
+			stalledPickCount++;
+			recordPick(System.nanoTime() - start);
+		}
+		endPick(glDrawable);
 		
         x = UNSET_COORD;
         y = UNSET_COORD;
-		if (listener != null) {
-			listener.setPixel(id);
+		if (asyncReadback) {
+			// Make sure there is a next frame, to deliver the pick.
+			if (glDrawable instanceof Component) {
+				((Component)glDrawable).repaint();
+			}
+		}
+		else {
+			notifyListener(id);
 		}
 		
     }
 
+	/**
+	 * Unbind the FBO, and restore the scissor test and box, as they were
+	 * before prePick.  Does nothing if prePick changed nothing, so callers
+	 * should call this in a finally block, in case drawing is abandoned
+	 * between prePick and postPick.
+	 */
+	public void endPick(GLAutoDrawable glDrawable) {
+		if (! pickStateSet) {
+			return;
+		}
+		pickStateSet = false;
+		GL3 gl = (GL3)glDrawable.getGL().getGL2();
+        gl.glBindFramebuffer(GL3.GL_FRAMEBUFFER, 0);
+		OpenGLUtils.reportError(gl, "Unbind Frame Buffer");
+
+		gl.glScissor(savedScissorBox[0], savedScissorBox[1], savedScissorBox[2], savedScissorBox[3]);
+		if (! scissorWasEnabled) {
+			gl.glDisable(GL3.GL_SCISSOR_TEST);
+		}
+	}
+
 	public void dispose(GLAutoDrawable glDrawable) {
 		GL3 gl = (GL3)glDrawable.getGL().getGL2();
+		if (pendingSync != 0) {
+			gl.glDeleteSync(pendingSync);
+			pendingSync = 0;
+		}
+		pickPending = false;
+		if (pixelPackBufferId != 0) {
+			int[] buffers = new int[]{pixelPackBufferId};
+			gl.glDeleteBuffers(1, buffers, 0);
+			OpenGLUtils.reportError(gl, "Delete Pixel Pack Buffer");
+			pixelPackBufferId = 0;
+		}
+		deleteFramebuffer(gl);
+	}
+
+	private void deleteFramebuffer(GL3 gl) {
 		IntBuffer exchange = IntBuffer.allocate(2);
 
 		exchange.rewind();
@@ -232,6 +341,11 @@ public class RenderedIdPicker {
 		exchange.rewind();
 		gl.glDeleteFramebuffers(1, exchange);
 		OpenGLUtils.reportError(gl, "Delete Frame Buffers");
+
+		frameBufId = 0;
+		colorTextureId_0 = 0;
+		colorTextureId_1 = 0;
+		depthBufferId = 0;
 	}
 	
 	public void setPixelListener(PixelListener listener) {
@@ -241,6 +355,111 @@ public class RenderedIdPicker {
 	public boolean inPick() {
 		return x != UNSET_COORD  &&  y != UNSET_COORD;
 	}
+
+	/** Number of picks delivered since the last reset. */
+	public long getPickCount() {
+		return pickCount;
+	}
+
+	/** Number of picks whose readback had not finished when it was needed. */
+	public long getStalledPickCount() {
+		return stalledPickCount;
+	}
+
+	/** Total time spent waiting for, and copying out, picked pixels. */
+	public long getPickWaitNanos() {
+		return pickWaitNanos;
+	}
+
+	/** Total host memory allocated to receive picked pixels. */
+	public long getPickAllocatedBytes() {
+		return pickAllocatedBytes;
+	}
+
+	public void resetPickStatistics() {
+		pickCount = 0;
+		stalledPickCount = 0;
+		pickWaitNanos = 0;
+		pickAllocatedBytes = 0;
+	}
+
+	/**
+	 * Read the picked pixel into the pixel pack buffer, and fence it, without
+	 * waiting.  The read framebuffer must be bound.
+	 */
+	private void queueReadback(GL3 gl, int startX, int startY) {
+		if (pickPending) {
+			// Only the latest pick is of interest.
+			resolvePendingPick(gl);
+		}
+		if (pixelPackBufferId == 0) {
+			int[] buffers = new int[1];
+			gl.glGenBuffers(1, buffers, 0);
+			pixelPackBufferId = buffers[0];
+			gl.glBindBuffer(GL3.GL_PIXEL_PACK_BUFFER, pixelPackBufferId);
+			gl.glBufferData(GL3.GL_PIXEL_PACK_BUFFER, BYTES_PER_PIXEL, null, GL3.GL_STREAM_READ);
+		}
+		else {
+			gl.glBindBuffer(GL3.GL_PIXEL_PACK_BUFFER, pixelPackBufferId);
+		}
+		gl.glReadBuffer(GL3.GL_COLOR_ATTACHMENT1);
+		gl.glReadPixels(startX, startY, 1, 1, GL3.GL_BGRA, GL3.GL_UNSIGNED_BYTE, 0L);
+		gl.glBindBuffer(GL3.GL_PIXEL_PACK_BUFFER, 0);
+		OpenGLUtils.reportError(gl, "Queue pick readback");
+		pendingSync = gl.glFenceSync(GL3.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		pickPending = true;
+	}
+
+	/**
+	 * Map the pixel pack buffer filled by the previous pick, and tell the
+	 * listener what was found there.
+	 */
+	private void resolvePendingPick(GL3 gl) {
+		pickPending = false;
+		long start = System.nanoTime();
+		if (pendingSync != 0) {
+			int status = gl.glClientWaitSync(pendingSync, GL3.GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+			if (status == GL3.GL_TIMEOUT_EXPIRED) {
+				stalledPickCount++;
+				gl.glClientWaitSync(pendingSync, GL3.GL_SYNC_FLUSH_COMMANDS_BIT, MAX_SYNC_WAIT_NANOS);
+			}
+			gl.glDeleteSync(pendingSync);
+			pendingSync = 0;
+		}
+		gl.glBindBuffer(GL3.GL_PIXEL_PACK_BUFFER, pixelPackBufferId);
+		ByteBuffer mapped = gl.glMapBufferRange(GL3.GL_PIXEL_PACK_BUFFER, 0, BYTES_PER_PIXEL, GL3.GL_MAP_READ_BIT);
+		int id = 0;
+		if (mapped != null) {
+			id = getId(mapped);
+			gl.glUnmapBuffer(GL3.GL_PIXEL_PACK_BUFFER);
+		}
+		gl.glBindBuffer(GL3.GL_PIXEL_PACK_BUFFER, 0);
+		recordPick(System.nanoTime() - start);
+		if (mapped == null) {
+			logger.warn("Failed to map the pick readback buffer.");
+			OpenGLUtils.reportError(gl, "Map pick readback");
+			return;
+		}
+		notifyListener(id);
+	}
+
+	private void recordPick(long waitNanos) {
+		pickCount++;
+		pickWaitNanos += waitNanos;
+		logger.debug("Pick {} took {}us waiting for readback; {} of {} picks stalled, {} bytes allocated.",
+				pickCount, waitNanos / 1000, stalledPickCount, pickCount, pickAllocatedBytes);
+	}
+
+	private void notifyListener(int pixel) {
+		if (listener == null) {
+			return;
+		}
+		listener.setPixel(pixel);
+		IdCoder idCoder = idCoderProvider == null ? null : idCoderProvider.getIdCoder();
+		if (idCoder != null) {
+			listener.setId(idCoder.decode(pixel / IdCoder.ENCODE_RANGE));
+		}
+	}
 	
     private byte[] readPixels(GL3 gl, int textureId, int attachment, int startX, int startY, int width, int height) {
         gl.glBindTexture(GL3.GL_TEXTURE_2D, textureId);
@@ -253,9 +472,9 @@ public class RenderedIdPicker {
         return rawBuffer;
     }
 
-    private int getId(byte[] rawBuffer) {
+    private int getId(ByteBuffer rawBuffer) {
         // Using BGRA order.
-        return toUnsignedInt(rawBuffer[2]) + BYTE_MULT * toUnsignedInt(rawBuffer[1]) + WORD_MULT * toUnsignedInt(rawBuffer[0]);
+        return toUnsignedInt(rawBuffer.get(2)) + BYTE_MULT * toUnsignedInt(rawBuffer.get(1)) + WORD_MULT * toUnsignedInt(rawBuffer.get(0));
     }
     
     private int toUnsignedInt(byte b) {
@@ -310,5 +529,12 @@ public class RenderedIdPicker {
 	 */
 	public static interface PixelListener {
 		void setPixel(int pixel);
+
+		/**
+		 * The captured pixel, decoded by the IdCoder.  Negative if nothing
+		 * was drawn there.
+		 */
+		default void setId(int id) {
+		}
 	}	
 }
@@ -1,6 +1,8 @@
 package org.janelia.workstation.gui.viewer3d.texture;
 
 import org.janelia.workstation.gui.viewer3d.VolumeDataAcceptor;
+import org.janelia.workstation.gui.viewer3d.masking.VolumeDataI;
+import org.janelia.workstation.gui.viewer3d.volume_builder.PiecewiseVolumeDataBean;
 import org.janelia.workstation.gui.viewer3d.volume_builder.VolumeDataChunk;
 
 import org.janelia.workstation.gui.viewer3d.OpenGLUtils;
@@ -21,6 +23,9 @@ import java.util.Map;
  *
  * This handles interfacing with OpenGL / JOGL for matters regarding textures.  One such mediator represents information
  * regarding a single texture.
+ *
+ * Texture data which is still being filled in, a PiecewiseVolumeDataBean, is uploaded a chunk at a time: only
+ * the chunks complete at the time of upload are sent, and later ones are sent by uploadPendingChunks.
  */
 public class TextureMediator {
     public static int SIGNAL_TEXTURE_OFFSET = 0;
@@ -33,6 +38,7 @@ public class TextureMediator {
 
     private boolean isInitialized = false;
     private boolean hasBeenUploaded = false;
+    private int uploadedChunkCount = 0;
 
     private TextureDataI textureData;
     private final Logger logger = LoggerFactory.getLogger( TextureMediator.class );
@@ -154,28 +160,9 @@ public class TextureMediator {
                     );
                 }
 
-                for ( VolumeDataChunk volumeDataChunk: textureData.getTextureData().getVolumeChunks() ) {
-                    ByteBuffer data = ByteBuffer.wrap( volumeDataChunk.getData() );
-                    data.rewind();
-
-                    logger.debug("Sub-image: {}, {}, " + volumeDataChunk.getStartZ(), volumeDataChunk.getStartX(), volumeDataChunk.getStartY() );
-                    gl.glTexSubImage3D(
-                            GL2.GL_TEXTURE_3D,
-                            0, // mipmap level
-                            volumeDataChunk.getStartX(),
-                            volumeDataChunk.getStartY(),
-                            volumeDataChunk.getStartZ(),
-                            volumeDataChunk.getWidth(), // width
-                            volumeDataChunk.getHeight(), // height
-                            volumeDataChunk.getDepth(), // depth
-                            getVoxelComponentOrder(), // voxel component order (GLenum format)
-                            getVoxelComponentType(), // voxel component type=packed RGBA values(GLenum type)
-                            data
-                    );
-                    if (OpenGLUtils.reportError("Tex-sub-image", gl, textureName)) {
-                        return false;
-                    }
-
+                uploadedChunkCount = 0;
+                if (! uploadChunks( gl )) {
+                    return false;
                 }
 
             } catch ( Exception exGlTexImage ) {
@@ -207,6 +194,67 @@ public class TextureMediator {
         return rtnVal;
     }
 
+    /**
+     * Upload any chunks of the texture data which have been filled in since the texture was uploaded.
+     *
+     * @return false if the upload failed.
+     */
+    public boolean uploadPendingChunks( GL2 gl ) {
+        if ( ! hasBeenUploaded  ||  isUploadComplete() ) {
+            return true;
+        }
+        gl.glActiveTexture( textureSymbolicId );
+        gl.glBindTexture( GL2.GL_TEXTURE_3D, textureName );
+        if (OpenGLUtils.reportError( "glBindTexture for pending chunks", gl, textureName )) {
+            return false;
+        }
+        boolean rtnVal = uploadChunks( gl );
+        gl.glBindTexture( GL2.GL_TEXTURE_3D, 0 );
+        return rtnVal;
+    }
+
+    /**
+     * @return true if every chunk of the texture data has been sent to the GPU.
+     */
+    public boolean isUploadComplete() {
+        VolumeDataChunk[] chunks = textureData.getTextureData().getVolumeChunks();
+        return hasBeenUploaded  &&  ( chunks == null  ||  uploadedChunkCount >= chunks.length );
+    }
+
+    /** Sub-image the chunks which are ready and not yet uploaded, into the bound texture. */
+    private boolean uploadChunks( GL2 gl ) {
+        VolumeDataI volumeData = textureData.getTextureData();
+        VolumeDataChunk[] chunks = volumeData.getVolumeChunks();
+        int readyChunkCount = chunks.length;
+        if ( volumeData instanceof PiecewiseVolumeDataBean ) {
+            readyChunkCount = ((PiecewiseVolumeDataBean) volumeData).getCompleteChunkCount();
+        }
+        for ( ; uploadedChunkCount < readyChunkCount; uploadedChunkCount++ ) {
+            VolumeDataChunk volumeDataChunk = chunks[ uploadedChunkCount ];
+            ByteBuffer data = ByteBuffer.wrap( volumeDataChunk.getData() );
+            data.rewind();
+
+            logger.debug("Sub-image: {}, {}, " + volumeDataChunk.getStartZ(), volumeDataChunk.getStartX(), volumeDataChunk.getStartY() );
+            gl.glTexSubImage3D(
+                    GL2.GL_TEXTURE_3D,
+                    0, // mipmap level
+                    volumeDataChunk.getStartX(),
+                    volumeDataChunk.getStartY(),
+                    volumeDataChunk.getStartZ(),
+                    volumeDataChunk.getWidth(), // width
+                    volumeDataChunk.getHeight(), // height
+                    volumeDataChunk.getDepth(), // depth
+                    getVoxelComponentOrder(), // voxel component order (GLenum format)
+                    getVoxelComponentType(), // voxel component type=packed RGBA values(GLenum type)
+                    data
+            );
+            if (OpenGLUtils.reportError("Tex-sub-image", gl, textureName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Deprecated
     @SuppressWarnings("unused")
     /** This uploads all textures as one contiguous piece, by concatenating all chunks. */
@@ -285,6 +333,7 @@ public class TextureMediator {
             OpenGLUtils.reportError( "disable-tex", gl, textureName );
 
             hasBeenUploaded = true;
+            uploadedChunkCount = textureData.getTextureData().getVolumeChunks().length;
 
         }
 
@@ -301,6 +350,7 @@ public class TextureMediator {
             gl.glDeleteTextures( 1, textureNameBuffer );
             OpenGLUtils.reportError( "tex-mediator: delete texture", gl, textureName );
             hasBeenUploaded = false;
+            uploadedChunkCount = 0;
         }
     }
 
@@ -3,7 +3,9 @@ package org.janelia.workstation.gui.viewer3d.volume_builder;
 import org.janelia.workstation.gui.viewer3d.masking.VolumeDataI;
 
 /**
- * This volume data bean can be fed from arbitrarily-sized chunks.
+ * This volume data bean can be fed from arbitrarily-sized chunks.  It may be
+ * read on one thread while being fed on another: chunks up to
+ * getCompleteChunkCount() have been filled in and will not change.
  * @author fosterl
  */
 public class PiecewiseVolumeDataBean implements VolumeDataI {
@@ -85,16 +87,29 @@ public class PiecewiseVolumeDataBean implements VolumeDataI {
      * @param data next piece to add.
      */
     public void addData( byte[] data ) {
-        if (nextInputLocation + data.length >= totalSize) {
-            throw new IllegalArgumentException("Additional data of length " + data.length + " would exceed total size of " + totalSize);
+        addData(data, 0, data.length);
+    }
+
+    /**
+     * Adding part of an array as the next piece of data.
+     *
+     * @see #addData(byte[])
+     * @param data holds the next piece to add.
+     * @param offset of the piece in data.
+     * @param length of the piece.
+     */
+    public synchronized void addData( byte[] data, int offset, int length ) {
+        if (nextInputLocation + length > totalSize) {
+            throw new IllegalArgumentException("Additional data of length " + length + " would exceed total size of " + totalSize);
         }
-        LinearVolumeDataChunk chunk = chunks[getChunkNum(nextInputLocation)];
-        int ptrInData = 0;
-        if (data.length == 0) {
+        if (length == 0) {
             return;
         }
-        if (nextInputLocation + data.length <= chunk.getEndingLinearLocation()) {
-            final int readAmount = data.length;
+        LinearVolumeDataChunk chunk = chunks[getChunkNum(nextInputLocation)];
+        int ptrInData = offset;
+        int endInData = offset + length;
+        if (nextInputLocation + length <= chunk.getEndingLinearLocation()) {
+            final int readAmount = length;
             if (ptrInData + readAmount > data.length) { //TEMP
                 throw new IllegalStateException("buffer overrun/input data");
             }
@@ -106,14 +121,14 @@ public class PiecewiseVolumeDataBean implements VolumeDataI {
         }
         else {
             // Start in current chunk.
-            while (ptrInData < data.length) {
+            while (ptrInData < endInData) {
                 if (getChunkNum(nextInputLocation) >= chunks.length) {
                     throw new IllegalArgumentException("Data size exceeds capacity.");
                 }
                 chunk = chunks[ getChunkNum(nextInputLocation) ];
                 // Start point in current chunk.
                 int availableInChunk = (int)(chunk.getEndingLinearLocation() - nextInputLocation);
-                int availableInData = data.length - ptrInData;
+                int availableInData = endInData - ptrInData;
                 int readAmount = Math.min(availableInChunk, availableInData);
                 
                 int ptrInChunk = (int)(nextInputLocation - chunk.getStartingLinearLocation());
@@ -126,6 +141,20 @@ public class PiecewiseVolumeDataBean implements VolumeDataI {
         }
     }
     
+    /**
+     * @return number of leading chunks which have been completely filled.
+     */
+    public synchronized int getCompleteChunkCount() {
+        if (nextInputLocation >= totalSize) {
+            return chunks.length;
+        }
+        return getChunkNum(nextInputLocation);
+    }
+
+    public synchronized boolean isComplete() {
+        return nextInputLocation >= totalSize;
+    }
+
     private int getChunkNum( long location ) {
         return (int)(location / bytesPerChunk);
     }
@@ -0,0 +1,313 @@
+package org.janelia.workstation.image.stream;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Decompresses a whole block of Sean Murphy's PBD pack-bits plus difference
+ * encoded data at once, producing the same bytes as Pbd8InputStream and
+ * Pbd16InputStream.
+ *
+ * The compressed data is first scanned, without decoding, to find the runs at
+ * which independent segments begin. A segment can start at any literal or
+ * repeat run, because only difference runs depend on the preceding value. The
+ * segments, typically at least one per channel, are then decoded in parallel
+ * with array-indexed loops.
+ */
+final class PbdBulkDecoder
+{
+	// Largest output that fits in one array
+	static final long MAX_DECODED_BYTES = Integer.MAX_VALUE - 8;
+	// Do not split the output into segments smaller than this
+	private static final int MIN_SEGMENT_BYTES = 1 << 20;
+
+	private static final int NUM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+	private static final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS,
+			new ThreadFactoryBuilder()
+					.setNameFormat("PbdDecoder-%d")
+					.setDaemon(true).build());
+
+	private final byte[] compressed;
+	private final int pixelBytes;
+	private final boolean bigEndian;
+
+	/**
+	 * @param compressed PBD data, without the file header
+	 * @param pixelBytes 1 or 2
+	 * @param byteOrder byte order of 16-bit values, in both the compressed and decoded data
+	 */
+	PbdBulkDecoder(byte[] compressed, int pixelBytes, ByteOrder byteOrder) {
+		if (pixelBytes != 1 && pixelBytes != 2)
+			throw new IllegalArgumentException("Unsupported bytes per pixel "+pixelBytes);
+		this.compressed = compressed;
+		this.pixelBytes = pixelBytes;
+		this.bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+	}
+
+	static boolean canDecode(long compressedBytes, long decodedBytes) {
+		return compressedBytes <= MAX_DECODED_BYTES && decodedBytes <= MAX_DECODED_BYTES;
+	}
+
+	/**
+	 * Decode the first decodedBytes bytes of image data.
+	 * @param decodedBytes total size of the image data, e.g. the size of every channel
+	 * @param numChannels number of channels; each channel gets at least one segment
+	 */
+	byte[] decode(int decodedBytes, int numChannels) throws IOException {
+		int numValues = decodedBytes / pixelBytes;
+		int channelValues = numValues / Math.max(1, numChannels);
+		int segmentValues = Math.max(MIN_SEGMENT_BYTES / pixelBytes, numValues / (NUM_THREADS * 4));
+		// Segments must not be larger than one channel, so that channels are decoded in parallel
+		if (channelValues > 0)
+			segmentValues = Math.min(segmentValues, channelValues);
+		List<int[]> segments = scan(numValues, Math.max(1, segmentValues));
+
+		byte[] decoded = new byte[decodedBytes];
+		if (segments.size() == 1) {
+			decodeSegment(segments.get(0), numValues, decoded);
+			return decoded;
+		}
+		List<Future<Void>> futures = new ArrayList<>();
+		for (int s = 0; s < segments.size(); ++s) {
+			int[] segment = segments.get(s);
+			int endValue = (s + 1 < segments.size()) ? segments.get(s + 1)[1] : numValues;
+			futures.add(executor.submit(() -> {
+				decodeSegment(segment, endValue, decoded);
+				return null;
+			}));
+		}
+		try {
+			for (Future<Void> future : futures)
+				future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Error decoding", e.getCause());
+		}
+		return decoded;
+	}
+
+	/**
+	 * Find where each segment starts, without decoding.
+	 * @return list of {compressed offset, value offset} pairs
+	 */
+	List<int[]> scan(int numValues, int segmentValues) throws IOException {
+		List<int[]> segments = new ArrayList<>();
+		segments.add(new int[] {0, 0});
+		long nextSplit = segmentValues;
+		int ip = 0;
+		int op = 0;
+		while (op < numValues) {
+			if (ip >= compressed.length)
+				throw new IOException("PBD data ended after "+op+" of "+numValues+" values");
+			int code = compressed[ip] & 0xff;
+			boolean independent;
+			int count;
+			int codeBytes;
+			if (pixelBytes == 1) {
+				if (code < 33) { // literal
+					count = code + 1;
+					codeBytes = 1 + count;
+					independent = true;
+				}
+				else if (code < 128) { // difference, four values per byte
+					count = code - 32;
+					codeBytes = 1 + (count + 3) / 4;
+					independent = false;
+				}
+				else { // repeat
+					count = code - 127;
+					codeBytes = 2;
+					independent = true;
+				}
+			}
+			else {
+				if (code < 32) { // literal
+					count = code + 1;
+					codeBytes = 1 + 2 * count;
+					independent = true;
+				}
+				else if (code < 80) { // difference, eight values per three bytes
+					count = code - 31;
+					codeBytes = 1 + differenceBytes16(count);
+					independent = false;
+				}
+				else if (code < 223) {
+					throw new IOException("Received unimplemented code of " + code);
+				}
+				else { // repeat
+					count = code - 222;
+					codeBytes = 3;
+					independent = true;
+				}
+			}
+			if (independent && op >= nextSplit) {
+				segments.add(new int[] {ip, op});
+				while (nextSplit <= op)
+					nextSplit += segmentValues;
+			}
+			ip += codeBytes;
+			op += count;
+		}
+		return segments;
+	}
+
+	// Number of bytes holding count 3-bit differences, packed as 3-3-2, 1-3-3-1, 2-3-3
+	private static int differenceBytes16(int count) {
+		int remainder = count % 8;
+		int bytes = 3 * (count / 8);
+		if (remainder > 5)
+			bytes += 3;
+		else if (remainder > 2)
+			bytes += 2;
+		else if (remainder > 0)
+			bytes += 1;
+		return bytes;
+	}
+
+	private void decodeSegment(int[] segment, int endValue, byte[] out) throws IOException {
+		try {
+			if (pixelBytes == 1)
+				decode8(segment[0], segment[1], endValue, out);
+			else
+				decode16(segment[0], segment[1], endValue, out);
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("PBD data ended unexpectedly", e);
+		}
+	}
+
+	private void decode8(int ip, int op, int end, byte[] out) {
+		final byte[] in = compressed;
+		byte prior = 0;
+		while (op < end) {
+			int code = in[ip++] & 0xff;
+			if (code < 33) { // literal
+				int count = Math.min(code + 1, end - op);
+				System.arraycopy(in, ip, out, op, count);
+				ip += code + 1;
+				op += count;
+				prior = out[op - 1];
+			}
+			else if (code < 128) { // difference
+				int count = Math.min(code - 32, end - op);
+				while (count > 0) {
+					int source = in[ip++] & 0xff;
+					int n = Math.min(4, count);
+					for (int j = 0; j < n; ++j) {
+						int d = (source >>> (2 * j)) & 0x03;
+						prior = (byte) (prior + (d == 3 ? -1 : d));
+						out[op++] = prior;
+					}
+					count -= n;
+				}
+			}
+			else { // repeat
+				int count = Math.min(code - 127, end - op);
+				prior = in[ip++];
+				Arrays.fill(out, op, op + count, prior);
+				op += count;
+			}
+		}
+	}
+
+	private void decode16(int ip, int op, int end, byte[] out) {
+		final byte[] in = compressed;
+		short prior = 0;
+		while (op < end) {
+			int code = in[ip++] & 0xff;
+			if (code < 32) { // literal
+				int count = Math.min(code + 1, end - op);
+				System.arraycopy(in, ip, out, 2 * op, 2 * count);
+				ip += 2 * (code + 1);
+				op += count;
+				prior = getShort(out, 2 * (op - 1));
+			}
+			else if (code < 80) { // difference
+				int count = Math.min(code - 31, end - op);
+				int value = prior;
+				while (count > 0) {
+					// 3-3-2
+					int source = in[ip++] & 0xff;
+					value += delta16(source >>> 5);
+					op = putShort(out, op, value);
+					if (--count == 0) break;
+					value += delta16((source >>> 2) & 0x07);
+					op = putShort(out, op, value);
+					if (--count == 0) break;
+					int carry = source & 0x03;
+					// 1-3-3-1
+					source = in[ip++] & 0xff;
+					value += delta16((source >>> 7) | (carry << 1));
+					op = putShort(out, op, value);
+					if (--count == 0) break;
+					value += delta16((source >>> 4) & 0x07);
+					op = putShort(out, op, value);
+					if (--count == 0) break;
+					value += delta16((source >>> 1) & 0x07);
+					op = putShort(out, op, value);
+					if (--count == 0) break;
+					carry = source & 0x01;
+					// 2-3-3
+					source = in[ip++] & 0xff;
+					value += delta16((source >>> 6) | (carry << 2));
+					op = putShort(out, op, value);
+					if (--count == 0) break;
+					value += delta16((source >>> 3) & 0x07);
+					op = putShort(out, op, value);
+					if (--count == 0) break;
+					value += delta16(source & 0x07);
+					op = putShort(out, op, value);
+					--count;
+				}
+				prior = (short) value;
+			}
+			else { // repeat; the scan has already rejected unimplemented codes
+				int count = Math.min(code - 222, end - op);
+				prior = getShort(in, ip);
+				ip += 2;
+				for (int j = 0; j < count; ++j)
+					op = putShort(out, op, prior);
+			}
+		}
+	}
+
+	private static int delta16(int d) {
+		return d < 5 ? d : 4 - d;
+	}
+
+	private short getShort(byte[] b, int i) {
+		if (bigEndian)
+			return (short) ((b[i] << 8) | (b[i + 1] & 0xff));
+		else
+			return (short) ((b[i + 1] << 8) | (b[i] & 0xff));
+	}
+
+	// Store a value and return the next value index
+	private int putShort(byte[] b, int valueIndex, int value) {
+		int i = 2 * valueIndex;
+		if (bigEndian) {
+			b[i] = (byte) (value >>> 8);
+			b[i + 1] = (byte) value;
+		}
+		else {
+			b[i] = (byte) value;
+			b[i + 1] = (byte) (value >>> 8);
+		}
+		return valueIndex + 1;
+	}
+}
@@ -1,5 +1,10 @@
 package org.janelia.workstation.image.stream;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -38,6 +43,9 @@ public class V3dRawImageStream
 		"v3d_stack_pkbit_by_gene1"
 	};
 	
+	// header is 43 bytes long
+	private static final int HEADER_BYTES = 43;
+
 	private InputStream inStream;
 	// File metadata fields
 	private String headerKey;
@@ -47,11 +55,15 @@ public class V3dRawImageStream
 	private int[] dimensions = {0,0,0,0};
 	// Keep one slice in memory for streaming
 	private Slice currentSlice;
+	private long slicesRead = 0;
+	// Whole image, when decoded in bulk
+	private byte[] decodedData;
 
 	public V3dRawImageStream(InputStream input) {
 		inStream = input;
 		try {
 			loadHeader();
+			wrapCompressedStream();
 		}
 		catch (IOException exc) {
 			throw new IllegalArgumentException(exc);
@@ -60,6 +72,42 @@ public class V3dRawImageStream
 			throw new IllegalArgumentException(exc);
 		}
 	}
+
+	/**
+	 * Open a file. Compressed PBD files which fit in memory are read and
+	 * decompressed in bulk, in parallel, rather than streamed.
+	 */
+	public V3dRawImageStream(File file) throws IOException {
+		inStream = new BufferedInputStream(new FileInputStream(file));
+		try {
+			loadHeader();
+			long compressedBytes = file.length() - HEADER_BYTES;
+			long decodedBytes = (long)dimensions[0] * dimensions[1] * dimensions[2] * dimensions[3] * pixelBytes;
+			if ( (format == Format.FORMAT_MURPHY_PBD) && PbdBulkDecoder.canDecode(compressedBytes, decodedBytes) ) {
+				byte[] compressed = new byte[(int)compressedBytes];
+				new DataInputStream(inStream).readFully(compressed);
+				inStream.close();
+				long startTime = System.nanoTime();
+				byte[] decoded = new PbdBulkDecoder(compressed, pixelBytes, endian)
+						.decode((int)decodedBytes, dimensions[3]);
+				logger.info("Decoded {} bytes of PBD data in {} ms",
+						decodedBytes, (System.nanoTime() - startTime) / 1000000);
+				decodedData = decoded;
+				inStream = new ByteArrayInputStream(decoded);
+			}
+			else {
+				wrapCompressedStream();
+			}
+		}
+		catch (DataFormatException exc) {
+			inStream.close();
+			throw new IllegalArgumentException(exc);
+		}
+		catch (IOException exc) {
+			inStream.close();
+			throw exc;
+		}
+	}
 	
 	public int getDimension(int index) {
 		return dimensions[index];
@@ -72,10 +120,9 @@ public class V3dRawImageStream
 	private void loadHeader() 
 	throws IOException, DataFormatException
 	{
-		// header is 43 bytes long
-		byte[] buffer0 = new byte[43];
+		byte[] buffer0 = new byte[HEADER_BYTES];
 		ByteBuffer buffer = ByteBuffer.wrap(buffer0);
-		inStream.read(buffer.array(), 0, 43);
+		inStream.read(buffer.array(), 0, HEADER_BYTES);
 		buffer.rewind();
 		// Parse file type header string (24 bytes)
 		headerKey = new String(buffer.array(), 0, 24);
@@ -117,7 +164,10 @@ public class V3dRawImageStream
 		// Allocate slice
 		currentSlice = new Slice(dimensions[0], dimensions[1], 
 				pixelBytes, endian);
-		
+	}
+
+	private void wrapCompressedStream()
+	{
 		// wrap inStream, if compressed format
 		if (format == Format.FORMAT_MURPHY_PBD) {
 			if (pixelBytes == 1) {
@@ -147,6 +197,55 @@ public class V3dRawImageStream
 	throws IOException
 	{
 		currentSlice.read(inStream);
+		++slicesRead;
+	}
+
+	/**
+	 * @return true if the whole image has already been decoded into memory
+	 */
+	public boolean hasDecodedData() {
+		return (decodedData != null) && (slicesRead == 0);
+	}
+
+	/**
+	 * Read the next count whole channels, i.e. count * sz slices, into one
+	 * array in file order. If the image was decoded in bulk and nothing has
+	 * been read yet, returns the decoded data itself rather than a copy.
+	 */
+	public byte[] readChannels(int count)
+	throws IOException
+	{
+		int sliceBytes = dimensions[0] * dimensions[1] * pixelBytes;
+		long sliceCount = (long)count * dimensions[2];
+		long byteCount = sliceCount * sliceBytes;
+		if ( hasDecodedData() && (decodedData.length == byteCount) ) {
+			byte[] result = decodedData;
+			decodedData = null;
+			inStream = new ByteArrayInputStream(new byte[0]);
+			slicesRead += sliceCount;
+			return result;
+		}
+		if (byteCount > PbdBulkDecoder.MAX_DECODED_BYTES)
+			throw new IOException("Cannot read " + byteCount + " bytes into one array");
+		byte[] result = new byte[(int)byteCount];
+		readSlices(result, (int)sliceCount);
+		return result;
+	}
+
+	/**
+	 * Read the next count slices into the start of buffer, in file order, so
+	 * that a channel too large for one array can be read a slab at a time.
+	 */
+	public void readSlices(byte[] buffer, int count)
+	throws IOException
+	{
+		int sliceBytes = dimensions[0] * dimensions[1] * pixelBytes;
+		if ((long)count * sliceBytes > buffer.length)
+			throw new IllegalArgumentException("Buffer too small for " + count + " slices");
+		for (int s = 0; s < count; ++s) {
+			loadNextSlice();
+			System.arraycopy(currentSlice.sliceBuffer.array(), 0, buffer, s * sliceBytes, sliceBytes);
+		}
 	}
 
     public void close() throws IOException {
@@ -0,0 +1,226 @@
+package org.janelia.workstation.img_3d_loader;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Packs multi-byte channel volumes, laid out one whole channel after another as
+ * in a v3d file, into one texel per voxel.
+ *
+ * Intensities are assumed to be 12 bits, and are mapped through lookup tables
+ * built once, indexed by the raw 16-bit value. The volume is split into slabs
+ * of z slices which are converted in parallel; each slab reads every channel
+ * and writes each output texel once.
+ */
+final class V3dChannelPacker {
+
+    // Number of z slabs per thread, to even out the load
+    private static final int SLABS_PER_THREAD = 4;
+    private static final int NUM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("V3dChannelPacker-%d")
+                    .setDaemon(true).build());
+
+    // 12-bit intensity to 8 bits, indexed by the unsigned 16-bit value
+    private static final byte[] LUT_8 = new byte[65536];
+    // 12-bit intensity to 16 bits, indexed by the unsigned 16-bit value
+    private static final short[] LUT_16 = new short[65536];
+    static {
+        for (int i = 0; i < 65536; ++i) {
+            int value = (short) i; // values are read as signed, as in V3dRawImageStream.Slice
+            LUT_8[i] = (byte) scale8(value);
+            int clamped = Math.max(0, Math.min(4095, value));
+            LUT_16[i] = (short) ((clamped * 65535 + 2047) / 4095);
+        }
+    }
+
+    private final int sx, sy, sz;
+    private final int pixelBytes;
+    private final boolean bigEndian;
+
+    V3dChannelPacker(int sx, int sy, int sz, int pixelBytes, ByteOrder byteOrder) {
+        if (pixelBytes != 2 && pixelBytes != 4) {
+            throw new IllegalArgumentException("Unsupported bytes per pixel " + pixelBytes);
+        }
+        this.sx = sx;
+        this.sy = sy;
+        this.sz = sz;
+        this.pixelBytes = pixelBytes;
+        this.bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+    }
+
+    /**
+     * Scale a 12-bit intensity to 8 bits, clamped.
+     */
+    static int scale8(int value) {
+        int result = (int) (value * (255.0 / 4095.0) + 0.5);
+        if (result < 0) {
+            result = 0;
+        }
+        if (result > 255) {
+            result = 255;
+        }
+        return result;
+    }
+
+    /**
+     * Bit shift of a channel within an ARGB texel: red, green, blue, then
+     * alpha. Channels past the fourth wrap around.
+     */
+    static int argbShift(int channel) {
+        int bitShift = 8 * (channel + 2);
+        while (bitShift >= 32) {
+            bitShift -= 32;
+        }
+        return (32 - bitShift) % 32;
+    }
+
+    /**
+     * Insert 8-bit reductions of some channels into ARGB texels.
+     *
+     * @param data channelCount whole channels, starting with firstChannel
+     * @param firstChannel index of the first channel in data; if zero, the
+     *        texels are cleared first, otherwise other channels are kept
+     * @param channelCount number of channels in data
+     * @param argb sx * sy * sz texels
+     */
+    void packArgb(byte[] data, int firstChannel, int channelCount, int[] argb) throws IOException {
+        packArgb(data, firstChannel, channelCount, 0, sz, argb);
+    }
+
+    /**
+     * Insert 8-bit reductions of slices z0 to z1 (exclusive) of some channels
+     * into ARGB texels, so a channel can be converted a slab at a time.
+     *
+     * @param data slices z0 to z1 of channelCount channels, one channel after
+     *        another, starting with firstChannel
+     * @param firstChannel index of the first channel in data; if zero, the
+     *        texels are cleared first, otherwise other channels are kept
+     * @param channelCount number of channels in data
+     * @param z0 first slice in data
+     * @param z1 end of the slices in data
+     * @param argb sx * sy * sz texels
+     */
+    void packArgb(byte[] data, int firstChannel, int channelCount, int z0, int z1, int[] argb) throws IOException {
+        if (z0 < 0 || z1 > sz || z0 > z1) {
+            throw new IllegalArgumentException("Invalid slice range " + z0 + " to " + z1);
+        }
+        final int sliceVoxels = sx * sy;
+        final int channelBytes = sliceVoxels * (z1 - z0) * pixelBytes;
+        final int dataStart = z0 * sliceVoxels;
+        final int[] shifts = new int[channelCount];
+        for (int c = 0; c < channelCount; ++c) {
+            shifts[c] = argbShift(firstChannel + c);
+        }
+        final boolean clear = firstChannel == 0;
+        runSlabs(z0, z1, (s0, s1) -> {
+            for (int i = s0 * sliceVoxels; i < s1 * sliceVoxels; ++i) {
+                int texel = clear ? 0 : argb[i];
+                for (int c = 0; c < channelCount; ++c) {
+                    int offset = c * channelBytes + (i - dataStart) * pixelBytes;
+                    int value = pixelBytes == 2
+                            ? LUT_8[getUnsignedShort(data, offset)] & 0xff
+                            : scale8(getInt(data, offset));
+                    texel = (texel & ~(0xff << shifts[c])) | (value << shifts[c]);
+                }
+                argb[i] = texel;
+            }
+        });
+    }
+
+    /**
+     * Convert up to four 2-byte channels to 16-bit BGRA texels, in native byte
+     * order, without reducing them to 8 bits. Missing channels are zero.
+     *
+     * @param data channelCount whole channels
+     * @param channelCount number of channels in data, at most four
+     * @return sx * sy * sz texels of four shorts each
+     */
+    byte[] packRgba16(byte[] data, int channelCount) throws IOException {
+        if (pixelBytes != 2 || channelCount > 4) {
+            throw new IllegalArgumentException("Cannot pack " + channelCount + " channels of " + pixelBytes + " bytes into 16-bit RGBA");
+        }
+        final int sliceVoxels = sx * sy;
+        final int channelBytes = sliceVoxels * sz * pixelBytes;
+        final byte[] texels = new byte[sliceVoxels * sz * 8];
+        // Component of each channel within a BGRA texel
+        final int[] components = {2, 1, 0, 3};
+        final boolean bigEndianOut = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+        runSlabs(0, sz, (z0, z1) -> {
+            for (int i = z0 * sliceVoxels; i < z1 * sliceVoxels; ++i) {
+                for (int c = 0; c < channelCount; ++c) {
+                    int value = LUT_16[getUnsignedShort(data, c * channelBytes + 2 * i)];
+                    int out = 8 * i + 2 * components[c];
+                    if (bigEndianOut) {
+                        texels[out] = (byte) (value >>> 8);
+                        texels[out + 1] = (byte) value;
+                    }
+                    else {
+                        texels[out] = (byte) value;
+                        texels[out + 1] = (byte) (value >>> 8);
+                    }
+                }
+            }
+        });
+        return texels;
+    }
+
+    private interface SlabTask {
+        void convert(int z0, int z1);
+    }
+
+    private void runSlabs(int zStart, int zEnd, SlabTask task) throws IOException {
+        int depth = zEnd - zStart;
+        int slabCount = Math.max(1, Math.min(depth, NUM_THREADS * SLABS_PER_THREAD));
+        int slabDepth = (depth + slabCount - 1) / slabCount;
+        if (slabCount == 1 || NUM_THREADS == 1) {
+            task.convert(zStart, zEnd);
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>();
+        for (int z0 = zStart; z0 < zEnd; z0 += slabDepth) {
+            final int start = z0;
+            final int end = Math.min(zEnd, z0 + slabDepth);
+            futures.add(executor.submit(() -> task.convert(start, end)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while packing channels", e);
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Error packing channels", e.getCause());
+        }
+    }
+
+    private int getUnsignedShort(byte[] b, int i) {
+        if (bigEndian) {
+            return ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+        }
+        else {
+            return ((b[i + 1] & 0xff) << 8) | (b[i] & 0xff);
+        }
+    }
+
+    private int getInt(byte[] b, int i) {
+        if (bigEndian) {
+            return (b[i] << 24) | ((b[i + 1] & 0xff) << 16) | ((b[i + 2] & 0xff) << 8) | (b[i + 3] & 0xff);
+        }
+        else {
+            return (b[i + 3] << 24) | ((b[i + 2] & 0xff) << 16) | ((b[i + 1] & 0xff) << 8) | (b[i] & 0xff);
+        }
+    }
+}
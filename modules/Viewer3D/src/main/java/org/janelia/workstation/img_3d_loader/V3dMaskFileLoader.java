@@ -2,10 +2,8 @@ package org.janelia.workstation.img_3d_loader;
 
 import org.janelia.workstation.image.stream.V3dRawImageStream;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -34,18 +32,13 @@ public class V3dMaskFileLoader extends LociFileLoader {
     @Override
     public void loadVolumeFile( String fileName ) throws Exception {
         setUnCachedFileName(fileName);
-        loadV3dMask(
-                new BufferedInputStream(
-                    new FileInputStream(fileName)
-                )
-        );
+        loadV3dMask(new V3dRawImageStream(new File(fileName)));
     }
 
-    private void loadV3dMask(InputStream inputStream)
+    private void loadV3dMask(V3dRawImageStream sliceStream)
             throws IOException, DataFormatException {
         //isMask = true;
 
-        V3dRawImageStream sliceStream = new V3dRawImageStream(inputStream);
         setSx(sliceStream.getDimension(0));
         setSy(sliceStream.getDimension(1));
         setSz(sliceStream.getDimension(2));
@@ -2,10 +2,9 @@ package org.janelia.workstation.img_3d_loader;
 
 import org.janelia.workstation.image.stream.V3dRawImageStream;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteOrder;
 import java.util.zip.DataFormatException;
 
 import org.slf4j.Logger;
@@ -23,18 +22,38 @@ public class V3dSignalFileLoader extends LociFileLoader {
     
     Logger logger = LoggerFactory.getLogger(V3dSignalFileLoader.class);
 
+    // Size of the buffer used to stream a channel a slab of slices at a time
+    private static final int STREAM_SLAB_BYTES = 64 * 1024 * 1024;
+
+    private boolean sixteenBitOutput = false;
+    private boolean sixteenBitTexture = false;
+
+    /**
+     * Set whether 2-byte signal data of up to three channels should be kept as
+     * 16-bit RGBA texels, instead of being reduced to 8-bit ARGB. Only for
+     * viewers which can display 16-bit textures.
+     */
+    public void setSixteenBitOutput(boolean sixteenBitOutput) {
+        this.sixteenBitOutput = sixteenBitOutput;
+    }
+
+    /**
+     * @return true if the loaded texture bytes hold 16-bit BGRA texels
+     */
+    public boolean isSixteenBitTexture() {
+        return sixteenBitTexture;
+    }
+
     @Override
     public void loadVolumeFile( String fileName ) throws Exception {
         setUnCachedFileName( fileName );
 
-        loadV3dRaw(new BufferedInputStream(
-                new FileInputStream(fileName)));
+        loadV3dRaw(new V3dRawImageStream(new File(fileName)));
 
     }
 
-    private void loadV3dRaw(InputStream inputStream) throws IOException, DataFormatException {
+    private void loadV3dRaw(V3dRawImageStream sliceStream) throws IOException, DataFormatException {
         logger.info("loadV3dRaw");
-        V3dRawImageStream sliceStream = new V3dRawImageStream(inputStream);
         setSx(sliceStream.getDimension(0));
         setSy(sliceStream.getDimension(1));
         setSz(sliceStream.getDimension(2));
@@ -62,41 +81,39 @@ public class V3dSignalFileLoader extends LociFileLoader {
         
         logger.info("loadV3dIntRaw");
 
-        double scale = 1.0;
-        if (sliceStream.getPixelBytes() > 1)
-            scale = 255.0 / 4095.0; // assume it's 12 bits
-
-        int sx = getSx();
-        int sy = getSy();
-        int sz = getSz();
-        initArgbTextureIntArray();
-        int[] argbTextureIntArray = getArgbTextureIntArray();
-        for (int c = 0; c < sc; ++c) {
-            // create a mask to manipulate one color byte of a 32-bit ARGB int
-            int bitShift = 8 * (c + 2);
-            while (bitShift >= 32) bitShift -= 32; // channel 4 gets shifted zero (no shift)
-            bitShift = 32 - bitShift;  // opposite shift inside loop
-            int mask = (0x000000ff << bitShift);
-            int notMask = ~mask;
-            for (int z = 0; z < sz; ++z) {
-                int zOffset = z * sx * sy;
-                sliceStream.loadNextSlice();
-                V3dRawImageStream.Slice slice = sliceStream.getCurrentSlice();
-                for (int y = 0; y < sy; ++y) {
-                    int yOffset = zOffset + y * sx;
-                    for (int x = 0; x < sx; ++x) {
-                        int argb = argbTextureIntArray[yOffset + x] & notMask; // zero color component
-                        double value = scale * slice.getValue(x, y);
-                        int ival = (int)(value + 0.5);
-                        if (ival < 0) ival = 0;
-                        if (ival > 255) ival = 255;
-                        ival = ival << bitShift;
-                        argb = argb | ival; // insert updated color component
-                        argbTextureIntArray[yOffset + x] = argb;
+        long startTime = System.nanoTime();
+        V3dChannelPacker packer = new V3dChannelPacker(getSx(), getSy(), getSz(),
+                sliceStream.getPixelBytes(), sliceStream.getEndian());
+        sixteenBitTexture = sixteenBitOutput && sliceStream.getPixelBytes() == 2 && sc <= 3
+                && (long) getSx() * getSy() * getSz() * 8 <= Integer.MAX_VALUE - 8;
+        if (sixteenBitTexture) {
+            // Keep all 12 bits, as 16-bit RGBA texels
+            setTextureByteArray(packer.packRgba16(sliceStream.readChannels(sc), sc));
+            setPixelByteOrder(ByteOrder.nativeOrder());
+        }
+        else {
+            initArgbTextureIntArray();
+            int[] argbTextureIntArray = getArgbTextureIntArray();
+            if (sliceStream.hasDecodedData()) {
+                // Every channel is already in memory, so pack them all in one pass
+                packer.packArgb(sliceStream.readChannels(sc), 0, sc, argbTextureIntArray);
+            }
+            else {
+                // Stream each channel a slab of slices at a time, so no channel
+                // has to fit in one array
+                int sliceBytes = getSx() * getSy() * sliceStream.getPixelBytes();
+                int slabDepth = Math.max(1, Math.min(getSz(), STREAM_SLAB_BYTES / sliceBytes));
+                byte[] slab = new byte[slabDepth * sliceBytes];
+                for (int c = 0; c < sc; ++c) {
+                    for (int z0 = 0; z0 < getSz(); z0 += slabDepth) {
+                        int z1 = Math.min(getSz(), z0 + slabDepth);
+                        sliceStream.readSlices(slab, z1 - z0);
+                        packer.packArgb(slab, c, 1, z0, z1, argbTextureIntArray);
                     }
                 }
             }
         }
+        logger.info("Packed {} channels in {} ms", sc, (System.nanoTime() - startTime) / 1000000);
 
         setHeader(sliceStream.getHeaderKey());
     }
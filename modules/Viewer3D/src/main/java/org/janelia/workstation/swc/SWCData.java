@@ -166,6 +166,22 @@ public class SWCData {
 
     }
 
+    /**
+     * Validate contents and write them to the given writer; the writer is
+     * flushed but not closed, so the caller can write into a shared stream.
+     *
+     * @param writer accepts the output
+     * @throws IOException thrown by called methods.
+     */
+    public void write(Writer writer) throws IOException {
+        if (!isValid()) {
+            writeErrorSWC();
+        }
+        BufferedWriter bufferedWriter = new BufferedWriter(writer);
+        writeLines(bufferedWriter);
+        bufferedWriter.flush();
+    }
+
     /**
      * Given some filename, return an 'iterated' version, containing a counter
      * offset.  In this fashion, 'sub names' iterated over a count can be
@@ -526,19 +542,23 @@ public class SWCData {
      */
     private void writeSwcFile(Writer writer) throws IOException {
         try (BufferedWriter bufferedWriter = new BufferedWriter(writer)) {
-            for (String line: getHeaderList()) {
-                bufferedWriter.write(line);
-                bufferedWriter.newLine();
-            }
-            
-            for (SWCNode node: getNodeList()) {
-                bufferedWriter.write(node.toSWCline());
-                bufferedWriter.newLine();
-            }
+            writeLines(bufferedWriter);
         }
 
     }
 
+    private void writeLines(BufferedWriter bufferedWriter) throws IOException {
+        for (String line: getHeaderList()) {
+            bufferedWriter.write(line);
+            bufferedWriter.newLine();
+        }
+
+        for (SWCNode node: getNodeList()) {
+            bufferedWriter.write(node.toSWCline());
+            bufferedWriter.newLine();
+        }
+    }
+
     private void writeErrorSWC() throws IllegalStateException, IOException {
         final String message = String.format(
                 "can't write SWC data; invalid for reason: %s",
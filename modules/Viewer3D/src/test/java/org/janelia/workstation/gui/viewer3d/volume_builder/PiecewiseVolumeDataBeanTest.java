@@ -0,0 +1,60 @@
+package org.janelia.workstation.gui.viewer3d.volume_builder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that PiecewiseVolumeDataBean lays out pieces of any size across its chunks, and reports which chunks
+ * are complete as it fills.
+ */
+public class PiecewiseVolumeDataBeanTest {
+
+    private static final int SX = 7;
+    private static final int SY = 5;
+    private static final int SZ = 11;
+    private static final int BYTES_PER_VOXEL = 2;
+    private static final int SLICES_PER_CHUNK = 3;
+
+    @Test
+    public void testFillsChunksInOrder() {
+        byte[] volume = new byte[SX * SY * SZ * BYTES_PER_VOXEL];
+        for (int i = 0; i < volume.length; i++) {
+            volume[i] = (byte) (i * 31 + 7);
+        }
+        PiecewiseVolumeDataBean bean = new PiecewiseVolumeDataBean(SX, SY, SZ, BYTES_PER_VOXEL, SLICES_PER_CHUNK);
+        VolumeDataChunk[] chunks = bean.getVolumeChunks();
+        Assert.assertEquals(4, chunks.length);
+        Assert.assertEquals(0, bean.getCompleteChunkCount());
+
+        int chunkBytes = SX * SY * SLICES_PER_CHUNK * BYTES_PER_VOXEL;
+        int offset = 0;
+        // Pieces both smaller and larger than a chunk, ending exactly at the end of the volume
+        int[] pieceSizes = {5, chunkBytes, 2 * chunkBytes - 5};
+        for (int pieceSize : pieceSizes) {
+            bean.addData(volume, offset, pieceSize);
+            offset += pieceSize;
+            Assert.assertEquals(offset / chunkBytes, bean.getCompleteChunkCount());
+        }
+        bean.addData(volume, offset, volume.length - offset);
+        Assert.assertTrue(bean.isComplete());
+        Assert.assertEquals(chunks.length, bean.getCompleteChunkCount());
+
+        for (int i = 0; i < volume.length; i++) {
+            Assert.assertEquals(volume[i], bean.getValueAt(i));
+        }
+        Assert.assertEquals(SZ - 3 * SLICES_PER_CHUNK, chunks[3].getDepth());
+        Assert.assertEquals(3 * SLICES_PER_CHUNK, chunks[3].getStartZ());
+    }
+
+    @Test
+    public void testRejectsOverflow() {
+        PiecewiseVolumeDataBean bean = new PiecewiseVolumeDataBean(SX, SY, SZ, BYTES_PER_VOXEL, SLICES_PER_CHUNK);
+        try {
+            bean.addData(new byte[SX * SY * SZ * BYTES_PER_VOXEL + 1]);
+            Assert.fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
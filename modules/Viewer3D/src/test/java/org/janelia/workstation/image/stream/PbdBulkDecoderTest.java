@@ -0,0 +1,248 @@
+package org.janelia.workstation.image.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Round trip tests of PbdBulkDecoder against the streaming decoders, on synthetic data.
+ */
+public class PbdBulkDecoderTest {
+
+	private static final int SX = 37;
+	private static final int SY = 23;
+	private static final int SZ = 11;
+	private static final int SC = 3;
+
+	@Test
+	public void test8BitMatchesStream() throws IOException {
+		byte[] raw = syntheticVolume(1, ByteOrder.LITTLE_ENDIAN, 1);
+		byte[] compressed = encode8(raw);
+
+		byte[] streamed = readStream(new Pbd8InputStream(new ByteArrayInputStream(compressed)), raw.length, SX * SY);
+		Assert.assertArrayEquals(raw, streamed);
+
+		PbdBulkDecoder decoder = new PbdBulkDecoder(compressed, 1, ByteOrder.LITTLE_ENDIAN);
+		Assert.assertArrayEquals(raw, decoder.decode(raw.length, SC));
+		Assert.assertTrue(decoder.scan(raw.length, raw.length / SC).size() > 1);
+	}
+
+	@Test
+	public void test16BitMatchesStream() throws IOException {
+		for (ByteOrder byteOrder : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+			byte[] raw = syntheticVolume(2, byteOrder, 2);
+			byte[] compressed = encode16(raw, byteOrder);
+
+			// Read in one gulp, because the stream cannot split difference runs across small reads
+			byte[] streamed = readStream(new Pbd16InputStream(new ByteArrayInputStream(compressed), byteOrder),
+					raw.length, raw.length);
+			Assert.assertArrayEquals(raw, streamed);
+
+			PbdBulkDecoder decoder = new PbdBulkDecoder(compressed, 2, byteOrder);
+			Assert.assertArrayEquals(raw, decoder.decode(raw.length, SC));
+			Assert.assertTrue(decoder.scan(raw.length / 2, raw.length / 2 / SC).size() > 1);
+		}
+	}
+
+	@Test
+	public void testTruncatedData() {
+		byte[] raw = syntheticVolume(1, ByteOrder.LITTLE_ENDIAN, 3);
+		byte[] compressed = encode8(raw);
+		byte[] truncated = new byte[compressed.length / 2];
+		System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+		try {
+			new PbdBulkDecoder(truncated, 1, ByteOrder.LITTLE_ENDIAN).decode(raw.length, SC);
+			Assert.fail("Expected IOException");
+		}
+		catch (IOException expected) {
+			// expected
+		}
+	}
+
+	// Read the way V3dRawImageStream does, one buffer at a time
+	private static byte[] readStream(InputStream stream, int totalBytes, int chunkBytes) throws IOException {
+		byte[] result = new byte[totalBytes];
+		byte[] chunk = new byte[chunkBytes];
+		int offset = 0;
+		while (offset < totalBytes) {
+			int n = stream.read(chunk, 0, Math.min(chunkBytes, totalBytes - offset));
+			Assert.assertTrue(n > 0);
+			System.arraycopy(chunk, 0, result, offset, n);
+			offset += n;
+		}
+		return result;
+	}
+
+	/**
+	 * Flat regions, smooth gradients and noise, so that every kind of run is used.
+	 */
+	private static byte[] syntheticVolume(int pixelBytes, ByteOrder byteOrder, long seed) {
+		Random random = new Random(seed);
+		ByteBuffer buffer = ByteBuffer.allocate(SX * SY * SZ * SC * pixelBytes).order(byteOrder);
+		int maxValue = pixelBytes == 1 ? 255 : 4095;
+		for (int c = 0; c < SC; ++c) {
+			for (int z = 0; z < SZ; ++z) {
+				for (int y = 0; y < SY; ++y) {
+					for (int x = 0; x < SX; ++x) {
+						int value;
+						if (y < SY / 3) {
+							value = 10 * c + z; // flat
+						}
+						else if (y < 2 * SY / 3) {
+							value = (x * (c + 1) / 2 + y + z) % maxValue; // smooth
+						}
+						else {
+							value = random.nextInt(maxValue + 1); // noise
+						}
+						if (pixelBytes == 1) {
+							buffer.put((byte) value);
+						}
+						else {
+							buffer.putShort((short) value);
+						}
+					}
+				}
+			}
+		}
+		return buffer.array();
+	}
+
+	private static byte[] encode8(byte[] data) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte prior = 0;
+		int i = 0;
+		while (i < data.length) {
+			int repeat = repeatLength(data, i, 128);
+			int difference = differenceLength8(data, i, prior);
+			if (repeat >= 3) {
+				out.write(127 + repeat);
+				out.write(data[i]);
+				i += repeat;
+			}
+			else if (difference >= 4) {
+				out.write(32 + difference);
+				byte previous = prior;
+				for (int g = 0; g < difference; g += 4) {
+					int packed = 0;
+					for (int j = 0; j < 4 && g + j < difference; ++j) {
+						byte value = data[i + g + j];
+						int d = (byte) (value - previous);
+						previous = value;
+						packed |= (d == -1 ? 3 : d) << (2 * j);
+					}
+					out.write(packed);
+				}
+				i += difference;
+			}
+			else {
+				int n = 1;
+				while (n < 33 && i + n < data.length && repeatLength(data, i + n, 3) < 3) {
+					++n;
+				}
+				out.write(n - 1);
+				out.write(data, i, n);
+				i += n;
+			}
+			prior = data[i - 1];
+		}
+		return out.toByteArray();
+	}
+
+	private static int repeatLength(byte[] data, int i, int max) {
+		int n = 1;
+		while (n < max && i + n < data.length && data[i + n] == data[i]) {
+			++n;
+		}
+		return n;
+	}
+
+	private static int differenceLength8(byte[] data, int i, byte prior) {
+		int n = 0;
+		byte previous = prior;
+		while (n < 95 && i + n < data.length) {
+			int d = (byte) (data[i + n] - previous);
+			if (d < -1 || d > 2) {
+				break;
+			}
+			previous = data[i + n];
+			++n;
+		}
+		return n;
+	}
+
+	private static byte[] encode16(byte[] bytes, ByteOrder byteOrder) {
+		short[] data = new short[bytes.length / 2];
+		ByteBuffer.wrap(bytes).order(byteOrder).asShortBuffer().get(data);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer valueBytes = ByteBuffer.allocate(2).order(byteOrder);
+		short prior = 0;
+		int i = 0;
+		while (i < data.length) {
+			int repeat = 1;
+			while (repeat < 33 && i + repeat < data.length && data[i + repeat] == data[i]) {
+				++repeat;
+			}
+			int[] codes = new int[48];
+			int difference = 0;
+			short previous = prior;
+			while (difference < 48 && i + difference < data.length) {
+				int d = (short) (data[i + difference] - previous);
+				if (d < -3 || d > 4) {
+					break;
+				}
+				codes[difference] = d < 0 ? 4 - d : d;
+				previous = data[i + difference];
+				++difference;
+			}
+			if (repeat >= 3) {
+				out.write(222 + repeat);
+				valueBytes.clear();
+				valueBytes.putShort(data[i]);
+				out.write(valueBytes.array(), 0, 2);
+				i += repeat;
+			}
+			else if (difference >= 4) {
+				out.write(31 + difference);
+				for (int g = 0; g < difference; g += 8) {
+					int[] d = new int[8];
+					for (int j = 0; j < 8 && g + j < difference; ++j) {
+						d[j] = codes[g + j];
+					}
+					int remaining = difference - g;
+					out.write((d[0] << 5) | (d[1] << 2) | (d[2] >>> 1));
+					if (remaining > 2) {
+						out.write(((d[2] & 1) << 7) | (d[3] << 4) | (d[4] << 1) | (d[5] >>> 2));
+					}
+					if (remaining > 5) {
+						out.write(((d[5] & 3) << 6) | (d[6] << 3) | d[7]);
+					}
+				}
+				i += difference;
+			}
+			else {
+				int n = 1;
+				while (n < 32 && i + n + 2 < data.length
+						&& !(data[i + n] == data[i + n + 1] && data[i + n] == data[i + n + 2])) {
+					++n;
+				}
+				n = Math.min(n, data.length - i);
+				out.write(n - 1);
+				for (int j = 0; j < n; ++j) {
+					valueBytes.clear();
+					valueBytes.putShort(data[i + j]);
+					out.write(valueBytes.array(), 0, 2);
+				}
+				i += n;
+			}
+			prior = data[i - 1];
+		}
+		return out.toByteArray();
+	}
+}
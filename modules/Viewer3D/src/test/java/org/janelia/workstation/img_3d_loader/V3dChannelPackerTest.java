@@ -0,0 +1,139 @@
+package org.janelia.workstation.img_3d_loader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares V3dChannelPacker with a straightforward per-voxel conversion.
+ */
+public class V3dChannelPackerTest {
+
+    private static final int SX = 19;
+    private static final int SY = 13;
+    private static final int SZ = 29;
+
+    @Test
+    public void testArgbMatchesPerVoxelConversion() throws IOException {
+        for (ByteOrder byteOrder : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            for (int sc = 1; sc <= 5; ++sc) {
+                short[] values = randomValues(sc, sc);
+                byte[] data = toBytes(values, byteOrder);
+                int[] expected = referenceArgb(values, sc);
+                V3dChannelPacker packer = new V3dChannelPacker(SX, SY, SZ, 2, byteOrder);
+
+                int[] allAtOnce = new int[SX * SY * SZ];
+                packer.packArgb(data, 0, sc, allAtOnce);
+                Assert.assertArrayEquals(expected, allAtOnce);
+
+                int[] oneAtATime = new int[SX * SY * SZ];
+                int channelBytes = SX * SY * SZ * 2;
+                for (int c = 0; c < sc; ++c) {
+                    byte[] channel = new byte[channelBytes];
+                    System.arraycopy(data, c * channelBytes, channel, 0, channelBytes);
+                    packer.packArgb(channel, c, 1, oneAtATime);
+                }
+                Assert.assertArrayEquals(expected, oneAtATime);
+            }
+        }
+    }
+
+    @Test
+    public void testArgbBySlabMatchesWholeChannels() throws IOException {
+        int sc = 3;
+        short[] values = randomValues(sc, 11);
+        byte[] data = toBytes(values, ByteOrder.LITTLE_ENDIAN);
+        int[] expected = referenceArgb(values, sc);
+        V3dChannelPacker packer = new V3dChannelPacker(SX, SY, SZ, 2, ByteOrder.LITTLE_ENDIAN);
+        int sliceBytes = SX * SY * 2;
+        int channelBytes = sliceBytes * SZ;
+        // Uneven slabs, as streamed from a file, including a last slab of one slice
+        for (int slabDepth : new int[] {1, 4, 7, SZ}) {
+            int[] argb = new int[SX * SY * SZ];
+            for (int c = 0; c < sc; ++c) {
+                for (int z0 = 0; z0 < SZ; z0 += slabDepth) {
+                    int z1 = Math.min(SZ, z0 + slabDepth);
+                    byte[] slab = new byte[slabDepth * sliceBytes];
+                    System.arraycopy(data, c * channelBytes + z0 * sliceBytes, slab, 0, (z1 - z0) * sliceBytes);
+                    packer.packArgb(slab, c, 1, z0, z1, argb);
+                }
+            }
+            Assert.assertArrayEquals(expected, argb);
+        }
+    }
+
+    @Test
+    public void testRgba16KeepsTwelveBits() throws IOException {
+        int sc = 3;
+        short[] values = randomValues(sc, 7);
+        values[0] = 4095;
+        values[1] = 5000;
+        values[2] = -3;
+        values[3] = 1;
+        V3dChannelPacker packer = new V3dChannelPacker(SX, SY, SZ, 2, ByteOrder.BIG_ENDIAN);
+        byte[] texels = packer.packRgba16(toBytes(values, ByteOrder.BIG_ENDIAN), sc);
+
+        short[] bgra = new short[texels.length / 2];
+        ByteBuffer.wrap(texels).order(ByteOrder.nativeOrder()).asShortBuffer().get(bgra);
+        int voxels = SX * SY * SZ;
+        Assert.assertEquals(65535, bgra[2] & 0xffff);
+        Assert.assertEquals(65535, bgra[4 + 2] & 0xffff);
+        Assert.assertEquals(0, bgra[8 + 2] & 0xffff);
+        Assert.assertEquals(16, bgra[12 + 2] & 0xffff);
+        for (int i = 0; i < voxels; ++i) {
+            for (int c = 0; c < sc; ++c) {
+                int value = Math.max(0, Math.min(4095, values[c * voxels + i]));
+                int component = bgra[4 * i + new int[] {2, 1, 0}[c]] & 0xffff;
+                Assert.assertEquals(value * 65535.0 / 4095.0, component, 0.5);
+            }
+            Assert.assertEquals(0, bgra[4 * i + 3]);
+        }
+    }
+
+    // 12-bit values, with a few out of range
+    private static short[] randomValues(int sc, long seed) {
+        Random random = new Random(seed);
+        short[] values = new short[SX * SY * SZ * sc];
+        for (int i = 0; i < values.length; ++i) {
+            int r = random.nextInt(100);
+            if (r == 0) {
+                values[i] = (short) (4096 + random.nextInt(60000));
+            }
+            else {
+                values[i] = (short) random.nextInt(4096);
+            }
+        }
+        return values;
+    }
+
+    private static byte[] toBytes(short[] values, ByteOrder byteOrder) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 2).order(byteOrder);
+        buffer.asShortBuffer().put(values);
+        return buffer.array();
+    }
+
+    // The conversion V3dSignalFileLoader used to do, one channel at a time
+    private static int[] referenceArgb(short[] values, int sc) {
+        int voxels = SX * SY * SZ;
+        int[] argb = new int[voxels];
+        double scale = 255.0 / 4095.0;
+        for (int c = 0; c < sc; ++c) {
+            int bitShift = 8 * (c + 2);
+            while (bitShift >= 32) bitShift -= 32;
+            bitShift = 32 - bitShift;
+            int mask = (0x000000ff << bitShift);
+            int notMask = ~mask;
+            for (int i = 0; i < voxels; ++i) {
+                int ival = (int) (scale * values[c * voxels + i] + 0.5);
+                if (ival < 0) ival = 0;
+                if (ival > 255) ival = 255;
+                argb[i] = (argb[i] & notMask) | (ival << bitShift);
+            }
+        }
+        return argb;
+    }
+}
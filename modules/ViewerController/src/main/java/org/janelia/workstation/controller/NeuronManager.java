@@ -42,6 +42,7 @@ import org.janelia.workstation.controller.scripts.spatialfilter.NeuronMessageCon
 import org.janelia.workstation.controller.scripts.spatialfilter.NeuronSpatialFilter;
 import org.janelia.workstation.controller.scripts.spatialfilter.NeuronUpdates;
 import org.janelia.workstation.controller.tools.NoteExporter;
+import org.janelia.workstation.controller.tools.StreamingSWCExporter;
 import org.janelia.workstation.core.api.AccessManager;
 import org.janelia.workstation.core.events.Events;
 import org.janelia.workstation.core.events.selection.DomainObjectSelectionEvent;
@@ -2017,6 +2018,33 @@ public class NeuronManager implements DomainObjectSelectionSupport {
         progress.setStatus("Done");
     }
 
+    /**
+     * export the neurons in the input list in streaming fashion: neurons are
+     * converted and written in parallel, one swc file per neuron, either into
+     * a directory named like the given file or into a single zip archive; no
+     * combined file is written, and memory use doesn't grow with the number
+     * of neurons; returns the number of neurons written
+     */
+    public int exportSWCDataStreaming(File swcFile, int downsampleModulo, Collection<TmNeuronMetadata> neurons,
+        boolean exportNotes, boolean archive, Progress progress) throws Exception {
+
+        StreamingSWCExporter exporter = new StreamingSWCExporter(getSwcDataConverter(), downsampleModulo,
+                neuron -> {
+                    List<String> headers = new ArrayList<>();
+                    float[] color = TmViewState.getColorForNeuronAsFloatArray(neuron.getId());
+                    headers.add(String.format(COLOR_FORMAT, color[0], color[1], color[2]));
+                    headers.add(String.format(NAME_FORMAT, neuron.getName()));
+                    return headers;
+                });
+        if (exportNotes) {
+            exporter.setExportNotes(modelManager.getCurrentWorkspace().getId(),
+                    AccessManager.getAccessManager().getActualSubject().getName());
+        }
+        return exporter.export(swcFile,
+                archive ? StreamingSWCExporter.Mode.ARCHIVE : StreamingSWCExporter.Mode.DIRECTORY,
+                neurons, progress);
+    }
+
     public synchronized void importBulkSWCData(final File swcFile, TmWorkspace tmWorkspace) throws Exception {
 
         log.info("Importing neuron from SWC file {}",swcFile);
@@ -5,9 +5,13 @@ import edu.wlu.cs.levy.CG.Checker;
 import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.janelia.workstation.controller.eventbus.*;
+import org.janelia.workstation.controller.metrics.LatencyHistogram;
+import org.janelia.workstation.controller.metrics.PerformanceMetrics;
 import java.util.List;
 
 public class SpatialIndexManager {
+    private static final LatencyHistogram queryTimer = PerformanceMetrics.timer(PerformanceMetrics.SPATIAL_INDEX_QUERY);
+
     private final NeuronVertexSpatialIndex spatialIndex;
 
     public SpatialIndexManager() {
@@ -21,19 +25,31 @@ public class SpatialIndexManager {
     }
 
     public List<TmGeoAnnotation> getAnchorsInMicronArea(double[] p1, double[] p2) {
-        return spatialIndex.getAnchorsInMicronArea(p1, p2);
+        long startTime = System.nanoTime();
+        List<TmGeoAnnotation> anchors = spatialIndex.getAnchorsInMicronArea(p1, p2);
+        queryTimer.recordSince(startTime);
+        return anchors;
     }
 
     public List<TmGeoAnnotation> getAnchorClosestToMicronLocation(double[] micronXYZ, int n) {
-        return spatialIndex.getAnchorClosestToMicronLocation(micronXYZ, n);
+        long startTime = System.nanoTime();
+        List<TmGeoAnnotation> anchors = spatialIndex.getAnchorClosestToMicronLocation(micronXYZ, n);
+        queryTimer.recordSince(startTime);
+        return anchors;
     }
 
     public TmGeoAnnotation getAnchorClosestToMicronLocation(double[] voxelXYZ) {
-        return spatialIndex.getAnchorClosestToMicronLocation(voxelXYZ);
+        long startTime = System.nanoTime();
+        TmGeoAnnotation anchor = spatialIndex.getAnchorClosestToMicronLocation(voxelXYZ);
+        queryTimer.recordSince(startTime);
+        return anchor;
     }
 
     public List<TmGeoAnnotation> getAnchorClosestToMicronLocation(double[] micronXYZ, int n, final Checker<TmGeoAnnotation> filter) {
-        return spatialIndex.getAnchorClosestToMicronLocation(micronXYZ, n, filter);
+        long startTime = System.nanoTime();
+        List<TmGeoAnnotation> anchors = spatialIndex.getAnchorClosestToMicronLocation(micronXYZ, n, filter);
+        queryTimer.recordSince(startTime);
+        return anchors;
     }
 
     @Subscribe
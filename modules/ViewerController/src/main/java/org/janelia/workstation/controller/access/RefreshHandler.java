@@ -9,6 +9,7 @@ import org.janelia.messaging.core.impl.AsyncMessageConsumerImpl;
 import org.janelia.messaging.utils.MessagingUtils;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.janelia.workstation.controller.NeuronManager;
+import org.janelia.workstation.controller.metrics.PerformanceMetrics;
 import org.janelia.workstation.controller.model.TmModelManager;
 import org.janelia.workstation.controller.options.ApplicationPanel;
 import org.janelia.workstation.controller.scripts.spatialfilter.NeuronMessageConstants;
@@ -167,6 +168,7 @@ public class RefreshHandler implements MessageHandler {
      */
     @Override
     public void handleMessage(Map<String, Object> msgHeaders, byte[] msgBody) {
+        long startTime = System.nanoTime();
         try {
             StopWatch stopWatch = new StopWatch();
 
@@ -289,6 +291,8 @@ public class RefreshHandler implements MessageHandler {
             log.info("RefreshHandler: handled message in {} ms", stopWatch.getElapsedTime());
         } catch (Exception e) {
             log.error(e.getMessage());
+        } finally {
+            PerformanceMetrics.timer(PerformanceMetrics.MESSAGE_HANDLING).recordSince(startTime);
         }
     }
 
@@ -63,8 +63,14 @@ public class NeuronExportAllAction extends AbstractAction {
 
                 @Override
                 protected void doStuff() throws Exception {
-                    annotationModel.exportSWCData(params.getSelectedFile(), params.getDownsampleModulo(),
-                            annotationModel.getNeuronList(), params.getExportNotes(),this);
+                    if (params.isStreaming()) {
+                        annotationModel.exportSWCDataStreaming(params.getSelectedFile(), params.getDownsampleModulo(),
+                                annotationModel.getNeuronList(), params.getExportNotes(), params.isArchive(), this);
+                    }
+                    else {
+                        annotationModel.exportSWCData(params.getSelectedFile(), params.getDownsampleModulo(),
+                                annotationModel.getNeuronList(), params.getExportNotes(),this);
+                    }
                 }
 
                 @Override
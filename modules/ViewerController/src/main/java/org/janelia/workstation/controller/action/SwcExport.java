@@ -97,6 +97,18 @@ public class SwcExport {
         notesPanel.add(notesCheckBox);
         panel.add(notesPanel, c2);
 
+        // streaming options, for exporting whole workspaces
+        JPanel streamingPanel = new JPanel();
+        streamingPanel.setLayout(new BoxLayout(streamingPanel, BoxLayout.PAGE_AXIS));
+        streamingPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+        JCheckBox streamingCheckBox = new JCheckBox("Streaming export (one file per neuron, no combined file)");
+        JCheckBox archiveCheckBox = new JCheckBox("Write into a single zip archive");
+        archiveCheckBox.setEnabled(false);
+        streamingCheckBox.addActionListener(e -> archiveCheckBox.setEnabled(streamingCheckBox.isSelected()));
+        streamingPanel.add(streamingCheckBox);
+        streamingPanel.add(archiveCheckBox);
+        panel.add(streamingPanel, c2);
+
         chooser.setPreferredSize(getDialogSize());
         chooser.setAccessory(panel);
         int returnValue = chooser.showSaveDialog(FrameworkAccess.getMainFrame());
@@ -104,6 +116,8 @@ public class SwcExport {
 
         final String textInput = downsampleModuloField.getText().trim();
         final boolean notesInput = notesCheckBox.isSelected();
+        final boolean streamingInput = streamingCheckBox.isSelected();
+        final boolean archiveInput = streamingInput && archiveCheckBox.isSelected();
         
         ExportParameters rtnVal = null;
         try {
@@ -113,6 +127,8 @@ public class SwcExport {
                 rtnVal.setDownsampleModulo(downsampleModulo);
                 rtnVal.setSelectedFile(chooser.getSelectedFile().getAbsoluteFile());
                 rtnVal.setExportNotes(notesInput);
+                rtnVal.setStreaming(streamingInput);
+                rtnVal.setArchive(archiveInput);
                 SWCDirectorySource.setSwcDirectory(rtnVal.getSelectedFile().getParentFile());
             }
         } catch (NumberFormatException nfe) {
@@ -125,6 +141,8 @@ public class SwcExport {
         private File selectedFile;
         private int downsampleModulo;
         private boolean exportNotes;
+        private boolean streaming;
+        private boolean archive;
 
         public File getSelectedFile() { return selectedFile; }
         public void setSelectedFile(File selectedFile) {
@@ -143,5 +161,19 @@ public class SwcExport {
             this.exportNotes = exportNotes;
         }
 
+        public boolean isStreaming() {
+            return streaming;
+        }
+        public void setStreaming(boolean streaming) {
+            this.streaming = streaming;
+        }
+
+        public boolean isArchive() {
+            return archive;
+        }
+        public void setArchive(boolean archive) {
+            this.archive = archive;
+        }
+
     }
 }
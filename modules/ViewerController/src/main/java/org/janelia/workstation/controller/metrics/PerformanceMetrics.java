@@ -0,0 +1,164 @@
+package org.janelia.workstation.controller.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Central registry of performance metrics for the viewers: counters, gauges and latency histograms.
+ *
+ * Metrics are created on first use and live for the rest of the session. Recording is cheap enough to do
+ * on every tile load or rendered frame, and nothing is sent to the server. The current values are shown in
+ * the PerformanceMetricsPanel, and can be dumped to a local file for offline analysis.
+ */
+public class PerformanceMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(PerformanceMetrics.class);
+
+    // Standard metric names
+    public static final String TILE_LOAD = "lvv.tileLoad";
+    public static final String TILE_LOAD_FAILED = "lvv.tileLoad.failed";
+    public static final String TILE_LOAD_MISSING = "lvv.tileLoad.missing";
+    public static final String LVV_FRAME_RENDER = "lvv.frameRender";
+    public static final String LVV_TILE_DRAW_RETAINED = "lvv.tileDraw.retained";
+    public static final String LVV_TILE_DRAW_IMMEDIATE = "lvv.tileDraw.immediate";
+    public static final String KTX_BLOCK_LOAD = "horta.ktxBlockLoad";
+    public static final String KTX_BLOCK_LOAD_FAILED = "horta.ktxBlockLoad.failed";
+    public static final String HORTA_FRAME_RENDER = "horta.frameRender";
+    // Time to send a save request; the save itself completes asynchronously
+    public static final String NEURON_SAVE_SEND = "neuron.saveSend";
+    public static final String MESSAGE_HANDLING = "neuron.messageHandling";
+    public static final String SPATIAL_INDEX_QUERY = "spatialIndex.query";
+    public static final String HEAP_USED_MB = "jvm.heapUsedMB";
+
+    private static final Map<String, LatencyHistogram> timers = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private static final Map<String, Supplier<? extends Number>> gauges = new ConcurrentSkipListMap<>();
+
+    static {
+        registerGauge(HEAP_USED_MB, () -> {
+            Runtime runtime = Runtime.getRuntime();
+            return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        });
+    }
+
+    private PerformanceMetrics() {
+    }
+
+    /**
+     * Returns the latency histogram with the given name, creating it if necessary.
+     */
+    public static LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    /**
+     * Returns the counter with the given name, creating it if necessary.
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * Register a gauge, which is sampled whenever the metrics are displayed or dumped. Registering a gauge
+     * with an existing name replaces the previous one.
+     */
+    public static void registerGauge(String name, Supplier<? extends Number> gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Returns the timer with the given name, or null if nothing has been recorded with that name.
+     */
+    public static LatencyHistogram getTimer(String name) {
+        return timers.get(name);
+    }
+
+    /**
+     * Returns the current value of the named counter, or 0 if it does not exist.
+     */
+    public static long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Clear all timers and counters. Gauges are unaffected.
+     */
+    public static void reset() {
+        for (LatencyHistogram timer : timers.values()) {
+            timer.reset();
+        }
+        for (LongAdder counter : counters.values()) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Returns a human readable report of all metrics, one line per metric.
+     */
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (LatencyHistogram timer : timers.values()) {
+            lines.add(timer.toString());
+        }
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            lines.add(entry.getKey() + ": " + entry.getValue().sum());
+        }
+        for (Map.Entry<String, Supplier<? extends Number>> entry : gauges.entrySet()) {
+            Object value;
+            try {
+                value = entry.getValue().get();
+            }
+            catch (RuntimeException e) {
+                log.debug("Error sampling gauge {}", entry.getKey(), e);
+                value = "error";
+            }
+            lines.add(entry.getKey() + ": " + value);
+        }
+        return lines;
+    }
+
+    /**
+     * Write all metrics to the given file as tab-separated values, for offline analysis.
+     */
+    public static void dumpToFile(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            writer.println("# Performance metrics dumped at " + new Date());
+            writer.println("type\tname\tcount\tmean_ms\tp50_ms\tp90_ms\tp95_ms\tp99_ms\tmax_ms\tvalue");
+            for (LatencyHistogram timer : timers.values()) {
+                writer.printf("timer\t%s\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f\t%n",
+                        timer.getName(), timer.getCount(), timer.getMeanMillis(),
+                        timer.getPercentileMillis(0.5), timer.getPercentileMillis(0.9),
+                        timer.getPercentileMillis(0.95), timer.getPercentileMillis(0.99), timer.getMaxMillis());
+            }
+            for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+                writer.printf("counter\t%s\t\t\t\t\t\t\t\t%d%n", entry.getKey(), entry.getValue().sum());
+            }
+            for (Map.Entry<String, Supplier<? extends Number>> entry : gauges.entrySet()) {
+                Number value;
+                try {
+                    value = entry.getValue().get();
+                }
+                catch (RuntimeException e) {
+                    log.debug("Error sampling gauge {}", entry.getKey(), e);
+                    value = null;
+                }
+                writer.printf("gauge\t%s\t\t\t\t\t\t\t\t%s%n", entry.getKey(), value == null ? "" : value);
+            }
+        }
+        log.info("Dumped performance metrics to {}", file);
+    }
+}
@@ -20,6 +20,7 @@ import org.janelia.workstation.core.api.AccessManager;
 import org.janelia.workstation.core.api.ClientDomainUtils;
 import org.janelia.workstation.core.util.ConsoleProperties;
 import org.janelia.workstation.controller.access.TiledMicroscopeDomainMgr;
+import org.janelia.workstation.controller.metrics.PerformanceMetrics;
 //import org.janelia.workstation.gui.large_volume_viewer.options.ApplicationPanel;
 import org.perf4j.StopWatch;
 import org.slf4j.Logger;
@@ -165,7 +166,10 @@ class NeuronModelAdapter {
     }
 
     void asyncSaveNeuron(TmNeuronMetadata neuron, Map<String, String> extraArgs) throws Exception {
+        // Only sending is timed here, since the save is confirmed by a later refresh message
+        long startTime = System.nanoTime();
         sendMessage(neuron, NeuronMessageConstants.MessageType.NEURON_SAVE_NEURONDATA, extraArgs);
+        PerformanceMetrics.timer(PerformanceMetrics.NEURON_SAVE_SEND).recordSince(startTime);
     }
 
     void asyncDeleteNeuron(TmNeuronMetadata neuron) throws Exception {
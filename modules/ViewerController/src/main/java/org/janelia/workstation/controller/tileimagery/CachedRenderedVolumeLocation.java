@@ -6,9 +6,13 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -23,6 +27,7 @@ import org.janelia.filecacheutils.LocalFileCacheStorage;
 import org.janelia.rendering.RenderedImageInfo;
 import org.janelia.rendering.RenderedVolumeLocation;
 import org.janelia.rendering.Streamable;
+import org.janelia.workstation.core.util.ConsoleProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,12 +37,15 @@ public class CachedRenderedVolumeLocation implements RenderedVolumeLocation {
 
     private final RenderedVolumeLocation delegate;
     private final LocalFileCache<RenderedVolumeFileKey> renderedVolumeFileCache;
+    // If true, textured tile bytes are LZ4 compressed in the local cache
+    private final boolean compressTiles;
 
     public CachedRenderedVolumeLocation(RenderedVolumeLocation delegate,
                                         LocalFileCacheStorage localFileCacheStorage,
                                         int cacheConcurrency,
                                         ExecutorService localCachedFileWriteExecutor) {
         this.delegate = delegate;
+        this.compressTiles = ConsoleProperties.getBoolean("console.lvv.tileCache.compress", true);
         renderedVolumeFileCache = new LocalFileCache<>(
                 localFileCacheStorage,
                 cacheConcurrency,
@@ -156,17 +164,35 @@ public class CachedRenderedVolumeLocation implements RenderedVolumeLocation {
                 .withRelativePath(imageRelativePath)
                 .withChannelImageNames(channelImageNames)
                 .withPageNumber(pageNumber)
+                .withSuffix(compressTiles ? CompressedTileCodec.FILE_SUFFIX : null)
                 .build(renderedVolumeFileKey -> new RenderedVolumeContentFileProxy<>(
                         renderedVolumeFileKey.getLocalName(),
-                        () -> delegate.readTiffPageAsTexturedBytes(imageRelativePath, channelImageNames, pageNumber),
+                        () -> {
+                            Streamable<byte[]> texturedBytes = delegate.readTiffPageAsTexturedBytes(imageRelativePath, channelImageNames, pageNumber);
+                            return compressTiles ? compressTexturedBytes(texturedBytes) : texturedBytes;
+                        },
                         bytes -> new ByteArrayInputStream(bytes),
                         () -> delegate.checkContentAtRelativePath(imageRelativePath)))
                 ;
-        return streamableContentFromFileProxy(
+        Streamable<byte[]> texturedBytes = streamableContentFromFileProxy(
                 fileKey,
-                contentStream -> {
+                (fileProxy, contentStream) -> {
                     try {
-                        return ByteStreams.toByteArray(contentStream);
+                        byte[] content = ByteStreams.toByteArray(contentStream);
+                        if (compressTiles) {
+                            try {
+                                return CompressedTileCodec.decompress(content);
+                            } catch (IOException e) {
+                                LOG.warn("Invalid cached tile for {}/{} page {}, reading it from the source instead",
+                                        imageRelativePath, channelImageNames, pageNumber, e);
+                                byte[] sourceContent = delegate.readTiffPageAsTexturedBytes(imageRelativePath, channelImageNames, pageNumber).getContent();
+                                if (sourceContent != null) {
+                                    replaceInvalidCacheEntry(fileProxy, sourceContent);
+                                }
+                                return sourceContent;
+                            }
+                        }
+                        return content;
                     } catch (FileNotFoundException e) {
                         if (LOG.isDebugEnabled()) {
                             LOG.error("File not found for {}/{} page {}", imageRelativePath, channelImageNames, pageNumber, e);
@@ -182,8 +208,56 @@ public class CachedRenderedVolumeLocation implements RenderedVolumeLocation {
                     }
                 },
                 false);
+        if (compressTiles && texturedBytes.getContent() != null) {
+            // Report the size of the tile itself, rather than the size of the cache entry
+            return Streamable.of(texturedBytes.getContent(), (long) texturedBytes.getContent().length);
+        }
+        return texturedBytes;
    }
 
+    /**
+     * Overwrite a cached tile which could not be decompressed, so that it isn't read from the source again on
+     * every request. The entry is replaced in place, since the cache still refers to it.
+     */
+    private void replaceInvalidCacheEntry(FileProxy fileProxy, byte[] texturedBytes) {
+        File localFile;
+        try {
+            localFile = fileProxy.getLocalFile(false);
+        } catch (Exception e) {
+            LOG.debug("No local file for invalid cache entry {}", fileProxy.getFileId(), e);
+            return;
+        }
+        if (localFile == null || !localFile.exists()) {
+            return;
+        }
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(localFile.toPath().getParent(), localFile.getName(), ".tmp");
+            Files.write(tempFile, CompressedTileCodec.compress(texturedBytes));
+            Files.move(tempFile, localFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("Replaced invalid cache entry {}", localFile);
+        } catch (IOException e) {
+            LOG.warn("Could not replace invalid cache entry {}, deleting it", localFile, e);
+            if (!localFile.delete()) {
+                LOG.warn("Could not delete invalid cache entry {}", localFile);
+            }
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private Streamable<byte[]> compressTexturedBytes(Streamable<byte[]> texturedBytes) {
+        if (texturedBytes.getContent() == null) {
+            return texturedBytes;
+        }
+        byte[] compressed = CompressedTileCodec.compress(texturedBytes.getContent());
+        return Streamable.of(compressed, (long) compressed.length);
+    }
+
     @Override
     public Streamable<byte[]> readTiffImageROIPixels(String imagePath, int xCenter, int yCenter, int zCenter, int dimx, int dimy, int dimz) {
         return delegate.readTiffImageROIPixels(imagePath, xCenter, yCenter, zCenter, dimx, dimy, dimz);
@@ -226,10 +300,14 @@ public class CachedRenderedVolumeLocation implements RenderedVolumeLocation {
     }
 
     private <T> Streamable<T> streamableContentFromFileProxy(RenderedVolumeFileKey fileKey, Function<InputStream, T> streamToContentMapper, boolean alwaysDownload) {
+        return streamableContentFromFileProxy(fileKey, (fileProxy, contentStream) -> streamToContentMapper.apply(contentStream), alwaysDownload);
+    }
+
+    private <T> Streamable<T> streamableContentFromFileProxy(RenderedVolumeFileKey fileKey, BiFunction<FileProxy, InputStream, T> streamToContentMapper, boolean alwaysDownload) {
         try {
             FileProxy fileProxy = renderedVolumeFileCache.getCachedFileEntry(fileKey, false);
             InputStream contentStream = fileProxy.openContentStream(alwaysDownload);
-            return Streamable.of(streamToContentMapper.apply(contentStream), fileProxy.estimateSizeInBytes(alwaysDownload));
+            return Streamable.of(streamToContentMapper.apply(fileProxy, contentStream), fileProxy.estimateSizeInBytes(alwaysDownload));
         } catch (FileNotFoundException e) {
             return Streamable.empty();
         }
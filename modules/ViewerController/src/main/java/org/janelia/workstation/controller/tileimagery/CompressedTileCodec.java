@@ -0,0 +1,163 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.janelia.workstation.controller.metrics.PerformanceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LZ4 codec for textured tile bytes stored in the local file cache.
+ *
+ * Tiles are mostly 16 bit samples, whose high bytes vary much less than their low bytes. Before compression,
+ * the bytes are shuffled so that all the low bytes come first and all the high bytes second, which gives LZ4
+ * long runs to work with. The stored format is a small header followed by the LZ4 block:
+ * <pre>
+ *   int  magic
+ *   int  raw length
+ *   byte element size used for shuffling (1 means not shuffled)
+ * </pre>
+ */
+final class CompressedTileCodec {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompressedTileCodec.class);
+
+    // Suffix for cache entries, so that compressed and uncompressed tiles never share a cache file
+    static final String FILE_SUFFIX = ".lz4";
+
+    private static final int MAGIC = 0x4c5a5431; // "LZT1"
+    private static final int HEADER_LENGTH = 9;
+    private static final int SAMPLE_SIZE = 2;
+    private static final int REPORT_INTERVAL = 1000;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    // The safe decompressor is bounded by the stored length, so a truncated cache file can't make it read past the end
+    private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+    // LZ4 can't expand a block by more than this
+    private static final int MAX_EXPANSION = 255;
+
+    private static final AtomicLong numTiles = new AtomicLong();
+    private static final AtomicLong rawBytes = new AtomicLong();
+    private static final AtomicLong storedBytes = new AtomicLong();
+
+    static {
+        PerformanceMetrics.registerGauge("tileCache.compressedTiles", CompressedTileCodec::getNumTiles);
+        PerformanceMetrics.registerGauge("tileCache.storedBytesPerTile", CompressedTileCodec::getStoredBytesPerTile);
+        PerformanceMetrics.registerGauge("tileCache.rawBytesPerTile", CompressedTileCodec::getRawBytesPerTile);
+    }
+
+    private CompressedTileCodec() {
+    }
+
+    /**
+     * Compress the given tile for storage.
+     */
+    static byte[] compress(byte[] raw) {
+        int elementSize = raw.length % SAMPLE_SIZE == 0 ? SAMPLE_SIZE : 1;
+        byte[] input = elementSize > 1 ? shuffle(raw, elementSize) : raw;
+        byte[] stored = new byte[HEADER_LENGTH + COMPRESSOR.maxCompressedLength(raw.length)];
+        ByteBuffer.wrap(stored).putInt(MAGIC).putInt(raw.length).put((byte) elementSize);
+        int compressedLength = COMPRESSOR.compress(input, 0, raw.length, stored, HEADER_LENGTH);
+        byte[] result = new byte[HEADER_LENGTH + compressedLength];
+        System.arraycopy(stored, 0, result, 0, result.length);
+        recordTile(raw.length, result.length);
+        return result;
+    }
+
+    /**
+     * Decompress a stored tile, returning a new array with exactly the original bytes.
+     * @throws IOException if the stored bytes are not a valid compressed tile
+     */
+    static byte[] decompress(byte[] stored) throws IOException {
+        if (stored.length < HEADER_LENGTH) {
+            throw new IOException("Compressed tile is truncated: " + stored.length + " bytes");
+        }
+        ByteBuffer header = ByteBuffer.wrap(stored, 0, HEADER_LENGTH);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a compressed tile");
+        }
+        int rawLength = header.getInt();
+        int elementSize = header.get();
+        int compressedLength = stored.length - HEADER_LENGTH;
+        if (rawLength < 0 || elementSize < 1 || rawLength % elementSize != 0
+                || rawLength > (long) compressedLength * MAX_EXPANSION) {
+            throw new IOException("Invalid compressed tile header");
+        }
+        byte[] raw = new byte[rawLength];
+        try {
+            byte[] target = elementSize == 1 ? raw : new byte[rawLength];
+            int length = DECOMPRESSOR.decompress(stored, HEADER_LENGTH, compressedLength, target, 0, rawLength);
+            if (length != rawLength) {
+                throw new IOException("Compressed tile is truncated: " + length + " of " + rawLength + " bytes");
+            }
+            if (elementSize > 1) {
+                unshuffle(target, raw, elementSize);
+            }
+        }
+        catch (LZ4Exception e) {
+            throw new IOException("Corrupt compressed tile", e);
+        }
+        return raw;
+    }
+
+    private static byte[] shuffle(byte[] raw, int elementSize) {
+        byte[] shuffled = new byte[raw.length];
+        int numElements = raw.length / elementSize;
+        for (int b = 0; b < elementSize; b++) {
+            int offset = b * numElements;
+            for (int i = 0; i < numElements; i++) {
+                shuffled[offset + i] = raw[i * elementSize + b];
+            }
+        }
+        return shuffled;
+    }
+
+    private static void unshuffle(byte[] shuffled, byte[] raw, int elementSize) {
+        int numElements = raw.length / elementSize;
+        for (int b = 0; b < elementSize; b++) {
+            int offset = b * numElements;
+            for (int i = 0; i < numElements; i++) {
+                raw[i * elementSize + b] = shuffled[offset + i];
+            }
+        }
+    }
+
+    private static void recordTile(long raw, long stored) {
+        long n = numTiles.incrementAndGet();
+        long totalRaw = rawBytes.addAndGet(raw);
+        long totalStored = storedBytes.addAndGet(stored);
+        if (n % REPORT_INTERVAL == 0) {
+            LOG.info("Compressed {} tiles for the local cache: {} bytes per tile ({} uncompressed), ratio {}",
+                    n, totalStored / n, totalRaw / n, String.format("%.2f", totalRaw / (double) totalStored));
+        }
+    }
+
+    /**
+     * Returns the number of tiles compressed for the cache since startup.
+     */
+    static long getNumTiles() {
+        return numTiles.get();
+    }
+
+    /**
+     * Returns the mean number of bytes stored in the cache per compressed tile, or 0 if there are none.
+     */
+    static long getStoredBytesPerTile() {
+        long n = numTiles.get();
+        return n == 0 ? 0 : storedBytes.get() / n;
+    }
+
+    /**
+     * Returns the mean number of uncompressed bytes per compressed tile, or 0 if there are none.
+     */
+    static long getRawBytesPerTile() {
+        long n = numTiles.get();
+        return n == 0 ? 0 : rawBytes.get() / n;
+    }
+}
@@ -0,0 +1,98 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Running totals of the brightness histograms of the tiles being displayed.
+ *
+ * When the displayed tiles change, only the histograms of tiles which appeared or disappeared are added
+ * or subtracted, so the combined statistics cost a pass over the bins, and never touch pixel data.
+ */
+final class DisplayedBrightnessHistogram {
+
+    private Set<TileBrightnessHistogram> included = newIdentitySet();
+    private int binShift = -1;
+    // Full-range bin totals, by channel
+    private long[][] totals = new long[0][];
+
+    /**
+     * Make the totals cover exactly the given histograms.
+     */
+    synchronized void update(Collection<TileBrightnessHistogram> histograms) {
+        int nextBinShift = binShift;
+        for (TileBrightnessHistogram histogram : histograms) {
+            if (histogram.getBinShift() != binShift) {
+                nextBinShift = histogram.getBinShift();
+                break;
+            }
+        }
+        int channelCount = nextBinShift == binShift ? totals.length : 0;
+        for (TileBrightnessHistogram histogram : histograms) {
+            if (histogram.getBinShift() == nextBinShift) {
+                channelCount = Math.max(channelCount, histogram.getChannelCount());
+            }
+        }
+        if (nextBinShift != binShift || channelCount > totals.length) {
+            // Different kind of tile, so start again
+            reset(nextBinShift, channelCount);
+        }
+
+        Set<TileBrightnessHistogram> next = newIdentitySet();
+        for (TileBrightnessHistogram histogram : histograms) {
+            if (histogram.getBinShift() == binShift && next.add(histogram) && !included.contains(histogram)) {
+                add(histogram, 1);
+            }
+        }
+        for (TileBrightnessHistogram histogram : included) {
+            if (!next.contains(histogram)) {
+                add(histogram, -1);
+            }
+        }
+        included = next;
+    }
+
+    /**
+     * Returns the combined statistics of the current histograms, or null if there are none.
+     */
+    synchronized ImageBrightnessStats getStats() {
+        if (included.isEmpty()) {
+            return null;
+        }
+        ImageBrightnessStats result = new ImageBrightnessStats();
+        for (int c = 0; c < totals.length; ++c) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (TileBrightnessHistogram histogram : included) {
+                if (c < histogram.getChannelCount()) {
+                    min = Math.min(min, histogram.getMin(c));
+                    max = Math.max(max, histogram.getMax(c));
+                }
+            }
+            result.add(TileBrightnessHistogram.toChannelStats(min, max, totals[c], binShift));
+        }
+        return result;
+    }
+
+    synchronized void clear() {
+        reset(-1, 0);
+    }
+
+    private void reset(int binShift, int channelCount) {
+        this.binShift = binShift;
+        this.totals = new long[channelCount][binShift < 0 ? 0 : TileBrightnessHistogram.getBinCount(binShift)];
+        this.included = newIdentitySet();
+    }
+
+    private void add(TileBrightnessHistogram histogram, int sign) {
+        for (int c = 0; c < histogram.getChannelCount(); ++c) {
+            histogram.addTo(totals[c], c, sign);
+        }
+    }
+
+    private static Set<TileBrightnessHistogram> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+}
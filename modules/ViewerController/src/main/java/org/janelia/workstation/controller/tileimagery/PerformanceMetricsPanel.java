@@ -0,0 +1,129 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.event.ActionEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.JFileChooser;
+import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
+
+import org.janelia.workstation.controller.metrics.LatencyHistogram;
+import org.janelia.workstation.controller.metrics.PerformanceMetrics;
+import org.janelia.workstation.integration.util.FrameworkAccess;
+
+/**
+ * Tile cache status panel which also shows live performance metrics.
+ *
+ * Below the caching status boxes, the median and 95th percentile of the main latencies are drawn, and the
+ * tooltip shows every metric in the registry. The context menu dumps all the metrics to a file.
+ */
+public class PerformanceMetricsPanel extends TileStackCacheStatusPanel {
+
+    private static final int LINE_HEIGHT = 11;
+    private static final Font METRICS_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 9);
+
+    // Timers shown in the panel, with their abbreviated labels
+    private static final Map<String, String> HEADLINE_TIMERS = new LinkedHashMap<>();
+    static {
+        HEADLINE_TIMERS.put(PerformanceMetrics.TILE_LOAD, "tile");
+        HEADLINE_TIMERS.put(PerformanceMetrics.KTX_BLOCK_LOAD, "ktx");
+        HEADLINE_TIMERS.put(PerformanceMetrics.LVV_FRAME_RENDER, "frame");
+        HEADLINE_TIMERS.put(PerformanceMetrics.HORTA_FRAME_RENDER, "3d frame");
+        HEADLINE_TIMERS.put(PerformanceMetrics.NEURON_SAVE_SEND, "save send");
+        HEADLINE_TIMERS.put(PerformanceMetrics.MESSAGE_HANDLING, "msg");
+    }
+    private static final int METRICS_HEIGHT = (HEADLINE_TIMERS.size() + 2) * LINE_HEIGHT;
+
+    public PerformanceMetricsPanel() {
+        Dimension size = new Dimension(PANEL_WIDTH, PANEL_HEIGHT + METRICS_HEIGHT);
+        setPreferredSize(size);
+        setMaximumSize(size);
+
+        JPopupMenu popupMenu = new JPopupMenu();
+        JMenuItem dumpItem = new JMenuItem("Dump Metrics to File...");
+        dumpItem.addActionListener(e -> dumpMetrics());
+        popupMenu.add(dumpItem);
+        JMenuItem resetItem = new JMenuItem("Reset Metrics");
+        resetItem.addActionListener(e -> PerformanceMetrics.reset());
+        popupMenu.add(resetItem);
+        setComponentPopupMenu(popupMenu);
+    }
+
+    /**
+     * Metrics are shown whether or not the volume cache is in use.
+     */
+    @Override
+    protected boolean shouldBeVisible() {
+        return true;
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        super.actionPerformed(e);
+        StringBuilder toolTip = new StringBuilder("<html>");
+        for (String line : PerformanceMetrics.report()) {
+            toolTip.append(line).append("<br>");
+        }
+        toolTip.append("</html>");
+        setToolTipText(toolTip.toString());
+        repaint();
+    }
+
+    @Override
+    public void paint(Graphics graphics) {
+        BufferedImage image = new BufferedImage(PANEL_WIDTH, PANEL_HEIGHT + METRICS_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setBackground(Color.BLACK);
+        if (VolumeCache.useVolumeCache()) {
+            paintCacheStatus(g);
+        }
+
+        g.setFont(METRICS_FONT);
+        g.setColor(Color.LIGHT_GRAY);
+        int y = PANEL_HEIGHT + LINE_HEIGHT;
+        g.drawString("p50/p95 ms", 2, y);
+        for (Map.Entry<String, String> entry : HEADLINE_TIMERS.entrySet()) {
+            LatencyHistogram timer = PerformanceMetrics.getTimer(entry.getKey());
+            if (timer == null || timer.getCount() == 0) {
+                continue;
+            }
+            y += LINE_HEIGHT;
+            g.drawString(String.format("%s %.0f/%.0f", entry.getValue(),
+                    timer.getPercentileMillis(0.5), timer.getPercentileMillis(0.95)), 2, y);
+        }
+        y += LINE_HEIGHT;
+        g.drawString(String.format("failed %d",
+                PerformanceMetrics.getCount(PerformanceMetrics.TILE_LOAD_FAILED)
+                        + PerformanceMetrics.getCount(PerformanceMetrics.KTX_BLOCK_LOAD_FAILED)), 2, y);
+        g.dispose();
+
+        graphics.drawImage(image, 0, 0, this);
+    }
+
+    private void dumpMetrics() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Dump Performance Metrics");
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        chooser.setSelectedFile(new File("metrics-" + timestamp + ".tsv"));
+        if (chooser.showSaveDialog(FrameworkAccess.getMainFrame()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            PerformanceMetrics.dumpToFile(chooser.getSelectedFile());
+        }
+        catch (IOException e) {
+            FrameworkAccess.handleException(e);
+        }
+    }
+}
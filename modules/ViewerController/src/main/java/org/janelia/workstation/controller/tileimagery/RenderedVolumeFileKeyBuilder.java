@@ -14,6 +14,7 @@ class RenderedVolumeFileKeyBuilder {
     private String relativePath;
     private List<String> channelImageNames;
     private int pageNumber = -1;
+    private String suffix;
 
     RenderedVolumeFileKeyBuilder(String renderedVolumePath) {
         this.renderedVolumePath = renderedVolumePath;
@@ -40,6 +41,9 @@ class RenderedVolumeFileKeyBuilder {
         if (pageNumber >= 0) {
             builder.append('.').append(pageNumber);
         }
+        if (StringUtils.isNotBlank(suffix)) {
+            builder.append(suffix);
+        }
         return new RenderedVolumeFileKey(builder.toString(), fileProxyMapper);
     }
 
@@ -59,6 +63,11 @@ class RenderedVolumeFileKeyBuilder {
         return this;
     }
 
+    RenderedVolumeFileKeyBuilder withSuffix(String suffix) {
+        this.suffix = suffix;
+        return this;
+    }
+
     RenderedVolumeFileKeyBuilder withAbsolutePath(String absolutePath) {
         this.absolutePath = absolutePath;
         return this;
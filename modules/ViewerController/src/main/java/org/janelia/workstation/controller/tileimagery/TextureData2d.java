@@ -176,58 +176,10 @@ public class TextureData2d {
     }
 
     public ImageBrightnessStats getBrightnessStats() {
-        ByteBuffer bb = getPixels();
-        if (bb == null)
+        TileBrightnessHistogram histogram = TileBrightnessHistogram.compute(this);
+        if (histogram == null)
             return null;
-        if (bb.capacity() < 1)
-            return null;
-        if (height*width*channelCount < 1)
-            return null;
-        ImageBrightnessStats result = new ImageBrightnessStats();
-        bb.rewind();
-        // Initialize channel statistics
-        for (int c = 0; c < channelCount; ++c)
-            result.add(new ChannelBrightnessStats());
-        // Read pixel values
-        ShortBuffer buf16 = bb.asShortBuffer(); // ...which might be 16-bit values...
-        // First set min/max
-        for (int c = 0; c < channelCount; ++c) {
-            ChannelBrightnessStats chanStats = result.get(c);
-            for (int y = 0; y < height; ++y) {
-                for (int x = 0; x < width; ++x) {
-                    int val = 0;
-                    if (getBitDepth() > 8)
-                        val = (buf16.get() & 0xffff); // unsigned 16 bit value
-                    else
-                        val = (bb.get() & 0xff); // unsigned 8 bit value
-                    if (val == 0)
-                        continue; // zero means "no data"
-                    chanStats.setMax(Math.max(chanStats.getMax(), val));
-                    chanStats.setMin(Math.min(chanStats.getMin(), val));
-                }
-            }
-        }
-        bb.rewind();
-        buf16.rewind();
-        // Next set histogram, now that min/max are set
-        for (int c = 0; c < channelCount; ++c) {
-            ChannelBrightnessStats chanStats = result.get(c);
-            chanStats.clearHistogram();
-            for (int y = 0; y < height; ++y) {
-                for (int x = 0; x < width; ++x) {
-                    int val = 0;
-                    if (getBitDepth() > 8)
-                        val = (buf16.get() & 0xffff); // unsigned 16 bit value
-                    else
-                        val = (bb.get() & 0xff); // unsigned 8 bit value
-                    if (val == 0)
-                        continue; // zero means "no data"
-                    chanStats.updateHistogram(val, 1);
-                }
-            }
-        }
-        bb.rewind();
-        return result;
+        return histogram.toImageBrightnessStats();
     }
 
     // This method takes 4ms, vs 40ms for the above more general version
@@ -187,7 +187,11 @@ public class Tile2d implements GLActor {
         gl.glEnd();
         texture.disable(gl);
 
-        // Record display time, if first display for texture
+        recordFirstDisplay();
+    }
+
+    // Record display time, if first display for texture
+    void recordFirstDisplay() {
         if (bestTexture.getFirstDisplayTime() == bestTexture.getInvalidTime()) {
             bestTexture.setFirstDisplayTime(System.nanoTime());
         }
@@ -209,7 +213,7 @@ public class Tile2d implements GLActor {
         gl.glColor3d(1.0, 1.0, 1.0);
     }
 
-    private Point2D[] computeTextureCoordinates() {
+    Point2D[] computeTextureCoordinates() {
         PyramidTexture texture = bestTexture.getTexture();
         assert (texture != null);
         TextureCoords tc0 = texture.getImageTexCoords();
@@ -336,15 +340,21 @@ public class Tile2d implements GLActor {
         return coord;
     }
 
-    private Vec3[] computeCornerPositions(Camera3d camera) {
-        // Permute coordinates for tiles that have non-Z orientations.
+    // Depth of the displayed quad, along the slice axis
+    double computeDepth(Camera3d camera) {
         int whdToXyz[] = getWhdToXyz();
-        double z0 = getBoundingBox3d().getMin().get(whdToXyz[2]);
-        double z1 = getBoundingBox3d().getMax().get(whdToXyz[2]);
-        double z = 0.5 * (z0 + z1); // Center in depth
         if (camera != null) {
-            z = camera.getFocus().get(whdToXyz[2]);
+            return camera.getFocus().get(whdToXyz[2]);
         }
+        double z0 = getBoundingBox3d().getMin().get(whdToXyz[2]);
+        double z1 = getBoundingBox3d().getMax().get(whdToXyz[2]);
+        return 0.5 * (z0 + z1); // Center in depth
+    }
+
+    Vec3[] computeCornerPositions(Camera3d camera) {
+        // Permute coordinates for tiles that have non-Z orientations.
+        int whdToXyz[] = getWhdToXyz();
+        double z = computeDepth(camera);
         double x0 = getBoundingBox3d().getMin().get(whdToXyz[0]);
         double x1 = getBoundingBox3d().getMax().get(whdToXyz[0]);
         double y0 = getBoundingBox3d().getMin().get(whdToXyz[1]);
@@ -404,6 +414,13 @@ public class Tile2d implements GLActor {
         return bestTexture.getBrightnessStats();
     }
 
+    public TileBrightnessHistogram getBrightnessHistogram() {
+        if (bestTexture == null) {
+            return null;
+        }
+        return bestTexture.getBrightnessHistogram();
+    }
+
     @SuppressWarnings("unused")
     private void dumpPoints(Vec3[] corners, Point2D[] tex, Camera3d camera) {
         System.out.println("======================================");
@@ -0,0 +1,169 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Per-channel intensity histograms of one tile, computed once on the loader thread when the tile
+ * is loaded, so that brightness statistics never need to read the pixels again.
+ *
+ * Bins have a fixed width for the bit depth, so the histograms of different tiles can be added and
+ * subtracted exactly. Only the range of occupied bins is kept. As in ChannelBrightnessStats, zero
+ * means "no data" and is not counted.
+ */
+public final class TileBrightnessHistogram {
+
+    // 16-bit intensities are binned 16 values to a bin
+    private static final int BIN_SHIFT_16 = 4;
+
+    private final int binShift;
+    private final int[] min;
+    private final int[] max;
+    private final int[] firstBin;
+    private final int[][] counts;
+
+    private TileBrightnessHistogram(int binShift, int[] min, int[] max, int[] firstBin, int[][] counts) {
+        this.binShift = binShift;
+        this.min = min;
+        this.max = max;
+        this.firstBin = firstBin;
+        this.counts = counts;
+    }
+
+    /**
+     * Compute the histograms of the given texture, in a single pass over its interleaved channels.
+     * The padding on the right edge of each row is skipped.
+     * @return histograms, or null if the texture has no pixels
+     */
+    static TileBrightnessHistogram compute(TextureData2d data) {
+        ByteBuffer pixels = data.getPixels();
+        int width = data.getWidth();
+        int height = data.getHeight();
+        int channelCount = data.getChannelCount();
+        if (pixels == null || width * height * channelCount < 1) {
+            return null;
+        }
+        boolean is16Bit = data.getBitDepth() > 8;
+        int valueBytes = is16Bit ? 2 : 1;
+        if (pixels.capacity() < (long) width * height * channelCount * valueBytes) {
+            return null;
+        }
+        int usedWidth = data.getUsedWidth();
+        if (usedWidth <= 0 || usedWidth > width) {
+            usedWidth = width;
+        }
+
+        int binShift = is16Bit ? BIN_SHIFT_16 : 0;
+        int[][] bins = new int[channelCount][getBinCount(binShift)];
+        int[] min = new int[channelCount];
+        int[] max = new int[channelCount];
+        Arrays.fill(min, Integer.MAX_VALUE);
+        Arrays.fill(max, Integer.MIN_VALUE);
+
+        // Absolute reads, so that the buffer position is never disturbed
+        for (int y = 0; y < height; ++y) {
+            int rowOffset = y * width * channelCount;
+            for (int x = 0; x < usedWidth; ++x) {
+                int pixelOffset = rowOffset + x * channelCount;
+                for (int c = 0; c < channelCount; ++c) {
+                    int i = pixelOffset + c;
+                    int val = is16Bit ? (pixels.getShort(2 * i) & 0xffff) : (pixels.get(i) & 0xff);
+                    if (val == 0) {
+                        continue; // zero means "no data"
+                    }
+                    bins[c][val >> binShift]++;
+                    if (val < min[c]) {
+                        min[c] = val;
+                    }
+                    if (val > max[c]) {
+                        max[c] = val;
+                    }
+                }
+            }
+        }
+
+        // Keep only the occupied bins
+        int[] firstBin = new int[channelCount];
+        int[][] counts = new int[channelCount][];
+        for (int c = 0; c < channelCount; ++c) {
+            if (min[c] > max[c]) {
+                counts[c] = new int[0];
+                continue;
+            }
+            firstBin[c] = min[c] >> binShift;
+            counts[c] = Arrays.copyOfRange(bins[c], firstBin[c], (max[c] >> binShift) + 1);
+        }
+        return new TileBrightnessHistogram(binShift, min, max, firstBin, counts);
+    }
+
+    static int getBinCount(int binShift) {
+        return 65536 >> binShift;
+    }
+
+    int getBinShift() {
+        return binShift;
+    }
+
+    public int getChannelCount() {
+        return counts.length;
+    }
+
+    /**
+     * Smallest non-zero intensity of the channel, or Integer.MAX_VALUE if it has no data.
+     */
+    public int getMin(int channel) {
+        return min[channel];
+    }
+
+    /**
+     * Largest intensity of the channel, or Integer.MIN_VALUE if it has no data.
+     */
+    public int getMax(int channel) {
+        return max[channel];
+    }
+
+    /**
+     * Add the counts of a channel to full-range totals, or subtract them if sign is negative.
+     */
+    void addTo(long[] totals, int channel, int sign) {
+        int[] channelCounts = counts[channel];
+        int offset = firstBin[channel];
+        for (int b = 0; b < channelCounts.length; ++b) {
+            totals[offset + b] += sign * channelCounts[b];
+        }
+    }
+
+    public ImageBrightnessStats toImageBrightnessStats() {
+        ImageBrightnessStats result = new ImageBrightnessStats();
+        for (int c = 0; c < counts.length; ++c) {
+            long[] totals = new long[getBinCount(binShift)];
+            addTo(totals, c, 1);
+            result.add(toChannelStats(min[c], max[c], totals, binShift));
+        }
+        return result;
+    }
+
+    /**
+     * Build the statistics of one channel from full-range bin totals. Each bin is counted at its
+     * center, clamped to the channel range.
+     */
+    static ChannelBrightnessStats toChannelStats(int min, int max, long[] totals, int binShift) {
+        ChannelBrightnessStats stats = new ChannelBrightnessStats();
+        if (min > max) {
+            return stats; // no data
+        }
+        stats.setMin(min);
+        stats.setMax(max);
+        stats.clearHistogram();
+        int halfBin = (1 << binShift) / 2;
+        for (int b = min >> binShift; b <= max >> binShift; ++b) {
+            long count = totals[b];
+            if (count <= 0) {
+                continue;
+            }
+            int val = Math.max(min, Math.min(max, (b << binShift) + halfBin));
+            stats.updateHistogram(val, (int) Math.min(count, Integer.MAX_VALUE));
+        }
+        return stats;
+    }
+}
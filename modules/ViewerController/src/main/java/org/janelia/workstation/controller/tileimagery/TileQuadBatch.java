@@ -0,0 +1,225 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.awt.geom.Point2D;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.media.opengl.GL;
+import javax.media.opengl.GL2;
+
+import com.jogamp.common.nio.Buffers;
+
+import org.janelia.workstation.geom.Vec3;
+import org.janelia.workstation.gui.camera.Camera3d;
+
+/**
+ * Retained-mode renderer for the tiles of one LargeVolumeViewer view.
+ *
+ * The quads of all displayable tiles are kept in a single vertex buffer, which
+ * is only rebuilt when the set of tiles, their textures, or the slice depth
+ * changes. Tiles which share a texture (e.g. several tiles showing parts of the
+ * same coarse texture) are drawn together in one call. Texture wrap and filter
+ * parameters are only set when they differ from the last values set on that
+ * texture, instead of on every draw.
+ *
+ * Uses the fixed-function vertex and texture coordinate arrays, so it works
+ * with the existing slice shaders.
+ */
+public class TileQuadBatch {
+
+    // Texture coordinates (s, t), then vertex (x, y, z)
+    private static final int FLOATS_PER_VERTEX = 5;
+    private static final int STRIDE = FLOATS_PER_VERTEX * Buffers.SIZEOF_FLOAT;
+
+    /**
+     * What was in the vertex buffer for one tile, to detect changes.
+     */
+    private static class Quad {
+        final TileTexture tileTexture;
+        final PyramidTexture texture;
+
+        Quad(TileTexture tileTexture, PyramidTexture texture) {
+            this.tileTexture = tileTexture;
+            this.texture = texture;
+        }
+    }
+
+    /**
+     * Consecutive quads which use the same texture.
+     */
+    private static class Run {
+        final PyramidTexture texture;
+        final int firstVertex;
+        final int vertexCount;
+
+        Run(PyramidTexture texture, int firstVertex, int vertexCount) {
+            this.texture = texture;
+            this.firstVertex = firstVertex;
+            this.vertexCount = vertexCount;
+        }
+    }
+
+    private final Map<TileIndex, Quad> quads = new HashMap<>();
+    private final List<Run> runs = new ArrayList<>();
+    private final List<Tile2d> displayedTiles = new ArrayList<>();
+    private double depth = Double.NaN;
+    private int vbo = 0;
+    private FloatBuffer vertices;
+    // Texture id and filter last set on each texture
+    private final Map<PyramidTexture, Long> textureParameters = new WeakHashMap<>();
+
+    /**
+     * Draw the tiles which have a texture loaded.
+     * @param gl
+     * @param tiles tiles to draw
+     * @param camera camera, for the slice depth
+     * @param filter texture filter, e.g. GL_LINEAR or GL_NEAREST
+     */
+    public void display(GL2 gl, Iterable<Tile2d> tiles, Camera3d camera, int filter) {
+        List<Tile2d> drawable = new ArrayList<>();
+        for (Tile2d tile : tiles) {
+            if (tile.getLoadStatus().ordinal() < Tile2d.LoadStatus.COARSE_TEXTURE_LOADED.ordinal()) {
+                continue;
+            }
+            TileTexture tileTexture = tile.getBestTexture();
+            if (tileTexture == null) {
+                continue;
+            }
+            tileTexture.init(gl);
+            if (tileTexture.getTexture() == null) {
+                continue;
+            }
+            drawable.add(tile);
+        }
+        if (drawable.isEmpty()) {
+            return;
+        }
+
+        double newDepth = drawable.get(0).computeDepth(camera);
+        if (needsRebuild(drawable, newDepth)) {
+            rebuild(gl, drawable, camera, newDepth);
+        }
+
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vbo);
+        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+        gl.glTexCoordPointer(2, GL.GL_FLOAT, STRIDE, 0);
+        gl.glVertexPointer(3, GL.GL_FLOAT, STRIDE, 2 * Buffers.SIZEOF_FLOAT);
+        PyramidTexture first = runs.get(0).texture;
+        first.enable(gl);
+        for (Run run : runs) {
+            run.texture.bind(gl);
+            setParameters(gl, run.texture, filter);
+            gl.glDrawArrays(GL2.GL_QUADS, run.firstVertex, run.vertexCount);
+        }
+        first.disable(gl);
+        gl.glDisableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+        gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+
+        for (Tile2d tile : displayedTiles) {
+            tile.recordFirstDisplay();
+        }
+    }
+
+    private boolean needsRebuild(List<Tile2d> drawable, double newDepth) {
+        if (vbo == 0 || newDepth != depth || drawable.size() != quads.size()) {
+            return true;
+        }
+        for (Tile2d tile : drawable) {
+            Quad quad = quads.get(tile.getIndex());
+            if (quad == null) {
+                return true;
+            }
+            TileTexture tileTexture = tile.getBestTexture();
+            if (quad.tileTexture != tileTexture || quad.texture != tileTexture.getTexture()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rebuild(GL2 gl, List<Tile2d> drawable, Camera3d camera, double newDepth) {
+        // Group quads by texture
+        Map<PyramidTexture, List<Tile2d>> byTexture = new IdentityHashMap<>();
+        for (Tile2d tile : drawable) {
+            byTexture.computeIfAbsent(tile.getBestTexture().getTexture(), t -> new ArrayList<>()).add(tile);
+        }
+
+        int floatCount = drawable.size() * 4 * FLOATS_PER_VERTEX;
+        if (vertices == null || vertices.capacity() < floatCount) {
+            vertices = Buffers.newDirectFloatBuffer(floatCount);
+        }
+        vertices.clear();
+        quads.clear();
+        runs.clear();
+        displayedTiles.clear();
+        int vertexCount = 0;
+        for (Map.Entry<PyramidTexture, List<Tile2d>> entry : byTexture.entrySet()) {
+            int firstVertex = vertexCount;
+            for (Tile2d tile : entry.getValue()) {
+                Vec3[] corners = tile.computeCornerPositions(camera);
+                Point2D[] texCoords = tile.computeTextureCoordinates();
+                for (int c = 0; c < 4; ++c) {
+                    vertices.put((float) texCoords[c].getX());
+                    vertices.put((float) texCoords[c].getY());
+                    vertices.put((float) corners[c].getX());
+                    vertices.put((float) corners[c].getY());
+                    vertices.put((float) corners[c].getZ());
+                }
+                vertexCount += 4;
+                quads.put(tile.getIndex(), new Quad(tile.getBestTexture(), entry.getKey()));
+                displayedTiles.add(tile);
+            }
+            runs.add(new Run(entry.getKey(), firstVertex, vertexCount - firstVertex));
+        }
+        vertices.flip();
+
+        if (vbo == 0) {
+            int[] ids = new int[1];
+            gl.glGenBuffers(1, ids, 0);
+            vbo = ids[0];
+        }
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vbo);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) vertices.remaining() * Buffers.SIZEOF_FLOAT, vertices, GL.GL_DYNAMIC_DRAW);
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+        depth = newDepth;
+    }
+
+    private void setParameters(GL2 gl, PyramidTexture texture, int filter) {
+        long state = ((long) texture.getTextureId() << 32) | (filter & 0xffffffffL);
+        Long previous = textureParameters.get(texture);
+        if (previous != null && previous == state) {
+            return;
+        }
+        texture.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP_TO_EDGE);
+        texture.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP_TO_EDGE);
+        texture.setTexParameteri(gl, GL2.GL_TEXTURE_MIN_FILTER, filter);
+        texture.setTexParameteri(gl, GL2.GL_TEXTURE_MAG_FILTER, filter);
+        textureParameters.put(texture, state);
+    }
+
+    /**
+     * Forget the tiles in the vertex buffer, e.g. after textures have been
+     * deleted, so that it is rebuilt on the next display.
+     */
+    public void invalidate() {
+        quads.clear();
+        runs.clear();
+        displayedTiles.clear();
+        textureParameters.clear();
+    }
+
+    public void dispose(GL2 gl) {
+        if (vbo != 0) {
+            gl.glDeleteBuffers(1, new int[] {vbo}, 0);
+            vbo = 0;
+        }
+        invalidate();
+    }
+}
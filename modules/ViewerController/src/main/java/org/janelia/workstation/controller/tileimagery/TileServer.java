@@ -49,6 +49,7 @@ public class TileServer implements ComponentListener, // so changes in viewer si
     // Refactoring 6/12/2013
     private SharedVolumeImage sharedVolumeImage;
     private TextureCache textureCache = new TextureCache();
+    private final DisplayedBrightnessHistogram displayedBrightness = new DisplayedBrightnessHistogram();
 
     private LoadStatusListener loadStatusListener;
     private StatusUpdateListener queueDrainedListener;
@@ -152,6 +153,7 @@ public class TileServer implements ComponentListener, // so changes in viewer si
             textureCache.setQueueDrainedListener(null);
         }
         textureCache = new TextureCache();
+        displayedBrightness.clear();
         textureCache.setQueueDrainedListener(queueDrainedListener);
         if (textureIds != null) {
             textureCache.getHistoryCache().storeObsoleteTextureIds(textureIds); // so old texture ids can get deleted next draw
@@ -370,8 +372,12 @@ public class TileServer implements ComponentListener, // so changes in viewer si
         return sharedVolumeImage.getLoadAdapter();
     }
 
+    /**
+     * Combined brightness statistics of the tiles being displayed. The histograms computed when the
+     * tiles were loaded are merged incrementally, so this never reads pixel data.
+     */
     public ImageBrightnessStats getCurrentBrightnessStats() {
-        ImageBrightnessStats result = null;
+        List<TileBrightnessHistogram> histograms = new ArrayList<>();
         for (ViewTileManager vtm : viewTileManagers) {
             if (vtm == null) {
                 continue;
@@ -380,16 +386,15 @@ public class TileServer implements ComponentListener, // so changes in viewer si
             if (tiles == null) {
                 continue;
             }
-            for (Tile2d tile : vtm.getLatestTiles()) {
-                ImageBrightnessStats bs = tile.getBrightnessStats();
-                if (result == null) {
-                    result = bs;
-                } else if (bs != null) {
-                    result.combine(tile.getBrightnessStats());
+            for (Tile2d tile : tiles) {
+                TileBrightnessHistogram histogram = tile.getBrightnessHistogram();
+                if (histogram != null) {
+                    histograms.add(histogram);
                 }
             }
         }
-        return result;
+        displayedBrightness.update(histograms);
+        return displayedBrightness.getStats();
     }
 
     // ComponentListener interface, to viewer changes can be tracked
@@ -19,8 +19,8 @@ import java.util.Collection;
  */
 public class TileStackCacheStatusPanel extends JPanel implements ActionListener {
 
-    private static final int PANEL_HEIGHT=210;
-    private static final int PANEL_WIDTH=90;
+    protected static final int PANEL_HEIGHT=210;
+    protected static final int PANEL_WIDTH=90;
     private static final int Z_OFFSET=60;
     private static final int BOX_XSIZE=7;
     private static final int BOX_YSIZE=7;
@@ -42,18 +42,25 @@ public class TileStackCacheStatusPanel extends JPanel implements ActionListener
     @Override
     public void actionPerformed(ActionEvent e) {
         if (VolumeCache.useVolumeCache()) {
-            if (!isVisible()) {
-                setVisible(true);
-            }
             cachingMap = TileStackCacheController.getInstance().getCachingMap();
+        }
+        boolean visible = shouldBeVisible();
+        if (visible != isVisible()) {
+            setVisible(visible);
+        }
+        if (visible) {
             repaint();
-        } else {
-            if (isVisible()) {
-                setVisible(false);
-            }
         }
     }
 
+    /**
+     * Returns whether the panel should currently be shown. By default, it's only shown while the volume cache
+     * is in use.
+     */
+    protected boolean shouldBeVisible() {
+        return VolumeCache.useVolumeCache();
+    }
+
     private int[] getStatusBoxCoordinates(int[] statusArr) {
         int x=statusArr[0];
         int y=statusArr[1];
@@ -76,14 +83,21 @@ public class TileStackCacheStatusPanel extends JPanel implements ActionListener
         BufferedImage image=new BufferedImage(PANEL_WIDTH, PANEL_HEIGHT, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = image.createGraphics();
         g.setBackground(Color.BLACK);
+        paintCacheStatus(g);
+        graphics.drawImage(image, 0, 0, this);
+    }
 
+    /**
+     * Draw the caching status boxes into the top PANEL_WIDTH x PANEL_HEIGHT area of the given graphics.
+     */
+    protected void paintCacheStatus(Graphics2D g) {
+        if (cachingMap==null)
+            return;
         for (int[] statusArr : cachingMap) {
             int[] xy = getStatusBoxCoordinates(statusArr);
             g.setColor(statusColors[statusArr[3]]);
             g.fillRect(xy[0], xy[1], BOX_XSIZE, BOX_YSIZE);
         }
-
-        graphics.drawImage(image, 0, 0, this);
     }
 
 }
@@ -2,6 +2,8 @@ package org.janelia.workstation.controller.tileimagery;
 
 import javax.media.opengl.GL2;
 
+import org.janelia.workstation.controller.metrics.PerformanceMetrics;
+
 /*
  * Note the subtle distinction between Tile2d and TileTexture
  */
@@ -28,6 +30,8 @@ public class TileTexture {
     // private URL url;
     private TextureData2dGL textureData;
     private PyramidTexture texture = null;
+    // Computed once on the loader thread, along with the texture data
+    private volatile TileBrightnessHistogram brightnessHistogram;
     private AbstractTextureLoadAdapter loadAdapter;
 
     // time stamps for performance measurement
@@ -88,6 +92,7 @@ public class TileTexture {
             textureData.releaseMemory();
         }
         textureData = null;
+        brightnessHistogram = null;
         setLoadStatus(LoadStatus.UNINITIALIZED);
         // TODO - release OpenGL texture memory
         texture = null;
@@ -150,15 +155,20 @@ public class TileTexture {
 
     synchronized boolean loadImageToRam() {
         setLoadStatus(LoadStatus.RAM_LOADING);
+        long startTime = System.nanoTime();
         try {
             textureData = new TextureData2dGL(loadAdapter.loadToRam(index));
+            brightnessHistogram = TileBrightnessHistogram.compute(textureData);
         } catch (AbstractTextureLoadAdapter.TileLoadError e) {
             setLoadStatus(LoadStatus.LOAD_FAILED); // error
+            PerformanceMetrics.counter(PerformanceMetrics.TILE_LOAD_FAILED).increment();
             return false;
         } catch (AbstractTextureLoadAdapter.MissingTileException e) { // texture correctly has no data
             setLoadStatus(LoadStatus.MISSING);
+            PerformanceMetrics.counter(PerformanceMetrics.TILE_LOAD_MISSING).increment();
             return true; // because missing is a valid state
         }
+        PerformanceMetrics.timer(PerformanceMetrics.TILE_LOAD).recordSince(startTime);
         setLoadStatus(LoadStatus.RAM_LOADED); // Yay!
         return true;
     }
@@ -176,10 +186,18 @@ public class TileTexture {
     }
 
     public ImageBrightnessStats getBrightnessStats() {
+        TileBrightnessHistogram histogram = getBrightnessHistogram();
+        if (histogram == null) {
+            return null;
+        }
+        return histogram.toImageBrightnessStats();
+    }
+
+    public TileBrightnessHistogram getBrightnessHistogram() {
         if (loadStatus.ordinal() < LoadStatus.RAM_LOADED.ordinal()) {
             return null;
         }
-        return textureData.getBrightnessStats();
+        return brightnessHistogram;
     }
 
 }
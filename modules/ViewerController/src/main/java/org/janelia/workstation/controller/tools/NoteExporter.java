@@ -45,6 +45,8 @@ import org.janelia.model.domain.tiledMicroscope.TmStructuredTextAnnotation;
 
 public class NoteExporter {
 
+    private static final ObjectWriter WRITER = new ObjectMapper().writer(new DefaultPrettyPrinter());
+
     /**
      * export the notes from the given neuron(s), with a filename derived from the
      * given swc file
@@ -65,11 +67,40 @@ public class NoteExporter {
         //  that the user has already (most likely) chosen to overwrite the
         //  corresponding swc file at this point
 
+        ObjectNode rootNode = createNotes(workspaceID,
+                AccessManager.getAccessManager().getActualSubject().getName(), offset, neuronList, converter);
+        if (rootNode != null) {
+            try {
+                WRITER.writeValue(noteFile, rootNode);
+            }
+            catch (IOException e) {
+                FrameworkAccess.handleException(e);
+            }
+        }
+
+    }
+
+    /**
+     * returns the notes file contents for the given neuron, in the same format
+     * exportNotes() writes, or null if they have no notes
+     */
+    public static byte[] getNotesBytes(Long workspaceID, String username, double[] offset,
+        TmNeuronMetadata neuron, SWCDataConverter converter) throws IOException {
+        ObjectNode rootNode = createNotes(workspaceID, username, offset, Arrays.asList(neuron), converter);
+        return rootNode == null ? null : WRITER.writeValueAsBytes(rootNode);
+    }
+
+    /**
+     * builds the json object holding the notes; returns null if none of the neurons has notes
+     */
+    private static ObjectNode createNotes(Long workspaceID, String username, double[] offset,
+        List<TmNeuronMetadata> neuronList, SWCDataConverter converter) {
+
         // create initial json object; add "header" information
         ObjectMapper mapper = new ObjectMapper();
         ObjectNode rootNode = mapper.createObjectNode();
         rootNode.put("workspaceID", workspaceID);
-        rootNode.put("username", AccessManager.getAccessManager().getActualSubject().getName());
+        rootNode.put("username", username);
 
 
 
@@ -114,16 +145,7 @@ public class NoteExporter {
         }
         rootNode.set("offset", offsetNode);
 
-        if (hasNotes) {
-            ObjectWriter writer = mapper.writer(new DefaultPrettyPrinter());
-            try {
-                writer.writeValue(noteFile, rootNode);
-            }
-            catch (IOException e) {
-                FrameworkAccess.handleException(e);
-            }
-        }
-
+        return hasNotes ? rootNode : null;
     }
 
     public static void exportNotes(String swcPath, Long workspaceID, double[] neuronCenter,
@@ -0,0 +1,317 @@
+package org.janelia.workstation.controller.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.core.util.Progress;
+import org.janelia.workstation.swc.SWCData;
+import org.janelia.workstation.swc.SWCDataConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * this class exports neurons to swc without ever holding the whole set of
+ * converted neurons in memory; each neuron is converted (and downsampled)
+ * and written on a worker thread as soon as it's picked up, and only a
+ * bounded number of neurons are in flight at any time
+ *
+ * output is either one swc file per neuron in a directory named like the
+ * target file (same layout as the non-streaming export), or a single zip
+ * archive with one swc entry per neuron; no combined "all neurons" file is
+ * written, since building it is exactly what we're trying to avoid
+ *
+ * all neurons are offset from the same center of mass, which is computed
+ * in a first, cheap pass over the annotations
+ */
+public class StreamingSWCExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingSWCExporter.class);
+
+    public static final String ZIP_EXTENSION = ".zip";
+    private static final String NOTES_EXTENSION = ".json";
+
+    public enum Mode {
+        DIRECTORY,
+        ARCHIVE
+    }
+
+    private final SWCDataConverter converter;
+    private final int downsampleModulo;
+    private final Function<TmNeuronMetadata, List<String>> headerProvider;
+    private final int concurrency;
+
+    // used for note export; null means no notes
+    private Long notesWorkspaceId;
+    private String notesUsername;
+
+    public StreamingSWCExporter(SWCDataConverter converter, int downsampleModulo,
+                                Function<TmNeuronMetadata, List<String>> headerProvider) {
+        this(converter, downsampleModulo, headerProvider, Runtime.getRuntime().availableProcessors());
+    }
+
+    public StreamingSWCExporter(SWCDataConverter converter, int downsampleModulo,
+                                Function<TmNeuronMetadata, List<String>> headerProvider, int concurrency) {
+        this.converter = converter;
+        this.downsampleModulo = downsampleModulo;
+        this.headerProvider = headerProvider;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * export notes next to each swc file, as a json file (or archive entry)
+     * with the same base name, in the format the note exporter uses
+     */
+    public void setExportNotes(Long workspaceId, String username) {
+        this.notesWorkspaceId = workspaceId;
+        this.notesUsername = username;
+    }
+
+    /**
+     * export the given neurons; returns the number of swc files (or archive
+     * entries) actually written; empty neurons are skipped
+     */
+    public int export(File swcFile, Mode mode, Collection<TmNeuronMetadata> neurons, Progress progress) throws Exception {
+
+        log.info("Streaming export of {} neurons to {} ({}, {} threads)", neurons.size(), swcFile, mode, concurrency);
+
+        progress.setStatus("Computing neuron center");
+        final double[] center = converter.neuronCenterOfMass(neurons);
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("SWCExport-%d")
+                        .setDaemon(true).build());
+        CompletionService<Boolean> completionService = new ExecutorCompletionService<>(executor);
+
+        // at most this many converted neurons can be alive at once
+        int maxInFlight = 2 * concurrency;
+        int total = neurons.size();
+        int submitted = 0;
+        int completed = 0;
+        int written = 0;
+
+        progress.setStatus("Exporting neuron files");
+        try (NeuronSink sink = mode == Mode.ARCHIVE ? new ArchiveSink(swcFile) : new DirectorySink(swcFile)) {
+            try {
+                Iterator<TmNeuronMetadata> neuronIterator = neurons.iterator();
+                while (neuronIterator.hasNext() || completed < submitted) {
+                    while (neuronIterator.hasNext() && submitted - completed < maxInFlight) {
+                        TmNeuronMetadata neuron = neuronIterator.next();
+                        completionService.submit(() -> exportNeuron(neuron, center, sink));
+                        submitted++;
+                    }
+                    try {
+                        if (completionService.take().get()) {
+                            written++;
+                        }
+                    }
+                    catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof Exception) {
+                            throw (Exception) cause;
+                        }
+                        throw e;
+                    }
+                    completed++;
+                    progress.setProgress(completed, Math.max(total, completed));
+                    if (progress.isCancelled()) {
+                        log.info("SWC export cancelled after {} of {} neurons", completed, total);
+                        return written;
+                    }
+                }
+            }
+            finally {
+                // neurons still in flight must be done with the sink before it's closed
+                shutdownAndWait(executor);
+            }
+        }
+
+        progress.setProgress(total, total);
+        progress.setStatus(written == 0 ? "No data retrieved!" : "Done");
+        log.info("Exported {} neurons to {}", written, swcFile);
+        return written;
+    }
+
+    /**
+     * stop the workers and wait for them to finish; interrupting a worker
+     * doesn't stop a write that's already under way, so we wait until every
+     * worker is gone, even if the calling thread is interrupted meanwhile
+     */
+    private static void shutdownAndWait(ExecutorService executor) {
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+                log.info("Waiting for SWC export workers to finish");
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean exportNeuron(TmNeuronMetadata neuron, double[] center, NeuronSink sink) throws Exception {
+        if (neuron == null || neuron.getGeoAnnotationMap().isEmpty()) {
+            log.trace("Skipping empty neuron " + neuron);
+            return false;
+        }
+        SWCData swcData = converter.fromTmNeuron(neuron, center, downsampleModulo);
+        for (String header : headerProvider.apply(neuron)) {
+            if (!header.startsWith("#")) {
+                header = "# " + header;
+            }
+            swcData.getHeaderList().add(header);
+        }
+        byte[] notes = null;
+        if (notesWorkspaceId != null) {
+            notes = NoteExporter.getNotesBytes(notesWorkspaceId, notesUsername, center, neuron, converter);
+        }
+        sink.write(neuron, swcData, notes);
+        return true;
+    }
+
+    /**
+     * neuron names aren't unique, and may contain characters that don't belong
+     * in a file name; returns a base name (without extension) that hasn't
+     * been handed out yet
+     */
+    private static synchronized String reserveName(Set<String> usedNames, String name) {
+        String base = (name == null || name.trim().isEmpty()) ? "neuron" : name.trim().replaceAll("[\\\\/:*?\"<>|]", "_");
+        String candidate = base;
+        int counter = 1;
+        while (!usedNames.add(candidate)) {
+            counter++;
+            candidate = base + "_" + counter;
+        }
+        return candidate;
+    }
+
+    private interface NeuronSink extends AutoCloseable {
+        /**
+         * write the neuron, and its notes alongside it unless they're null
+         */
+        void write(TmNeuronMetadata neuron, SWCData swcData, byte[] notes) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static class DirectorySink implements NeuronSink {
+
+        private final File dir;
+        private final Set<String> usedNames = new HashSet<>();
+
+        DirectorySink(File swcFile) throws IOException {
+            String swcFileName = swcFile.getName();
+            String dirName;
+            if (swcFileName.endsWith(SWCData.STD_SWC_EXTENSION)) {
+                dirName = swcFileName.substring(0, swcFileName.length() - SWCData.STD_SWC_EXTENSION.length());
+            } else {
+                dirName = swcFileName + "-dir";
+            }
+            File parentDir = new File(swcFile.getParentFile(), dirName);
+            if (parentDir.exists() && !parentDir.isDirectory()) {
+                parentDir = new File(parentDir.getParentFile(), dirName + "_" + System.currentTimeMillis());
+            }
+            if (!parentDir.exists() && !parentDir.mkdirs()) {
+                throw new IOException("Could not create export directory " + parentDir);
+            }
+            this.dir = parentDir;
+        }
+
+        @Override
+        public void write(TmNeuronMetadata neuron, SWCData swcData, byte[] notes) throws IOException {
+            String name = reserveName(usedNames, neuron.getName());
+            try (Writer writer = new FileWriter(new File(dir, name + SWCData.STD_SWC_EXTENSION))) {
+                swcData.write(writer);
+            }
+            if (notes != null) {
+                Files.write(new File(dir, name + NOTES_EXTENSION).toPath(), notes);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class ArchiveSink implements NeuronSink {
+
+        private final Set<String> usedNames = new HashSet<>();
+        private final ZipOutputStream zipStream;
+        private boolean closed;
+
+        ArchiveSink(File swcFile) throws IOException {
+            String swcFileName = swcFile.getName();
+            if (swcFileName.endsWith(SWCData.STD_SWC_EXTENSION)) {
+                swcFileName = swcFileName.substring(0, swcFileName.length() - SWCData.STD_SWC_EXTENSION.length());
+            }
+            if (!swcFileName.endsWith(ZIP_EXTENSION)) {
+                swcFileName += ZIP_EXTENSION;
+            }
+            File zipFile = new File(swcFile.getParentFile(), swcFileName);
+            this.zipStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)));
+        }
+
+        @Override
+        public void write(TmNeuronMetadata neuron, SWCData swcData, byte[] notes) throws IOException {
+            // format on the worker thread; only the (short) copy into the archive is serialized
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+                swcData.write(writer);
+            }
+            String name = reserveName(usedNames, neuron.getName());
+            synchronized (zipStream) {
+                if (closed) {
+                    throw new IOException("Archive is already closed, cannot add " + name);
+                }
+                zipStream.putNextEntry(new ZipEntry(name + SWCData.STD_SWC_EXTENSION));
+                bytes.writeTo(zipStream);
+                zipStream.closeEntry();
+                if (notes != null) {
+                    zipStream.putNextEntry(new ZipEntry(name + NOTES_EXTENSION));
+                    zipStream.write(notes);
+                    zipStream.closeEntry();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (zipStream) {
+                closed = true;
+                zipStream.close();
+            }
+        }
+    }
+}
@@ -41,8 +41,14 @@ public class BulkExportNeuronAction extends AbstractAction{
 
                 @Override
                 protected void doStuff() throws Exception {
-                    NeuronManager.getInstance().exportSWCData(params.getSelectedFile(), params.getDownsampleModulo(),
-                            listProvider.getNeuronList(), params.getExportNotes(), this);
+                    if (params.isStreaming()) {
+                        NeuronManager.getInstance().exportSWCDataStreaming(params.getSelectedFile(), params.getDownsampleModulo(),
+                                listProvider.getNeuronList(), params.getExportNotes(), params.isArchive(), this);
+                    }
+                    else {
+                        NeuronManager.getInstance().exportSWCData(params.getSelectedFile(), params.getDownsampleModulo(),
+                                listProvider.getNeuronList(), params.getExportNotes(), this);
+                    }
                 }
 
                 @Override